@@ -0,0 +1,302 @@
+package com.horsehour.math.opt.lp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * 基于Simplex批量求解各决策单元(DMU)的CCR模型, 不依赖lp_solve.
+ * <p>
+ * 决策单元o的模型为 max x_o w, s.t. Xw <= b, w >= 0 (MAX), 或 min x_o w, s.t.
+ * Xw >= b, w >= 0 (MIN), 各单元共享约束矩阵X, 只有目标函数不同. 这里求解其对偶问题,
+ * 单纯形表的行数为特征数而非单元数, 且各单元之间只有右端项不同: 上一单元的最优基对偶可行,
+ * 替换右端项后由对偶单纯形法继续求解. 最优权值w即对偶问题的对偶解. 热启动的平均换基次数多于冷启动时,
+ * 该块内之后的单元改为从松弛变量基冷启动.
+ * </p>
+ * <p>
+ * 单元按特征之和排序后切分为若干块, 相近的单元在同一块内依次求解, 各块在ForkJoinPool上并行.
+ * 每次求解之后记录各单元的求解时间及换基次数. DEA要求数据非负.
+ * </p>
+ *
+ * @author Chunheng Jiang
+ * @version 1.0
+ * @since 20131213
+ */
+public class DEASolver {
+	private final ForkJoinPool pool;
+	public int nBlockPerThread = 4;
+
+	private long[] nanos = new long[0];// 各单元的求解时间
+	private int[] pivots = new int[0];// 各单元的换基次数
+	private int nCold = 0;// 新建单纯形表的次数
+
+	public DEASolver() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public DEASolver(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * 求解各决策单元的CCR模型
+	 *
+	 * @param data
+	 *            X, one row per unit
+	 * @param dir
+	 *            MAX for Xw <= b, MIN for Xw >= b
+	 * @param bound
+	 *            b
+	 * @return solution of each unit, null if not solved
+	 */
+	public Solution[] solve(double[][] data, ObjDirection dir,
+	        final double[] bound) {
+		if (data.length == 0)
+			return new Solution[0];
+
+		final int n = data.length, d = data[0].length;
+
+		// MAX的对偶问题: max -bλ, s.t. -X'λ <= -x_o; MIN的对偶问题: max bλ, s.t.
+		// X'λ <= x_o
+		final double sign = (dir == ObjDirection.MAX) ? -1 : 1;
+		final double[][] a = new double[d][n];
+		final double[] c = new double[n];
+		for (int j = 0; j < n; j++) {
+			for (int i = 0; i < d; i++)
+				a[i][j] = sign * data[j][i];
+			c[j] = sign * bound[j];
+		}
+
+		final double[][] x = data;
+		return run(order(data), () -> new Unit() {
+			private Simplex simplex = null;
+			private int nPivot = 0;
+			// 冷启动与热启动的次数及换基次数, 热启动平均换基次数更多时改为冷启动
+			private int nColdSolve = 0, nWarmSolve = 0;
+			private long coldPivot = 0, warmPivot = 0;
+
+			public Solution solve(int o) {
+				double[] rhs = new double[d];
+				for (int i = 0; i < d; i++)
+					rhs[i] = sign * x[o][i];
+
+				boolean warm = simplex != null && (nWarmSolve == 0
+				        || warmPivot * nColdSolve <= coldPivot * nWarmSolve);
+				if (warm)
+					simplex.setBound(rhs);
+				else {
+					simplex = new Simplex(a, rhs, c);
+					cold();
+				}
+
+				int p0 = simplex.getNumPivot();
+				boolean solved = true;
+				try {
+					simplex.solve();
+				} catch (RuntimeException e) {
+					solved = false;
+				}
+
+				int p = simplex.getNumPivot() - p0;
+				nPivot += p;
+				if (warm) {
+					nWarmSolve++;
+					warmPivot += p;
+				} else {
+					nColdSolve++;
+					coldPivot += p;
+				}
+				if (!solved) {
+					simplex = null;
+					return null;
+				}
+				return new Solution(sign * simplex.value(), simplex.dual());
+			}
+
+			public int getNumPivot() {
+				return nPivot;
+			}
+		});
+	}
+
+	/**
+	 * 各决策单元的CCR效率. 没有输入时, 效率为 max y_o u, s.t. Yu <= 1; 否则为 min θ,
+	 * s.t. Y'λ >= y_o, X'λ <= θx_o, 其中θ的系数列随单元变化, 每个单元新建单纯形表.
+	 *
+	 * @param output
+	 *            outputs of each unit
+	 * @param input
+	 *            inputs of each unit, null or empty if none
+	 * @return efficiency of each unit, NaN if not solved
+	 */
+	public double[] efficiency(final double[][] output, final double[][] input) {
+		final int n = output.length;
+		double[] eff = new double[n];
+		if (n == 0)
+			return eff;
+
+		Solution[] sols;
+		if (input == null || input[0].length == 0) {
+			double[] ones = new double[n];
+			Arrays.fill(ones, 1);
+			sols = solve(output, ObjDirection.MAX, ones);
+		} else {
+			final int s = output[0].length, m = input[0].length;
+			sols = run(order(output), () -> new Unit() {
+				private int nPivot = 0;
+
+				public Solution solve(int o) {
+					// max -θ, s.t. -Y'λ <= -y_o, X'λ - θx_o <= 0
+					double[][] a = new double[s + m][n + 1];
+					double[] rhs = new double[s + m];
+					double[] c = new double[n + 1];
+					for (int j = 0; j < n; j++) {
+						for (int r = 0; r < s; r++)
+							a[r][j] = -output[j][r];
+						for (int i = 0; i < m; i++)
+							a[s + i][j] = input[j][i];
+					}
+					for (int r = 0; r < s; r++)
+						rhs[r] = -output[o][r];
+					for (int i = 0; i < m; i++)
+						a[s + i][n] = -input[o][i];
+					c[n] = -1;
+
+					Simplex simplex = new Simplex(a, rhs, c);
+					cold();
+					try {
+						simplex.solve();
+					} catch (RuntimeException e) {
+						return null;
+					} finally {
+						nPivot += simplex.getNumPivot();
+					}
+					return new Solution(-simplex.value(), simplex.primal());
+				}
+
+				public int getNumPivot() {
+					return nPivot;
+				}
+			});
+		}
+
+		for (int o = 0; o < n; o++)
+			eff[o] = (sols[o] == null) ? Double.NaN : sols[o].obj;
+		return eff;
+	}
+
+	/**
+	 * 依次求解一块内的各单元, 可以沿用上一单元的单纯形表
+	 */
+	private interface Unit {
+		Solution solve(int o);
+
+		int getNumPivot();
+	}
+
+	private synchronized void cold() {
+		nCold++;
+	}
+
+	/**
+	 * @return units sorted by the sum of their values
+	 */
+	private static int[] order(double[][] data) {
+		int n = data.length;
+		final double[] sum = new double[n];
+		Integer[] idx = new Integer[n];
+		for (int o = 0; o < n; o++) {
+			idx[o] = o;
+			for (double v : data[o])
+				sum[o] += v;
+		}
+		Arrays.sort(idx, (i, j) -> Double.compare(sum[i], sum[j]));
+
+		int[] order = new int[n];
+		for (int o = 0; o < n; o++)
+			order[o] = idx[o];
+		return order;
+	}
+
+	/**
+	 * 将排序后的单元切分为若干块并行求解, 每块使用一个新的Unit
+	 */
+	private Solution[] run(final int[] order, final Supplier<Unit> factory) {
+		final int n = order.length;
+		final Solution[] sols = new Solution[n];
+		nanos = new long[n];
+		pivots = new int[n];
+		nCold = 0;
+
+		int nBlock = Math.min(n, nBlockPerThread * pool.getParallelism());
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int b = 0; b < nBlock; b++) {
+			final int from = (int) ((long) n * b / nBlock);
+			final int to = (int) ((long) n * (b + 1) / nBlock);
+			final Unit unit = factory.get();
+			tasks.add(() -> {
+				for (int k = from; k < to; k++) {
+					int o = order[k];
+					int p0 = unit.getNumPivot();
+					long t0 = System.nanoTime();
+					sols[o] = unit.solve(o);
+					nanos[o] = System.nanoTime() - t0;
+					pivots[o] = unit.getNumPivot() - p0;
+				}
+				return null;
+			});
+		}
+
+		try {
+			for (Future<Void> future : pool.invokeAll(tasks))
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		return sols;
+	}
+
+	/**
+	 * @return solve time of each unit in the last call, in nanoseconds
+	 */
+	public long[] getSolveNanos() {
+		return nanos;
+	}
+
+	/**
+	 * @return number of pivots of each unit in the last call
+	 */
+	public int[] getNumPivot() {
+		return pivots;
+	}
+
+	/**
+	 * @return summary of the per-unit solve times of the last call
+	 */
+	public String report() {
+		int n = nanos.length;
+		if (n == 0)
+			return "[DEA: 0 units]";
+
+		long[] sorted = Arrays.copyOf(nanos, n);
+		Arrays.sort(sorted);
+		double total = 0, pivot = 0;
+		for (int o = 0; o < n; o++) {
+			total += nanos[o];
+			pivot += pivots[o];
+		}
+		return String.format("[DEA: %d units, %d cold starts, %.1f pivots/unit, "
+		        + "mean %.1f us, p50 %.1f us, p99 %.1f us, max %.1f us]", n,
+		        nCold, pivot / n, total / n / 1E3, sorted[n / 2] / 1E3,
+		        sorted[Math.min(n - 1, (int) (n * 0.99))] / 1E3,
+		        sorted[n - 1] / 1E3);
+	}
+}
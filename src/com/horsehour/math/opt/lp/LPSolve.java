@@ -1,10 +1,5 @@
 package com.horsehour.math.opt.lp;
 
-import java.util.Arrays;
-
-import com.horsehour.math.function.Log1pFunction;
-import com.horsehour.math.function.TransferFunction;
-import com.horsehour.ml.data.SampleSet;
 import com.horsehour.util.TickClock;
 
 import lpsolve.LpSolve;
@@ -118,65 +113,6 @@ public class LPSolve {
 		System.out.println("");
 	}
 
-	/**
-	 * 求解DEARank模型
-	 * 
-	 * @param dataMatrix
-	 * @param dir
-	 * @return solutions
-	 */
-	public static Solution[] solveDEARank(SampleSet sampleSet, ObjDirection dir) {
-		int nRow = sampleSet.size(), nColumn = sampleSet.dim();
-
-		double[][] dataMatrix = new double[nRow][nColumn];
-		populateDataMatrix(sampleSet, dataMatrix);
-
-		int[] eqType = new int[nRow];
-		double[] bounds = new double[nRow];
-		if (dir == ObjDirection.MAX) {
-			Arrays.fill(eqType, 1);// less than
-			populateBound(bounds);
-		} else {
-			Arrays.fill(eqType, 2);// greater than
-			populateBound(bounds, sampleSet.getLabels());
-		}
-
-		Solution[] solutions = new Solution[dataMatrix.length];
-		for (int i = 0; i < nRow; i++) {
-			solutions[i] = solveProblem(dir, dataMatrix[i], dataMatrix, eqType,
-			        bounds);
-		}
-		return solutions;
-	}
-
-	/**
-	 * 填充data matrix
-	 * 
-	 * @param sampleSet
-	 */
-	public static void populateDataMatrix(SampleSet sampleSet,
-	        double[][] dataMatrix) {
-		for (int i = 0; i < dataMatrix.length; i++) {
-			for (int j = 0; j < sampleSet.dim(); j++)
-				dataMatrix[i][j] = sampleSet.getSample(i).getFeature(j);
-		}
-	}
-
-	/**
-	 * 填充bound
-	 * 
-	 * @param label
-	 */
-	public static void populateBound(double[] bounds, Integer[] labels) {
-		TransferFunction act = new Log1pFunction((float) Math.E);
-		for (int i = 0; i < labels.length; i++)
-			bounds[i] = act.calc(labels[i]);
-	}
-
-	public static void populateBound(double[] bounds) {
-		Arrays.fill(bounds, 1);
-	}
-
 	public static void main(String[] args) {
 		TickClock.beginTick();
 		example();
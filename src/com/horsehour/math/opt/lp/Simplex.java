@@ -10,7 +10,11 @@ package com.horsehour.math.opt.lp;
  * 如果b>=0,则x=0就是一个基本可行解.<br/>
  * </p>
  * <p>
- * 创建的单纯形表有m+1行,n+m+1列,其中第m+n列是b(rhs),目标函数在第m行, 从第m列到m+n-1列都是松弛变量.
+ * 创建的单纯形表有m+1行,n+m+1列,其中第m+n列是b(rhs),目标函数在第m行, 从第n列到m+n-1列都是松弛变量.
+ * </p>
+ * <p>
+ * 若b有负值但目标函数的系数均非正, 则松弛变量构成的基对偶可行, 先用对偶单纯形法求得可行基.
+ * 求解之后可以替换b, 以当前的最优基为初始基继续求解(warm start): 替换b不影响基的对偶可行性.
  * </p>
  * 
  * @author Chunheng Jiang
@@ -20,10 +24,12 @@ package com.horsehour.math.opt.lp;
  */
 public class Simplex {
 	private float epsilon = 1.0E-20F;
+	private double tolerance = 1.0E-9;// 选择主元时视为0的阈值
 	private double[][] tableaux;
 	private int nRow;// 约束个数
 	private int nCol;// 变量个数
 	private int[] basis;// 基元
+	private int nPivot = 0;
 
 	public Simplex(double[][] A, double[] b, double[] c) {
 		nRow = b.length;
@@ -53,6 +59,12 @@ public class Simplex {
 	 * run simplex algorithm
 	 */
 	public void solve() {
+		if (!isBasisFeasible()) {
+			if (bland() != -1)
+				throw new RuntimeException("No (dual) feasible initial basis");
+			dualSolve();
+		}
+
 		while (true) {
 			// find entering column q
 			int q = bland();
@@ -68,12 +80,46 @@ public class Simplex {
 		}
 	}
 
+	/**
+	 * run dual simplex algorithm from a dual feasible basis until b >= 0
+	 */
+	private void dualSolve() {
+		while (true) {
+			// find leaving row p
+			int p = -1;
+			for (int i = 0; i < nRow; i++)
+				if (tableaux[i][nRow + nCol] < -tolerance
+				        && (p == -1 || tableaux[i][nRow + nCol] < tableaux[p][nRow
+				                + nCol]))
+					p = i;
+			if (p == -1)
+				break; // feasible
+
+			// find entering column q
+			int q = dualRatioRule(p);
+			if (q == -1)
+				throw new RuntimeException("Linear program is infeasible");
+			pivot(p, q);
+			basis[p] = q;
+		}
+	}
+
+	/**
+	 * @return true if b >= 0 at the current basis
+	 */
+	private boolean isBasisFeasible() {
+		for (int i = 0; i < nRow; i++)
+			if (tableaux[i][nRow + nCol] < -tolerance)
+				return false;
+		return true;
+	}
+
 	/**
 	 * @return lowest index of a non-basic column with a positive cost
 	 */
 	private int bland() {
 		for (int j = 0; j < nRow + nCol; j++)
-			if (tableaux[nRow][j] > 0)
+			if (tableaux[nRow][j] > tolerance)
 				return j;
 		return -1;
 	}
@@ -96,25 +142,48 @@ public class Simplex {
 	}
 
 	/**
-	 * find row p using min ratio rule (-1 if no such row)
+	 * find row p using min ratio rule (-1 if no such row), ties broken by the
+	 * lowest basic variable as Bland's rule requires
 	 * 
 	 * @param q
 	 * @return
 	 */
 	private int minRatioRule(int q) {
 		int p = -1;
+		double min = 0;
 		for (int i = 0; i < nRow; i++) {
-			if (tableaux[i][q] <= 0)
+			if (tableaux[i][q] <= tolerance)
 				continue;
-			if (p == -1)
-				p = i;
-			else if ((tableaux[i][nRow + nCol] / tableaux[i][q]) < (tableaux[p][nRow
-			        + nCol] / tableaux[p][q]))
+			double ratio = tableaux[i][nRow + nCol] / tableaux[i][q];
+			if (p == -1 || ratio < min - tolerance
+			        || (ratio <= min + tolerance && basis[i] < basis[p])) {
 				p = i;
+				min = ratio;
+			}
 		}
 		return p;
 	}
 
+	/**
+	 * find column q of row p using the dual ratio rule (-1 if no such column)
+	 * 
+	 * @param p
+	 * @return
+	 */
+	private int dualRatioRule(int p) {
+		int q = -1;
+		for (int j = 0; j < nRow + nCol; j++) {
+			if (tableaux[p][j] >= -tolerance)
+				continue;
+			if (q == -1)
+				q = j;
+			else if ((tableaux[nRow][j] / tableaux[p][j]) < (tableaux[nRow][q]
+			        / tableaux[p][q]))
+				q = j;
+		}
+		return q;
+	}
+
 	/**
 	 * pivot on entry (p, q) using Gauss-Jordan elimination
 	 * 
@@ -122,12 +191,19 @@ public class Simplex {
 	 * @param q
 	 */
 	private void pivot(int p, int q) {
+		nPivot++;
+
 		// everything but row p and column q
-		for (int i = 0; i <= nRow; i++)
+		double[] row = tableaux[p];
+		for (int i = 0; i <= nRow; i++) {
+			if (i == p || tableaux[i][q] == 0)
+				continue;
+			double[] t = tableaux[i];
+			double f = t[q] / row[q];
 			for (int j = 0; j <= nRow + nCol; j++)
-				if (i != p && j != q)
-					tableaux[i][j] -= tableaux[p][j] * tableaux[i][q]
-					        / tableaux[p][q];
+				if (j != q)
+					t[j] -= row[j] * f;
+		}
 
 		// zero out column q
 		for (int i = 0; i <= nRow; i++)
@@ -141,6 +217,28 @@ public class Simplex {
 		tableaux[p][q] = 1;
 	}
 
+	/**
+	 * 以当前的基为初始基替换b, 由松弛变量列中的基逆矩阵重新计算右端项;
+	 * 基仍然对偶可行, 之后调用solve()
+	 * 
+	 * @param b
+	 */
+	public void setBound(double[] b) {
+		for (int i = 0; i <= nRow; i++) {
+			double v = 0;
+			for (int k = 0; k < nRow; k++)
+				v += tableaux[i][nCol + k] * b[k];
+			tableaux[i][nRow + nCol] = v;
+		}
+	}
+
+	/**
+	 * @return number of pivots so far
+	 */
+	public int getNumPivot() {
+		return nPivot;
+	}
+
 	/**
 	 * @return optimal objective value
 	 */
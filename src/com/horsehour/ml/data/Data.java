@@ -12,6 +12,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -169,6 +171,9 @@ public class Data {
 	 * @return data set
 	 */
 	public static DataSet loadDataSet(String src, String encode, Sieve sieve) {
+		if (isParallelParsable(encode, sieve))
+			return loadDataSet(new LetorParser(src), (L2RSieve) sieve);
+
 		BufferedReader br;
 		int dim = 0, numSample = 0;
 
@@ -215,6 +220,71 @@ public class Data {
 		return loadDataSet(src, "UTF8", sieve);
 	}
 
+	/**
+	 * Load data set in parallel, throughput is available from parser
+	 * afterwards
+	 * 
+	 * @param parser
+	 * @param sieve
+	 * @return data set
+	 */
+	public static DataSet loadDataSet(LetorParser parser, L2RSieve sieve) {
+		List<Sample> samples;
+		try {
+			samples = parser.parse(sieve::sift);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+
+		int dim = 0;
+		List<SampleSet> samplesets = new ArrayList<>();
+		SampleSet sampleset = null;
+		String qid = "";
+		for (Sample sample : samples) {
+			if (sampleset == null || !qid.equals(sample.getQid())) {
+				sampleset = new SampleSet();
+				samplesets.add(sampleset);
+				qid = sample.getQid();
+			}
+			sampleset.addSample(sample);
+			if (sample.getDim() > dim)
+				dim = sample.getDim();
+		}
+		return new DataSet(samplesets, dim, samples.size());
+	}
+
+	/**
+	 * LetorParser按字节分词, 仅适用于L2RSieve以及与ASCII兼容的编码
+	 */
+	private static boolean isParallelParsable(String encode, Sieve sieve) {
+		if (sieve == null || sieve.getClass() != L2RSieve.class)
+			return false;
+		try {
+			Charset charset = Charset.forName(encode);
+			return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Load data set from local file, through a memory-mapped binary cache if
+	 * cache is enabled
+	 * 
+	 * @param src
+	 * @param encode
+	 * @param sieve
+	 * @param cache
+	 * @return data set
+	 * @see DataCache
+	 */
+	public static DataSet loadDataSet(String src, String encode, Sieve sieve, boolean cache) {
+		if (cache)
+			return DataCache.load(src, encode, sieve);
+		return loadDataSet(src, encode, sieve);
+	}
+
 	/**
 	 * @param src
 	 * @param enc
@@ -354,6 +424,9 @@ public class Data {
 	 * @return SampleSet
 	 */
 	public static SampleSet loadSampleSet(String src, String enc, Sieve sieve) {
+		if (isParallelParsable(enc, sieve))
+			return loadSampleSet(new LetorParser(src), (L2RSieve) sieve);
+
 		BufferedReader br;
 
 		SampleSet sampleset = new SampleSet();
@@ -399,6 +472,30 @@ public class Data {
 		return loadSampleSet(src, "UTF8", sieve);
 	}
 
+	/**
+	 * @param parser
+	 * @param sieve
+	 * @return SampleSet parsed in parallel
+	 */
+	public static SampleSet loadSampleSet(LetorParser parser, L2RSieve sieve) {
+		List<Sample> samples;
+		try {
+			samples = parser.parse(sieve::sift);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+
+		int dim = 0;
+		for (Sample sample : samples)
+			if (dim < sample.getDim())
+				dim = sample.getDim();
+
+		for (Sample smp : samples)
+			smp.setDim(dim);
+		return new SampleSet(samples);
+	}
+
 	public static SampleSet loadSampleSet(String src) {
 		return loadSampleSet(src, "UTF8");
 	}
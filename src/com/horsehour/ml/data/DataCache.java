@@ -0,0 +1,340 @@
+package com.horsehour.ml.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.horsehour.ml.data.sieve.Sieve;
+
+/**
+ * LETOR数据集的二进制缓存. 首次加载时解析文本并写出缓存文件, 之后通过FileChannel.map映射缓存,
+ * 样本直接读取映射区中的特征. 缓存记录源文件的大小、修改时间及解析器名称, 任一变化即重建缓存.
+ * <p>
+ * 文件格式: magic, version, 头部长度, 头部(源文件信息, 检索词及其样本数, 各块非零元素数), 标签,
+ * 特征块. 特征按SparseFeatureStore.BLOCK_ROWS行分块, 稠密数据每块为行优先矩阵, 稀疏数据每块为CSR.
+ * 样本的meta信息不写入缓存.
+ *
+ * @author Chunheng Jiang
+ * @version 1.0
+ * @since 20131203
+ */
+public class DataCache {
+	private static final int MAGIC = 0x4C32524B;
+	private static final int VERSION = 1;
+
+	/**
+	 * 稠密块的字节数须在单次映射的上限之内
+	 */
+	private static final int MAX_DENSE_DIM = Integer.MAX_VALUE / (8 * SparseFeatureStore.BLOCK_ROWS);
+
+	public static String SUFFIX = ".bin";
+
+	/**
+	 * 优先从有效的缓存加载数据集, 否则解析源文件并重建缓存
+	 *
+	 * @param src
+	 * @param enc
+	 * @param sieve
+	 * @return data set
+	 */
+	public static DataSet load(String src, String enc, Sieve sieve) {
+		File srcFile = new File(src);
+		File cacheFile = new File(src + SUFFIX);
+
+		if (isValid(cacheFile, srcFile, sieve.getName())) {
+			DataSet dataset = open(cacheFile);
+			if (dataset != null)
+				return dataset;
+		}
+
+		DataSet dataset = Data.loadDataSet(src, enc, sieve);
+		if (dataset == null)
+			return null;
+
+		try {
+			write(dataset, cacheFile, srcFile, sieve.getName());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return dataset;
+		}
+
+		DataSet cached = open(cacheFile);
+		return (cached == null) ? dataset : cached;
+	}
+
+	public static DataSet load(String src, Sieve sieve) {
+		return load(src, "UTF8", sieve);
+	}
+
+	/**
+	 * @param cacheFile
+	 * @param srcFile
+	 * @param sieveName
+	 * @return true if the cache exists and matches the source file
+	 */
+	public static boolean isValid(File cacheFile, File srcFile, String sieveName) {
+		if (!cacheFile.isFile() || !srcFile.isFile())
+			return false;
+
+		try (FileChannel ch = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+			long headerLen = readPrefix(ch);
+			if (headerLen < 0)
+				return false;
+			DataInputStream dis = new DataInputStream(Channels.newInputStream(ch));
+			return dis.readLong() == srcFile.length() && dis.readLong() == srcFile.lastModified()
+			        && dis.readUTF().equals(sieveName);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * 写出数据集缓存, 先写入临时文件再替换, 避免其他进程读到不完整的缓存
+	 *
+	 * @param dataset
+	 * @param cacheFile
+	 * @param srcFile
+	 * @param sieveName
+	 * @throws IOException
+	 */
+	public static void write(DataSet dataset, File cacheFile, File srcFile, String sieveName) throws IOException {
+		List<Sample> samples = new ArrayList<>(dataset.getNumSample());
+		for (SampleSet sampleset : dataset.getSampleSets())
+			samples.addAll(sampleset.getSamples());
+
+		int nSample = samples.size(), dim = dataset.dim();
+		int nBlock = (nSample + SparseFeatureStore.BLOCK_ROWS - 1) >>> SparseFeatureStore.BLOCK_SHIFT;
+
+		int maxNnz = dim;
+		for (Sample sample : samples)
+			maxNnz = Math.max(maxNnz, sample.nnz());
+		int[] fids = new int[maxNnz];
+		double[] vals = new double[maxNnz];
+
+		long total = 0;
+		int[] blockNnz = new int[nBlock];
+		for (int i = 0; i < nSample; i++) {
+			int n = samples.get(i).copyNonZero(fids, vals, 0, dim);
+			blockNnz[i >>> SparseFeatureStore.BLOCK_SHIFT] += n;
+			total += n;
+		}
+		boolean dense = dim > 0 && dim <= MAX_DENSE_DIM
+		        && total >= FeatureStore.DENSITY_THRESHOLD * nSample * (double) dim;
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(header);
+		dos.writeLong(srcFile.length());
+		dos.writeLong(srcFile.lastModified());
+		dos.writeUTF(sieveName);
+		dos.writeInt(dataset.size());
+		dos.writeInt(nSample);
+		dos.writeInt(dim);
+		dos.writeBoolean(dense);
+		for (SampleSet sampleset : dataset.getSampleSets()) {
+			dos.writeUTF(sampleset.getSample(0).getQid());
+			dos.writeInt(sampleset.size());
+		}
+		if (!dense)
+			for (int b = 0; b < nBlock; b++)
+				dos.writeInt(blockNnz[b]);
+		dos.close();
+
+		File tmpFile = new File(cacheFile.getPath() + ".tmp");
+		try (FileChannel ch = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+		        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			buf.putInt(MAGIC).putInt(VERSION).putLong(header.size());
+			flush(ch, buf);
+			ByteBuffer bytes = ByteBuffer.wrap(header.toByteArray());
+			while (bytes.hasRemaining())
+				ch.write(bytes);
+
+			for (Sample sample : samples)
+				buf = ensure(ch, buf, 4).putInt(sample.getLabel());
+
+			double[] row = new double[dim];
+			for (int b = 0; b < nBlock; b++) {
+				int begin = b << SparseFeatureStore.BLOCK_SHIFT;
+				int end = Math.min(nSample, begin + SparseFeatureStore.BLOCK_ROWS);
+				if (dense) {
+					for (int i = begin; i < end; i++) {
+						samples.get(i).getFeatures(row);
+						for (int f = 0; f < dim; f++)
+							buf = ensure(ch, buf, 8).putDouble(row[f]);
+					}
+					continue;
+				}
+
+				int ptr = 0;
+				buf = ensure(ch, buf, 4).putInt(ptr);
+				for (int i = begin; i < end; i++) {
+					ptr += samples.get(i).copyNonZero(fids, vals, 0, dim);
+					buf = ensure(ch, buf, 4).putInt(ptr);
+				}
+				for (int i = begin; i < end; i++) {
+					Sample sample = samples.get(i);
+					int n = sample.copyNonZero(fids, vals, 0, dim);
+					SparseFeatureStore.sortRow(fids, vals, 0, n);
+					for (int k = 0; k < n; k++)
+						buf = ensure(ch, buf, 4).putInt(fids[k]);
+				}
+				for (int i = begin; i < end; i++) {
+					int n = samples.get(i).copyNonZero(fids, vals, 0, dim);
+					SparseFeatureStore.sortRow(fids, vals, 0, n);
+					for (int k = 0; k < n; k++)
+						buf = ensure(ch, buf, 8).putDouble(vals[k]);
+				}
+			}
+			flush(ch, buf);
+		}
+		Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+		        StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * 映射缓存文件, 样本的特征直接读取映射区
+	 *
+	 * @param cacheFile
+	 * @return data set backed by a MappedFeatureStore, null if failed
+	 */
+	public static DataSet open(File cacheFile) {
+		try (FileChannel ch = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+			long headerLen = readPrefix(ch);
+			if (headerLen < 0)
+				return null;
+
+			DataInputStream dis = new DataInputStream(
+			        new ByteBufferInputStream(ch.map(MapMode.READ_ONLY, 16, headerLen)));
+			dis.readLong();
+			dis.readLong();
+			dis.readUTF();
+			int nQuery = dis.readInt(), nSample = dis.readInt(), dim = dis.readInt();
+			boolean dense = dis.readBoolean();
+			String[] qids = new String[nQuery];
+			int[] sizes = new int[nQuery];
+			for (int q = 0; q < nQuery; q++) {
+				qids[q] = dis.readUTF();
+				sizes[q] = dis.readInt();
+			}
+			int nBlock = (nSample + SparseFeatureStore.BLOCK_ROWS - 1) >>> SparseFeatureStore.BLOCK_SHIFT;
+			int[] blockNnz = new int[nBlock];
+			if (!dense)
+				for (int b = 0; b < nBlock; b++)
+					blockNnz[b] = dis.readInt();
+
+			long pos = 16 + headerLen;
+			IntBuffer labels = map(ch, pos, 4L * nSample).asIntBuffer();
+			pos += 4L * nSample;
+
+			DoubleBuffer[] vals = new DoubleBuffer[nBlock];
+			IntBuffer[] rowPtr = dense ? null : new IntBuffer[nBlock];
+			IntBuffer[] fids = dense ? null : new IntBuffer[nBlock];
+			for (int b = 0; b < nBlock; b++) {
+				int rows = Math.min(SparseFeatureStore.BLOCK_ROWS, nSample - (b << SparseFeatureStore.BLOCK_SHIFT));
+				if (dense) {
+					long len = 8L * rows * dim;
+					vals[b] = map(ch, pos, len).asDoubleBuffer();
+					pos += len;
+					continue;
+				}
+				long len = 4L * (rows + 1);
+				rowPtr[b] = map(ch, pos, len).asIntBuffer();
+				pos += len;
+				len = 4L * blockNnz[b];
+				fids[b] = map(ch, pos, len).asIntBuffer();
+				pos += len;
+				len = 8L * blockNnz[b];
+				vals[b] = map(ch, pos, len).asDoubleBuffer();
+				pos += len;
+			}
+
+			FeatureStore store = new MappedFeatureStore(vals, rowPtr, fids, nSample, dim);
+			List<SampleSet> samplesets = new ArrayList<>(nQuery);
+			int row = 0;
+			for (int q = 0; q < nQuery; q++) {
+				SampleSet sampleset = new SampleSet();
+				for (int i = 0; i < sizes[q]; i++, row++)
+					sampleset.addSample(new Sample(store, row, labels.get(row), qids[q]));
+				samplesets.add(sampleset);
+			}
+			return new DataSet(samplesets, dim, nSample);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @param ch
+	 * @return length of header, -1 if not a cache file of current version
+	 * @throws IOException
+	 */
+	private static long readPrefix(FileChannel ch) throws IOException {
+		ByteBuffer prefix = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		while (prefix.hasRemaining() && ch.read(prefix) >= 0)
+			;
+		prefix.flip();
+		if (prefix.remaining() < 16 || prefix.getInt() != MAGIC || prefix.getInt() != VERSION)
+			return -1;
+		return prefix.getLong();
+	}
+
+	private static ByteBuffer map(FileChannel ch, long pos, long len) throws IOException {
+		MappedByteBuffer buf = ch.map(MapMode.READ_ONLY, pos, len);
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+		return buf;
+	}
+
+	private static ByteBuffer ensure(FileChannel ch, ByteBuffer buf, int n) throws IOException {
+		if (buf.remaining() < n)
+			flush(ch, buf);
+		return buf;
+	}
+
+	private static void flush(FileChannel ch, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining())
+			ch.write(buf);
+		buf.clear();
+	}
+
+	/**
+	 * 以输入流方式读取映射的头部
+	 */
+	private static class ByteBufferInputStream extends java.io.InputStream {
+		private final ByteBuffer buf;
+
+		ByteBufferInputStream(ByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		@Override
+		public int read() {
+			return buf.hasRemaining() ? (buf.get() & 0xFF) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buf.hasRemaining())
+				return -1;
+			len = Math.min(len, buf.remaining());
+			buf.get(b, off, len);
+			return len;
+		}
+	}
+}
@@ -58,4 +58,22 @@ public class DataSet {
 	public void addDim(int d) {
 		dim += d;
 	}
+
+	/**
+	 * 将全部检索词下的样本转存到一个共享的FeatureStore中, 各SampleSet的样本依次占据连续的行.
+	 * Data的加载方法不做转存, 以便随后的归一化等预处理直接修改特征表; 预处理完成后再调用本方法,
+	 * 如RankEval. 此后修改特征的样本会自动脱离存储
+	 * 
+	 * @return feature store backing all the samples
+	 */
+	public FeatureStore compact() {
+		List<Sample> samples = new ArrayList<>(numSample);
+		for (SampleSet sampleset : samplesets)
+			samples.addAll(sampleset.getSamples());
+
+		FeatureStore store = FeatureStore.build(samples, dim);
+		for (int i = 0; i < samples.size(); i++)
+			samples.get(i).bind(store, i);
+		return store;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+package com.horsehour.ml.data;
+
+import java.util.List;
+
+/**
+ * 稠密列存储: 每个特征一列double[], 第r行即第r个样本
+ *
+ * @author Chunheng Jiang
+ * @version 1.0
+ * @since 20131126
+ */
+public class DenseFeatureStore extends FeatureStore {
+	private static final long serialVersionUID = 6410329851372095127L;
+
+	private final double[][] columns;
+
+	public DenseFeatureStore(double[][] columns, int nRow) {
+		super(nRow, columns.length);
+		this.columns = columns;
+	}
+
+	@Override
+	public double get(int row, int fid){
+		return columns[fid][row];
+	}
+
+	@Override
+	public void copyRow(int row, double[] dst){
+		int len = Math.min(dst.length, dim);
+		for (int f = 0; f < len; f++)
+			dst[f] = columns[f][row];
+		for (int f = len; f < dst.length; f++)
+			dst[f] = 0;
+	}
+
+	@Override
+	public double dot(int row, double[] w, int len){
+		len = Math.min(len, dim);
+		double ret = 0;
+		for (int f = 0; f < len; f++)
+			ret += w[f] * columns[f][row];
+		return ret;
+	}
+
+	@Override
+	public int nnz(int row){
+		int count = 0;
+		for (int f = 0; f < dim; f++)
+			if (columns[f][row] != 0)
+				count++;
+		return count;
+	}
+
+	@Override
+	public int copyNonZero(int row, int[] fids, double[] vals, int offset){
+		int k = offset;
+		for (int f = 0; f < dim; f++) {
+			double val = columns[f][row];
+			if (val == 0)
+				continue;
+			fids[k] = f;
+			vals[k++] = val;
+		}
+		return k - offset;
+	}
+
+	@Override
+	public void column(int fid, int from, int to, double[] dst){
+		System.arraycopy(columns[fid], from, dst, 0, to - from);
+	}
+
+	/**
+	 * @param fid
+	 * @return the backing column of feature fid, must not be modified
+	 */
+	public double[] column(int fid){
+		return columns[fid];
+	}
+
+	static DenseFeatureStore pack(List<Sample> samples, int dim){
+		int nRow = samples.size();
+		double[][] columns = new double[dim][nRow];
+		int[] fids = new int[dim];
+		double[] vals = new double[dim];
+		for (int r = 0; r < nRow; r++) {
+			Sample sample = samples.get(r);
+			int need = sample.nnz();
+			if (need > fids.length) {
+				fids = new int[need];
+				vals = new double[need];
+			}
+			int n = sample.copyNonZero(fids, vals, 0, dim);
+			for (int k = 0; k < n; k++)
+				columns[fids[k]][r] = vals[k];
+		}
+		return new DenseFeatureStore(columns, nRow);
+	}
+}
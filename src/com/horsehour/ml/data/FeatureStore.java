@@ -0,0 +1,114 @@
+package com.horsehour.ml.data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * FeatureStore以原始类型数组按列(或CSR稀疏块)存储整个数据集的特征, Sample作为其上的行视图读取特征,
+ * 避免Map<Integer, Double>装箱以及getFeatures()的重复拷贝
+ *
+ * @author Chunheng Jiang
+ * @version 1.0
+ * @since 20131126
+ */
+public abstract class FeatureStore implements Serializable {
+	private static final long serialVersionUID = -2318946213063127052L;
+
+	/**
+	 * 非零特征所占比例不低于该阈值时采用稠密存储, 否则采用稀疏存储
+	 */
+	public static float DENSITY_THRESHOLD = 0.5F;
+
+	protected final int nRow;
+	protected final int dim;
+
+	protected FeatureStore(int nRow, int dim) {
+		this.nRow = nRow;
+		this.dim = dim;
+	}
+
+	/**
+	 * @return number of rows (samples)
+	 */
+	public int size(){
+		return nRow;
+	}
+
+	/**
+	 * @return number of features
+	 */
+	public int dim(){
+		return dim;
+	}
+
+	/**
+	 * @param row
+	 * @param fid
+	 * @return feature value, 0 if absent
+	 */
+	public abstract double get(int row, int fid);
+
+	/**
+	 * 将指定行的前dst.length维特征写入dst, 缺失的特征置0
+	 *
+	 * @param row
+	 * @param dst
+	 */
+	public abstract void copyRow(int row, double[] dst);
+
+	/**
+	 * @param row
+	 * @param w
+	 * @param len
+	 * @return inner product of the row's first len features and w
+	 */
+	public abstract double dot(int row, double[] w, int len);
+
+	/**
+	 * @param row
+	 * @return number of non-zero features in the row
+	 */
+	public abstract int nnz(int row);
+
+	/**
+	 * 按特征编号升序写出指定行的非零特征
+	 *
+	 * @param row
+	 * @param fids
+	 * @param vals
+	 * @param offset
+	 * @return number of features written
+	 */
+	public abstract int copyNonZero(int row, int[] fids, double[] vals, int offset);
+
+	/**
+	 * 将指定特征在[from, to)行上的取值写入dst
+	 *
+	 * @param fid
+	 * @param from
+	 * @param to
+	 * @param dst
+	 */
+	public void column(int fid, int from, int to, double[] dst){
+		for (int r = from; r < to; r++)
+			dst[r - from] = get(r, fid);
+	}
+
+	/**
+	 * 根据样本的稠密度选择稠密或稀疏存储, 样本按列表次序依次占据各行
+	 *
+	 * @param samples
+	 * @param dim
+	 * @return feature store holding all the samples
+	 */
+	public static FeatureStore build(List<Sample> samples, int dim){
+		int nRow = samples.size();
+		long nnz = 0;
+		for (Sample sample : samples)
+			nnz += sample.nnz();
+
+		if (nRow > 0 && dim > 0 && nnz >= DENSITY_THRESHOLD * nRow * (double) dim)
+			return DenseFeatureStore.pack(samples, dim);
+		return SparseFeatureStore.pack(samples, dim);
+	}
+}
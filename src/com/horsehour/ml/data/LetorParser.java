@@ -0,0 +1,515 @@
+package com.horsehour.ml.data;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * 并行解析SVMLight/LETOR格式的文本数据:
+ *
+ * <p>label qid:167 1:0.34 2:1.0 ... # meta</p>
+ *
+ * 文件按字节区间切块, 块边界对齐到检索词的边界, 各块在ForkJoinPool上并行解析, 结果按文件中的次序返回.
+ * 行内的数值由手写的分词器直接从字节中解析, 不产生中间字符串.
+ *
+ * @author Chunheng Jiang
+ * @version 1.0
+ * @since 20131210
+ */
+public class LetorParser {
+	/**
+	 * 每块的目标字节数
+	 */
+	public static int CHUNK_SIZE = 8 << 20;
+
+	private final File file;
+	private final ForkJoinPool pool;
+
+	private long bytes = 0;
+	private long lines = 0;
+	private long elapsed = 0;
+
+	public LetorParser(String file) {
+		this(file, ForkJoinPool.commonPool());
+	}
+
+	public LetorParser(String file, ForkJoinPool pool) {
+		this.file = new File(file);
+		this.pool = pool;
+	}
+
+	/**
+	 * 将解析后的一行数据转换为样本对象, 同一个Row对象会被反复使用
+	 */
+	public interface RowFactory<T> {
+		T create(Row row);
+	}
+
+	/**
+	 * 解析整个文件, 跳过空行和以#开头的行
+	 *
+	 * @param factory
+	 * @return rows in file order
+	 * @throws IOException
+	 */
+	public <T> List<T> parse(RowFactory<T> factory) throws IOException {
+		long start = System.nanoTime();
+		List<T> rows = new ArrayList<>();
+		try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = ch.size();
+			List<Long> bounds = split(ch, size);
+
+			List<Callable<List<T>>> tasks = new ArrayList<>();
+			for (int i = 0; i < bounds.size() - 1; i++) {
+				long from = bounds.get(i), to = bounds.get(i + 1);
+				tasks.add(() -> parseChunk(ch, from, to, factory));
+			}
+
+			for (Future<List<T>> future : pool.invokeAll(tasks))
+				rows.addAll(future.get());
+			bytes = size;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+		lines = rows.size();
+		elapsed = System.nanoTime() - start;
+		return rows;
+	}
+
+	/**
+	 * 切分文件, 每个边界都位于某一检索词首行的行首
+	 */
+	private List<Long> split(FileChannel ch, long size) throws IOException {
+		List<Long> bounds = new ArrayList<>();
+		bounds.add(0L);
+		long last = 0;
+		for (long target = CHUNK_SIZE; target < size; target += CHUNK_SIZE) {
+			if (target <= last)
+				continue;
+			long bound = align(ch, target, size);
+			if (bound >= size)
+				break;
+			if (bound > last) {
+				bounds.add(bound);
+				last = bound;
+			}
+		}
+		bounds.add(size);
+		return bounds;
+	}
+
+	/**
+	 * 从pos所在行的下一行开始, 找到第一个与前一数据行qid不同的数据行的行首
+	 */
+	private long align(FileChannel ch, long pos, long size) throws IOException {
+		LineReader reader = new LineReader(ch, size);
+		long p = reader.nextLine(pos - 1);
+		byte[] qid = null;
+		while (p < size) {
+			byte[] cur = reader.qid(p);
+			if (cur != null) {
+				if (qid == null)
+					qid = cur;
+				else if (!Arrays.equals(qid, cur))
+					return p;
+			}
+			p = reader.nextLine(p);
+		}
+		return size;
+	}
+
+	private <T> List<T> parseChunk(FileChannel ch, long from, long to, RowFactory<T> factory) throws IOException {
+		byte[] buf = new byte[(int) (to - from)];
+		ByteBuffer bb = ByteBuffer.wrap(buf);
+		while (bb.hasRemaining())
+			if (ch.read(bb, from + bb.position()) < 0)
+				throw new EOFException();
+
+		List<T> rows = new ArrayList<>();
+		Row row = new Row(buf);
+		int p = 0, n = buf.length;
+		while (p < n) {
+			int end = p;
+			while (end < n && buf[end] != '\n')
+				end++;
+			if (row.parse(p, end))
+				rows.add(factory.create(row));
+			p = end + 1;
+		}
+		return rows;
+	}
+
+	/**
+	 * @return size of the last parsed file in bytes
+	 */
+	public long getBytes(){
+		return bytes;
+	}
+
+	/**
+	 * @return number of data lines in the last parsed file
+	 */
+	public long getLines(){
+		return lines;
+	}
+
+	/**
+	 * @return wall time of the last parse in nanoseconds
+	 */
+	public long getElapsedNanos(){
+		return elapsed;
+	}
+
+	public double getMBPerSecond(){
+		return (elapsed == 0) ? 0 : (bytes / (1024.0 * 1024.0)) / (elapsed / 1E9);
+	}
+
+	public double getLinesPerSecond(){
+		return (elapsed == 0) ? 0 : lines / (elapsed / 1E9);
+	}
+
+	@Override
+	public String toString(){
+		return String.format("[%s: %d lines, %.1f MB in %.2f s, %.1f MB/s, %.0f lines/s]", file.getName(), lines,
+		        bytes / (1024.0 * 1024.0), elapsed / 1E9, getMBPerSecond(), getLinesPerSecond());
+	}
+
+	/**
+	 * 当前行的分词结果. 标签及特征值只记录其在缓冲区中的位置, 由调用者按需解析为int/float/double
+	 */
+	public static class Row {
+		private final byte[] buf;
+		private int labelFrom, labelTo;
+		private int descFrom, descTo;
+		private int size = 0;
+		private int[] fids = new int[64];
+		private int[] valFrom = new int[64], valTo = new int[64];
+
+		private String qid = null;
+		private byte[] qidBytes = new byte[0];
+
+		Row(byte[] buf) {
+			this.buf = buf;
+		}
+
+		/**
+		 * @param from
+		 * @param to
+		 * @return false if the line is blank or a comment
+		 */
+		boolean parse(int from, int to){
+			while (from < to && isSpace(buf[from]))
+				from++;
+			if (from == to || buf[from] == '#')
+				return false;
+
+			int end = from;
+			while (end < to && buf[end] != '#')
+				end++;
+			descFrom = -1;
+			if (end < to) {
+				descFrom = end;
+				descTo = to;
+			}
+			while (end > from && isSpace(buf[end - 1]))
+				end--;
+
+			int p = from;
+			labelFrom = p;
+			while (p < end && !isSpace(buf[p]))
+				p++;
+			labelTo = p;
+
+			while (p < end && isSpace(buf[p]))
+				p++;
+			int t = p;
+			while (p < end && !isSpace(buf[p]))
+				p++;
+			int colon = lastIndexOf(':', t, p);
+			setQid(colon + 1, p);
+
+			size = 0;
+			while (true) {
+				while (p < end && isSpace(buf[p]))
+					p++;
+				if (p >= end)
+					break;
+				t = p;
+				while (p < end && !isSpace(buf[p]))
+					p++;
+				if (size == fids.length) {
+					fids = Arrays.copyOf(fids, size * 2);
+					valFrom = Arrays.copyOf(valFrom, size * 2);
+					valTo = Arrays.copyOf(valTo, size * 2);
+				}
+				int first = t;
+				while (first < p && buf[first] != ':')
+					first++;
+				fids[size] = parseInt(buf, t, first);
+				valFrom[size] = lastIndexOf(':', t, p) + 1;
+				valTo[size] = p;
+				size++;
+			}
+			return true;
+		}
+
+		/**
+		 * 相邻的行通常属于同一检索词, 此时复用上一行的qid字符串
+		 */
+		private void setQid(int from, int to){
+			int len = to - from;
+			if (qid != null && len == qidBytes.length) {
+				boolean same = true;
+				for (int i = 0; i < len && same; i++)
+					same = (buf[from + i] == qidBytes[i]);
+				if (same)
+					return;
+			}
+			qidBytes = Arrays.copyOfRange(buf, from, to);
+			qid = new String(qidBytes, StandardCharsets.UTF_8);
+		}
+
+		private int lastIndexOf(char c, int from, int to){
+			for (int i = to - 1; i >= from; i--)
+				if (buf[i] == c)
+					return i;
+			return from - 1;
+		}
+
+		public String qid(){
+			return qid;
+		}
+
+		public int intLabel(){
+			return parseInt(buf, labelFrom, labelTo);
+		}
+
+		public float floatLabel(){
+			return parseFloat(buf, labelFrom, labelTo);
+		}
+
+		/**
+		 * @return number of features in the line
+		 */
+		public int size(){
+			return size;
+		}
+
+		public int fid(int k){
+			return fids[k];
+		}
+
+		public double doubleValue(int k){
+			return parseDouble(buf, valFrom[k], valTo[k]);
+		}
+
+		public float floatValue(int k){
+			return parseFloat(buf, valFrom[k], valTo[k]);
+		}
+
+		/**
+		 * @return comment starting with '#', null if absent
+		 */
+		public String description(){
+			if (descFrom < 0)
+				return null;
+			return new String(buf, descFrom, descTo - descFrom, StandardCharsets.UTF_8).trim();
+		}
+	}
+
+	private static boolean isSpace(byte b){
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	private static final double[] POW10 = {1E0, 1E1, 1E2, 1E3, 1E4, 1E5, 1E6, 1E7, 1E8, 1E9, 1E10, 1E11, 1E12,
+	        1E13, 1E14, 1E15, 1E16, 1E17, 1E18, 1E19, 1E20, 1E21, 1E22};
+	private static final float[] POW10F = {1E0F, 1E1F, 1E2F, 1E3F, 1E4F, 1E5F, 1E6F, 1E7F, 1E8F, 1E9F, 1E10F};
+
+	/**
+	 * 尾数可精确表示且10的幂足够小时, 一次乘除即得到正确舍入的结果; double要求尾数小于2^53且幂不超过22,
+	 * float要求尾数不超过2^24且幂不超过10. 不满足条件或格式特殊时返回NaN, 交由JDK解析
+	 */
+	private static double fastParse(byte[] b, int from, int to, boolean single){
+		int p = from;
+		boolean neg = false;
+		if (p < to && (b[p] == '-' || b[p] == '+'))
+			neg = (b[p++] == '-');
+
+		long m = 0;
+		int digits = 0, exp = 0;
+		boolean any = false, dot = false;
+		for (; p < to; p++) {
+			byte c = b[p];
+			if (c >= '0' && c <= '9') {
+				any = true;
+				if (m != 0 || c != '0')
+					digits++;
+				if (digits > 18)
+					return Double.NaN;
+				m = m * 10 + (c - '0');
+				if (dot)
+					exp--;
+			} else if (c == '.' && !dot)
+				dot = true;
+			else
+				break;
+		}
+		if (!any)
+			return Double.NaN;
+
+		if (p < to) {
+			if (b[p] != 'e' && b[p] != 'E')
+				return Double.NaN;
+			p++;
+			boolean eneg = false;
+			if (p < to && (b[p] == '-' || b[p] == '+'))
+				eneg = (b[p++] == '-');
+			if (p == to || to - p > 4)
+				return Double.NaN;
+			int e = 0;
+			for (; p < to; p++) {
+				if (b[p] < '0' || b[p] > '9')
+					return Double.NaN;
+				e = e * 10 + (b[p] - '0');
+			}
+			exp += eneg ? -e : e;
+		}
+
+		if (m == 0)
+			return neg ? -0.0 : 0.0;
+		if (single) {
+			if (m > (1L << 24) || exp < -10 || exp > 10)
+				return Double.NaN;
+			float v = (exp < 0) ? (float) m / POW10F[-exp] : (float) m * POW10F[exp];
+			return neg ? -v : v;
+		}
+		if (m >= (1L << 53) || exp < -22 || exp > 22)
+			return Double.NaN;
+		double v = (exp < 0) ? m / POW10[-exp] : m * POW10[exp];
+		return neg ? -v : v;
+	}
+
+	public static double parseDouble(byte[] b, int from, int to){
+		double v = fastParse(b, from, to, false);
+		if (v == v)
+			return v;
+		return Double.parseDouble(new String(b, from, to - from, StandardCharsets.US_ASCII));
+	}
+
+	public static float parseFloat(byte[] b, int from, int to){
+		double v = fastParse(b, from, to, true);
+		if (v == v)
+			return (float) v;
+		return Float.parseFloat(new String(b, from, to - from, StandardCharsets.US_ASCII));
+	}
+
+	public static int parseInt(byte[] b, int from, int to){
+		int p = from;
+		boolean neg = false;
+		if (p < to && (b[p] == '-' || b[p] == '+'))
+			neg = (b[p++] == '-');
+
+		long v = 0;
+		if (p == to || to - p > 9)
+			return Integer.parseInt(new String(b, from, to - from, StandardCharsets.US_ASCII));
+		for (; p < to; p++) {
+			if (b[p] < '0' || b[p] > '9')
+				return Integer.parseInt(new String(b, from, to - from, StandardCharsets.US_ASCII));
+			v = v * 10 + (b[p] - '0');
+		}
+		return (int) (neg ? -v : v);
+	}
+
+	/**
+	 * 用于对齐块边界的按行读取
+	 */
+	private static class LineReader {
+		private final FileChannel ch;
+		private final long size;
+		private final ByteBuffer window = ByteBuffer.allocate(1 << 16);
+		private long windowPos = -1;
+
+		LineReader(FileChannel ch, long size) {
+			this.ch = ch;
+			this.size = size;
+		}
+
+		private int byteAt(long pos) throws IOException{
+			if (windowPos < 0 || pos < windowPos || pos >= windowPos + window.limit()) {
+				window.clear();
+				windowPos = pos;
+				while (window.hasRemaining() && windowPos + window.position() < size)
+					if (ch.read(window, windowPos + window.position()) < 0)
+						break;
+				window.flip();
+			}
+			return window.get((int) (pos - windowPos));
+		}
+
+		/**
+		 * @return start of the line following position pos
+		 */
+		long nextLine(long pos) throws IOException{
+			if (pos < 0)
+				return 0;
+			long p = pos;
+			while (p < size && byteAt(p) != '\n')
+				p++;
+			return p + 1;
+		}
+
+		/**
+		 * @return qid bytes of the data line starting at pos, null for blank or
+		 *         comment lines
+		 */
+		byte[] qid(long pos) throws IOException{
+			long p = pos;
+			int c = 0;
+			while (p < size && ((c = byteAt(p)) == ' ' || c == '\t' || c == '\r'))
+				p++;
+			if (p >= size || c == '\n' || c == '#')
+				return null;
+
+			while (p < size && !isWs(c = byteAt(p)))
+				p++;
+			while (p < size && ((c = byteAt(p)) == ' ' || c == '\t'))
+				p++;
+			long t = p;
+			while (p < size && !isWs(c = byteAt(p)) && c != '#')
+				p++;
+			long colon = t - 1;
+			for (long i = p - 1; i >= t; i--)
+				if (byteAt(i) == ':') {
+					colon = i;
+					break;
+				}
+			byte[] qid = new byte[(int) (p - colon - 1)];
+			for (int i = 0; i < qid.length; i++)
+				qid[i] = (byte) byteAt(colon + 1 + i);
+			return qid;
+		}
+
+		private static boolean isWs(int c){
+			return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package com.horsehour.ml.data;
+
+import java.io.ObjectStreamException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * 基于内存映射文件的特征存储, 按SparseFeatureStore.BLOCK_ROWS行分块, 每块为行优先的稠密矩阵或CSR块,
+ * 特征直接从映射缓冲区读取而不拷贝到堆内
+ *
+ * @author Chunheng Jiang
+ * @version 1.0
+ * @since 20131203
+ * @see DataCache
+ */
+public class MappedFeatureStore extends FeatureStore {
+	private static final long serialVersionUID = 3178006542915218440L;
+
+	private static final int BLOCK_SHIFT = SparseFeatureStore.BLOCK_SHIFT;
+	private static final int BLOCK_MASK = SparseFeatureStore.BLOCK_ROWS - 1;
+
+	private final boolean dense;
+	private final transient DoubleBuffer[] vals;
+	private final transient IntBuffer[] rowPtr;
+	private final transient IntBuffer[] fids;
+
+	/**
+	 * @param vals
+	 *            per block values, row-major if dense
+	 * @param rowPtr
+	 *            per block row pointers, null if dense
+	 * @param fids
+	 *            per block feature ids, null if dense
+	 * @param nRow
+	 * @param dim
+	 */
+	MappedFeatureStore(DoubleBuffer[] vals, IntBuffer[] rowPtr, IntBuffer[] fids, int nRow, int dim) {
+		super(nRow, dim);
+		this.dense = (rowPtr == null);
+		this.vals = vals;
+		this.rowPtr = rowPtr;
+		this.fids = fids;
+	}
+
+	public boolean isDense(){
+		return dense;
+	}
+
+	@Override
+	public double get(int row, int fid){
+		int b = row >>> BLOCK_SHIFT, r = row & BLOCK_MASK;
+		if (dense)
+			return vals[b].get(r * dim + fid);
+
+		IntBuffer ids = fids[b];
+		int lo = rowPtr[b].get(r), hi = rowPtr[b].get(r + 1) - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int f = ids.get(mid);
+			if (f < fid)
+				lo = mid + 1;
+			else if (f > fid)
+				hi = mid - 1;
+			else
+				return vals[b].get(mid);
+		}
+		return 0;
+	}
+
+	@Override
+	public void copyRow(int row, double[] dst){
+		int b = row >>> BLOCK_SHIFT, r = row & BLOCK_MASK;
+		DoubleBuffer val = vals[b];
+		if (dense) {
+			int len = Math.min(dst.length, dim), base = r * dim;
+			for (int f = 0; f < len; f++)
+				dst[f] = val.get(base + f);
+			for (int f = len; f < dst.length; f++)
+				dst[f] = 0;
+			return;
+		}
+
+		for (int f = 0; f < dst.length; f++)
+			dst[f] = 0;
+		IntBuffer fid = fids[b];
+		for (int k = rowPtr[b].get(r), end = rowPtr[b].get(r + 1); k < end; k++) {
+			int f = fid.get(k);
+			if (f >= dst.length)
+				break;
+			dst[f] = val.get(k);
+		}
+	}
+
+	@Override
+	public double dot(int row, double[] w, int len){
+		int b = row >>> BLOCK_SHIFT, r = row & BLOCK_MASK;
+		DoubleBuffer val = vals[b];
+		double ret = 0;
+		if (dense) {
+			len = Math.min(len, dim);
+			int base = r * dim;
+			for (int f = 0; f < len; f++)
+				ret += w[f] * val.get(base + f);
+			return ret;
+		}
+
+		IntBuffer fid = fids[b];
+		for (int k = rowPtr[b].get(r), end = rowPtr[b].get(r + 1); k < end; k++) {
+			int f = fid.get(k);
+			if (f >= len)
+				break;
+			ret += w[f] * val.get(k);
+		}
+		return ret;
+	}
+
+	@Override
+	public int nnz(int row){
+		int b = row >>> BLOCK_SHIFT, r = row & BLOCK_MASK;
+		if (!dense)
+			return rowPtr[b].get(r + 1) - rowPtr[b].get(r);
+
+		int count = 0;
+		for (int f = 0, base = r * dim; f < dim; f++)
+			if (vals[b].get(base + f) != 0)
+				count++;
+		return count;
+	}
+
+	@Override
+	public int copyNonZero(int row, int[] dstFid, double[] dstVal, int offset){
+		int b = row >>> BLOCK_SHIFT, r = row & BLOCK_MASK;
+		DoubleBuffer val = vals[b];
+		int k = offset;
+		if (dense) {
+			for (int f = 0, base = r * dim; f < dim; f++) {
+				double v = val.get(base + f);
+				if (v == 0)
+					continue;
+				dstFid[k] = f;
+				dstVal[k++] = v;
+			}
+			return k - offset;
+		}
+
+		IntBuffer fid = fids[b];
+		for (int i = rowPtr[b].get(r), end = rowPtr[b].get(r + 1); i < end; i++) {
+			dstFid[k] = fid.get(i);
+			dstVal[k++] = val.get(i);
+		}
+		return k - offset;
+	}
+
+	/**
+	 * 映射缓冲区不可序列化, 序列化时转为堆内存储
+	 */
+	private Object writeReplace() throws ObjectStreamException{
+		if (dense) {
+			double[][] columns = new double[dim][nRow];
+			for (int row = 0; row < nRow; row++) {
+				DoubleBuffer val = vals[row >>> BLOCK_SHIFT];
+				int base = (row & BLOCK_MASK) * dim;
+				for (int f = 0; f < dim; f++)
+					columns[f][row] = val.get(base + f);
+			}
+			return new DenseFeatureStore(columns, nRow);
+		}
+
+		int nBlock = vals.length;
+		int[][] ptr = new int[nBlock][];
+		int[][] fid = new int[nBlock][];
+		double[][] val = new double[nBlock][];
+		for (int b = 0; b < nBlock; b++) {
+			ptr[b] = new int[rowPtr[b].limit()];
+			rowPtr[b].duplicate().get(ptr[b]);
+			fid[b] = new int[fids[b].limit()];
+			fids[b].duplicate().get(fid[b]);
+			val[b] = new double[vals[b].limit()];
+			vals[b].duplicate().get(val[b]);
+		}
+		return new SparseFeatureStore(ptr, fid, val, nRow, dim);
+	}
+}
@@ -15,7 +15,13 @@ public class Sample implements Comparable<Sample>, Serializable {
 	private String qid = "";
 	private String meta = "";
 
-	private final Map<Integer, Double> featureList;
+	private Map<Integer, Double> featureList;
+
+	/**
+	 * 以FeatureStore的第row行作为特征来源, 此时featureList为null, 修改特征时再转为Map存储
+	 */
+	private FeatureStore store;
+	private int row;
 
 	public Sample(Map<Integer, Double> features, int label) {
 		this.featureList = new ConcurrentHashMap<Integer, Double>();
@@ -62,20 +68,169 @@ public class Sample implements Comparable<Sample>, Serializable {
 	}
 
 	/**
+	 * 以特征存储的第row行构造样本视图
+	 * 
+	 * @param store
+	 * @param row
+	 * @param label
+	 * @param qid
+	 */
+	public Sample(FeatureStore store, int row, int label, String qid) {
+		this.store = store;
+		this.row = row;
+		this.dim = store.dim();
+		this.label = label;
+		this.qid = qid;
+	}
+
+	/**
+	 * 将样本绑定到特征存储的第row行, 原有的Map特征随之释放
+	 * 
+	 * @param store
+	 * @param row
+	 */
+	void bind(FeatureStore store, int row){
+		this.store = store;
+		this.row = row;
+		this.featureList = null;
+	}
+
+	/**
+	 * 视图样本在修改特征前转为Map存储, 不影响共享的特征存储
+	 */
+	private void detach(){
+		if (store == null)
+			return;
+		int n = store.nnz(row);
+		int[] fids = new int[n];
+		double[] vals = new double[n];
+		store.copyNonZero(row, fids, vals, 0);
+		featureList = new ConcurrentHashMap<Integer, Double>();
+		for (int k = 0; k < n; k++)
+			featureList.put(fids[k], vals[k]);
+		store = null;
+	}
+
+	/**
+	 * @return feature store backing this sample, null if features are kept
+	 *         in a map
+	 */
+	public FeatureStore getFeatureStore(){
+		return store;
+	}
+
+	/**
+	 * @return row of this sample in its feature store
+	 */
+	public int getRow(){
+		return row;
+	}
+
+	/**
+	 * 样本绑定到FeatureStore时返回特征的副本, 对副本的修改不影响样本本身
+	 * 
 	 * @return feature list with index
 	 */
 	public Map<Integer, Double> getFeatureList(){
-		return featureList;
+		if (store == null)
+			return featureList;
+
+		int n = store.nnz(row);
+		int[] fids = new int[n];
+		double[] vals = new double[n];
+		store.copyNonZero(row, fids, vals, 0);
+		Map<Integer, Double> features = new ConcurrentHashMap<Integer, Double>();
+		for (int k = 0; k < n; k++)
+			features.put(fids[k], vals[k]);
+		return features;
 	}
 
 	/**
 	 * get features
 	 */
 	public double[] getFeatures(){
-		double[] features = new double[dim];
-		for (int i = 0; i < dim; i++)
-			features[i] = getFeature(i);
-		return features;
+		return getFeatures(new double[dim]);
+	}
+
+	/**
+	 * 将特征写入给定的缓存, 避免重复分配
+	 * 
+	 * @param buf
+	 * @return buf filled with features
+	 */
+	public double[] getFeatures(double[] buf){
+		if (store != null) {
+			store.copyRow(row, buf);
+			return buf;
+		}
+		for (int i = 0; i < buf.length; i++)
+			buf[i] = getFeature(i);
+		return buf;
+	}
+
+	/**
+	 * @param w
+	 * @return inner product of features and w over the first dim features
+	 */
+	public double dot(double[] w){
+		if (store != null)
+			return store.dot(row, w, dim);
+
+		double ret = 0;
+		for (Map.Entry<Integer, Double> entry : featureList.entrySet()) {
+			int fid = entry.getKey();
+			if (fid < dim)
+				ret += w[fid] * entry.getValue();
+		}
+		return ret;
+	}
+
+	/**
+	 * @return number of non-zero features
+	 */
+	int nnz(){
+		if (store != null)
+			return store.nnz(row);
+
+		int count = 0;
+		for (double val : featureList.values())
+			if (val != 0)
+				count++;
+		return count;
+	}
+
+	/**
+	 * 写出编号小于limit的非零特征
+	 * 
+	 * @param fids
+	 * @param vals
+	 * @param offset
+	 * @param limit
+	 * @return number of features written
+	 */
+	int copyNonZero(int[] fids, double[] vals, int offset, int limit){
+		if (store != null) {
+			int n = store.copyNonZero(row, fids, vals, offset);
+			int k = offset;
+			for (int i = offset; i < offset + n; i++) {
+				if (fids[i] >= limit)
+					continue;
+				fids[k] = fids[i];
+				vals[k++] = vals[i];
+			}
+			return k - offset;
+		}
+
+		int k = offset;
+		for (Map.Entry<Integer, Double> entry : featureList.entrySet()) {
+			int fid = entry.getKey();
+			double val = entry.getValue();
+			if (fid >= limit || val == 0)
+				continue;
+			fids[k] = fid;
+			vals[k++] = val;
+		}
+		return k - offset;
 	}
 
 	/**
@@ -85,6 +240,9 @@ public class Sample implements Comparable<Sample>, Serializable {
 	 * @return given feature
 	 */
 	public double getFeature(int featureId){
+		if (store != null)
+			return (featureId < store.dim()) ? store.get(row, featureId) : 0.0;
+
 		Double feature = featureList.get(featureId);
 		if (feature == null)
 			return 0.0;
@@ -98,6 +256,7 @@ public class Sample implements Comparable<Sample>, Serializable {
 	 * @param val
 	 */
 	public void setFeature(int featureId, double val){
+		detach();
 		if (featureId + 1 > dim)
 			dim += 1;
 		featureList.put(featureId, val);
@@ -109,6 +268,7 @@ public class Sample implements Comparable<Sample>, Serializable {
 	 * @param f
 	 */
 	public void addFeature(double f){
+		detach();
 		featureList.put(dim, f);
 		dim += 1;
 	}
@@ -119,6 +279,7 @@ public class Sample implements Comparable<Sample>, Serializable {
 	 * @param fid
 	 */
 	public void removeFeature(int fid){
+		detach();
 		Double val;
 		featureList.remove(fid);
 		for (int k = fid + 1; k < dim; k++) {
@@ -137,6 +298,7 @@ public class Sample implements Comparable<Sample>, Serializable {
 	 * @param fidList
 	 */
 	public void removeFeatures(List<Integer> fidList){
+		detach();
 		Collections.sort(fidList);
 		int fid = fidList.get(0);
 		featureList.remove(fid);
@@ -238,6 +238,17 @@ public class SampleSet implements Serializable, Cloneable {
 		return labels;
 	}
 
+	/**
+	 * @return labels of all samples without boxing
+	 */
+	public int[] getLabelArray(){
+		int sz = size();
+		int[] labels = new int[sz];
+		for (int i = 0; i < sz; i++)
+			labels[i] = getLabel(i);
+		return labels;
+	}
+
 	public List<Integer> getUniqueLabels(){
 		return getLabelList().stream().distinct().collect(Collectors.toList());
 	}
@@ -274,6 +285,36 @@ public class SampleSet implements Serializable, Cloneable {
 		return featureValue;
 	}
 
+	/**
+	 * @param fid
+	 * @return values of feature fid over all samples without boxing
+	 */
+	public double[] getFeatureArray(int fid){
+		int sz = size();
+		double[] featureValue = new double[sz];
+		for (int i = 0; i < sz; i++)
+			featureValue[i] = samples.get(i).getFeature(fid);
+		return featureValue;
+	}
+
+	/**
+	 * 按列返回前dim维特征, 第fid行为各样本在特征fid上的取值
+	 * 
+	 * @param dim
+	 * @return columns[fid][i], feature fid of the i-th sample
+	 */
+	public double[][] getColumns(int dim){
+		int sz = size();
+		double[][] columns = new double[dim][sz];
+		double[] row = new double[dim];
+		for (int i = 0; i < sz; i++) {
+			samples.get(i).getFeatures(row);
+			for (int fid = 0; fid < dim; fid++)
+				columns[fid][i] = row[fid];
+		}
+		return columns;
+	}
+
 	public double[] getFeatures(int fid, List<Integer> list){
 		int sz = list.size();
 		double[] featureValue = new double[sz];
@@ -379,6 +420,23 @@ public class SampleSet implements Serializable, Cloneable {
 		return index.stream().collect(Collectors.groupingBy(i -> getLabel(i), Collectors.toList()));
 	}
 	
+	/**
+	 * 将全部样本的特征转存到一个共享的FeatureStore中, 样本对象保持不变但改为读取存储视图.
+	 * 加载时不自动转存, 应在预处理完成后调用, 参见{@link DataSet#compact()}
+	 * 
+	 * @return feature store backing the samples
+	 */
+	public FeatureStore compact(){
+		int dim = 0;
+		for (Sample sample : samples)
+			dim = Math.max(dim, sample.getDim());
+
+		FeatureStore store = FeatureStore.build(samples, dim);
+		for (int i = 0; i < samples.size(); i++)
+			samples.get(i).bind(store, i);
+		return store;
+	}
+
 	@Override
 	public SampleSet clone(){
 		return new SampleSet(this.samples);
@@ -0,0 +1,144 @@
+package com.horsehour.ml.data;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 稀疏存储: 每BLOCK_ROWS行构成一个CSR块(行指针, 特征编号, 特征值), 块内特征编号按升序排列,
+ * 分块使非零元素总数可以超过单个数组的容量
+ *
+ * @author Chunheng Jiang
+ * @version 1.0
+ * @since 20131126
+ */
+public class SparseFeatureStore extends FeatureStore {
+	private static final long serialVersionUID = -4965130824917392406L;
+
+	public static final int BLOCK_SHIFT = 16;
+	public static final int BLOCK_ROWS = 1 << BLOCK_SHIFT;
+	private static final int BLOCK_MASK = BLOCK_ROWS - 1;
+
+	private final int[][] rowPtr;
+	private final int[][] fids;
+	private final double[][] vals;
+
+	/**
+	 * @param rowPtr
+	 *            per block row pointers, rowPtr[b].length = rows in block + 1
+	 * @param fids
+	 *            per block feature ids, ascending within each row
+	 * @param vals
+	 *            per block feature values
+	 * @param nRow
+	 * @param dim
+	 */
+	public SparseFeatureStore(int[][] rowPtr, int[][] fids, double[][] vals, int nRow, int dim) {
+		super(nRow, dim);
+		this.rowPtr = rowPtr;
+		this.fids = fids;
+		this.vals = vals;
+	}
+
+	@Override
+	public double get(int row, int fid){
+		int b = row >>> BLOCK_SHIFT, r = row & BLOCK_MASK;
+		int[] ptr = rowPtr[b];
+		int idx = Arrays.binarySearch(fids[b], ptr[r], ptr[r + 1], fid);
+		if (idx < 0)
+			return 0;
+		return vals[b][idx];
+	}
+
+	@Override
+	public void copyRow(int row, double[] dst){
+		Arrays.fill(dst, 0);
+		int b = row >>> BLOCK_SHIFT, r = row & BLOCK_MASK;
+		int[] ptr = rowPtr[b], fid = fids[b];
+		double[] val = vals[b];
+		for (int k = ptr[r]; k < ptr[r + 1]; k++) {
+			if (fid[k] >= dst.length)
+				break;
+			dst[fid[k]] = val[k];
+		}
+	}
+
+	@Override
+	public double dot(int row, double[] w, int len){
+		int b = row >>> BLOCK_SHIFT, r = row & BLOCK_MASK;
+		int[] ptr = rowPtr[b], fid = fids[b];
+		double[] val = vals[b];
+		double ret = 0;
+		for (int k = ptr[r]; k < ptr[r + 1]; k++) {
+			if (fid[k] >= len)
+				break;
+			ret += w[fid[k]] * val[k];
+		}
+		return ret;
+	}
+
+	@Override
+	public int nnz(int row){
+		int[] ptr = rowPtr[row >>> BLOCK_SHIFT];
+		int r = row & BLOCK_MASK;
+		return ptr[r + 1] - ptr[r];
+	}
+
+	@Override
+	public int copyNonZero(int row, int[] dstFid, double[] dstVal, int offset){
+		int b = row >>> BLOCK_SHIFT, r = row & BLOCK_MASK;
+		int begin = rowPtr[b][r], n = rowPtr[b][r + 1] - begin;
+		System.arraycopy(fids[b], begin, dstFid, offset, n);
+		System.arraycopy(vals[b], begin, dstVal, offset, n);
+		return n;
+	}
+
+	static SparseFeatureStore pack(List<Sample> samples, int dim){
+		int nRow = samples.size();
+		int nBlock = (nRow + BLOCK_MASK) >>> BLOCK_SHIFT;
+		int[][] rowPtr = new int[nBlock][];
+		int[][] fids = new int[nBlock][];
+		double[][] vals = new double[nBlock][];
+
+		for (int b = 0; b < nBlock; b++) {
+			int begin = b << BLOCK_SHIFT, end = Math.min(nRow, begin + BLOCK_ROWS);
+			int[] ptr = new int[end - begin + 1];
+			for (int r = begin; r < end; r++)
+				ptr[r - begin + 1] = ptr[r - begin] + samples.get(r).nnz();
+
+			int[] fid = new int[ptr[end - begin]];
+			double[] val = new double[fid.length];
+			for (int r = begin; r < end; r++) {
+				int offset = ptr[r - begin];
+				int n = samples.get(r).copyNonZero(fid, val, offset, dim);
+				sortRow(fid, val, offset, offset + n);
+				ptr[r - begin + 1] = offset + n;
+			}
+			if (ptr[end - begin] < fid.length) {
+				fid = Arrays.copyOf(fid, ptr[end - begin]);
+				val = Arrays.copyOf(val, fid.length);
+			}
+			rowPtr[b] = ptr;
+			fids[b] = fid;
+			vals[b] = val;
+		}
+		return new SparseFeatureStore(rowPtr, fids, vals, nRow, dim);
+	}
+
+	/**
+	 * 插入排序, 输入行通常已近乎有序
+	 */
+	static void sortRow(int[] fid, double[] val, int from, int to){
+		for (int i = from + 1; i < to; i++) {
+			int f = fid[i];
+			double v = val[i];
+			int j = i - 1;
+			while (j >= from && fid[j] > f) {
+				fid[j + 1] = fid[j];
+				val[j + 1] = val[j];
+				j--;
+			}
+			fid[j + 1] = f;
+			val[j + 1] = v;
+		}
+	}
+}
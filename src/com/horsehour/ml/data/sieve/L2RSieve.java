@@ -3,6 +3,7 @@ package com.horsehour.ml.data.sieve;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.horsehour.ml.data.LetorParser;
 import com.horsehour.ml.data.Sample;
 
 /**
@@ -45,4 +46,23 @@ public class L2RSieve extends Sieve {
 		sample.setMeta(meta);
 		return sample;
 	}
+
+	/**
+	 * 由LetorParser分词后的行构造样本, 结果与sift(String)一致
+	 * 
+	 * @param row
+	 * @return sample
+	 */
+	public Sample sift(LetorParser.Row row) {
+		int size = row.size();
+		Map<Integer, Double> featureList = new HashMap<>(size * 4 / 3 + 1);
+		for (int k = 0; k < size; k++)
+			featureList.put(row.fid(k) - 1, row.doubleValue(k));
+
+		Sample sample = new Sample(featureList, row.intLabel(), row.qid());
+		sample.setDim(size == 0 ? 0 : row.fid(size - 1));
+		String meta = row.description();
+		sample.setMeta(meta == null ? "" : meta);
+		return sample;
+	}
 }
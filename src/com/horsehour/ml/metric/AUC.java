@@ -68,6 +68,48 @@ public class AUC extends Metric {
 		return area;
 	}
 
+	/**
+	 * Documents are visited in ascending order of predicted score; the order
+	 * within a run of equal scores does not change the area
+	 */
+	public double measure(int[] desire, double[] predict, int[] order){
+		int len = predict.length;
+		order = rank(predict, 0, order);
+		int nNegative = 0;
+		for (int i = 0; i < len; i++)
+			if (desire[i] == 0)
+				nNegative++;
+		int nPositive = len - nNegative;
+
+		float fp = 0;
+		float tp = 0;
+		float fpPrev = 0;
+		float tpPrev = 0;
+		double area = 0;
+		double fPrev = Double.MIN_VALUE;
+
+		for (int i = len - 1; i >= 0; i--) {
+			int d = order[i];
+			double curF = predict[d];
+
+			if (curF != fPrev) {
+				area += Math.abs(fp - fpPrev) * ((tp + tpPrev) / 2.0);
+				fPrev = curF;
+				fpPrev = fp;
+				tpPrev = tp;
+			}
+
+			if (desire[d] == 1)
+				tp++;
+			else
+				fp++;
+		}
+
+		area += Math.abs(nNegative - fpPrev) * ((nPositive + tpPrev) / 2.0);
+		area /= (1.0d * nPositive * nNegative);
+		return area;
+	}
+
 	public static void main(String[] args){
 		List<Double> predict = new ArrayList<Double>();
 		List<Integer> label = new ArrayList<Integer>();
@@ -83,4 +125,9 @@ public class AUC extends Metric {
 
 		System.out.println(new AUC().measure(label, predict));
 	}
+
+	@Override
+	public String cacheKey() {
+		return getClass().getName();
+	}
 }
@@ -72,4 +72,9 @@ public class CrossEntropy extends Metric {
 		}
 		return entropy / crossEntropy;
 	}
+
+	@Override
+	public String cacheKey() {
+		return getClass().getName() + "(isSIM=" + isSIM + ")";
+	}
 }
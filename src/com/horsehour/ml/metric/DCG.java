@@ -31,6 +31,31 @@ public class DCG extends Metric {
 		return getTopKDCG(MathLib.linkedSort(desireList, predictList, false));
 	}
 
+	/**
+	 * dcg@k of the ranking of desire by predict, with order as the buffer of
+	 * the ranking
+	 */
+	public double measure(int[] desire, double[] predict, int[] order) {
+		return getDCG(desire, rank(predict, k, order));
+	}
+
+	/**
+	 * getTopKDCG(label)[k - 1] without the array, for the labels
+	 * desire[order[0]], desire[order[1]], ...
+	 */
+	protected double getDCG(int[] desire, int[] order) {
+		int sz = desire.length;
+		double dcg = gains[desire[order[0]]];
+		for (int i = 1; i < k; i++) {
+			int r = 0;
+			if (i < sz)
+				r = desire[order[i]];
+
+			dcg = dcg + gains[r] * Math.log(2) / Math.log(i + 1);
+		}
+		return dcg;
+	}
+
 	/**
 	 * dcg@k = sum(i:(2^desire[i] - 1)/log(i + 1)), where i implies the position
 	 * in permutation based on predicted scores, i = 1,2,...,k;
@@ -59,4 +84,9 @@ public class DCG extends Metric {
 	public String getName() {
 		return super.getName() + "@" + k;
 	}
+
+	@Override
+	public String cacheKey() {
+		return getClass().getName() + "(k=" + k + ")";
+	}
 }
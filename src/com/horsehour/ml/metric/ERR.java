@@ -49,6 +49,44 @@ public class ERR extends Metric {
 		return quality;
 	}
 
+	/**
+	 * The same as measure(List, List) on a fresh instance, without keeping
+	 * the satisfaction probabilities: the products over the top positions
+	 * are built up as the ranking is scanned.
+	 */
+	public double measure(int[] desire, double[] predict, int[] order) {
+		order = rank(predict, 0, order);
+		int maxLevel = desire[0];
+		for (int i = 1; i < desire.length; i++)
+			maxLevel = Math.max(maxLevel, desire[i]);
+		double norm = Math.pow(2, maxLevel);
+
+		float quality = 0;
+		double prefix = 1.0;
+		for (int idx = 0; idx < desire.length; idx++) {
+			double prob = (Math.pow(2, desire[order[idx]]) - 1) / norm;
+			quality += getTopkProb(prefix, prob, idx + 1);
+			prefix = getPrefix(prefix, prob);
+		}
+		return quality;
+	}
+
+	/**
+	 * getTopkProb(k) from the product of the factors of positions before k
+	 * and the satisfaction probability at k
+	 */
+	protected double getTopkProb(double prefix, double prob, int k) {
+		return prefix * (prob / k);
+	}
+
+	/**
+	 * @return the product of the factors up to and including the position
+	 *         of prob
+	 */
+	protected double getPrefix(double prefix, double prob) {
+		return prefix * (1 - prob);
+	}
+
 	/**
 	 * @param k
 	 * @return top k ERR
@@ -61,4 +99,9 @@ public class ERR extends Metric {
 		topkERR *= satisfactionProb.get(k - 1) / k;
 		return topkERR;
 	}
+
+	@Override
+	public String cacheKey() {
+		return getClass().getName();
+	}
 }
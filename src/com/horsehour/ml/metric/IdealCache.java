@@ -0,0 +1,184 @@
+package com.horsehour.ml.metric;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Values of a query that depend on its labels alone, such as the DCG of the
+ * ideal ranking, keyed by the multiset of labels: queries with the same labels
+ * share an entry, and no query id is needed. Entries are found by a 64-bit
+ * hash of the multiset and hold its distinct labels with their counts, which
+ * are compared on a hit, so that two multisets with the same hash never share
+ * a value.
+ *
+ * The table is open-addressed and may be shared by threads: entries are
+ * immutable and published through an AtomicReferenceArray, so lookups take no
+ * lock and allocate nothing; only put() locks, and a lookup racing a put()
+ * at worst misses the new entry.
+ *
+ * @author Chunheng Jiang
+ * @since 20131210
+ */
+public class IdealCache {
+	private static final int SCAN = 8;// max distinct labels compared by scans
+
+	private volatile AtomicReferenceArray<Entry> table = new AtomicReferenceArray<Entry>(
+	        64);
+	private int count = 0;// guarded by this
+
+	// counts of the distinct labels of a query, when it has more than SCAN
+	private final ThreadLocal<int[]> scratch = new ThreadLocal<int[]>();
+
+	/**
+	 * @param desire
+	 *            labels of the query, in any order
+	 * @return the cached value, or NaN if there is none
+	 */
+	public double get(int[] desire) {
+		AtomicReferenceArray<Entry> t = table;
+		long key = fingerprint(desire);
+		int mask = t.length() - 1;
+		// the entry probed is the one returned: a put() may fill the empty
+		// slot that ends the probe at any time
+		for (int i = (int) (key ^ (key >>> 32)) & mask;; i = (i + 1) & mask) {
+			Entry e = t.get(i);
+			if (e == null)
+				return Double.NaN;
+			if (e.key == key && same(e, desire))
+				return e.value;
+		}
+	}
+
+	public synchronized void put(int[] desire, double value) {
+		long key = fingerprint(desire);
+		AtomicReferenceArray<Entry> t = table;
+		int i = find(t, key, desire);
+		Entry e = t.get(i);
+		if (e != null) {
+			t.set(i, new Entry(key, e.distinct, e.counts, value));
+			return;
+		}
+
+		int[] sorted = Arrays.copyOf(desire, desire.length);
+		Arrays.sort(sorted);
+		int d = 0;
+		for (int j = 0; j < sorted.length; j++)
+			if (j == 0 || sorted[j] != sorted[j - 1])
+				d++;
+		int[] distinct = new int[d];
+		int[] counts = new int[d];
+		d = -1;
+		for (int j = 0; j < sorted.length; j++) {
+			if (j == 0 || sorted[j] != sorted[j - 1])
+				distinct[++d] = sorted[j];
+			counts[d]++;
+		}
+		t.set(i, new Entry(key, distinct, counts, value));
+		if (++count * 2 > t.length())
+			grow(t);
+	}
+
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * @return slot of the entry of desire in t, or the empty slot it would
+	 *         take; only for put(), which alone fills slots
+	 */
+	private int find(AtomicReferenceArray<Entry> t, long key, int[] desire) {
+		int mask = t.length() - 1;
+		int i = (int) (key ^ (key >>> 32)) & mask;
+		Entry e;
+		while ((e = t.get(i)) != null && (e.key != key || !same(e, desire)))
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	/**
+	 * Publish a table twice the size of t, with the same entries; t itself is
+	 * left as it is for lookups still probing it
+	 */
+	private void grow(AtomicReferenceArray<Entry> t) {
+		AtomicReferenceArray<Entry> t2 = new AtomicReferenceArray<Entry>(
+		        t.length() * 2);
+		int mask = t2.length() - 1;
+		for (int i = 0; i < t.length(); i++) {
+			Entry e = t.get(i);
+			if (e == null)
+				continue;
+			// entries are distinct multisets: any free slot will do
+			int j = (int) (e.key ^ (e.key >>> 32)) & mask;
+			while (t2.get(j) != null)
+				j = (j + 1) & mask;
+			t2.set(j, e);
+		}
+		table = t2;
+	}
+
+	/**
+	 * @return true if desire holds the labels of e, in any order
+	 */
+	private boolean same(Entry e, int[] desire) {
+		int[] distinct = e.distinct, counts = e.counts;
+		int d = distinct.length;
+		if (desire.length != e.size)
+			return false;
+
+		// both have e.size labels, so equal counts of the labels of e leave no
+		// room for any other label in desire
+		if (d <= SCAN) {
+			for (int j = 0; j < d; j++) {
+				int l = distinct[j], c = 0;
+				for (int i = 0; i < desire.length; i++)
+					if (desire[i] == l)
+						c++;
+				if (c != counts[j])
+					return false;
+			}
+			return true;
+		}
+
+		int[] seen = scratch.get();
+		if (seen == null || seen.length < d)
+			scratch.set(seen = new int[Math.max(d, 2 * SCAN)]);
+		Arrays.fill(seen, 0, d, 0);
+		for (int i = 0; i < desire.length; i++) {
+			int j = Arrays.binarySearch(distinct, desire[i]);
+			if (j < 0 || ++seen[j] > counts[j])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return a non-zero hash of the multiset of labels
+	 */
+	public static long fingerprint(int[] labels) {
+		long h = labels.length * 0x9E3779B97F4A7C15L;
+		for (int i = 0; i < labels.length; i++) {
+			long x = (labels[i] + 0x632BE59BD9B4E019L) * 0xBF58476D1CE4E5B9L;
+			h += x ^ (x >>> 31);
+		}
+		return (h == 0) ? 1 : h;
+	}
+
+	private static class Entry {
+		final long key;
+		final int[] distinct;// ascending
+		final int[] counts;// of each distinct label
+		final int size;// number of labels
+		final double value;
+
+		Entry(long key, int[] distinct, int[] counts, double value) {
+			this.key = key;
+			this.distinct = distinct;
+			this.counts = counts;
+			this.value = value;
+			int n = 0;
+			for (int j = 0; j < counts.length; j++)
+				n += counts[j];
+			size = n;
+		}
+	}
+}
@@ -56,6 +56,17 @@ public class KendallTau extends Metric {
 		return distance;
 	}
 
+	public double measure(int[] desire, double[] predict, int[] order) {
+		double distance = 0;
+		int len = desire.length, discordant = 0;
+		for (int i = 0; i < len - 1; i++)
+			for (int j = i + 1; j < len; j++)
+				discordant += (double) (desire[i] - desire[j]) * (predict[i] - predict[j]) > 0 ? 0 : 1;
+
+		distance = 2.0D * discordant / (len * (len - 1));
+		return isSIM ? 1 - distance : distance;
+	}
+
 	public double tauDistance(float[] list1, float[] list2) {
 		float distance = 0;
 		int len = list1.length, discordant = 0;
@@ -68,4 +79,9 @@ public class KendallTau extends Metric {
 		distance = 2.0F * discordant / ((len - 1) * len);
 		return distance;
 	}
+
+	@Override
+	public String cacheKey() {
+		return getClass().getName() + "(isSIM=" + isSIM + ")";
+	}
 }
@@ -36,4 +36,33 @@ public class MAP extends Metric {
 
 		return averagePrecision / nRel;
 	}
+
+	/**
+	 * The relevant documents are counted first, so a query without any is
+	 * answered without ranking, and the scan of the ranking stops at the last
+	 * relevant document.
+	 */
+	public double measure(int[] desire, double[] predict, int[] order) {
+		int total = 0;
+		for (int i = 0; i < desire.length; i++)
+			total += rel[desire[i]];
+		if (total == 0)
+			return 1;
+
+		order = rank(predict, 0, order);
+		int nRel = 0;
+		double averagePrecision = 0;
+		for (int i = 0; nRel < total; i++) {
+			if (rel[desire[order[i]]] == 1) {
+				nRel++;
+				averagePrecision += 1.0d * nRel / (i + 1);
+			}
+		}
+		return averagePrecision / nRel;
+	}
+
+	@Override
+	public String cacheKey() {
+		return getClass().getName();
+	}
 }
@@ -90,4 +90,10 @@ public class MeanNDCG extends Metric {
 	public String getName() {
 		return super.getName() + "@" + k;
 	}
+
+	@Override
+	public String cacheKey() {
+		return getClass().getName() + "(k=" + k + ", weight="
+		        + Arrays.toString(omega) + ")";
+	}
 }
@@ -33,7 +33,101 @@ public abstract class Metric {
 		return measure(desireList, predictList);
 	}
 
+	/**
+	 * Primitive counterpart of measure(List, List) for one query, where
+	 * desire[i] and predict[i] are the label and the predicted score of
+	 * document i. The default boxes both arrays; ranking metrics override it
+	 * to allocate nothing when given a scratch buffer.
+	 * 
+	 * @param order
+	 *            scratch buffer of at least desire.length entries, or null
+	 */
+	public double measure(int[] desire, double[] predict, int[] order) {
+		List<Integer> desireList = new ArrayList<>();
+		List<Double> predictList = new ArrayList<>();
+		for (int i = 0; i < desire.length; i++) {
+			desireList.add(desire[i]);
+			predictList.add(predict[i]);
+		}
+		return measure(desireList, predictList);
+	}
+
+	public double measure(int[] desire, double[] predict) {
+		return measure(desire, predict, null);
+	}
+
+	/**
+	 * Rank documents by predicted score in descending order, as
+	 * MathLib.linkedSort does: ties keep their original order
+	 * 
+	 * @param k
+	 *            number of top positions to rank, all if k <= 0
+	 * @param order
+	 *            receives the min(k, n) best documents, best first; a new
+	 *            array is used if it is null or too short
+	 * @return order
+	 */
+	protected static int[] rank(double[] predict, int k, int[] order) {
+		int n = predict.length;
+		int m = (k <= 0 || k > n) ? n : k;
+		if (order == null || order.length < n)
+			order = new int[n];
+		if (m == 0)
+			return order;
+		// min-heap of the current top m, the worst at the root
+		for (int i = 0; i < m; i++)
+			order[i] = i;
+		for (int i = m / 2 - 1; i >= 0; i--)
+			siftDown(predict, order, i, m);
+		for (int i = m; i < n; i++)
+			if (worse(predict, order[0], i)) {
+				order[0] = i;
+				siftDown(predict, order, 0, m);
+			}
+		for (int end = m - 1; end > 0; end--) {
+			int t = order[0];
+			order[0] = order[end];
+			order[end] = t;
+			siftDown(predict, order, 0, end);
+		}
+		return order;
+	}
+
+	/**
+	 * @return whether document a ranks below document b
+	 */
+	private static boolean worse(double[] predict, int a, int b) {
+		int c = Double.compare(predict[a], predict[b]);
+		return c < 0 || (c == 0 && a > b);
+	}
+
+	private static void siftDown(double[] predict, int[] order, int i, int size) {
+		int x = order[i];
+		while (true) {
+			int c = 2 * i + 1;
+			if (c >= size)
+				break;
+			if (c + 1 < size && worse(predict, order[c + 1], order[c]))
+				c++;
+			if (!worse(predict, order[c], x))
+				break;
+			order[i] = order[c];
+			i = c;
+		}
+		order[i] = x;
+	}
+
 	public String getName() {
 		return getClass().getSimpleName();
 	}
+
+	/**
+	 * @return the class and every parameter of the metric, equal for two
+	 *         metrics only if they measure alike; null, the default, if the
+	 *         metric does not state its parameters, and its results must then
+	 *         not be cached (see PerfMatrix)
+	 */
+	public String cacheKey() {
+		return null;
+	}
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.horsehour.ml.metric;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -16,6 +17,7 @@ import com.horsehour.util.MathLib;
  *      Eval</a>
  */
 public class NDCG extends DCG {
+	private final IdealCache ideals = new IdealCache();
 
 	public NDCG(int k) {
 		super(k);
@@ -43,6 +45,37 @@ public class NDCG extends DCG {
 			return dcg[k - 1] / r;
 	}
 
+	public double measure(int[] desire, double[] predict, int[] order) {
+		if (k > desire.length)
+			return 0;
+
+		double dcg = getDCG(desire, rank(predict, k, order));
+		double r = getIdealDCG(desire);
+		if (r == 0)
+			return 0;
+		else
+			return dcg / r;
+	}
+
+	/**
+	 * @return DCG@k of the labels in descending order, computed once per
+	 *         multiset of labels
+	 */
+	protected double getIdealDCG(int[] desire) {
+		double idcg = ideals.get(desire);
+		if (Double.isNaN(idcg)) {
+			int n = desire.length;
+			int[] sorted = Arrays.copyOf(desire, n);
+			Arrays.sort(sorted);
+			int[] order = new int[n];
+			for (int i = 0; i < n; i++)
+				order[i] = n - 1 - i;
+			idcg = getDCG(sorted, order);
+			ideals.put(desire, idcg);
+		}
+		return idcg;
+	}
+
 	@Override
 	public String getName() {
 		return "NDCG@" + k;
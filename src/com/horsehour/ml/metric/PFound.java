@@ -29,6 +29,14 @@ public class PFound extends ERR {
 		satisfactionProb = new ArrayList<Double>();
 	}
 
+	protected double getTopkProb(double prefix, double prob, int k) {
+		return prefix * prob;
+	}
+
+	protected double getPrefix(double prefix, double prob) {
+		return prefix * ((1 - prob) * (1 - probBreak));
+	}
+
 	protected double getTopkProb(int k) {
 		double topk = 1.0;
 		for (int idx = 0; idx < k - 1; idx++)
@@ -37,4 +45,9 @@ public class PFound extends ERR {
 		topk *= satisfactionProb.get(k - 1);
 		return topk;
 	}
+
+	@Override
+	public String cacheKey() {
+		return getClass().getName() + "(probBreak=" + probBreak + ")";
+	}
 }
\ No newline at end of file
@@ -37,6 +37,20 @@ public class Precision extends Metric {
 		return topP[k - 1];
 	}
 
+	public double measure(int[] desire, double[] predict, int[] order) {
+		order = rank(predict, k, order);
+		int sz = desire.length;
+		int nRel = 0;
+		for (int i = 0; i < k; i++) {
+			int r = 0;
+			if (i < sz)
+				r = desire[order[i]];
+			if (rel[r] == 1)
+				nRel++;
+		}
+		return nRel * 1.0 / k;
+	}
+
 	public Double[] getTopKPrecision(List<? extends Number> desire, List<? extends Number> predict) {
 		return getTopKPrecision(MathLib.linkedSort(desire, predict, false));
 	}
@@ -60,4 +74,9 @@ public class Precision extends Metric {
 	public String getName() {
 		return super.getName() + "@" + k;
 	}
+
+	@Override
+	public String cacheKey() {
+		return getClass().getName() + "(k=" + k + ")";
+	}
 }
@@ -24,4 +24,9 @@ public class RMSE extends Metric {
 
 		return Math.sqrt(diffnorm / sz);
 	}
+
+	@Override
+	public String cacheKey() {
+		return getClass().getName();
+	}
 }
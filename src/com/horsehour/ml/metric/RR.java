@@ -29,4 +29,30 @@ public class RR extends Metric {
 
 		return rr;
 	}
+
+	/**
+	 * The position of the first relevant document is counted directly, the
+	 * ranking is never sorted
+	 */
+	public double measure(int[] desire, double[] predict, int[] order) {
+		int first = -1;
+		for (int i = 0; i < desire.length; i++)
+			if (desire[i] > 0 && (first == -1 || Double.compare(predict[i], predict[first]) > 0))
+				first = i;
+		if (first == -1)
+			return 0;
+
+		int above = 0;// documents ranked before first
+		for (int i = 0; i < desire.length; i++) {
+			int c = Double.compare(predict[i], predict[first]);
+			if (c > 0 || (c == 0 && i < first))
+				above++;
+		}
+		return 1.0d / (above + 1);
+	}
+
+	@Override
+	public String cacheKey() {
+		return getClass().getName();
+	}
 }
@@ -40,12 +40,7 @@ public class LinearModel extends Model {
 	 * @return score of sample
 	 */
 	public double predict(Sample sample) {
-		double[] feature = sample.getFeatures();
-		double ret = 0;
-		for (int i = 0; i < feature.length; i++)
-			ret += w[i] * feature[i];
-
-		return ret + b;
+		return sample.dot(w) + b;
 	}
 
 	/**
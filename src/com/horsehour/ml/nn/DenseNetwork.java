@@ -0,0 +1,416 @@
+package com.horsehour.ml.nn;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import com.horsehour.math.function.TransferFunction;
+import com.horsehour.ml.data.DataSet;
+import com.horsehour.ml.data.Sample;
+import com.horsehour.ml.data.SampleSet;
+import com.horsehour.ml.nn.neuron.Neuron;
+
+/**
+ * Network的稠密数组实现: 第l层的连接权值按行存放在weight[l]中, 第j行为本层第j个结点各输入连接的权值, 次序与其输入连接列表相同.
+ * 一次计算整个SampleSet在各层的输出, 净输入的累加次序与Neuron相同, 因而输出与对象图完全一致.
+ * <p>
+ * RankNet的训练有两种方式: learnOnline逐个文档反向传播并更新权值, 与RankNetNeuron的计算过程相同; learnBatch在相同的权值下计算全部检索词的梯度,
+ * 检索词按区间在ForkJoinPool上并行, 每个任务使用独立的梯度缓冲区, 按任务次序合并后一次更新权值. 文档对的梯度只经由两个文档的输出传递,
+ * 批量方式先累加每个文档在全部文档对中的系数, 再逐个文档反向传播, 时间与文档对数及文档数之和成正比.
+ *
+ * @author Chunheng Jiang
+ * @version 1.0
+ * @since 20131217
+ */
+public class DenseNetwork {
+	private final int nLayer;
+	private final boolean bias;
+	private final boolean rankNet;
+	private final int[] size;// 各层结点数, 输入层包括偏置结点
+	private final int[] nIn;// 各层结点的输入连接数
+	private final boolean[] biasIn;// 各层结点的第一个输入连接是否来自偏置结点
+	private final TransferFunction[] activFunc;
+	private final double[][] weight;
+	private final ForkJoinPool pool;
+
+	private float learningRate;
+	public int nTaskPerThread = 4;
+
+	public DenseNetwork(Network net) {
+		this(net, ForkJoinPool.commonPool());
+	}
+
+	public DenseNetwork(Network net, ForkJoinPool pool) {
+		this.pool = pool;
+		nLayer = net.numLayer;
+		bias = net.bias;
+		rankNet = (net.user == Algo.RankNet);
+
+		size = new int[nLayer];
+		nIn = new int[nLayer];
+		biasIn = new boolean[nLayer];
+		activFunc = new TransferFunction[nLayer];
+		weight = new double[nLayer][];
+
+		size[0] = net.getLayer(0).size();
+		for (int l = 1; l < nLayer; l++) {
+			Layer layer = net.getLayer(l);
+			size[l] = layer.size();
+			nIn[l] = layer.getNeuron(0).getInputConnectors().size();
+			biasIn[l] = (nIn[l] == size[l - 1] + 1);
+			if (nIn[l] != size[l - 1] && !biasIn[l])
+				throw new IllegalArgumentException("Layer " + l + " is not fully connected.");
+
+			activFunc[l] = layer.getNeuron(0).getActivFunc();
+			weight[l] = new double[size[l] * nIn[l]];
+		}
+		read(net);
+		learningRate = net.getLearningRate();
+	}
+
+	/**
+	 * 读取对象图中的连接权值
+	 *
+	 * @param net
+	 */
+	public void read(Network net){
+		for (int l = 1; l < nLayer; l++) {
+			Layer layer = net.getLayer(l);
+			for (int j = 0; j < size[l]; j++) {
+				Neuron neuron = layer.getNeuron(j);
+				for (int k = 0; k < nIn[l]; k++)
+					weight[l][j * nIn[l] + k] = neuron.getInputConnectors().get(k).getWeight();
+			}
+		}
+	}
+
+	/**
+	 * 将连接权值写回对象图, 之后可由Network.updateWeight()保存
+	 *
+	 * @param net
+	 */
+	public void write(Network net){
+		for (int l = 1; l < nLayer; l++) {
+			Layer layer = net.getLayer(l);
+			for (int j = 0; j < size[l]; j++) {
+				Neuron neuron = layer.getNeuron(j);
+				for (int k = 0; k < nIn[l]; k++)
+					neuron.getInputConnectors().get(k).setWeight(weight[l][j * nIn[l] + k]);
+			}
+		}
+	}
+
+	/**
+	 * 计算样本集中全部样本在各层的输出
+	 *
+	 * @param sampleset
+	 * @return outputs of each layer, the s-th sample at [s * size + j]
+	 */
+	public double[][] forward(SampleSet sampleset){
+		int n = sampleset.size();
+		int nFeature = size[0] - (bias ? 1 : 0);
+
+		double[][] act = new double[nLayer][];
+		act[0] = new double[n * size[0]];
+		for (int s = 0; s < n; s++) {
+			Sample sample = sampleset.getSample(s);
+			int so = s * size[0];
+			for (int k = 0; k < nFeature; k++)
+				act[0][so + k] = sample.getFeature(k);
+			if (bias)
+				act[0][so + nFeature] = 1.0f;// for bias
+		}
+
+		for (int l = 1; l < nLayer; l++)
+			act[l] = propagate(l, act[l - 1], n);
+		return act;
+	}
+
+	private double[] propagate(int l, double[] src, int n){
+		int m = size[l], ns = size[l - 1], len = nIn[l];
+		int k0 = biasIn[l] ? 1 : 0;
+		double[] w = weight[l];
+		TransferFunction f = activFunc[l];
+
+		double[] out = new double[n * m];
+		for (int s = 0; s < n; s++) {
+			int so = s * ns;
+			for (int j = 0; j < m; j++) {
+				int wo = j * len;
+				double netInput = 0.0f;
+				if (k0 == 1)
+					netInput += 1.0 * w[wo];
+				for (int k = 0; k < ns; k++)
+					netInput += src[so + k] * w[wo + k0 + k];
+				out[s * m + j] = f.calc(netInput);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * @param sampleset
+	 * @return outputs of the first output neuron
+	 */
+	public double[] predict(SampleSet sampleset){
+		double[] out = forward(sampleset)[nLayer - 1];
+		int m = size[nLayer - 1];
+		double[] pred = new double[sampleset.size()];
+		for (int s = 0; s < pred.length; s++)
+			pred[s] = out[s * m];
+		return pred;
+	}
+
+	/**
+	 * RankNet: 各检索词依次计算各层输出, 再逐个文档计算其全部文档对的Local Gradient并更新权值, 与RankNetNeuron相同
+	 *
+	 * @param dataset
+	 * @return sum over queries of the cross entropy averaged over pairs,
+	 *         computed with the outputs before the update
+	 */
+	public double learnOnline(DataSet dataset){
+		checkRankNet();
+
+		double loss = 0;
+		for (int q = 0; q < dataset.size(); q++) {
+			SampleSet sampleset = dataset.getSampleSet(q);
+			int[] label = sampleset.getLabelArray();
+			double[][] act = forward(sampleset);
+			loss += calcLoss(label, act[nLayer - 1]);
+			backwardOnline(label, act);
+		}
+		return loss;
+	}
+
+	private void backwardOnline(int[] label, double[][] act){
+		int n = label.length;
+		double[] o = act[nLayer - 1];
+		int[] pair = new int[n];
+		double[][] cur = new double[nLayer][];
+		double[][] pairGrad = new double[nLayer][];
+		double[][] srcT = new double[nLayer][];// 各层输入按列存放, 更新权值时连续读取各文档对
+		for (int l = 1; l < nLayer; l++) {
+			cur[l] = new double[size[l]];
+			pairGrad[l] = new double[n * size[l]];
+
+			int ns = size[l - 1];
+			srcT[l] = new double[ns * n];
+			for (int s = 0; s < n; s++)
+				for (int k = 0; k < ns; k++)
+					srcT[l][k * n + s] = act[l - 1][s * ns + k];
+		}
+
+		for (int i = 0; i < n; i++) {
+			int np = 0;
+			for (int j = 0; j < n; j++)
+				if (label[i] > label[j])
+					pair[np++] = j;
+			if (np == 0)
+				continue;
+
+			// 输出结点
+			double sumProb = 0;
+			double[] pg = pairGrad[nLayer - 1];
+			for (int idx = 0; idx < np; idx++) {
+				int j = pair[idx];
+				double prob = (float) (-1 / (1 + Math.exp(o[i] - o[j])));// P-1
+				pg[idx] = prob * (o[j] * (1 - o[j]));
+				sumProb += prob;
+			}
+			cur[nLayer - 1][0] = sumProb * (o[i] * (1 - o[i]));
+
+			// 隐藏结点
+			for (int l = nLayer - 2; l > 0; l--) {
+				int m = size[l], md = size[l + 1], len = nIn[l + 1];
+				int k0 = biasIn[l + 1] ? 1 : 0;
+				double[] w = weight[l + 1], a = act[l];
+				for (int h = 0; h < m; h++) {
+					double c = 0;
+					for (int d = 0; d < md; d++)
+						c += w[d * len + k0 + h] * cur[l + 1][d];
+					double ah = a[i * m + h];
+					cur[l][h] = c * (ah * (1 - ah));
+
+					for (int idx = 0; idx < np; idx++) {
+						double p = 0;
+						for (int d = 0; d < md; d++)
+							p += w[d * len + k0 + h] * pairGrad[l + 1][idx * md + d];
+						ah = a[pair[idx] * m + h];
+						pairGrad[l][idx * m + h] = p * (ah * (1 - ah));
+					}
+				}
+			}
+
+			// 更新权值, 与RankNetNeuron.updateWeight相同, 同一结点各输入连接的增量依次累加
+			for (int l = nLayer - 1; l > 0; l--) {
+				int m = size[l], len = nIn[l];
+				int k0 = biasIn[l] ? 1 : 0;
+				double[] w = weight[l], src = srcT[l], gl = pairGrad[l];
+				for (int j = 0; j < m; j++) {
+					double deltaWeight = 0.0f;
+					for (int k = 0; k < len; k++) {
+						if (k < k0) {
+							deltaWeight += cur[l][j] * 1.0;
+							for (int idx = 0; idx < np; idx++)
+								deltaWeight -= gl[idx * m + j] * 1.0;
+						} else {
+							int ko = (k - k0) * n;
+							deltaWeight += cur[l][j] * src[ko + i];
+							for (int idx = 0; idx < np; idx++)
+								deltaWeight -= gl[idx * m + j] * src[ko + pair[idx]];
+						}
+						w[j * len + k] = w[j * len + k] - learningRate * deltaWeight;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * RankNet: 在相同的权值下并行计算全部检索词的梯度, 合并后更新一次权值
+	 *
+	 * @param dataset
+	 * @return sum over queries of the cross entropy averaged over pairs,
+	 *         computed with the outputs before the update
+	 */
+	public double learnBatch(DataSet dataset){
+		checkRankNet();
+
+		int nQuery = dataset.size();
+		int nTask = Math.max(1, Math.min(nQuery, nTaskPerThread * pool.getParallelism()));
+		double[][][] grad = new double[nTask][][];
+		float[] loss = new float[nQuery];
+		pool.submit(() -> IntStream.range(0, nTask).parallel().forEach(t -> {
+			double[][] g = new double[nLayer][];
+			for (int l = 1; l < nLayer; l++)
+				g[l] = new double[weight[l].length];
+			for (int q = (int) ((long) nQuery * t / nTask); q < (long) nQuery * (t + 1) / nTask; q++) {
+				SampleSet sampleset = dataset.getSampleSet(q);
+				int[] label = sampleset.getLabelArray();
+				double[][] act = forward(sampleset);
+				loss[q] = calcLoss(label, act[nLayer - 1]);
+				backwardBatch(label, act, g);
+			}
+			grad[t] = g;
+		})).join();
+
+		for (int t = 1; t < nTask; t++)
+			for (int l = 1; l < nLayer; l++)
+				for (int k = 0; k < weight[l].length; k++)
+					grad[0][l][k] += grad[t][l][k];
+
+		// 与RankNetNeuron.updateWeight相同, 同一结点各输入连接的增量依次累加
+		for (int l = 1; l < nLayer; l++) {
+			int len = nIn[l];
+			double[] w = weight[l], g = grad[0][l];
+			for (int j = 0; j < size[l]; j++) {
+				double deltaWeight = 0.0f;
+				for (int k = j * len; k < (j + 1) * len; k++) {
+					deltaWeight += g[k];
+					w[k] = w[k] - learningRate * deltaWeight;
+				}
+			}
+		}
+
+		double sum = 0;
+		for (int q = 0; q < nQuery; q++)
+			sum += loss[q];
+		return sum;
+	}
+
+	/**
+	 * 将检索词的梯度累加到g中: 文档s的输出结点Local Gradient为其在全部文档对中的系数之和乘以输出的导数
+	 */
+	private void backwardBatch(int[] label, double[][] act, double[][] g){
+		int n = label.length;
+		double[] o = act[nLayer - 1];
+
+		double[] delta = new double[n];
+		boolean any = false;
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < n; j++)
+				if (label[i] > label[j]) {
+					double prob = (float) (-1 / (1 + Math.exp(o[i] - o[j])));// P-1
+					delta[i] += prob;
+					delta[j] -= prob;
+					any = true;
+				}
+		if (!any)
+			return;
+
+		for (int s = 0; s < n; s++)
+			delta[s] *= o[s] * (1 - o[s]);
+
+		for (int l = nLayer - 1; l > 0; l--) {
+			int m = size[l], ns = size[l - 1], len = nIn[l];
+			int k0 = biasIn[l] ? 1 : 0;
+			double[] src = act[l - 1], gl = g[l];
+			for (int s = 0; s < n; s++) {
+				int so = s * ns;
+				for (int j = 0; j < m; j++) {
+					double d = delta[s * m + j];
+					if (d == 0)
+						continue;
+					int go = j * len;
+					if (k0 == 1)
+						gl[go] += d;
+					go += k0;
+					for (int k = 0; k < ns; k++)
+						gl[go + k] += d * src[so + k];
+				}
+			}
+
+			if (l == 1)
+				break;
+
+			// 隐藏结点的Local Gradient
+			double[] w = weight[l], a = act[l - 1];
+			double[] prev = new double[n * ns];
+			for (int s = 0; s < n; s++)
+				for (int h = 0; h < ns; h++) {
+					double c = 0;
+					for (int d = 0; d < m; d++)
+						c += w[d * len + k0 + h] * delta[s * m + d];
+					double ah = a[s * ns + h];
+					prev[s * ns + h] = c * (ah * (1 - ah));
+				}
+			delta = prev;
+		}
+	}
+
+	/**
+	 * @return cross entropy averaged over the pairs, as RankNet computes it
+	 */
+	private float calcLoss(int[] label, double[] o){
+		float loss = 0;
+		int pairs = 0;
+		int n = label.length;
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < n; j++)
+				if (label[i] > label[j]) {
+					loss += Math.log(1 + Math.exp(o[j] - o[i]));
+					pairs++;
+				}
+		return (pairs > 0) ? loss / pairs : 0;
+	}
+
+	private void checkRankNet(){
+		if (!rankNet || size[nLayer - 1] != 1)
+			throw new IllegalStateException("Only RankNet with a single output neuron is supported.");
+	}
+
+	/**
+	 * @param l
+	 * @return weights of layer l, row j for the input connectors of neuron j
+	 */
+	public double[] getWeight(int l){
+		return weight[l];
+	}
+
+	public void setLearningRate(float lr){
+		this.learningRate = lr;
+	}
+
+	public float getLearningRate(){
+		return learningRate;
+	}
+}
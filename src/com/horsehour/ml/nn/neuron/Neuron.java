@@ -190,4 +190,13 @@ public class Neuron {
 	public float getLearningRate() {
 		return learningRate;
 	}
+
+	/**
+	 * 取得刺激函数
+	 * 
+	 * @return
+	 */
+	public TransferFunction getActivFunc() {
+		return activFunc;
+	}
 }
\ No newline at end of file
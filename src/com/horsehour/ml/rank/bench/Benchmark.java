@@ -0,0 +1,135 @@
+package com.horsehour.ml.rank.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * One measured operation. After setup(), run() is called repeatedly for
+ * warmupSeconds, then for iterations rounds of measureSeconds each; the
+ * result is the mean time per call over the rounds, with its standard
+ * deviation across rounds, and the bytes allocated per call. Allocation is
+ * counted on the calling thread only, so work handed to a thread pool is
+ * not included.
+ *
+ * run() returns a value derived from its work, which is folded into a field
+ * so that the JIT cannot drop the work as dead code.
+ *
+ * @author Chunheng Jiang
+ */
+public abstract class Benchmark {
+	public static double warmupSeconds = 1;
+	public static double measureSeconds = 1;
+	public static int iterations = 5;
+
+	protected String name = "";
+	protected String params = "";
+	private double sink = 0;
+
+	public Benchmark(String name, String params) {
+		this.name = name;
+		this.params = params;
+	}
+
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Prepare the data of the operation; not timed
+	 */
+	public void setup() {}
+
+	/**
+	 * The operation to measure
+	 */
+	public abstract double run();
+
+	public Result measure() {
+		setup();
+		loop(warmupSeconds);
+
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean amx = null;
+		if (mx instanceof com.sun.management.ThreadMXBean) {
+			amx = (com.sun.management.ThreadMXBean) mx;
+			if (!amx.isThreadAllocatedMemorySupported()
+			        || !amx.isThreadAllocatedMemoryEnabled())
+				amx = null;
+		}
+		long tid = Thread.currentThread().getId();
+
+		double[] nsPerOp = new double[iterations];
+		long calls = 0, bytes = 0;
+		for (int i = 0; i < iterations; i++) {
+			long b0 = (amx == null) ? 0 : amx.getThreadAllocatedBytes(tid);
+			long t0 = System.nanoTime();
+			long n = loop(measureSeconds);
+			long t1 = System.nanoTime();
+			long b1 = (amx == null) ? 0 : amx.getThreadAllocatedBytes(tid);
+			nsPerOp[i] = (double) (t1 - t0) / n;
+			calls += n;
+			bytes += b1 - b0;
+		}
+
+		Result r = new Result(name, params);
+		for (int i = 0; i < iterations; i++)
+			r.nsPerOp += nsPerOp[i] / iterations;
+		for (int i = 0; i < iterations; i++)
+			r.error += (nsPerOp[i] - r.nsPerOp) * (nsPerOp[i] - r.nsPerOp);
+		r.error = (iterations > 1) ? Math.sqrt(r.error / (iterations - 1)) : 0;
+		r.bytesPerOp = (amx == null) ? -1 : (double) bytes / calls;
+		return r;
+	}
+
+	/**
+	 * @return number of calls made in about the given time (at least one)
+	 */
+	private long loop(double seconds) {
+		long end = System.nanoTime() + (long) (seconds * 1e9);
+		long n = 0;
+		do {
+			sink += run();
+			n++;
+		} while (System.nanoTime() < end);
+		return n;
+	}
+
+	public double sink() {
+		return sink;
+	}
+
+	/**
+	 * Measurement of one benchmark, in the line format of the baseline files:
+	 * name, params, ns/op, error, bytes/op, separated by tabs
+	 */
+	public static class Result {
+		public String name = "";
+		public String params = "";
+		public double nsPerOp = 0;
+		public double error = 0;// standard deviation across rounds
+		public double bytesPerOp = -1;// -1 if not measured
+
+		public Result(String name, String params) {
+			this.name = name;
+			this.params = params;
+		}
+
+		public String key() {
+			return name + "\t" + params;
+		}
+
+		public static Result parse(String line) {
+			String[] s = line.split("\t");
+			Result r = new Result(s[0], s[1]);
+			r.nsPerOp = Double.parseDouble(s[2]);
+			r.error = Double.parseDouble(s[3]);
+			r.bytesPerOp = Double.parseDouble(s[4]);
+			return r;
+		}
+
+		public String toString() {
+			return key() + "\t" + Math.round(nsPerOp) + "\t"
+			        + Math.round(error) + "\t" + Math.round(bytesPerOp);
+		}
+	}
+}
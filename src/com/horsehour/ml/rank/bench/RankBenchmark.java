@@ -0,0 +1,433 @@
+package com.horsehour.ml.rank.bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.horsehour.ml.data.DataSet;
+import com.horsehour.ml.metric.NDCG;
+import com.horsehour.ml.rank.letor.AdaRank;
+import com.horsehour.ml.rank.letor.RankNet;
+import com.horsehour.ml.rank.ranklib.BinnedFeatures;
+import com.horsehour.ml.rank.ranklib.DataPoint;
+import com.horsehour.ml.rank.ranklib.DenseDataPoint;
+import com.horsehour.ml.rank.ranklib.Ensemble;
+import com.horsehour.ml.rank.ranklib.FeatureHistogram;
+import com.horsehour.ml.rank.ranklib.LambdaMART;
+import com.horsehour.ml.rank.ranklib.MyThreadPool;
+import com.horsehour.ml.rank.ranklib.NDCGScorer;
+import com.horsehour.ml.rank.ranklib.RANKER_TYPE;
+import com.horsehour.ml.rank.ranklib.RankList;
+import com.horsehour.ml.rank.ranklib.Ranker;
+import com.horsehour.ml.rank.ranklib.RankerConfig;
+import com.horsehour.ml.rank.ranklib.RankerFactory;
+import com.horsehour.ml.rank.ranklib.SimpleMath;
+import com.horsehour.ml.rank.ranklib.SparseDataPoint;
+import com.horsehour.util.Messenger;
+
+/**
+ * Benchmarks of the hot paths of ranklib and letor on synthetic data (see
+ * SyntheticLetor): parsing, histogram construction, LambdaMART training,
+ * ensemble scoring, metric computation, and training of the letor AdaRank
+ * and RankNet. Each benchmark runs once per combination of the data
+ * parameters, which take comma separated lists, e.g. -docs 20,200.
+ *
+ * Results can be saved (-save) and compared with an earlier run (-baseline);
+ * a benchmark more than -tolerance percent slower than its baseline, by
+ * more than the noise of both runs, is reported as a regression and makes
+ * the exit status 1. The baseline of the current release is baseline.txt
+ * next to this class; rerun it on the same machine before comparing.
+ *
+ * Usage: RankBenchmark [-queries q,..] [-docs d,..] [-features f,..]
+ * [-sparsity s,..] [-trees t] [-leaf l] [-thread p] [-warmup s] [-time s]
+ * [-iter n] [-only name,..] [-save file] [-baseline file] [-tolerance pct]
+ *
+ * @author Chunheng Jiang
+ */
+public class RankBenchmark {
+	public static int nTrees = 50;
+	public static int nTreeLeaves = 10;
+	public static int adaIteration = 10;
+
+	public static void main(String[] args) {
+		String queries = "100", docs = "50", features = "46", sparsity = "0";
+		String only = "", save = "", baseline = "";
+		double tolerance = 10;
+		int nThread = 1;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].compareTo("-queries") == 0)
+				queries = args[++i];
+			else if (args[i].compareTo("-docs") == 0)
+				docs = args[++i];
+			else if (args[i].compareTo("-features") == 0)
+				features = args[++i];
+			else if (args[i].compareTo("-sparsity") == 0)
+				sparsity = args[++i];
+			else if (args[i].compareTo("-trees") == 0)
+				nTrees = Integer.parseInt(args[++i]);
+			else if (args[i].compareTo("-leaf") == 0)
+				nTreeLeaves = Integer.parseInt(args[++i]);
+			else if (args[i].compareTo("-thread") == 0)
+				nThread = Integer.parseInt(args[++i]);
+			else if (args[i].compareTo("-warmup") == 0)
+				Benchmark.warmupSeconds = Double.parseDouble(args[++i]);
+			else if (args[i].compareTo("-time") == 0)
+				Benchmark.measureSeconds = Double.parseDouble(args[++i]);
+			else if (args[i].compareTo("-iter") == 0)
+				Benchmark.iterations = Integer.parseInt(args[++i]);
+			else if (args[i].compareTo("-only") == 0)
+				only = args[++i];
+			else if (args[i].compareTo("-save") == 0)
+				save = args[++i];
+			else if (args[i].compareTo("-baseline") == 0)
+				baseline = args[++i];
+			else if (args[i].compareTo("-tolerance") == 0)
+				tolerance = Double.parseDouble(args[++i]);
+		}
+
+		MyThreadPool.init(nThread);
+		Ranker.verbose = false;
+		System.out.println("Benchmark\tParams\tns/op\terror\tB/op");
+		List<Benchmark.Result> results = new ArrayList<Benchmark.Result>();
+		for (String q : queries.split(","))
+			for (String d : docs.split(","))
+				for (String f : features.split(","))
+					for (String s : sparsity.split(",")) {
+						SyntheticLetor data = new SyntheticLetor(
+						        Integer.parseInt(q), Integer.parseInt(d),
+						        Integer.parseInt(f), Double.parseDouble(s));
+						for (Benchmark b : suite(data)) {
+							if (!selected(b.name(), only))
+								continue;
+							Benchmark.Result r = b.measure();
+							System.out.println(r);
+							results.add(r);
+						}
+					}
+
+		if (save.length() > 0)
+			save(results, save);
+		int regressions = 0;
+		if (baseline.length() > 0)
+			regressions = compare(results, load(baseline), tolerance);
+		MyThreadPool.getInstance().shutdown();
+		System.exit(regressions > 0 ? 1 : 0);
+	}
+
+	private static boolean selected(String name, String only) {
+		if (only.length() == 0)
+			return true;
+		for (String prefix : only.split(","))
+			if (name.startsWith(prefix))
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return the benchmarks on one data set
+	 */
+	public static List<Benchmark> suite(final SyntheticLetor data) {
+		final String p = data.toString();
+		final String pm = p + ",t=" + nTrees + ",l=" + nTreeLeaves;
+		List<Benchmark> suite = new ArrayList<Benchmark>();
+
+		// a query's worth of documents per call
+		suite.add(new Benchmark("parse.dense", p) {
+			List<String> lines = null;
+			int q = 0;
+
+			public void setup() {
+				lines = data.lines(false);
+			}
+
+			public double run() {
+				double s = 0;
+				int from = q * data.docsPerQuery;
+				for (int j = 0; j < data.docsPerQuery; j++)
+					s += new DenseDataPoint(lines.get(from + j)).getLabel();
+				q = (q + 1) % data.queries;
+				return s;
+			}
+		});
+		suite.add(new Benchmark("parse.sparse", p) {
+			List<String> lines = null;
+			int q = 0;
+
+			public void setup() {
+				lines = data.lines(true);
+			}
+
+			public double run() {
+				double s = 0;
+				int from = q * data.docsPerQuery;
+				for (int j = 0; j < data.docsPerQuery; j++)
+					s += new SparseDataPoint(lines.get(from + j)).getLabel();
+				q = (q + 1) % data.queries;
+				return s;
+			}
+		});
+
+		// all documents per call
+		suite.add(new Benchmark("histogram.construct", p) {
+			BinnedFeatures bins = null;
+			float[] labels = null;
+
+			public void setup() {
+				DataPoint[] samples = samples(data.rankLists(false));
+				bins = new BinnedFeatures(samples, features(data), 256);
+				labels = new float[samples.length];
+				Random rnd = new Random(data.seed);
+				for (int i = 0; i < labels.length; i++)
+					labels[i] = (float) rnd.nextGaussian();
+			}
+
+			public double run() {
+				FeatureHistogram hist = new FeatureHistogram();
+				hist.construct(bins, labels);
+				return hist.sum[0][hist.sum[0].length - 1];
+			}
+		});
+
+		// one model of nTrees trees per call
+		suite.add(new Benchmark("mart.learn", pm) {
+			List<RankList> lists = null;
+
+			public void setup() {
+				lists = data.rankLists(false);
+			}
+
+			public double run() {
+				return train(lists, features(data)).getEnsemble().treeCount();
+			}
+		});
+
+		// a query's worth of documents per call
+		suite.add(new Benchmark("ensemble.eval", pm) {
+			List<RankList> lists = null;
+			Ensemble ensemble = null;
+			int q = 0;
+
+			public void setup() {
+				lists = data.rankLists(false);
+				ensemble = train(lists, features(data)).getEnsemble();
+			}
+
+			public double run() {
+				RankList rl = lists.get(q);
+				double s = 0;
+				for (int j = 0; j < rl.size(); j++)
+					s += ensemble.eval(rl.get(j));
+				q = (q + 1) % data.queries;
+				return s;
+			}
+		});
+
+		// one query per call
+		suite.add(new Benchmark("ndcg.swapChange", p) {
+			List<RankList> lists = null;
+			NDCGScorer scorer = new NDCGScorer(10);
+			int q = 0;
+
+			public void setup() {
+				lists = data.rankLists(false);
+			}
+
+			public double run() {
+				double[][] changes = scorer.swapChange(lists.get(q));
+				q = (q + 1) % data.queries;
+				return changes[0][changes.length - 1];
+			}
+		});
+
+		// all queries per call
+		suite.add(new Benchmark("ndcg.score", p) {
+			List<RankList> lists = null;
+			float[][] scores = null;
+			NDCGScorer scorer = new NDCGScorer(10);
+
+			public void setup() {
+				lists = data.rankLists(false);
+				scores = new float[lists.size()][];
+				Random rnd = new Random(data.seed);
+				for (int i = 0; i < scores.length; i++) {
+					scores[i] = new float[lists.get(i).size()];
+					for (int j = 0; j < scores[i].length; j++)
+						scores[i][j] = rnd.nextFloat();
+				}
+			}
+
+			public double run() {
+				return scorer.score(lists, scores, null);
+			}
+		});
+
+		// one query per call
+		suite.add(new Benchmark("letor.ndcg.measure", p) {
+			List<List<Integer>> labels = new ArrayList<List<Integer>>();
+			List<List<Double>> predict = new ArrayList<List<Double>>();
+			NDCG metric = new NDCG(10);
+			int q = 0;
+
+			public void setup() {
+				DataSet ds = data.dataSet();
+				Random rnd = new Random(data.seed);
+				for (int i = 0; i < ds.size(); i++) {
+					labels.add(ds.getSampleSet(i).getLabelList());
+					List<Double> s = new ArrayList<Double>();
+					for (int j = 0; j < ds.getSampleSet(i).size(); j++)
+						s.add(rnd.nextDouble());
+					predict.add(s);
+				}
+			}
+
+			public double run() {
+				double m = metric.measure(labels.get(q), predict.get(q));
+				q = (q + 1) % data.queries;
+				return m;
+			}
+		});
+
+		// adaIteration rounds per call, without writing the model out
+		suite.add(new Benchmark("letor.adarank.train", p + ",i="
+		        + adaIteration) {
+			DataSet ds = null;
+
+			public void setup() {
+				ds = data.dataSet();
+			}
+
+			public double run() {
+				AdaRank ada = new AdaRank() {
+					public void storeModel() {}
+				};
+				ada.trainset = ds;
+				ada.valiset = ds;
+				ada.trainMetric = new NDCG(10);
+				ada.valiMetric = new NDCG(10);
+				ada.msg = new Messenger();
+				ada.msg.setNumOfIter(adaIteration);
+				ada.train();
+				return ada.currentPredict.get(0)[0];
+			}
+		});
+
+		// one epoch per call
+		suite.add(new Benchmark("letor.ranknet.learn", p + ",h=10") {
+			RankNet net = null;
+
+			public void setup() {
+				net = new RankNet();
+				net.trainset = data.dataSet();
+				net.nHidden = new int[] { 10 };
+				net.init();
+			}
+
+			public double run() {
+				net.learn();
+				return net.net.getLearningRate();
+			}
+		});
+		return suite;
+	}
+
+	protected static LambdaMART train(List<RankList> lists, int[] features) {
+		Ranker r = new RankerFactory().createRanker(RANKER_TYPE.MART, lists,
+		        features);
+		RankerConfig config = new RankerConfig();
+		config.verbose = false;
+		config.martTrees = nTrees;
+		config.martLeaves = nTreeLeaves;
+		config.martStopEarly = nTrees;
+		r.set(config);
+		r.set(new NDCGScorer(10));
+		r.init();
+		r.learn();
+		return (LambdaMART) r;
+	}
+
+	protected static int[] features(SyntheticLetor data) {
+		int[] features = new int[data.features];
+		for (int f = 0; f < features.length; f++)
+			features[f] = f + 1;
+		return features;
+	}
+
+	protected static DataPoint[] samples(List<RankList> lists) {
+		List<DataPoint> samples = new ArrayList<DataPoint>();
+		for (RankList rl : lists)
+			for (int j = 0; j < rl.size(); j++)
+				samples.add(rl.get(j));
+		return samples.toArray(new DataPoint[samples.size()]);
+	}
+
+	public static void save(List<Benchmark.Result> results, String file) {
+		try {
+			PrintWriter out = new PrintWriter(new FileWriter(file));
+			out.println("# " + System.getProperty("java.vm.name") + " "
+			        + System.getProperty("java.version") + ", "
+			        + Runtime.getRuntime().availableProcessors() + " cores");
+			out.println("# Benchmark\tParams\tns/op\terror\tB/op");
+			for (Benchmark.Result r : results)
+				out.println(r);
+			out.close();
+		} catch (Exception ex) {
+			System.out.println("Error in RankBenchmark::save(): "
+			        + ex.toString());
+		}
+	}
+
+	public static Map<String, Benchmark.Result> load(String file) {
+		Map<String, Benchmark.Result> results = new HashMap<String, Benchmark.Result>();
+		try {
+			BufferedReader in = new BufferedReader(new FileReader(file));
+			String line = null;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#"))
+					continue;
+				Benchmark.Result r = Benchmark.Result.parse(line);
+				results.put(r.key(), r);
+			}
+			in.close();
+		} catch (Exception ex) {
+			System.out.println("Error in RankBenchmark::load(): "
+			        + ex.toString());
+		}
+		return results;
+	}
+
+	/**
+	 * Print each result against its baseline
+	 *
+	 * @return number of regressions
+	 */
+	public static int compare(List<Benchmark.Result> results,
+	        Map<String, Benchmark.Result> baseline, double tolerance) {
+		int regressions = 0;
+		System.out.println("Benchmark\tParams\tbaseline\tnow\tratio");
+		for (Benchmark.Result r : results) {
+			Benchmark.Result b = baseline.get(r.key());
+			if (b == null)
+				continue;
+			double ratio = r.nsPerOp / b.nsPerOp;
+			String verdict = "";
+			if (ratio > 1 + tolerance / 100
+			        && r.nsPerOp - b.nsPerOp > r.error + b.error) {
+				verdict = "\tREGRESSION";
+				regressions++;
+			} else if (ratio < 1 - tolerance / 100)
+				verdict = "\timproved";
+			System.out.println(r.key() + "\t" + Math.round(b.nsPerOp) + "\t"
+			        + Math.round(r.nsPerOp) + "\t"
+			        + SimpleMath.round(ratio, 2) + verdict);
+		}
+		System.out.println(regressions + " regression(s)");
+		return regressions;
+	}
+}
@@ -0,0 +1,145 @@
+package com.horsehour.ml.rank.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.horsehour.ml.data.DataSet;
+import com.horsehour.ml.data.Sample;
+import com.horsehour.ml.data.SampleSet;
+import com.horsehour.ml.rank.ranklib.DataPoint;
+import com.horsehour.ml.rank.ranklib.DenseDataPoint;
+import com.horsehour.ml.rank.ranklib.RankList;
+import com.horsehour.ml.rank.ranklib.SparseDataPoint;
+
+/**
+ * LETOR-like data set drawn from a fixed seed, so that every run of a
+ * benchmark sees the same data. Feature values are standard normal, every
+ * fourth feature an integer in [0, 5) as in count-like LETOR features, and a
+ * value is 0 with probability sparsity. The relevance grade of a document
+ * grows with a noisy linear function of its first ten features, so that
+ * learners have something to fit; most documents get the lowest grades.
+ *
+ * @author Chunheng Jiang
+ */
+public class SyntheticLetor {
+	public int queries = 100;
+	public int docsPerQuery = 50;
+	public int features = 46;
+	public double sparsity = 0;// fraction of zero feature values
+	public int levels = 5;// relevance grades 0..levels-1
+	public long seed = 20131210;
+
+	private float[][] values = null;// by document, features 1..features
+	private int[] labels = null;
+
+	public SyntheticLetor() {}
+
+	public SyntheticLetor(int queries, int docsPerQuery, int features,
+	        double sparsity) {
+		this.queries = queries;
+		this.docsPerQuery = docsPerQuery;
+		this.features = features;
+		this.sparsity = sparsity;
+	}
+
+	protected void generate() {
+		if (values != null)
+			return;
+		Random rnd = new Random(seed);
+		double[] w = new double[Math.min(10, features) + 1];
+		for (int f = 1; f < w.length; f++)
+			w[f] = rnd.nextGaussian() / Math.sqrt(w.length - 1);
+
+		int n = queries * docsPerQuery;
+		values = new float[n][features + 1];
+		labels = new int[n];
+		for (int d = 0; d < n; d++) {
+			double latent = 0.5 * rnd.nextGaussian();
+			for (int f = 1; f <= features; f++) {
+				float v = 0;
+				if (rnd.nextDouble() >= sparsity)
+					v = (f % 4 == 0) ? rnd.nextInt(5) : (float) rnd
+					        .nextGaussian();
+				values[d][f] = v;
+				if (f < w.length)
+					latent += w[f] * v;
+			}
+			int grade = (int) Math.floor(latent + 0.5);
+			labels[d] = Math.max(0, Math.min(levels - 1, grade));
+		}
+	}
+
+	public int size() {
+		return queries * docsPerQuery;
+	}
+
+	/**
+	 * @return the documents in LETOR format, query after query; zero
+	 *         features are left out if sparse
+	 */
+	public List<String> lines(boolean sparse) {
+		generate();
+		List<String> lines = new ArrayList<String>();
+		StringBuilder sb = new StringBuilder();
+		for (int d = 0; d < size(); d++) {
+			sb.setLength(0);
+			sb.append(labels[d]).append(" qid:").append(d / docsPerQuery);
+			for (int f = 1; f <= features; f++)
+				if (!sparse || values[d][f] != 0)
+					sb.append(' ').append(f).append(':').append(values[d][f]);
+			sb.append(" #docid = ").append(d);
+			lines.add(sb.toString());
+		}
+		return lines;
+	}
+
+	/**
+	 * @return one rank list per query, parsed from lines(sparse) as the
+	 *         file readers would
+	 */
+	public List<RankList> rankLists(boolean sparse) {
+		List<String> lines = lines(sparse);
+		List<RankList> data = new ArrayList<RankList>();
+		RankList rl = null;
+		for (int d = 0; d < lines.size(); d++) {
+			if (d % docsPerQuery == 0) {
+				rl = new RankList();
+				data.add(rl);
+			}
+			DataPoint dp;
+			if (sparse)
+				dp = new SparseDataPoint(lines.get(d));
+			else
+				dp = new DenseDataPoint(lines.get(d));
+			rl.add(dp);
+		}
+		return data;
+	}
+
+	/**
+	 * @return the same documents as a data set of the letor trainers, with
+	 *         features 1..features at indices 0..features-1
+	 */
+	public DataSet dataSet() {
+		generate();
+		List<SampleSet> sets = new ArrayList<SampleSet>();
+		for (int q = 0; q < queries; q++) {
+			SampleSet set = new SampleSet();
+			for (int j = 0; j < docsPerQuery; j++) {
+				int d = q * docsPerQuery + j;
+				double[] x = new double[features];
+				for (int f = 0; f < features; f++)
+					x[f] = values[d][f + 1];
+				set.addSample(new Sample(x, labels[d], "" + q));
+			}
+			sets.add(set);
+		}
+		return new DataSet(sets, features, size());
+	}
+
+	public String toString() {
+		return "q=" + queries + ",d=" + docsPerQuery + ",f=" + features
+		        + ",s=" + sparsity;
+	}
+}
@@ -2,14 +2,12 @@ package com.horsehour.ml.rank.letor;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 
 import com.horsehour.ml.data.Data;
-import com.horsehour.ml.data.SampleSet;
 import com.horsehour.ml.model.EnsembleModel;
 import com.horsehour.ml.model.FeatureModel;
 import com.horsehour.util.MathLib;
@@ -33,8 +31,6 @@ public class AdaRank extends RankTrainer {
 	protected double[][] perfMatrix;
 	protected double[] perfPlain;// 记录在习模型在各个检索词上的表现
 
-	public List<Double[]> currentPredict;// 集成模型在训练集上的预测
-
 	public AdaRank() {}
 
 	@Override
@@ -47,7 +43,8 @@ public class AdaRank extends RankTrainer {
 
 		plainModel = new EnsembleModel();
 
-		currentPredict = new ArrayList<Double[]>();
+		currentPredict = new ScoreCache(trainset);
+		valiPredict = new ScoreCache(valiset);
 
 		buildPerformMatrix();
 	}
@@ -57,21 +54,9 @@ public class AdaRank extends RankTrainer {
 	 * feature ranker i on query j 根据某个feature对文档排名的性能
 	 */
 	private void buildPerformMatrix(){
-		int dim = trainset.dim();
-		int sz = trainset.size();
-
-		perfMatrix = new double[dim][sz];
-		SampleSet sampleset;
-
-		// 遍历queries
-		for (int qid = 0; qid < sz; qid++) {
-			sampleset = trainset.getSampleSet(qid);
-			currentPredict.add(new Double[sampleset.size()]);
-
-			// Feature Ranker
-			for (int fid = 0; fid < dim; fid++)
-				perfMatrix[fid][qid] = trainMetric.measure(sampleset.getLabelList(), sampleset.getFeatureList(fid));
-		}
+		// Feature Ranker
+		PerfMatrix.Candidates features = new PerfMatrix.Features(trainset.dim());
+		perfMatrix = PerfMatrix.build(trainset, trainMetric, features, getPerfCacheDir()).toMatrix();
 	}
 
 	@Override
@@ -83,14 +68,9 @@ public class AdaRank extends RankTrainer {
 		FeatureModel weak = (FeatureModel) ((EnsembleModel) plainModel).getModel(idx - 1);
 		double alpha = ((EnsembleModel) plainModel).getWeight(idx - 1);
 
-		SampleSet sampleset;
-		for (int i = 0; i < trainset.size(); i++) {
-			sampleset = trainset.getSampleSet(i);
-			Double[] predict = MathLib.Matrix.lin(currentPredict.get(i), 1.0, weak.predict(sampleset), alpha);
-
-			currentPredict.set(i, predict);
-			perfPlain[i] = trainMetric.measure(sampleset.getLabels(), predict);
-		}
+		currentPredict.add(weak, alpha);
+		valiPredict.add(weak, alpha);
+		currentPredict.measure(trainMetric, perfPlain);
 
 		reweightQuery();
 	}
@@ -26,7 +26,6 @@ import com.horsehour.util.MathLib;
  */
 public class BoostEnsemble extends RankTrainer {
 	protected List<LinearModel> candidatePool;
-	protected List<Double[]> currentPredict;// 集成模型在训练集上的预测
 	protected int currentWeakId;// 当前基本模型的id
 
 	protected double[][] perfMatrix;
@@ -61,7 +60,8 @@ public class BoostEnsemble extends RankTrainer {
 		Arrays.fill(queryWeight, (double) 1 / sz);
 
 		plainModel = new EnsembleModel();
-		currentPredict = new ArrayList<Double[]>();
+		currentPredict = new ScoreCache(trainset);
+		valiPredict = new ScoreCache(valiset);
 		currentWeakId = -1;
 
 		dominantModel = new ArrayList<Integer>();
@@ -102,21 +102,8 @@ public class BoostEnsemble extends RankTrainer {
 	 * 计算每一个基本模型在各检索词上的排名性能
 	 */
 	protected void buildPerfMatrix(){
-		int m = trainset.size();
-		int n = candidatePool.size();
-		perfMatrix = new double[n][m];
-
-		SampleSet sampleset;
-		LinearModel weak;
-		for (int qid = 0; qid < m; qid++) {
-			sampleset = trainset.getSampleSet(qid);
-			currentPredict.add(new Double[sampleset.size()]);
-
-			for (int idx = 0; idx < n; idx++) {
-				weak = candidatePool.get(idx);
-				perfMatrix[idx][qid] = trainMetric.measure(sampleset.getLabels(), weak.predict(sampleset));
-			}
-		}
+		PerfMatrix.Candidates models = new PerfMatrix.Models(candidatePool);
+		perfMatrix = PerfMatrix.build(trainset, trainMetric, models, getPerfCacheDir()).toMatrix();
 	}
 
 	/**
@@ -261,15 +248,9 @@ public class BoostEnsemble extends RankTrainer {
 		Model weak = candidatePool.get(currentWeakId);
 		double alpha = ((EnsembleModel) plainModel).getLastWeight();
 
-		SampleSet sampleset;
-		int n = trainset.size();
-		for (int i = 0; i < n; i++) {
-			sampleset = trainset.getSampleSet(i);
-			Double[] predict = MathLib.Matrix.lin(currentPredict.get(i), 1.0, weak.predict(sampleset), alpha);
-
-			currentPredict.set(i, predict);
-			perfPlain[i] = trainMetric.measure(sampleset.getLabels(), predict);
-		}
+		currentPredict.add(weak, alpha);
+		valiPredict.add(weak, alpha);
+		currentPredict.measure(trainMetric, perfPlain);
 		reweightQuery();
 	}
 
@@ -11,7 +11,6 @@ import java.util.Set;
 import org.apache.commons.io.FileUtils;
 
 import com.horsehour.ml.data.Data;
-import com.horsehour.ml.data.SampleSet;
 import com.horsehour.ml.model.EnsembleModel;
 import com.horsehour.ml.model.LinearModel;
 import com.horsehour.ml.model.Model;
@@ -30,7 +29,6 @@ import com.horsehour.util.MathLib;
  */
 public class DEARank extends RankTrainer {
 	protected List<LinearModel> candidatePool;
-	protected List<Double[]> currentPredict;// 集成模型在训练集上的预测
 	protected int currentWeakId;// 当前基本模型的id
 
 	protected double[][] perfMatrix;
@@ -63,7 +61,8 @@ public class DEARank extends RankTrainer {
 		Arrays.fill(queryWeight, (double) 1 / sz);
 
 		plainModel = new EnsembleModel();
-		currentPredict = new ArrayList<Double[]>();
+		currentPredict = new ScoreCache(trainset);
+		valiPredict = new ScoreCache(valiset);
 		currentWeakId = -1;
 
 		dominantModel = new ArrayList<Integer>();
@@ -115,21 +114,8 @@ public class DEARank extends RankTrainer {
 	 * 计算每一个candidate在各个检索词上的性能
 	 */
 	protected void buildPerfMatrix(){
-		int m = trainset.size();
-		int n = candidatePool.size();
-		perfMatrix = new double[n][m];
-
-		SampleSet sampleset;
-		LinearModel weak;
-		for (int qid = 0; qid < m; qid++) {
-			sampleset = trainset.getSampleSet(qid);
-			currentPredict.add(new Double[sampleset.size()]);
-
-			for (int idx = 0; idx < n; idx++) {
-				weak = candidatePool.get(idx);
-				perfMatrix[idx][qid] = trainMetric.measure(sampleset.getLabels(), weak.predict(sampleset));
-			}
-		}
+		PerfMatrix.Candidates models = new PerfMatrix.Models(candidatePool);
+		perfMatrix = PerfMatrix.build(trainset, trainMetric, models, getPerfCacheDir()).toMatrix();
 	}
 
 	/**
@@ -205,6 +191,8 @@ public class DEARank extends RankTrainer {
 					dominantModel.add(id);// enter queue
 					// roll back, since it's dominated by this model
 					((EnsembleModel) plainModel).removeLastMember();
+					currentPredict.removeLast((EnsembleModel) plainModel);
+					valiPredict.removeLast((EnsembleModel) plainModel);
 					queryWeight = Arrays.copyOf(backupQueryWeight, queryWeight.length);
 					prevTrainScore = backupTrainScore;
 					bestValiScore = 0;
@@ -218,15 +206,14 @@ public class DEARank extends RankTrainer {
 
 			double alpha = 0.5 * Math.log((1 + maxperf) / (1 - maxperf));
 			((EnsembleModel) plainModel).addMember(candidatePool.get(id), alpha);
+			currentPredict.add(candidatePool.get(id), alpha);
+			valiPredict.add(candidatePool.get(id), alpha);
 
 			double norm = 0;
 			double trainscore = 0;
-			SampleSet sampleset;
 			int n = trainset.size();
 			for (int i = 0; i < n; i++) {
-				sampleset = trainset.getSampleSet(i);
-				Double[] predict = plainModel.predict(sampleset);
-				double score = trainMetric.measure(sampleset.getLabels(), predict);
+				double score = currentPredict.measure(i, trainMetric);
 				queryWeight[i] = Math.exp(-score);
 				trainscore += score;
 				norm += queryWeight[i];
@@ -250,7 +237,7 @@ public class DEARank extends RankTrainer {
 				currentWeakId = id;
 			}
 
-			double valiscore = validate(valiset, valiMetric);
+			double valiscore = validate();
 			if (valiscore > bestValiScore) {
 				bestValiScore = valiscore;
 				updateModel();
@@ -259,6 +246,8 @@ public class DEARank extends RankTrainer {
 			double delta = trainscore + epsilon - prevTrainScore;
 			if (delta <= 0) {// stop criteria met
 				((EnsembleModel) plainModel).removeLastMember();
+				currentPredict.removeLast((EnsembleModel) plainModel);
+				valiPredict.removeLast((EnsembleModel) plainModel);
 				break;
 			}
 
@@ -279,15 +268,9 @@ public class DEARank extends RankTrainer {
 		Model weak = candidatePool.get(currentWeakId);
 		double alpha = ((EnsembleModel) plainModel).getLastWeight();
 
-		SampleSet sampleset;
-		int n = trainset.size();
-		for (int i = 0; i < n; i++) {
-			sampleset = trainset.getSampleSet(i);
-			Double[] predict = MathLib.Matrix.lin(currentPredict.get(i), 1.0, weak.predict(sampleset), alpha);
-
-			currentPredict.set(i, predict);
-			perfPlain[i] = trainMetric.measure(sampleset.getLabels(), predict);
-		}
+		currentPredict.add(weak, alpha);
+		valiPredict.add(weak, alpha);
+		currentPredict.measure(trainMetric, perfPlain);
 
 		reweightQuery();
 	}
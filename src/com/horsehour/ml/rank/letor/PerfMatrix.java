@@ -0,0 +1,372 @@
+package com.horsehour.ml.rank.letor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+import com.horsehour.ml.data.DataSet;
+import com.horsehour.ml.data.SampleSet;
+import com.horsehour.ml.metric.Metric;
+import com.horsehour.ml.model.LinearModel;
+
+/**
+ * 备选弱排名函数在各检索词上的性能矩阵H(c,q), 按备选函数优先的次序存放在一维数组中.
+ * <p>
+ * 检索词按区间在ForkJoinPool上并行处理: 每个检索词只读取一次其按列存放的特征, 再依次计算全部备选函数的预测及性能,
+ * 性能由Metric.measure(int[], double[], int[])计算, 不装箱. 未提供该方法的评价指标可能带有内部状态, 此时退化为串行计算.
+ * <p>
+ * 给定缓存目录时, 矩阵按数据集指纹、评价指标及备选集指纹写入磁盘, 交叉验证等重复运行直接读取缓存. 评价指标由其类名及getName()区分.
+ *
+ * @author Chunheng Jiang
+ * @version 1.0
+ * @since 20131211
+ */
+public class PerfMatrix {
+	private static final int MAGIC = 0x50464D31;
+	private static final int VERSION = 1;
+
+	public static String PREFIX = "perf-";
+	public static String SUFFIX = ".bin";
+
+	private final int nCandidate;
+	private final int nQuery;
+	private final double[] perf;
+
+	public PerfMatrix(int nCandidate, int nQuery) {
+		this.nCandidate = nCandidate;
+		this.nQuery = nQuery;
+		this.perf = new double[nCandidate * nQuery];
+	}
+
+	/**
+	 * 备选弱排名函数的集合
+	 */
+	public interface Candidates {
+		int size();
+
+		/**
+		 * @param c
+		 * @param columns
+		 *            features of a query by column
+		 * @param buf
+		 *            buffer as long as the columns
+		 * @return predictions of the c-th candidate on the query, in buf or
+		 *         in one of the columns
+		 */
+		double[] predict(int c, double[][] columns, double[] buf);
+
+		/**
+		 * @return hash identifying the candidates
+		 */
+		long fingerprint();
+	}
+
+	/**
+	 * 以各维原始特征为弱排名函数, 如AdaRank
+	 */
+	public static class Features implements Candidates {
+		private final int dim;
+
+		public Features(int dim) {
+			this.dim = dim;
+		}
+
+		public int size(){
+			return dim;
+		}
+
+		public double[] predict(int c, double[][] columns, double[] buf){
+			return columns[c];
+		}
+
+		public long fingerprint(){
+			return mix(0x46454154L, dim);
+		}
+	}
+
+	/**
+	 * 以线性模型为弱排名函数, 如DEARank
+	 */
+	public static class Models implements Candidates {
+		private final List<LinearModel> models;
+
+		public Models(List<LinearModel> models) {
+			this.models = models;
+		}
+
+		public int size(){
+			return models.size();
+		}
+
+		/**
+		 * 按特征逐列累加w[f] * x[f], 各样本的累加次序与Sample.dot相同
+		 */
+		public double[] predict(int c, double[][] columns, double[] buf){
+			LinearModel model = models.get(c);
+			double[] w = model.getWeight();
+			int len = Math.min(w.length, columns.length);
+			int n = buf.length;
+			for (int i = 0; i < n; i++)
+				buf[i] = 0;
+			for (int f = 0; f < len; f++) {
+				double wf = w[f];
+				double[] col = columns[f];
+				for (int i = 0; i < n; i++)
+					buf[i] += wf * col[i];
+			}
+			for (int i = 0; i < n; i++)
+				buf[i] += model.b;
+			return buf;
+		}
+
+		public long fingerprint(){
+			long h = mix(0x4D4F444CL, models.size());
+			for (LinearModel model : models) {
+				double[] w = model.getWeight();
+				h = mix(h, w.length);
+				for (double v : w)
+					h = mix(h, Double.doubleToLongBits(v));
+				h = mix(h, Double.doubleToLongBits(model.b));
+			}
+			return h;
+		}
+	}
+
+	/**
+	 * 计算性能矩阵, cacheDir不为null时优先读取其中的缓存, 未命中则计算后写入缓存;
+	 * 度量未给出cacheKey()时不使用缓存, 以免参数不同的度量读到彼此的结果
+	 *
+	 * @param dataset
+	 * @param metric
+	 * @param candidates
+	 * @param cacheDir
+	 * @return performance of every candidate on every query
+	 */
+	public static PerfMatrix build(DataSet dataset, Metric metric, Candidates candidates, String cacheDir){
+		return build(dataset, metric, candidates, cacheDir, ForkJoinPool.commonPool());
+	}
+
+	public static PerfMatrix build(DataSet dataset, Metric metric, Candidates candidates, String cacheDir,
+	        ForkJoinPool pool){
+		File cacheFile = null;
+		long dataKey = 0, candidateKey = 0;
+		String metricKey = metric.cacheKey();
+		if (cacheDir != null && metricKey != null) {
+			dataKey = fingerprint(dataset, pool);
+			candidateKey = candidates.fingerprint();
+			long key = mix(mix(dataKey, metricKey.hashCode()), candidateKey);
+			cacheFile = new File(cacheDir, PREFIX + String.format("%016x", key) + SUFFIX);
+
+			PerfMatrix cached = read(cacheFile, dataKey, metricKey, candidateKey);
+			if (cached != null && cached.nCandidate == candidates.size() && cached.nQuery == dataset.size())
+				return cached;
+		}
+
+		PerfMatrix matrix = new PerfMatrix(candidates.size(), dataset.size());
+		Evaluate task = new Evaluate(matrix, dataset, metric, candidates, 0, dataset.size(),
+		        grain(dataset.size(), pool));
+		if (isStateless(metric))
+			pool.invoke(task);
+		else
+			task.compute(0, dataset.size());
+
+		if (cacheFile != null) {
+			try {
+				matrix.write(cacheFile, dataKey, metricKey, candidateKey);
+			} catch (IOException e) {
+				System.out.println("Error in PerfMatrix::build(): " + e);
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * 每个任务至少处理的检索词个数, 使任务数约为并行度的4倍
+	 */
+	private static int grain(int nQuery, ForkJoinPool pool){
+		return Math.max(1, nQuery / (4 * pool.getParallelism()));
+	}
+
+	/**
+	 * @return true if the metric computes measure(int[], double[], int[])
+	 *         itself, without the List path of the base class
+	 */
+	private static boolean isStateless(Metric metric){
+		try {
+			return metric.getClass().getMethod("measure", int[].class, double[].class, int[].class)
+			        .getDeclaringClass() != Metric.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class Evaluate extends RecursiveAction {
+		private final PerfMatrix matrix;
+		private final DataSet dataset;
+		private final Metric metric;
+		private final Candidates candidates;
+		private final int from, to, grain;
+
+		Evaluate(PerfMatrix matrix, DataSet dataset, Metric metric, Candidates candidates, int from, int to,
+		        int grain) {
+			this.matrix = matrix;
+			this.dataset = dataset;
+			this.metric = metric;
+			this.candidates = candidates;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute(){
+			if (to - from <= grain) {
+				compute(from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new Evaluate(matrix, dataset, metric, candidates, from, mid, grain),
+			        new Evaluate(matrix, dataset, metric, candidates, mid, to, grain));
+		}
+
+		void compute(int from, int to){
+			int dim = dataset.dim();
+			int nCandidate = candidates.size();
+			for (int q = from; q < to; q++) {
+				SampleSet sampleset = dataset.getSampleSet(q);
+				double[][] columns = sampleset.getColumns(dim);
+				int[] label = sampleset.getLabelArray();
+				int[] order = new int[label.length];
+				double[] buf = new double[label.length];
+				for (int c = 0; c < nCandidate; c++) {
+					double[] predict = candidates.predict(c, columns, buf);
+					matrix.perf[c * matrix.nQuery + q] = metric.measure(label, predict, order);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return hash of the query ids, labels and features of the data set
+	 */
+	public static long fingerprint(DataSet dataset, ForkJoinPool pool){
+		int nQuery = dataset.size();
+		int dim = dataset.dim();
+		long[] hash = new long[nQuery];
+		pool.submit(() -> IntStream.range(0, nQuery).parallel().forEach(q -> {
+			SampleSet sampleset = dataset.getSampleSet(q);
+			double[] row = new double[dim];
+			long h = mix(sampleset.size(), dim);
+			for (int i = 0; i < sampleset.size(); i++) {
+				h = mix(h, sampleset.getSample(i).getQid().hashCode());
+				h = mix(h, sampleset.getLabel(i));
+				sampleset.getSample(i).getFeatures(row);
+				for (int f = 0; f < dim; f++)
+					h = mix(h, Double.doubleToLongBits(row[f]));
+			}
+			hash[q] = h;
+		})).join();
+
+		long h = mix(nQuery, dim);
+		for (int q = 0; q < nQuery; q++)
+			h = mix(h, hash[q]);
+		return h;
+	}
+
+	private static long mix(long h, long x){
+		h = (h ^ x) * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+
+	/**
+	 * @return cached matrix, null if absent, stale or unreadable
+	 */
+	private static PerfMatrix read(File cacheFile, long dataKey, String metricKey, long candidateKey){
+		if (!cacheFile.isFile())
+			return null;
+
+		try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+			if (dis.readInt() != MAGIC || dis.readInt() != VERSION)
+				return null;
+			if (dis.readLong() != dataKey || !dis.readUTF().equals(metricKey) || dis.readLong() != candidateKey)
+				return null;
+
+			PerfMatrix matrix = new PerfMatrix(dis.readInt(), dis.readInt());
+			for (int i = 0; i < matrix.perf.length; i++)
+				matrix.perf[i] = dis.readDouble();
+			return matrix;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 先写入临时文件再替换, 避免并行的交叉验证读到不完整的缓存
+	 */
+	private void write(File cacheFile, long dataKey, String metricKey, long candidateKey) throws IOException{
+		File dir = cacheFile.getParentFile();
+		if (dir != null)
+			dir.mkdirs();
+
+		File tmpFile = File.createTempFile(PREFIX, ".tmp", dir);
+		try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeLong(dataKey);
+			dos.writeUTF(metricKey);
+			dos.writeLong(candidateKey);
+			dos.writeInt(nCandidate);
+			dos.writeInt(nQuery);
+			for (double v : perf)
+				dos.writeDouble(v);
+		}
+		Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+		        StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public int getNumCandidate(){
+		return nCandidate;
+	}
+
+	public int getNumQuery(){
+		return nQuery;
+	}
+
+	/**
+	 * @return performance of candidate c on query q
+	 */
+	public double get(int c, int q){
+		return perf[c * nQuery + q];
+	}
+
+	/**
+	 * @return the flat matrix, candidate after candidate
+	 */
+	public double[] getValues(){
+		return perf;
+	}
+
+	/**
+	 * @return a copy of the matrix as rows of candidates
+	 */
+	public double[][] toMatrix(){
+		double[][] matrix = new double[nCandidate][];
+		for (int c = 0; c < nCandidate; c++) {
+			matrix[c] = new double[nQuery];
+			System.arraycopy(perf, c * nQuery, matrix[c], 0, nQuery);
+		}
+		return matrix;
+	}
+}
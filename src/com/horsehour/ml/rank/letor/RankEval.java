@@ -98,6 +98,13 @@ public class RankEval {
 			if (testset != null)
 				dataScale.scale(testset);
 		}
+
+		if (trainset != null)
+			trainset.compact();
+		if (valiset != null)
+			valiset.compact();
+		if (testset != null)
+			testset.compact();
 	}
 
 	/**
@@ -111,6 +118,8 @@ public class RankEval {
 		if (normalize)
 			dataScale.scale(dataset);
 
+		if (dataset != null)
+			dataset.compact();
 		return dataset;
 	}
 
@@ -9,18 +9,19 @@ import java.util.Map;
 import org.apache.commons.io.FileUtils;
 
 import com.horsehour.ml.data.Data;
-import com.horsehour.ml.data.Sample;
 import com.horsehour.ml.data.SampleSet;
 import com.horsehour.ml.metric.CrossEntropy;
 import com.horsehour.ml.model.Model;
-import com.horsehour.ml.nn.Layer;
 import com.horsehour.ml.nn.Algo;
+import com.horsehour.ml.nn.DenseNetwork;
 import com.horsehour.ml.nn.Network;
-import com.horsehour.ml.nn.neuron.RankNetNeuron;
 
 /**
  * RankNet is deployed with neural network to train pairwise instances, it use
- * cross entropy as the loss function.
+ * cross entropy as the loss function. The network is trained on its dense
+ * array form, and written back to the object graph when the model is updated.
+ * Weights are updated after each document by default; batch updates, one per
+ * epoch with the gradient of all queries computed in parallel, are opt-in.
  * 
  * @author Chunheng Jiang
  * @version 1.0
@@ -32,8 +33,13 @@ import com.horsehour.ml.nn.neuron.RankNetNeuron;
  */
 public class RankNet extends RankTrainer {
 	public Network net;
+	public DenseNetwork engine;
 	public int[] nHidden;
 
+	// 默认逐个文档更新权值, 与对象图的训练过程一致; 设为false时各检索词并行计算梯度,
+	// 每轮更新一次, 结果与逐个更新不同
+	public boolean online = true;
+
 	private double prevLoss = 0;
 	private double loss = 0;
 
@@ -45,6 +51,7 @@ public class RankNet extends RankTrainer {
 	@Override
 	public void init() {
 		net = new Network(Algo.RankNet, false, trainset.dim(), 1, nHidden);
+		engine = new DenseNetwork(net);
 		valiMetric = new CrossEntropy();
 	}
 
@@ -97,37 +104,12 @@ public class RankNet extends RankTrainer {
 	 */
 	@Override
 	public void learn() {
-		loss = 0;
-
-		for (SampleSet sampleSet : trainset.getSampleSets()) {
-			net.clearOutputs();
-			Sample sample = null;
-			int[][] samplePair = new int[sampleSet.size()][];
-
-			float avgLoss = 0;
-			int pairs = 0;
-			for (int id = 0; id < sampleSet.size(); id++) {
-				sample = sampleSet.getSample(id);
-				net.forwardProp(sample);
-				pairs += makePair(id, sampleSet, samplePair);
-			}
-
-			Layer outputLayer = net.layers.get(net.layers.size() - 1);
-			RankNetNeuron outputNeuron = (RankNetNeuron) outputLayer.getNeuron(0);
-			batchBackwardProp(samplePair, outputNeuron);
-
-			if (pairs > 0) {
-				avgLoss = calcLoss(outputNeuron, samplePair);
-				avgLoss /= pairs;
-			}
-
-			loss += avgLoss;
-		}
-
-		net.updateWeight();
+		if (online)
+			loss = engine.learnOnline(trainset);
+		else
+			loss = engine.learnBatch(trainset);
 
 		adjustLearningRate();
-
 	}
 
 	/**
@@ -137,7 +119,8 @@ public class RankNet extends RankTrainer {
 	private void adjustLearningRate() {
 		float lr;
 		if (prevLoss > 0 && prevLoss < loss) {
-			lr = net.getLearningRate();
+			lr = engine.getLearningRate();
+			engine.setLearningRate(lr * 0.5f);
 			net.setLearningRate(lr * 0.5f);
 		}
 		prevLoss = loss;
@@ -145,94 +128,24 @@ public class RankNet extends RankTrainer {
 
 	@Override
 	protected double validate() {
-		List<Double> predict;
-
 		SampleSet sampleset;
 
-		Layer outputLayer;
-		RankNetNeuron outputNeuron;
-
 		double perf = 0;
 		int sz = valiset.size();
+		int[] order = null;
 		for (int i = 0; i < sz; i++) {
 			sampleset = valiset.getSampleSet(i);
-			net.clearOutputs();// 清除上轮迭代的在每个结点上的输出列表
-			Sample sample = null;
-			for (int id = 0; id < sampleset.size(); id++) {
-				sample = sampleset.getSample(id);
-				net.forwardProp(sample);
-			}
-
-			outputLayer = net.layers.get(net.layers.size() - 1);
-			outputNeuron = (RankNetNeuron) outputLayer.getNeuron(0);
-			predict = outputNeuron.getOutputList();
-
-			perf += valiMetric.measure(sampleset.getLabelList(), predict);
+			double[] predict = engine.predict(sampleset);
+			if (order == null || order.length < predict.length)
+				order = new int[predict.length];
+			perf += valiMetric.measure(sampleset.getLabelArray(), predict, order);
 		}
 		return perf / sz;
 	}
 
-	/**
-	 * @param currentId
-	 * @param sampleset
-	 * @param samplePair
-	 * @return pairs' num
-	 */
-	private int makePair(int currentId, SampleSet sampleset, int[][] samplePair) {
-		int count = 0;
-		for (int idx = 0; idx < sampleset.size(); idx++) {
-			if (sampleset.getLabel(currentId) > sampleset.getLabel(idx))
-				count++;
-		}
-
-		samplePair[currentId] = new int[count];
-		count = 0;
-		for (int idx = 0; idx < sampleset.size(); idx++) {
-			if (sampleset.getLabel(currentId) > sampleset.getLabel(idx))
-				samplePair[currentId][count++] = idx;
-		}
-		return count;
-	}
-
-	/**
-	 * 根据全部的组对训练数据批量反向传播
-	 * 
-	 * @param samplePair
-	 * @param outputNeuron
-	 */
-	private void batchBackwardProp(int[][] samplePair, RankNetNeuron outputNeuron) {
-		for (int current = 0; current < samplePair.length; current++) {
-			int[] pair = samplePair[current];
-
-			outputNeuron.calcOutputLocalGradient(current, pair);
-
-			for (int id = net.numLayer - 2; id > 0; id--)
-				net.getLayer(id).calcLocalGradient(current, pair);
-
-			for (int id = net.numLayer - 1; id > 0; id--)
-				net.getLayer(id).updateWeight(current, pair);
-		}
-	}
-
-	/**
-	 * @param outputNeuron
-	 * @param samplePair
-	 * @return cross entropy loss
-	 */
-	float calcLoss(RankNetNeuron outputNeuron, int[][] samplePair) {
-		float loss = 0;
-		for (int current = 0; current < samplePair.length; current++) {
-			int[] pair = samplePair[current];
-			for (int idx = 0; idx < pair.length; idx++) {
-				loss += Math.log(1 + Math
-						.exp(outputNeuron.getOutputList().get(pair[idx]) - outputNeuron.getOutputList().get(current)));
-			}
-		}
-		return loss;
-	}
-
 	@Override
 	public void updateModel() {
+		engine.write(net);
 		net.updateWeight();
 		bestModel = new Network(net);
 	}
@@ -22,6 +22,10 @@ public abstract class RankTrainer {
 	public Model plainModel;// 在习模型
 	public Model bestModel;// 习得模型
 
+	// 集成模型在训练集、验证集上的预测分值缓存, 由集成类模型在init()中创建
+	public ScoreCache currentPredict;
+	protected ScoreCache valiPredict;
+
 	public String modelFile;
 
 	public Messenger msg;
@@ -60,19 +64,38 @@ public abstract class RankTrainer {
 		int m = dataset.size();
 		SampleSet sampleset;
 
+		int[] order = null;
 		for (int i = 0; i < m; i++) {
 			sampleset = dataset.getSampleSet(i);
 			predict = plainModel.predict(sampleset);
-			perf += metric.measure(sampleset.getLabels(), predict);
+			double[] score = new double[predict.length];
+			for (int j = 0; j < score.length; j++)
+				score[j] = predict[j];
+			if (order == null || order.length < score.length)
+				order = new int[score.length];
+			perf += metric.measure(sampleset.getLabelArray(), score, order);
 		}
 
 		return perf / m;
 	}
 
+	/**
+	 * 在习模型在验证集上的性能, 有验证集的预测分值缓存时直接由缓存计算
+	 */
 	protected double validate() {
+		if (valiPredict != null)
+			return valiPredict.measure(valiMetric, null);
 		return validate(valiset, valiMetric);
 	}
 
+	/**
+	 * @return directory caching the performance matrices of weak rankers,
+	 *         set by perfCacheDir; null if not cached
+	 */
+	protected String getPerfCacheDir() {
+		return (msg == null) ? null : msg.get("perfCacheDir");
+	}
+
 	public abstract void updateModel();
 
 	public abstract void storeModel();
@@ -0,0 +1,147 @@
+package com.horsehour.ml.rank.letor;
+
+import java.util.Arrays;
+
+import com.horsehour.ml.data.DataSet;
+import com.horsehour.ml.data.Sample;
+import com.horsehour.ml.data.SampleSet;
+import com.horsehour.ml.metric.Metric;
+import com.horsehour.ml.model.EnsembleModel;
+import com.horsehour.ml.model.Model;
+
+/**
+ * 集成模型在数据集各检索词上的预测分值. 每加入一个基本模型, 只需在原分值上累加其加权预测, 不必重新计算整个集成模型;
+ * 累加次序与EnsembleModel.predict相同, 因而分值与后者完全一致.
+ * <p>
+ * 加入基本模型前保留原分值, 移除最后加入的基本模型时直接恢复, 否则按集成模型重新计算.
+ *
+ * @author Chunheng Jiang
+ * @version 1.0
+ * @since 20131212
+ */
+public class ScoreCache {
+	private final DataSet dataset;
+	private final int[][] labels;
+	private double[][] score;
+	private double[][] backup;// 加入最后一个基本模型之前的分值
+	private boolean undoable = false;
+	private int[] order;
+
+	public ScoreCache(DataSet dataset) {
+		this.dataset = dataset;
+		int m = dataset.size();
+		labels = new int[m][];
+		score = new double[m][];
+		backup = new double[m][];
+		int maxSize = 0;
+		for (int q = 0; q < m; q++) {
+			SampleSet sampleset = dataset.getSampleSet(q);
+			labels[q] = sampleset.getLabelArray();
+			score[q] = new double[sampleset.size()];
+			backup[q] = new double[sampleset.size()];
+			maxSize = Math.max(maxSize, sampleset.size());
+		}
+		order = new int[maxSize];
+	}
+
+	/**
+	 * 加入权值为alpha的基本模型
+	 *
+	 * @param member
+	 * @param alpha
+	 */
+	public void add(Model member, double alpha){
+		double[][] prev = score;
+		score = backup;
+		backup = prev;
+		undoable = true;
+
+		for (int q = 0; q < score.length; q++) {
+			SampleSet sampleset = dataset.getSampleSet(q);
+			double[] s = score[q], p = prev[q];
+			for (int i = 0; i < s.length; i++) {
+				Sample sample = sampleset.getSample(i);
+				s[i] = p[i] + alpha * member.predict(sample);
+			}
+		}
+	}
+
+	/**
+	 * 集成模型移除了最后一个基本模型之后调用
+	 *
+	 * @param ensemble
+	 *            the ensemble without that member
+	 */
+	public void removeLast(EnsembleModel ensemble){
+		if (!undoable) {
+			rebuild(ensemble);
+			return;
+		}
+
+		double[][] prev = score;
+		score = backup;
+		backup = prev;
+		undoable = false;
+	}
+
+	/**
+	 * 按集成模型重新计算分值
+	 *
+	 * @param ensemble
+	 */
+	public void rebuild(EnsembleModel ensemble){
+		for (int q = 0; q < score.length; q++)
+			Arrays.fill(score[q], 0);
+		undoable = false;
+
+		int sz = (ensemble.member == null) ? 0 : ensemble.size();
+		for (int k = 0; k < sz; k++) {
+			Model member = ensemble.getModel(k);
+			double alpha = ensemble.getWeight(k);
+			for (int q = 0; q < score.length; q++) {
+				SampleSet sampleset = dataset.getSampleSet(q);
+				double[] s = score[q];
+				for (int i = 0; i < s.length; i++)
+					s[i] += alpha * member.predict(sampleset.getSample(i));
+			}
+		}
+	}
+
+	/**
+	 * @param q
+	 * @return scores of the documents of the q-th query, not to be modified
+	 */
+	public double[] get(int q){
+		return score[q];
+	}
+
+	public int size(){
+		return score.length;
+	}
+
+	/**
+	 * @param q
+	 * @param metric
+	 * @return performance of the ensemble on the q-th query
+	 */
+	public double measure(int q, Metric metric){
+		return metric.measure(labels[q], score[q], order);
+	}
+
+	/**
+	 * @param metric
+	 * @param perf
+	 *            performance on each query if not null
+	 * @return mean performance over all queries
+	 */
+	public double measure(Metric metric, double[] perf){
+		double sum = 0;
+		for (int q = 0; q < score.length; q++) {
+			double v = measure(q, metric);
+			if (perf != null)
+				perf[q] = v;
+			sum += v;
+		}
+		return sum / score.length;
+	}
+}
@@ -43,13 +43,13 @@ public class SimilarAda extends AdaRank {
 		int sz = trainset.size();
 		simMatrix = new double[dim][sz];
 
-		Double[] plainPredict, weakPredict;
+		double[] plainPredict, weakPredict;
 		SampleSet sampleset;
 		for (int i = 0; i < dim; i++) {
 			for (int j = 0; j < sz; j++) {
 				sampleset = trainset.getSampleSet(j);
-				plainPredict = ((EnsembleModel) plainModel).predict(sampleset);
-				weakPredict = sampleset.getFeatureList(i).toArray(new Double[sampleset.size()]);
+				plainPredict = currentPredict.get(j);
+				weakPredict = sampleset.getFeatureArray(i);
 				simMatrix[i][j] = MathLib.Sim.cosine(plainPredict,
 				        weakPredict);
 			}
@@ -10,8 +10,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
-import lpsolve.LpSolveException;
-
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.LineIterator;
 
@@ -140,9 +138,8 @@ public class SocialMediaPopularity {
 	 * 
 	 * @param socialCounts  An array with all the social media statistics that we use in our analysis.
 	 * @return              Returns the popularity score (percentile) of the page.
-	 * @throws LpSolveException 
 	 */
-	protected Double calculatePopularity(double[] socialCounts) throws LpSolveException{
+	protected Double calculatePopularity(double[] socialCounts){
 		String newId = String.valueOf(socialCounts.length);
 		// important! In this problem, we don't define an input. All the metrics
 		// are considered output of the DeaRecord.
@@ -177,13 +174,9 @@ public class SocialMediaPopularity {
 	 */
 	public Double getPopularity(int facebook, int plusone, int tweets){
 		double[] socialCounts = new double[]{facebook, plusone, tweets};
-		Double popularity = null;
-		try {
-			popularity = calculatePopularity(socialCounts);
-		} catch (LpSolveException e) {
-			e.printStackTrace();
+		Double popularity = calculatePopularity(socialCounts);
+		if (popularity == null)
 			return null;
-		}
 		return Math.round(popularity * 100.0) / 100.0;
 	}
 
@@ -205,10 +198,8 @@ public class SocialMediaPopularity {
 	 * Depots Efficiency example. Estimates the efficiency of organizational units
 	 * based on their output (ISSUES, RECEIPTS, REQS) and input (STOCK, WAGES). 
 	 * This example was taken from http://deazone.com/en/resources/tutorial/introduction
-	 * 
-	 * @throws LpSolveException 
 	 */
-	public static void depotsEfficiency() throws LpSolveException{
+	public static void depotsEfficiency(){
 		Map<String, DEARecord> records = new LinkedHashMap<>();
 
 		records.put("Depot1", new DEARecord(new double[]{40.0, 55.0, 30.0}, new double[]{3.0, 5.0}));
@@ -239,10 +230,9 @@ public class SocialMediaPopularity {
 
 	/**
 	 * @param args the command line arguments
-	 * @throws lpsolve.LpSolveException
 	 * @throws java.io.IOException
 	 */
-	public static void main(String[] args) throws LpSolveException, IOException{
+	public static void main(String[] args) throws IOException{
 		// Depots Efficiency example
 		//		depotsEfficiency();
 
@@ -76,10 +76,18 @@ public class APScorer extends MetricScorer {
 	 * @return AP of the list.
 	 */
 	public double score(RankList rl) {
+		return score(id(rl), rl.getLabels(), null);
+	}
+
+	public double score(RankList rl, int[] idx) {
+		return score(id(rl), rl.getLabels(), idx);
+	}
+
+	public double score(String qid, float[] labels, int[] idx) {
 		double ap = 0.0;
 		int count = 0;
-		for (int i = 0; i < rl.size(); i++) {
-			if (rl.get(i).getLabel() > 0.0)// relevant
+		for (int i = 0; i < labels.length; i++) {
+			if (labels[(idx == null) ? i : idx[i]] > 0.0)// relevant
 			{
 				count++;
 				ap += ((double) count) / (i + 1);
@@ -88,7 +96,7 @@ public class APScorer extends MetricScorer {
 
 		int rdCount = 0;
 		if (relDocCount != null) {
-			Integer it = relDocCount.get(rl.getID());
+			Integer it = (qid == null) ? null : relDocCount.get(qid);
 			if (it != null)
 				rdCount = it.intValue();
 		} else
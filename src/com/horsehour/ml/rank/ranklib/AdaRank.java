@@ -388,7 +388,7 @@ public class AdaRank extends Ranker {
 
 	private int learn(int startIter, boolean withEnqueue) {
 		int t = startIter;
-		for (; t <= nIteration; t++) {
+		for (; t <= config.adaIteration; t++) {
 			WeakRanker bestWR = learnWeakRanker();
 			if (bestWR == null)
 				break;
@@ -434,12 +434,13 @@ public class AdaRank extends Ranker {
 			// update the distribution of sample weight
 			double total = 0.0;
 			for (int i = 0; i < samples.size(); i++) {
-				double tmp = scorer.score(rank(samples.get(i)));
+				double tmp = scorer.score(samples.get(i),
+				        rank(samples.get(i), scorer.depth()));
 				total += Math.exp(-alpha_t * tmp);
 				trainedScore += tmp;
 			}
 			trainedScore /= samples.size();// 训练集上平均表现
-			double delta = trainedScore + tolerance - lastTrainedScore;
+			double delta = trainedScore + config.adaTolerance - lastTrainedScore;
 			// delta > 0-->ok
 
 			if (!withEnqueue) {
@@ -452,7 +453,7 @@ public class AdaRank extends Ranker {
 					performanceChanged = false;
 					if (lastFeature == bestWR.getFID()) {
 						lastFeatureConsecutiveCount++;// 性能未发生改变，特征连续被选中的次数+1
-						if (lastFeatureConsecutiveCount == maxSelCount) {
+						if (lastFeatureConsecutiveCount == config.adaMaxSelCount) {
 							lastFeatureConsecutiveCount = 0;
 							usedFeatures.put(lastFeature, 1);// removed this
 															 // feature from the
@@ -487,7 +488,8 @@ public class AdaRank extends Ranker {
 			lastTrainedScore = trainedScore;
 			for (int i = 0; i < sweight.length; i++)
 				sweight[i] = Math.exp(-alpha_t
-				        * scorer.score(rank(samples.get(i))))
+				        * scorer.score(samples.get(i),
+				                rank(samples.get(i), scorer.depth())))
 				        / total;
 		}
 		return t;
@@ -516,7 +518,7 @@ public class AdaRank extends Ranker {
 	}
 
 	public void learn() {
-		if (trainWithEnqueue) {
+		if (config.adaEnqueue) {
 			int t = learn(1, true);
 			// take care of the enqueued features
 			for (int i = featureQueue.size() - 1; i >= 0; i--) {
@@ -537,9 +539,9 @@ public class AdaRank extends Ranker {
 		}
 
 		// print learning score
-		scoreOnTrainingData = SimpleMath.round(scorer.score(rank(samples)), 4);
+		scoreOnTrainingData = SimpleMath.round(score(samples, scorer), 4);
 		if (validationSamples != null)
-			bestScoreOnValidationData = scorer.score(rank(validationSamples));
+			bestScoreOnValidationData = score(validationSamples, scorer);
 	}
 
 	/**
@@ -567,11 +569,12 @@ public class AdaRank extends Ranker {
 
 	public String model() {
 		String output = "## " + name() + "\n";
-		output += "## Iteration = " + nIteration + "\n";
+		output += "## Iteration = " + config.adaIteration + "\n";
 		output += "## Train with enqueue: "
-		        + ((trainWithEnqueue) ? "Yes" : "No") + "\n";
-		output += "## Tolerance = " + tolerance + "\n";
-		output += "## Max consecutive selection count = " + maxSelCount + "\n";
+		        + ((config.adaEnqueue) ? "Yes" : "No") + "\n";
+		output += "## Tolerance = " + config.adaTolerance + "\n";
+		output += "## Max consecutive selection count = "
+		        + config.adaMaxSelCount + "\n";
 		output += toString();
 		return output;
 	}
@@ -610,10 +613,10 @@ public class AdaRank extends Ranker {
 	}
 
 	public void printParameters() {
-		PRINTLN("No. of rounds: " + nIteration);
-		PRINTLN("Train with 'enequeue': " + ((trainWithEnqueue) ? "Yes" : "No"));
-		PRINTLN("Tolerance: " + tolerance);
-		PRINTLN("Max Sel. Count: " + maxSelCount);
+		PRINTLN("No. of rounds: " + config.adaIteration);
+		PRINTLN("Train with 'enequeue': " + ((config.adaEnqueue) ? "Yes" : "No"));
+		PRINTLN("Tolerance: " + config.adaTolerance);
+		PRINTLN("Max Sel. Count: " + config.adaMaxSelCount);
 	}
 
 	public String name() {
@@ -28,6 +28,27 @@ public class BestAtKScorer extends MetricScorer {
 		return rl.get(maxToK(rl, k - 1)).getLabel();
 	}
 
+	public double score(RankList rl, int[] idx) {
+		return score(id(rl), rl.getLabels(), idx);
+	}
+
+	public double score(String qid, float[] labels, int[] idx) {
+		int size = k - 1;
+		if (size < 0 || size > labels.length - 1)
+			size = labels.length - 1;
+
+		double max = -1.0;
+		int max_i = 0;
+		for (int i = 0; i <= size; i++) {
+			float label = labels[(idx == null) ? i : idx[i]];
+			if (max < label) {
+				max = label;
+				max_i = i;
+			}
+		}
+		return labels[(idx == null) ? max_i : idx[max_i]];
+	}
+
 	public MetricScorer clone() {
 		return new BestAtKScorer();
 	}
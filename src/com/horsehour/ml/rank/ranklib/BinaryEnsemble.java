@@ -0,0 +1,285 @@
+package com.horsehour.ml.rank.ranklib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary format of tree ensembles, and converter from/to the XML model
+ * files written by LambdaMART/MART.
+ *
+ * Layout (little-endian, every section 4-byte aligned so it can be viewed
+ * in place once mapped): header {magic, version, flags, nTree, nNode,
+ * nLeaf, name}, float weight[nTree], int root[nTree], int fid[nNode], float
+ * threshold[nNode], int left[nNode], int right[nNode], float output[nLeaf],
+ * and the CRC32 of everything before it as a long if flags has CHECKSUM.
+ * name is the ranker name (e.g. LambdaMART, MART) in ASCII, padded with 0 to
+ * NAME bytes. Internal nodes are in pre-order; a child (or root) c >= 0 is an
+ * internal node following its parent, c < 0 the leaf ~c. Leaf outputs are
+ * stored without the tree weight.
+ *
+ * Usage: BinaryEnsemble -xml2bin model.xml model.bin | -bin2xml model.bin
+ * model.xml
+ *
+ * @author Chunheng Jiang
+ */
+public class BinaryEnsemble {
+	static final int MAGIC = 0x4C32454E;
+	static final int VERSION = 2;
+	static final int CHECKSUM = 1;
+	static final int NAME = 16;
+	static final int HEADER = 24 + NAME;
+
+	public static void main(String[] args) {
+		if (args.length != 3) {
+			System.out
+			        .println("Usage: BinaryEnsemble -xml2bin <xml model> <binary model> | -bin2xml <binary model> <xml model>");
+			return;
+		}
+		if (args[0].compareTo("-xml2bin") == 0)
+			xmlToBinary(args[1], args[2]);
+		else if (args[0].compareTo("-bin2xml") == 0)
+			binaryToXml(args[1], args[2]);
+	}
+
+	/**
+	 * @return true if the file starts with the magic number of this format
+	 */
+	public static boolean isBinary(String fn) {
+		try (RandomAccessFile raf = new RandomAccessFile(fn, "r")) {
+			if (raf.length() < HEADER)
+				return false;
+			ByteBuffer buf = ByteBuffer.allocate(4).order(
+			        ByteOrder.LITTLE_ENDIAN);
+			raf.getChannel().read(buf, 0);
+			return buf.getInt(0) == MAGIC;
+		} catch (IOException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return name of the ranker stored in the header, null if fn is not a
+	 *         binary model
+	 */
+	public static String rankerName(String fn) {
+		try (RandomAccessFile raf = new RandomAccessFile(fn, "r")) {
+			if (raf.length() < HEADER)
+				return null;
+			ByteBuffer buf = ByteBuffer.allocate(HEADER).order(
+			        ByteOrder.LITTLE_ENDIAN);
+			raf.getChannel().read(buf, 0);
+			if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+				return null;
+			return name(buf);
+		} catch (IOException ex) {
+			return null;
+		}
+	}
+
+	static String name(ByteBuffer buf) {
+		byte[] name = new byte[NAME];
+		for (int i = 0; i < NAME; i++)
+			name[i] = buf.get(HEADER - NAME + i);
+		int len = 0;
+		while (len < NAME && name[len] != 0)
+			len++;
+		return new String(name, 0, len, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Write the ensemble to fn, through a temporary file that is then moved in
+	 * place, so that processes mapping the old model are not disturbed
+	 *
+	 * @param name
+	 *            of the ranker that loads the model, at most NAME ASCII
+	 *            characters
+	 */
+	public static void write(Ensemble ensemble, String name, String fn,
+	        boolean checksum) {
+		byte[] rname = name.getBytes(StandardCharsets.US_ASCII);
+		if (rname.length > NAME) {
+			System.out.println("Error in BinaryEnsemble::write(): ranker name "
+			        + name + " is too long");
+			return;
+		}
+
+		int nTree = ensemble.treeCount();
+		int nNode = 0, nLeaf = 0;
+		for (int t = 0; t < nTree; t++) {
+			int l = ensemble.getTree(t).leaves().size();
+			nLeaf += l;
+			nNode += l - 1;
+		}
+
+		long size = HEADER + 4L * (2L * nTree + 4L * nNode + nLeaf)
+		        + (checksum ? 8 : 0);
+		if (size > Integer.MAX_VALUE) {
+			System.out.println("Error in BinaryEnsemble::write(): model too large");
+			return;
+		}
+		ByteBuffer buf = ByteBuffer.allocate((int) size).order(
+		        ByteOrder.LITTLE_ENDIAN);
+		buf.putInt(MAGIC).putInt(VERSION).putInt(checksum ? CHECKSUM : 0)
+		        .putInt(nTree).putInt(nNode).putInt(nLeaf);
+		buf.put(rname).position(HEADER);
+
+		int[] root = new int[nTree];
+		int[] fid = new int[nNode];
+		float[] threshold = new float[nNode];
+		int[] left = new int[nNode];
+		int[] right = new int[nNode];
+		float[] output = new float[nLeaf];
+		int[] count = new int[2];// #nodes, #leaves
+		for (int t = 0; t < nTree; t++)
+			root[t] = add(ensemble.getTree(t).root, fid, threshold, left,
+			        right, output, count);
+
+		for (int t = 0; t < nTree; t++)
+			buf.putFloat(ensemble.getWeight(t));
+		for (int t = 0; t < nTree; t++)
+			buf.putInt(root[t]);
+		buf.asIntBuffer().put(fid);
+		buf.position(buf.position() + 4 * nNode);
+		buf.asFloatBuffer().put(threshold);
+		buf.position(buf.position() + 4 * nNode);
+		buf.asIntBuffer().put(left);
+		buf.position(buf.position() + 4 * nNode);
+		buf.asIntBuffer().put(right);
+		buf.position(buf.position() + 4 * nNode);
+		buf.asFloatBuffer().put(output);
+		buf.position(buf.position() + 4 * nLeaf);
+		if (checksum) {
+			CRC32 crc = new CRC32();
+			crc.update(buf.array(), 0, buf.position());
+			buf.putLong(crc.getValue());
+		}
+
+		File dst = new File(fn);
+		File tmp = new File(fn + ".tmp");
+		try {
+			Files.write(tmp.toPath(), buf.array());
+			Files.move(tmp.toPath(), dst.toPath(),
+			        StandardCopyOption.REPLACE_EXISTING,
+			        StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ex) {
+			tmp.delete();
+			System.out.println("Error in BinaryEnsemble::write(): "
+			        + ex.toString());
+		}
+	}
+
+	private static int add(Split s, int[] fid, float[] threshold, int[] left,
+	        int[] right, float[] output, int[] count) {
+		if (s.isLeaf()) {
+			output[count[1]] = s.getOutput();
+			return ~count[1]++;
+		}
+		int n = count[0]++;
+		fid[n] = s.getFeatureID();
+		threshold[n] = s.getThreshold();
+		left[n] = add(s.getLeft(), fid, threshold, left, right, output, count);
+		right[n] = add(s.getRight(), fid, threshold, left, right, output,
+		        count);
+		return n;
+	}
+
+	/**
+	 * Map a binary model read-only. Pages are shared by all processes mapping
+	 * the same file and only read on demand.
+	 *
+	 * @param fn
+	 * @param verify
+	 *            check the CRC32 if the file has one (reads the whole file)
+	 * @return null if the file is not a valid model
+	 */
+	public static MappedEnsemble map(String fn, boolean verify) {
+		try (RandomAccessFile raf = new RandomAccessFile(fn, "r");
+		        FileChannel ch = raf.getChannel()) {
+			long size = ch.size();
+			if (size < HEADER || size > Integer.MAX_VALUE) {
+				System.out.println("Error in BinaryEnsemble::map(): " + fn
+				        + " is not a binary model");
+				return null;
+			}
+			MappedByteBuffer mbb = ch.map(MapMode.READ_ONLY, 0, size);
+			ByteBuffer buf = mbb.order(ByteOrder.LITTLE_ENDIAN);
+			int magic = buf.getInt(0), version = buf.getInt(4), flags = buf
+			        .getInt(8);
+			int nTree = buf.getInt(12), nNode = buf.getInt(16), nLeaf = buf
+			        .getInt(20);
+			long expected = HEADER + 4L * (2L * nTree + 4L * nNode + nLeaf)
+			        + ((flags & CHECKSUM) != 0 ? 8 : 0);
+			if (magic != MAGIC || version != VERSION || nTree < 0 || nNode < 0
+			        || nLeaf < 0 || expected != size) {
+				System.out.println("Error in BinaryEnsemble::map(): " + fn
+				        + " is not a valid binary model");
+				return null;
+			}
+			if (verify && (flags & CHECKSUM) != 0) {
+				int end = (int) size - 8;
+				ByteBuffer data = buf.duplicate();
+				data.position(0).limit(end);
+				CRC32 crc = new CRC32();
+				crc.update(data);
+				if (crc.getValue() != buf.getLong(end)) {
+					System.out.println("Error in BinaryEnsemble::map(): checksum mismatch in "
+					        + fn);
+					return null;
+				}
+			}
+			MappedEnsemble me = new MappedEnsemble(buf, name(buf), nTree,
+			        nNode, nLeaf);
+			if (!me.isValid()) {
+				System.out.println("Error in BinaryEnsemble::map(): " + fn
+				        + " has an invalid tree structure");
+				return null;
+			}
+			return me;
+		} catch (IOException ex) {
+			System.out.println("Error in BinaryEnsemble::map(): "
+			        + ex.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Load a binary model into a regular (XML-equivalent) Ensemble
+	 */
+	public static Ensemble read(String fn) {
+		MappedEnsemble me = map(fn, true);
+		if (me == null)
+			return null;
+		return me.toEnsemble();
+	}
+
+	public static void xmlToBinary(String xmlFile, String binFile) {
+		Ranker r = new RankerFactory().loadRanker(xmlFile);
+		if (!(r instanceof LambdaMART)) {
+			System.out.println("Error in BinaryEnsemble::xmlToBinary(): "
+			        + xmlFile + " is not a tree ensemble model");
+			return;
+		}
+		Ensemble ensemble = ((LambdaMART) r).getEnsemble();
+		if (ensemble == null)
+			return;
+		write(ensemble, r.name(), binFile, true);
+	}
+
+	public static void binaryToXml(String binFile, String xmlFile) {
+		MappedEnsemble me = map(binFile, true);
+		if (me == null)
+			return;
+		FileUtils.write(xmlFile, "ASCII", "## " + me.name() + "\n\n"
+		        + me.toEnsemble().toString());
+	}
+}
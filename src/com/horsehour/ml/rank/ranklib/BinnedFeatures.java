@@ -0,0 +1,254 @@
+package com.horsehour.ml.rank.ranklib;
+
+import java.util.Arrays;
+
+/**
+ * Pre-binned training matrix for tree induction. For every feature the
+ * candidate thresholds are computed once, and each sample is replaced by the
+ * index of the first threshold its value does not exceed. Bin ids are stored
+ * column-major, one byte per sample when a feature has at most 256 bins in
+ * use, otherwise one short (or int beyond 65536 bins).
+ *
+ * A sample goes to the left child of a split (feature f, threshold t) iff its
+ * bin id for f is no greater than t, so histograms and partitions never need
+ * the raw feature values.
+ *
+ * A view (see view(int[])) shares the columns and thresholds of another
+ * instance read-only and only maps its own samples onto rows of it, e.g. a
+ * bootstrap sample of the training set.
+ *
+ * @author Chunheng Jiang
+ */
+public class BinnedFeatures {
+	protected int[] features = null;
+	protected float[][] thresholds = null;
+	protected int nSample = 0;
+
+	// exactly one of them is non-null for each feature
+	protected byte[][] byteBins = null;
+	protected short[][] shortBins = null;
+	protected int[][] intBins = null;
+
+	protected int[] rows = null;// sample -> row of the columns, null = same
+
+	/**
+	 * Compute thresholds and bin ids of all features. Candidate thresholds
+	 * are the unique feature values if there are at most nThreshold of them
+	 * (or nThreshold == -1), otherwise nThreshold equally spaced values
+	 * between the min and the max; Float.MAX_VALUE is always the last one.
+	 *
+	 * @param samples
+	 * @param features
+	 * @param nThreshold
+	 */
+	public BinnedFeatures(DataPoint[] samples, int[] features, int nThreshold) {
+		this.features = features;
+		this.nSample = samples.length;
+		thresholds = new float[features.length][];
+		byteBins = new byte[features.length][];
+		shortBins = new short[features.length][];
+		intBins = new int[features.length][];
+
+		MyThreadPool p = MyThreadPool.getInstance();
+		if (p == null || p.size() == 1)
+			bin(samples, nThreshold, 0, features.length - 1);
+		else {
+			int[] partition = p.partition(features.length);
+			for (int i = 0; i < partition.length - 1; i++)
+				p.execute(new BinWorker(samples, nThreshold, partition[i],
+				        partition[i + 1] - 1));
+			p.await();
+		}
+	}
+
+	protected BinnedFeatures(BinnedFeatures base, int[] rows) {
+		this.features = base.features;
+		this.thresholds = base.thresholds;
+		this.byteBins = base.byteBins;
+		this.shortBins = base.shortBins;
+		this.intBins = base.intBins;
+		this.nSample = rows.length;
+		if (base.rows == null)
+			this.rows = rows;
+		else {
+			this.rows = new int[rows.length];
+			for (int k = 0; k < rows.length; k++)
+				this.rows[k] = base.rows[rows[k]];
+		}
+	}
+
+	/**
+	 * @param rows
+	 *            rows[k] is the sample of this instance that becomes sample k
+	 *            of the view; repeats are allowed
+	 * @return a view sharing the bin ids and thresholds of this instance
+	 */
+	public BinnedFeatures view(int[] rows) {
+		return new BinnedFeatures(this, rows);
+	}
+
+	protected void bin(DataPoint[] samples, int nThreshold, int fStart,
+	        int fEnd) {
+		float[] values = new float[nSample];
+		float[] sorted = new float[nSample];
+		for (int f = fStart; f <= fEnd; f++) {
+			for (int k = 0; k < nSample; k++)
+				values[k] = samples[k].getFeatureValue(features[f]);
+			System.arraycopy(values, 0, sorted, 0, nSample);
+			Arrays.sort(sorted);
+			thresholds[f] = thresholds(sorted, nThreshold);
+
+			int[] bins = new int[nSample];
+			int maxBin = 0;
+			for (int k = 0; k < nSample; k++) {
+				bins[k] = lowerBound(thresholds[f], values[k]);
+				if (bins[k] > maxBin)
+					maxBin = bins[k];
+			}
+
+			if (maxBin <= 0xFF) {
+				byte[] b = new byte[nSample];
+				for (int k = 0; k < nSample; k++)
+					b[k] = (byte) bins[k];
+				byteBins[f] = b;
+			} else if (maxBin <= 0xFFFF) {
+				short[] s = new short[nSample];
+				for (int k = 0; k < nSample; k++)
+					s[k] = (short) bins[k];
+				shortBins[f] = s;
+			} else
+				intBins[f] = bins;
+		}
+	}
+
+	private static float[] thresholds(float[] sorted, int nThreshold) {
+		int n = sorted.length;
+		int nUnique = 0;
+		for (int i = 0; i < n; i++)
+			if (i == 0 || sorted[i] > sorted[i - 1])
+				nUnique++;
+
+		float[] threshold;
+		if (nUnique <= nThreshold || nThreshold == -1) {
+			threshold = new float[nUnique + 1];
+			int u = 0;
+			for (int i = 0; i < n; i++)
+				if (i == 0 || sorted[i] > sorted[i - 1])
+					threshold[u++] = sorted[i];
+			threshold[nUnique] = Float.MAX_VALUE;
+		} else {
+			float fmin = sorted[0];
+			float fmax = sorted[n - 1];
+			float step = (Math.abs(fmax - fmin)) / nThreshold;
+			threshold = new float[nThreshold + 1];
+			threshold[0] = fmin;
+			for (int j = 1; j < nThreshold; j++)
+				threshold[j] = threshold[j - 1] + step;
+			threshold[nThreshold] = Float.MAX_VALUE;
+		}
+		return threshold;
+	}
+
+	/**
+	 * @return index of the first threshold that is no less than v
+	 */
+	private static int lowerBound(float[] threshold, float v) {
+		int lo = 0, hi = threshold.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (v <= threshold[mid])
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+		return lo;
+	}
+
+	public int[] getFeatures() {
+		return features;
+	}
+
+	public float[][] getThresholds() {
+		return thresholds;
+	}
+
+	public int size() {
+		return nSample;
+	}
+
+	/**
+	 * @param f
+	 *            index into the feature array (not the feature id)
+	 * @param k
+	 *            sample index
+	 * @return bin id of sample k on feature f
+	 */
+	public int bin(int f, int k) {
+		if (rows != null)
+			k = rows[k];
+		if (byteBins[f] != null)
+			return byteBins[f][k] & 0xFF;
+		if (shortBins[f] != null)
+			return shortBins[f][k] & 0xFFFF;
+		return intBins[f][k];
+	}
+
+	/**
+	 * Accumulate (non-cumulative) per-bin label sums, squared sums and counts
+	 * of feature f over the given samples; all samples if soi is null.
+	 */
+	public void accumulate(int f, int[] soi, float[] labels, double[] sum,
+	        double[] sqSum, int[] count) {
+		int n = (soi == null) ? nSample : soi.length;
+		byte[] b = byteBins[f];
+		short[] s = shortBins[f];
+		int[] in = intBins[f];
+		for (int i = 0; i < n; i++) {
+			int k = (soi == null) ? i : soi[i];
+			int row = (rows == null) ? k : rows[k];
+			int t = (b != null) ? (b[row] & 0xFF) : (s != null) ? (s[row] & 0xFFFF)
+			        : in[row];
+			float label = labels[k];
+			sum[t] += label;
+			sqSum[t] += label * label;
+			if (count != null)
+				count[t]++;
+		}
+	}
+
+	/**
+	 * Split samples idx by (f, t): bin id <= t goes to the left.
+	 *
+	 * @return number of samples put to the left
+	 */
+	public int partition(int f, int t, int[] idx, int[] left, int[] right) {
+		int l = 0, r = 0;
+		for (int j = 0; j < idx.length; j++) {
+			int k = idx[j];
+			if (bin(f, k) <= t)
+				left[l++] = k;
+			else
+				right[r++] = k;
+		}
+		return l;
+	}
+
+	// For multi-threading processing
+	class BinWorker implements Runnable {
+		DataPoint[] samples = null;
+		int nThreshold = 0;
+		int start = -1;
+		int end = -1;
+
+		BinWorker(DataPoint[] samples, int nThreshold, int start, int end) {
+			this.samples = samples;
+			this.nThreshold = nThreshold;
+			this.start = start;
+			this.end = end;
+		}
+
+		public void run() {
+			bin(samples, nThreshold, start, end);
+		}
+	}
+}
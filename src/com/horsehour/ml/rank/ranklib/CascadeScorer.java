@@ -0,0 +1,157 @@
+package com.horsehour.ml.rank.ranklib;
+
+/**
+ * Early-exit scoring of the top k documents of a list with a tree ensemble.
+ * Trees are evaluated stageSize at a time; after each stage the final score
+ * of a document lies between its partial sum plus the smallest and the
+ * largest outputs the remaining trees can add (from their leaf values).
+ * Documents whose upper bound is below the k-th best lower bound can no
+ * longer reach the top k and get no further trees.
+ *
+ * With boundScale = 1 the bounds are safe, and the top k comes out in the
+ * same order and with the same scores as from FlatEnsemble.eval(): the
+ * documents kept add the same leaves in the same order, and the pruning
+ * test leaves a margin for float rounding. A boundScale below 1 shrinks the
+ * remaining range around its midpoint, an approximation that prunes
+ * earlier but may drop a document of the true top k.
+ *
+ * stageSize and boundScale are passed to rank() by the ranker, from its
+ * config (RankerConfig.martCascadeStage and martCascadeBound).
+ *
+ * @author Chunheng Jiang
+ */
+public class CascadeScorer {
+	protected FlatEnsemble fe = null;
+	protected double[] remMin = null;// least output of trees [t, nTree)
+	protected double[] remMax = null;// largest output of trees [t, nTree)
+	protected double error = 0;// bound on the float rounding of a score
+
+	// over all lists ranked so far
+	private long treesEvaluated = 0;
+	private long treesTotal = 0;
+
+	public CascadeScorer(FlatEnsemble fe) {
+		this.fe = fe;
+		int nTree = fe.treeCount();
+		remMin = new double[nTree + 1];
+		remMax = new double[nTree + 1];
+		double absSum = 0;
+		for (int t = nTree - 1; t >= 0; t--) {
+			float min = fe.minOutput(t), max = fe.maxOutput(t);
+			remMin[t] = remMin[t + 1] + min;
+			remMax[t] = remMax[t + 1] + max;
+			absSum += Math.max(Math.abs(min), Math.abs(max));
+		}
+		// every partial sum is below absSum, and each of the nTree float
+		// additions is off by at most half an ulp of it
+		error = nTree * Math.ulp((float) absSum) + 1e-9 * absSum;
+	}
+
+	/**
+	 * Rank the top k documents of rl, pruning every stageSize trees with the
+	 * remaining range of outputs scaled by boundScale (1 for safe bounds)
+	 */
+	public Result rank(RankList rl, int k, int stageSize, double boundScale) {
+		stageSize = Math.max(1, stageSize);
+		int n = rl.size();
+		int m = TopKSorter.size(n, k);
+		int nTree = fe.treeCount();
+		DataPoint[] docs = new DataPoint[n];
+		float[][] fv = new float[n][];
+		for (int d = 0; d < n; d++) {
+			docs[d] = rl.get(d);
+			fv[d] = (docs[d] instanceof DenseDataPoint) ? docs[d]
+			        .getFeatureVector() : null;
+		}
+
+		Result r = new Result(n, nTree);
+		float[] s = r.scores;
+		int[] alive = new int[n];// documents still in the race
+		for (int d = 0; d < n; d++)
+			alive[d] = d;
+		int nAlive = n;
+		double[] lower = new double[n];
+		int[] idx = new int[Math.max(m, 1)];
+
+		for (int t0 = 0; t0 < nTree; t0 += stageSize) {
+			int t1 = Math.min(nTree, t0 + stageSize);
+			for (int t = t0; t < t1; t++)
+				for (int a = 0; a < nAlive; a++) {
+					int d = alive[a];
+					s[d] += fe.eval(t, docs[d], fv[d]);
+				}
+			for (int a = 0; a < nAlive; a++)
+				r.depth[alive[a]] = t1;
+			if (t1 == nTree || nAlive <= m)
+				continue;
+
+			double lo = remMin[t1], hi = remMax[t1];
+			if (boundScale != 1.0) {
+				double mid = (lo + hi) / 2, half = (hi - lo) / 2 * boundScale;
+				lo = mid - half;
+				hi = mid + half;
+			}
+			for (int a = 0; a < nAlive; a++)
+				lower[a] = s[alive[a]] + lo;
+			TopKSorter.sort(lower, 0, nAlive, m, idx);
+			double threshold = lower[idx[m - 1]] - 2 * error;
+
+			int kept = 0;
+			for (int a = 0; a < nAlive; a++)
+				if (s[alive[a]] + hi >= threshold)
+					alive[kept++] = alive[a];
+			nAlive = kept;
+		}
+
+		// only documents scored by all trees are left to rank
+		float[] f = new float[nAlive];
+		for (int a = 0; a < nAlive; a++)
+			f[a] = s[alive[a]];
+		TopKSorter.sort(f, 0, nAlive, m, idx);
+		r.top = new int[m];
+		for (int i = 0; i < m; i++)
+			r.top[i] = alive[idx[i]];
+
+		long evaluated = 0;
+		for (int d = 0; d < n; d++)
+			evaluated += r.depth[d];
+		synchronized (this) {
+			treesEvaluated += evaluated;
+			treesTotal += (long) n * nTree;
+		}
+		return r;
+	}
+
+	/**
+	 * @return fraction of trees evaluated per document, over all lists
+	 *         ranked so far
+	 */
+	public synchronized double treeFraction() {
+		return (treesTotal == 0) ? 1.0 : (double) treesEvaluated / treesTotal;
+	}
+
+	public static class Result {
+		public int[] top = null;// top[pos] is the document at position pos
+		public float[] scores = null;// by document; partial if it was dropped
+		public int[] depth = null;// trees evaluated, by document
+		protected int nTree = 0;
+
+		protected Result(int n, int nTree) {
+			scores = new float[n];
+			depth = new int[n];
+			this.nTree = nTree;
+		}
+
+		/**
+		 * @return fraction of trees evaluated per document of this list
+		 */
+		public double treeFraction() {
+			if (depth.length == 0 || nTree == 0)
+				return 1.0;
+			long sum = 0;
+			for (int d = 0; d < depth.length; d++)
+				sum += depth[d];
+			return (double) sum / ((long) depth.length * nTree);
+		}
+	}
+}
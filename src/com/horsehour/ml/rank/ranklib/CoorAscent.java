@@ -40,8 +40,7 @@ public class CoorAscent extends Ranker {
 	// Local variables
 	protected double[] weight = null;
 
-	protected int current_feature = -1;// used only during learning
-	protected double weight_change = -1.0;// used only during learning
+	protected CoorAscentEngine engine = null;// used only during learning
 
 	public CoorAscent() {
 
@@ -73,20 +72,22 @@ public class CoorAscent extends Ranker {
 		PRINTLN("Training starts...");
 		PRINTLN("---------------------------");
 
-		for (int r = 0; r < nRestart; r++) {
-			PRINTLN("[+] Random restart #" + (r + 1) + "/" + nRestart + "...");
+		// document scores are maintained incrementally by the engine, one
+		// coordinate at a time
+		engine = new CoorAscentEngine(samples, features, scorer);
+
+		for (int r = 0; r < config.caRestart; r++) {
+			PRINTLN("[+] Random restart #" + (r + 1) + "/" + config.caRestart
+			        + "...");
 			int consecutive_fails = 0;
 
 			// initialize weight vector
 			for (int i = 0; i < weight.length; i++)
 				weight[i] = 1.0f / features.length;
-			current_feature = -1;
-			double startScore = scorer.score(rank(samples));// compute all the
-															// scores (in
-															// whatever metric
-															// specified) and
-															// store them as
-															// cache
+			engine.reset(weight);
+			double startScore = engine.score();// compute all the scores (in
+											   // whatever metric specified)
+											   // and store them as cache
 
 			// local best (within the current restart cycle)
 			double bestScore = startScore;
@@ -107,8 +108,7 @@ public class CoorAscent extends Ranker {
 												   // in the variable @features
 				// Try maximizing each feature individually
 				for (int i = 0; i < fids.length; i++) {
-					current_feature = fids[i];// this will trigger the "else"
-											  // branch in the procedure rank()
+					engine.select(fids[i]);// the coordinate to move
 
 					double origWeight = weight[fids[i]];
 					double bestWeightValue = origWeight;// 0.0;
@@ -122,20 +122,15 @@ public class CoorAscent extends Ranker {
 						double step = 0.001;
 						if (origWeight != 0.0
 						        && step > 0.5 * Math.abs(origWeight))
-							step = stepBase * Math.abs(origWeight);
+							step = config.caStepBase * Math.abs(origWeight);
 						double totalStep = step;
-						for (int j = 0; j < nMaxIteration; j++) {
+						for (int j = 0; j < config.caMaxIteration; j++) {
 							double w = origWeight + totalStep * sign[s];
-							weight_change = w - weight[fids[i]];// weight_change
-																// is used in
-																// the "else"
-																// branch in the
-																// procedure
-																// rank()
+							double weight_change = w - weight[fids[i]];
 							weight[fids[i]] = w;
-							double score = scorer.score(rank(samples));
-							if (regularized) {
-								double penalty = slack
+							double score = engine.step(weight_change);
+							if (config.caRegularized) {
+								double penalty = config.caSlack
 								        * getDistance(weight, regVector);
 								score -= penalty;
 								// PRINTLN("Penalty: " + penalty);
@@ -154,17 +149,16 @@ public class CoorAscent extends Ranker {
 								        features[fids[i]] + "", bw + "",
 								        SimpleMath.round(bestScore, 4) + "" });
 							}
-							step *= stepScale;
+							step *= config.caStepScale;
 							totalStep += step;
 						}
 						if (succeeds)
 							break;// no need to search the other direction (e.g.
 								  // sign = '-')
 						else {
-							weight_change = origWeight - weight[fids[i]];
-							updateCached();// restore the cached to reflect the
-										   // orig. weight for the current
-										   // feature
+							// restore the cached to reflect the orig. weight for the
+							// current feature
+							engine.shift(origWeight - weight[fids[i]]);
 							// so that we can start searching in the other
 							// direction (since the optimization in the first
 							// direction failed)
@@ -173,29 +167,28 @@ public class CoorAscent extends Ranker {
 						}
 					}
 					if (succeeds) {
-						weight_change = bestWeightValue - weight[fids[i]];
-						updateCached();// restore the cached to reflect the best
-									   // weight for the current feature
+						// restore the cached to reflect the best weight for the
+						// current feature
+						engine.shift(bestWeightValue - weight[fids[i]]);
 						weight[fids[i]] = bestWeightValue;
 						consecutive_fails = 0;// since we found a better weight
 											  // value
 						// then normalize the new weight vector
 						double sum = normalize(weight);
-						scaleCached(sum);
+						engine.scale(sum);
 						copy(weight, bestWeight);
 					} else {
 						consecutive_fails++;
-						weight_change = origWeight - weight[fids[i]];
-						updateCached();// restore the cached to reflect the
-									   // orig. weight for the current feature
-									   // since the optimization failed
+						// restore the cached to reflect the orig. weight for the
+						// current feature since the optimization failed
+						engine.shift(origWeight - weight[fids[i]]);
 						// Restore the orig. weight value
 						weight[fids[i]] = origWeight;
 					}
 				}
 				PRINTLN("------------------------------");
 				// if we haven't made much progress then quit
-				if (bestScore - startScore < tolerance)
+				if (bestScore - startScore < config.caTolerance)
 					break;
 			}
 			// update the (global) best model with the best model found in this
@@ -207,13 +200,13 @@ public class CoorAscent extends Ranker {
 		}
 
 		copy(bestModel, weight);
-		current_feature = -1;// turn off the cache mode
-		scoreOnTrainingData = SimpleMath.round(scorer.score(rank(samples)), 4);
+		engine = null;
+		scoreOnTrainingData = SimpleMath.round(score(samples, scorer), 4);
 		PRINTLN("---------------------------------");
 		PRINTLN("Finished sucessfully.");
 		PRINTLN(scorer.name() + " on training data: " + scoreOnTrainingData);
 		if (validationSamples != null) {
-			bestScoreOnValidationData = scorer.score(rank(validationSamples));
+			bestScoreOnValidationData = score(validationSamples, scorer);
 			PRINTLN(scorer.name() + " on validation data: "
 			        + SimpleMath.round(bestScoreOnValidationData, 4));
 		}
@@ -222,27 +215,9 @@ public class CoorAscent extends Ranker {
 
 	public RankList rank(RankList rl) {
 		double[] score = new double[rl.size()];
-		if (current_feature == -1) {
-			for (int i = 0; i < rl.size(); i++) {
-				for (int j = 0; j < features.length; j++)
-					score[i] += weight[j]
-					        * rl.get(i).getFeatureValue(features[j]);
-				rl.get(i).setCached(score[i]);// use cache of a data point to
-											  // store its score given the model
-											  // at this state
-			}
-		} else// This branch is only active during the training process. Here we
-			  // trade the "clean" codes for efficiency
-		{
-			for (int i = 0; i < rl.size(); i++) {
-				// cached score = a_1*x_1 + a_2*x_2 + ... + a_n*x_n
-				// a_2 ==> a'_2
-				// new score = cached score + (a'_2 - a_2)*x_2 ====> NO NEED TO
-				// RE-COMPUTE THE WHOLE THING
-				score[i] = rl.get(i).getCached() + weight_change
-				        * rl.get(i).getFeatureValue(features[current_feature]);
-				rl.get(i).setCached(score[i]);
-			}
+		for (int i = 0; i < rl.size(); i++) {
+			for (int j = 0; j < features.length; j++)
+				score[i] += weight[j] * rl.get(i).getFeatureValue(features[j]);
 		}
 		int[] idx = MergeSorter.sort(score, false);
 		return new RankList(rl, idx);
@@ -269,13 +244,13 @@ public class CoorAscent extends Ranker {
 
 	public String model() {
 		String output = "## " + name() + "\n";
-		output += "## Restart = " + nRestart + "\n";
-		output += "## MaxIteration = " + nMaxIteration + "\n";
-		output += "## StepBase = " + stepBase + "\n";
-		output += "## StepScale = " + stepScale + "\n";
-		output += "## Tolerance = " + tolerance + "\n";
-		output += "## Regularized = " + regularized + "\n";
-		output += "## Slack = " + slack + "\n";
+		output += "## Restart = " + config.caRestart + "\n";
+		output += "## MaxIteration = " + config.caMaxIteration + "\n";
+		output += "## StepBase = " + config.caStepBase + "\n";
+		output += "## StepScale = " + config.caStepScale + "\n";
+		output += "## Tolerance = " + config.caTolerance + "\n";
+		output += "## Regularized = " + config.caRegularized + "\n";
+		output += "## Slack = " + config.caSlack + "\n";
 		output += toString();
 		return output;
 	}
@@ -312,12 +287,12 @@ public class CoorAscent extends Ranker {
 	}
 
 	public void printParameters() {
-		PRINTLN("No. of random restarts: " + nRestart);
+		PRINTLN("No. of random restarts: " + config.caRestart);
 		PRINTLN("No. of iterations to search in each direction: "
-		        + nMaxIteration);
-		PRINTLN("Tolerance: " + tolerance);
-		if (regularized)
-			PRINTLN("Reg. param: " + slack);
+		        + config.caMaxIteration);
+		PRINTLN("Tolerance: " + config.caTolerance);
+		if (config.caRegularized)
+			PRINTLN("Reg. param: " + config.caSlack);
 		else
 			PRINTLN("Regularization: No");
 	}
@@ -326,29 +301,6 @@ public class CoorAscent extends Ranker {
 		return "Coordinate Ascent";
 	}
 
-	private void updateCached() {
-		for (int j = 0; j < samples.size(); j++) {
-			RankList rl = samples.get(j);
-			for (int i = 0; i < rl.size(); i++) {
-				// cached score = a_1*x_1 + a_2*x_2 + ... + a_n*x_n
-				// a_2 ==> a'_2
-				// new score = cached score + (a'_2 - a_2)*x_2 ====> NO NEED TO
-				// RE-COMPUTE THE WHOLE THING
-				double score = rl.get(i).getCached() + weight_change
-				        * rl.get(i).getFeatureValue(features[current_feature]);
-				rl.get(i).setCached(score);
-			}
-		}
-	}
-
-	private void scaleCached(double sum) {
-		for (int j = 0; j < samples.size(); j++) {
-			RankList rl = samples.get(j);
-			for (int i = 0; i < rl.size(); i++)
-				rl.get(i).setCached(rl.get(i).getCached() / sum);
-		}
-	}
-
 	private int[] getShuffledFeatures() {
 		int[] fids = new int[features.length];
 		List<Integer> l = new ArrayList<Integer>();
@@ -398,4 +350,4 @@ public class CoorAscent extends Ranker {
 	public double distance(CoorAscent ca) {
 		return getDistance(weight, ca.weight);
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
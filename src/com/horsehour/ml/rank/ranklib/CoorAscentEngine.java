@@ -0,0 +1,221 @@
+package com.horsehour.ml.rank.ranklib;
+
+import java.util.List;
+
+/**
+ * Incremental evaluation of a linear model for coordinate ascent. Document
+ * scores are kept in one array for all queries, so that moving the weight of
+ * the selected feature by c only needs s += c * x on each document, followed
+ * by a re-sort and re-scoring of each query. Queries are evaluated in
+ * parallel on MyThreadPool, each chunk with its own sort buffers; metric
+ * state comes from MetricScorer.createContext() where available.
+ *
+ * The scores and rankings are computed exactly as CoorAscent.rank() with
+ * MergeSorter, so training follows the same path as scoring rank(samples).
+ * When the metric has a cutoff (MetricScorer.depth()), only that many top
+ * positions are ranked, by TopKSorter, in the same order.
+ *
+ * @author Chunheng Jiang
+ */
+public class CoorAscentEngine {
+	protected List<RankList> samples = null;
+	protected int[] features = null;
+	protected MetricScorer scorer = null;
+
+	protected int[] offset = null;// first document of each query
+	protected double[] scores = null;// by document
+	protected float[] column = null;// values of the selected feature
+	protected MetricContext[] contexts = null;// null if the metric has none
+	protected double[] metric = null;// by query, for the current scores
+	protected int depth = 0;// positions the scorer looks at, 0 for all
+
+	protected Chunk[] chunks = null;
+
+	public CoorAscentEngine(List<RankList> samples, int[] features,
+	        MetricScorer scorer) {
+		this.samples = samples;
+		this.features = features;
+		this.scorer = scorer;
+		depth = scorer.depth();
+
+		offset = new int[samples.size() + 1];
+		int maxSize = 0;
+		for (int i = 0; i < samples.size(); i++) {
+			offset[i + 1] = offset[i] + samples.get(i).size();
+			maxSize = Math.max(maxSize, samples.get(i).size());
+		}
+		scores = new double[offset[samples.size()]];
+		column = new float[scores.length];
+		metric = new double[samples.size()];
+
+		contexts = new MetricContext[samples.size()];
+		for (int i = 0; i < samples.size() && contexts != null; i++) {
+			contexts[i] = scorer.createContext(samples.get(i));
+			if (contexts[i] == null)
+				contexts = null;
+		}
+
+		MyThreadPool p = MyThreadPool.getInstance();
+		int[] partition = (p == null || p.size() == 1) ? new int[] { 0,
+		        samples.size() } : p.partition(samples.size());
+		chunks = new Chunk[partition.length - 1];
+		for (int i = 0; i < chunks.length; i++)
+			chunks[i] = new Chunk(partition[i], partition[i + 1], maxSize);
+	}
+
+	/**
+	 * Recompute all scores from the weights (weight[j] of features[j])
+	 */
+	public void reset(double[] weight) {
+		for (int i = 0; i < samples.size(); i++) {
+			RankList rl = samples.get(i);
+			for (int d = 0; d < rl.size(); d++) {
+				double s = 0;
+				for (int j = 0; j < features.length; j++)
+					s += weight[j] * rl.get(d).getFeatureValue(features[j]);
+				scores[offset[i] + d] = s;
+			}
+		}
+	}
+
+	/**
+	 * Cache the values of features[f], the coordinate moved by the next
+	 * calls to step() and shift()
+	 */
+	public void select(int f) {
+		for (int i = 0; i < samples.size(); i++) {
+			RankList rl = samples.get(i);
+			for (int d = 0; d < rl.size(); d++)
+				column[offset[i] + d] = rl.get(d).getFeatureValue(features[f]);
+		}
+	}
+
+	/**
+	 * Move the weight of the selected feature by change and evaluate the model
+	 *
+	 * @return average metric over all queries
+	 */
+	public double step(double change) {
+		return run(change, true);
+	}
+
+	/**
+	 * Move the weight of the selected feature by change, without evaluating
+	 */
+	public void shift(double change) {
+		for (int k = 0; k < scores.length; k++)
+			scores[k] = scores[k] + change * column[k];
+	}
+
+	/**
+	 * Divide all scores by sum (the weights have been normalized by it)
+	 */
+	public void scale(double sum) {
+		for (int k = 0; k < scores.length; k++)
+			scores[k] = scores[k] / sum;
+	}
+
+	/**
+	 * @return average metric over all queries for the current scores
+	 */
+	public double score() {
+		return run(0, false);
+	}
+
+	private double run(double change, boolean move) {
+		MyThreadPool p = MyThreadPool.getInstance();
+		for (Chunk c : chunks) {
+			c.change = change;
+			c.move = move;
+		}
+		if (chunks.length == 1)
+			chunks[0].run();
+		else {
+			for (Chunk c : chunks)
+				p.execute(c);
+			p.await();
+		}
+		// same summation order as MetricScorer.score(List<RankList>)
+		double score = 0.0;
+		for (int i = 0; i < metric.length; i++)
+			score += metric[i];
+		return score / metric.length;
+	}
+
+	/**
+	 * Queries [from, to) with their own buffers
+	 */
+	class Chunk implements Runnable {
+		int from = 0;
+		int to = 0;
+		int[] idx = null;
+		int[] tmp = null;
+		double change = 0;
+		boolean move = false;
+
+		Chunk(int from, int to, int maxSize) {
+			this.from = from;
+			this.to = to;
+			idx = new int[maxSize];
+			tmp = new int[maxSize];
+		}
+
+		public void run() {
+			for (int i = from; i < to; i++) {
+				int base = offset[i], n = offset[i + 1] - base;
+				if (move)
+					for (int k = base; k < base + n; k++)
+						scores[k] = scores[k] + change * column[k];
+				if (depth > 0) {// only the top of the ranking is scored
+					TopKSorter.sort(scores, base, n, depth, idx);
+					if (contexts == null) {
+						metric[i] = scorer.score(samples.get(i), idx);
+						continue;
+					}
+				} else if (contexts == null) {
+					int[] order = MergeSorter.sort(slice(base, n), false);
+					metric[i] = scorer.score(new RankList(samples.get(i), order));
+					continue;
+				} else {
+					for (int d = 0; d < n; d++)
+						idx[d] = d;
+					sort(base, 0, n);
+				}
+				contexts[i].rank(idx);// only idx[0, n) is read
+				metric[i] = contexts[i].score();
+			}
+		}
+
+		private double[] slice(int base, int n) {
+			double[] s = new double[n];
+			System.arraycopy(scores, base, s, 0, n);
+			return s;
+		}
+
+		/**
+		 * Sort idx[from, to) by descending score; same splits and merges as
+		 * MergeSorter.sort(double[], false), hence the same order on ties
+		 */
+		private void sort(int base, int from, int to) {
+			int len = to - from;
+			if (len <= 1)
+				return;
+			int mid = from + len / 2;
+			sort(base, from, mid);
+			sort(base, mid, to);
+
+			int i = from, j = mid, c = from;
+			while (i < mid && j < to) {
+				if (scores[base + idx[i]] >= scores[base + idx[j]])
+					tmp[c++] = idx[i++];
+				else
+					tmp[c++] = idx[j++];
+			}
+			while (i < mid)
+				tmp[c++] = idx[i++];
+			while (j < to)
+				tmp[c++] = idx[j++];
+			System.arraycopy(tmp, from, idx, from, len);
+		}
+	}
+}
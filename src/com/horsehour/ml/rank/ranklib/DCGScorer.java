@@ -9,9 +9,6 @@
 
 package com.horsehour.ml.rank.ranklib;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class DCGScorer extends MetricScorer {
 	public DCGScorer() {
 		this.k = 10;
@@ -29,24 +26,19 @@ public class DCGScorer extends MetricScorer {
 	 * Compute DCG at k.
 	 */
 	public double score(RankList rl) {
-		List<Integer> rel = new ArrayList<Integer>();
-		for (int i = 0; i < rl.size(); i++)
-			rel.add((int) rl.get(i).getLabel());
-		if (rl.size() < 1)
-			return -1.0;
-
-		return getDCG(rel, k);
+		return score(id(rl), rl.getLabels(), null);
 	}
 
-	public String name() {
-		return "DCG@" + k;
+	public double score(RankList rl, int[] idx) {
+		return score(id(rl), rl.getLabels(), idx);
 	}
 
-	private double getDCG(List<Integer> rel, int k) {
-		int size = k;
-		if (k > rel.size() || k <= 0)
-			size = rel.size();
+	public double score(String qid, float[] labels, int[] idx) {
+		int n = labels.length;
+		if (n < 1)
+			return -1.0;
 
+		int size = (k > n || k <= 0) ? n : k;
 		/*
 		 * double dcg = rel.get(0); for(int i=1;i<size;i++) { dcg +=
 		 * ((double)rel.get(i))/SimpleMath.logBase2(i+1); }
@@ -54,12 +46,58 @@ public class DCGScorer extends MetricScorer {
 		// used by yahoo! L2R challenge
 		double dcg = 0.0;
 		for (int i = 1; i <= size; i++) {
-			dcg += (Math.pow(2.0, rel.get(i - 1)) - 1.0)
-			        / SimpleMath.logBase2(i + 1);
+			int rel = (int) labels[(idx == null) ? i - 1 : idx[i - 1]];
+			dcg += (Math.pow(2.0, rel) - 1.0) / SimpleMath.logBase2(i + 1);
 		}
 		return dcg;
 	}
 
+	public int depth() {
+		return k;
+	}
+
+	public String name() {
+		return "DCG@" + k;
+	}
+
+	public MetricContext createContext(RankList rl) {
+		return new Context(rl, k);
+	}
+
+	static class Context extends MetricContext {
+		private double[] gain = null;// 2^label by document
+		private double[] discount = null;
+		private int[] idx = null;
+		private double[] log2 = null;
+
+		Context(RankList rl, int k) {
+			super(rl, k);
+			discount = discount(n);
+			log2 = log2(n);
+			gain = new double[n];
+			for (int i = 0; i < n; i++)
+				gain[i] = Math.pow(2.0, labels[i]);
+		}
+
+		public void rank(int[] idx) {
+			this.idx = idx;
+		}
+
+		public double delta(int i, int j) {
+			return (discount[i] - discount[j]) * (gain[idx[i]] - gain[idx[j]]);
+		}
+
+		public double score() {
+			if (n < 1)
+				return -1.0;
+			double dcg = 0.0;
+			for (int i = 1, m = depth(); i <= m; i++)
+				dcg += (Math.pow(2.0, (int) labels[idx[i - 1]]) - 1.0)
+				        / log2[i];
+			return dcg;
+		}
+	}
+
 	public double[][] swapChange(RankList rl) {
 		int size = (rl.size() > k) ? k : rl.size();
 		double[][] changes = new double[rl.size()][];
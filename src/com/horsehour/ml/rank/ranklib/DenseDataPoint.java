@@ -0,0 +1,153 @@
+/*===============================================================================
+ * Copyright (c) 2010-2012 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set 
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+
+package com.horsehour.ml.rank.ranklib;
+
+import java.util.Arrays;
+
+/**
+ * Data point whose feature values are stored in an array indexed by feature
+ * id (fVals[0] is un-used), missing features padded with INFINITY. Suited to
+ * datasets where most features are present on most documents.
+ * 
+ * @author Chunheng Jiang
+ */
+public class DenseDataPoint extends DataPoint {
+	protected float[] fVals = null;// fVals[0] is un-used. Feature id MUST start
+								   // from 1
+
+	/**
+	 * The input must have the form: label qid:id fid:value ... # description
+	 * 
+	 * @param text
+	 */
+	public DenseDataPoint(String text) {
+		fVals = new float[51];
+		Arrays.fill(fVals, INFINITY);
+		int lastFeature = -1;
+		try {
+			int idx = text.lastIndexOf("#");
+			if (idx != -1) {
+				description = text.substring(idx);
+				text = text.substring(0, idx).trim();// remove the comment part
+													 // at the end of the line
+			}
+			String[] fs = text.split(" ");
+			label = Float.parseFloat(fs[0]);
+			id = getValue(fs[1]);
+			for (int i = 2; i < fs.length; i++) {
+				int f = Integer.parseInt(getKey(fs[i]));
+				if (f >= fVals.length)
+					grow(f + 1);
+				fVals[f] = Float.parseFloat(getValue(fs[i]));
+				if (f > lastFeature)
+					lastFeature = f;
+			}
+			// shrink fVals
+			fVals = Arrays.copyOf(fVals, lastFeature + 1);
+		} catch (Exception ex) {
+			System.out.println("Error in DenseDataPoint(text) constructor");
+		}
+	}
+
+	/**
+	 * @param label
+	 * @param id
+	 * @param fVals
+	 *            feature values indexed by feature id, padded with INFINITY
+	 * @param description
+	 */
+	public DenseDataPoint(float label, String id, float[] fVals,
+	        String description) {
+		super(label, id, description);
+		this.fVals = fVals;
+	}
+
+	/**
+	 * Dense copy of a sparse data point
+	 */
+	public DenseDataPoint(SparseDataPoint dp) {
+		super(dp.label, dp.id, dp.description);
+		cached = dp.cached;
+		fVals = dp.getFeatureVector();
+	}
+
+	private void grow(int length) {
+		int n = fVals.length;
+		fVals = Arrays.copyOf(fVals, Math.max(length, n + (n >> 1)));
+		Arrays.fill(fVals, n, fVals.length, INFINITY);
+	}
+
+	public float getFeatureValue(int fid) {
+		if (fid >= fVals.length)
+			return 0.0f;
+		if (fVals[fid] < INFINITY + 1)// +1 just to be safe
+			return 0.0f;
+		return fVals[fid];
+	}
+
+	public void setFeatureValue(int fid, float fval) {
+		if (fid >= fVals.length) {
+			int n = fVals.length;
+			fVals = Arrays.copyOf(fVals, fid + 1);
+			Arrays.fill(fVals, n, fid + 1, INFINITY);
+		}
+		fVals[fid] = fval;
+	}
+
+	public int getLastFeature() {
+		for (int f = fVals.length - 1; f > 0; f--)
+			if (fVals[f] > INFINITY + 1)
+				return f;
+		return -1;
+	}
+
+	public int getStoredCount() {
+		return fVals.length;
+	}
+
+	public float[] getFeatureVector() {
+		return fVals;
+	}
+
+	public void normalize(int[] fids, float[] norm) {
+		for (int i = 0; i < fids.length; i++)
+			if (norm[i] > 0.0 && fids[i] < fVals.length
+			        && fVals[fids[i]] > INFINITY + 1)
+				fVals[fids[i]] /= norm[i];
+	}
+
+	public void standardize(int[] fids, float[] mean, float[] std) {
+		for (int i = 0; i < fids.length; i++)
+			if (std[i] > 0.0)
+				setFeatureValue(fids[i], (getFeatureValue(fids[i]) - mean[i])
+				        / std[i]);
+	}
+
+	public void addFeatures(int featureCount, float[] values) {
+		float[] tmp = new float[(featureCount + 1) + values.length];
+		int n = Math.min(fVals.length, featureCount + 1);
+		System.arraycopy(fVals, 0, tmp, 0, n);
+		Arrays.fill(tmp, n, featureCount + 1, INFINITY);
+		System.arraycopy(values, 0, tmp, featureCount + 1, values.length);
+		fVals = tmp;
+	}
+
+	public String toString() {
+		StringBuilder output = new StringBuilder();
+		output.append(label).append(" id:").append(id).append(" ");
+		for (int i = 1; i < fVals.length; i++)
+			if (fVals[i] > INFINITY + 1)// +1 just to be safe
+				output.append(i).append(":").append(fVals[i])
+				        .append((i == fVals.length - 1) ? "" : " ");
+		output.append(" ").append(description);
+		return output.toString();
+	}
+}
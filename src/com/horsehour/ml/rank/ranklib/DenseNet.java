@@ -0,0 +1,241 @@
+package com.horsehour.ml.rank.ranklib;
+
+import java.util.List;
+
+/**
+ * Dense copy of a feed-forward network built by RankNet (logistic neurons in
+ * all layers but the input one). The weights of layer l are one row-major
+ * matrix, a row per neuron holding the weights of its in-links in wiring
+ * order: one per neuron of layer l-1, then the bias. Forward and backward
+ * passes run on all documents of a rank list at a time, as blocked matrix
+ * products over these rows.
+ *
+ * The weights are copied from and back to the Neuron/Synapse graph, which
+ * remains the form models are saved and loaded in.
+ *
+ * @author Chunheng Jiang
+ */
+public class DenseNet {
+	private static final int BLOCK = 64;// documents per tile
+
+	protected int[] sizes = null;// neurons by layer, the bias not included
+	protected double[][] weight = null;// weight[l], l >= 1
+	private final ThreadLocal<Workspace> local = new ThreadLocal<Workspace>();
+
+	public DenseNet(List<Layer> layers) {
+		sizes = new int[layers.size()];
+		sizes[0] = layers.get(0).size() - 1;
+		for (int l = 1; l < sizes.length; l++)
+			sizes[l] = layers.get(l).size();
+
+		weight = new double[sizes.length][];
+		for (int l = 1; l < sizes.length; l++) {
+			int m = sizes[l - 1] + 1;
+			weight[l] = new double[sizes[l] * m];
+			for (int k = 0; k < sizes[l]; k++) {
+				List<Synapse> in = layers.get(l).get(k).getInLinks();
+				for (int c = 0; c < m; c++)
+					weight[l][k * m + c] = in.get(c).getWeight();
+			}
+		}
+	}
+
+	/**
+	 * Write the weights back into the synapses of the graph they were copied
+	 * from
+	 */
+	public void export(List<Layer> layers) {
+		for (int l = 1; l < sizes.length; l++) {
+			int m = sizes[l - 1] + 1;
+			for (int k = 0; k < sizes[l]; k++) {
+				List<Synapse> in = layers.get(l).get(k).getInLinks();
+				for (int c = 0; c < m; c++)
+					in.get(c).setWeight(weight[l][k * m + c]);
+			}
+		}
+	}
+
+	/**
+	 * @return output of the network on p, computed as Neuron.computeOutput()
+	 *         does
+	 */
+	public double eval(DataPoint p, int[] features) {
+		double[] a = new double[sizes[0]];
+		for (int c = 0; c < a.length; c++)
+			a[c] = p.getFeatureValue(features[c]);
+		for (int l = 1; l < sizes.length; l++) {
+			int m = sizes[l - 1] + 1;
+			double[] w = weight[l];
+			double[] b = new double[sizes[l]];
+			for (int k = 0; k < b.length; k++) {
+				double wsum = 0.0;
+				for (int c = 0; c < m - 1; c++)
+					wsum += a[c] * w[k * m + c];
+				wsum += 1.0 * w[k * m + m - 1];
+				b[k] = 1.0 / (1.0 + Math.exp(-wsum));
+			}
+			a = b;
+		}
+		return a[0];
+	}
+
+	public Workspace workspace() {
+		return new Workspace();
+	}
+
+	/**
+	 * @return a workspace of the calling thread, reused by its later calls,
+	 *         so that threads scoring on the same network do not share one
+	 */
+	public Workspace localWorkspace() {
+		Workspace ws = local.get();
+		if (ws == null) {
+			ws = new Workspace();
+			local.set(ws);
+		}
+		return ws;
+	}
+
+	/**
+	 * Feed all documents of rl through the network
+	 *
+	 * @return the outputs, one per document (valid until the next call)
+	 */
+	public double[] forward(Workspace ws, RankList rl, int[] features) {
+		int n = rl.size();
+		ws.ensure(n);
+		double[] x = ws.act[0];
+		int d = sizes[0];
+		for (int i = 0; i < n; i++) {
+			DataPoint p = rl.get(i);
+			for (int c = 0; c < d; c++)
+				x[i * d + c] = p.getFeatureValue(features[c]);
+		}
+		for (int l = 1; l < sizes.length; l++)
+			layer(ws.act[l - 1], sizes[l - 1], weight[l], sizes[l], ws.act[l],
+			        n);
+		return ws.act[sizes.length - 1];
+	}
+
+	/**
+	 * out[n x h] = logistic(in[n x m] * w^T + bias)
+	 */
+	private void layer(double[] in, int m, double[] w, int h, double[] out,
+	        int n) {
+		int stride = m + 1;
+		for (int i0 = 0; i0 < n; i0 += BLOCK) {
+			int i1 = Math.min(n, i0 + BLOCK);
+			for (int k = 0; k < h; k++) {
+				int row = k * stride;
+				for (int i = i0; i < i1; i++) {
+					int a = i * m;
+					double wsum = 0.0;
+					for (int c = 0; c < m; c++)
+						wsum += in[a + c] * w[row + c];
+					wsum += 1.0 * w[row + m];
+					out[i * h + k] = 1.0 / (1.0 + Math.exp(-wsum));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Back-propagate from the output layer and add the gradient to the buffers
+	 * of ws. Must follow forward() on the same workspace.
+	 *
+	 * @param err
+	 *            err[i] is the derivative of the objective w.r.t. the weighted
+	 *            input sum of the output neuron on document i
+	 */
+	public void backward(Workspace ws, int n, double[] err) {
+		int last = sizes.length - 1;
+		System.arraycopy(err, 0, ws.delta[last], 0, n);
+		for (int l = last; l >= 1; l--) {
+			int m = sizes[l - 1], h = sizes[l], stride = m + 1;
+			double[] in = ws.act[l - 1];
+			double[] dl = ws.delta[l];
+			double[] g = ws.grad[l];
+			// g[h x (m+1)] += dl^T[h x n] * [in | 1][n x (m+1)]
+			for (int i0 = 0; i0 < n; i0 += BLOCK) {
+				int i1 = Math.min(n, i0 + BLOCK);
+				for (int k = 0; k < h; k++) {
+					int row = k * stride;
+					for (int i = i0; i < i1; i++) {
+						double e = dl[i * h + k];
+						if (e == 0)
+							continue;
+						int a = i * m;
+						for (int c = 0; c < m; c++)
+							g[row + c] += e * in[a + c];
+						g[row + m] += e;
+					}
+				}
+			}
+			if (l == 1)
+				break;
+			// delta of layer l-1: (dl * w without the bias) .* a(1-a)
+			double[] w = weight[l];
+			double[] dp = ws.delta[l - 1];
+			for (int i = 0; i < n; i++) {
+				int a = i * m;
+				for (int c = 0; c < m; c++)
+					dp[a + c] = 0;
+				for (int k = 0; k < h; k++) {
+					double e = dl[i * h + k];
+					if (e == 0)
+						continue;
+					int row = k * stride;
+					for (int c = 0; c < m; c++)
+						dp[a + c] += e * w[row + c];
+				}
+				for (int c = 0; c < m; c++) {
+					double o = in[a + c];
+					dp[a + c] *= o * (1 - o);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add rate times the gradients accumulated in ws (in that order) to the
+	 * weights and clear them
+	 */
+	public void update(Workspace[] ws, double rate) {
+		for (int l = 1; l < sizes.length; l++) {
+			double[] w = weight[l];
+			for (int t = 0; t < ws.length; t++) {
+				double[] g = ws[t].grad[l];
+				for (int k = 0; k < w.length; k++) {
+					w[k] += rate * g[k];
+					g[k] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Per-thread buffers: activations and deltas of each layer for the
+	 * documents of one rank list, and the gradient accumulated over a batch
+	 */
+	public class Workspace {
+		protected double[][] act = new double[sizes.length][0];
+		protected double[][] delta = new double[sizes.length][0];
+		protected double[][] grad = new double[sizes.length][];
+		protected int capacity = 0;
+
+		protected Workspace() {
+			for (int l = 1; l < sizes.length; l++)
+				grad[l] = new double[weight[l].length];
+		}
+
+		protected void ensure(int n) {
+			if (n <= capacity)
+				return;
+			capacity = Math.max(n, 2 * capacity);
+			for (int l = 0; l < sizes.length; l++) {
+				act[l] = new double[capacity * sizes[l]];
+				delta[l] = new double[capacity * sizes[l]];
+			}
+		}
+	}
+}
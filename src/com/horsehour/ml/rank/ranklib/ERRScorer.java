@@ -9,9 +9,7 @@
 
 package com.horsehour.ml.rank.ranklib;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * 
@@ -41,32 +39,100 @@ public class ERRScorer extends MetricScorer {
 	 * top-k portion of the list.
 	 */
 	public double score(RankList rl) {
-		int size = k;
-		if (k > rl.size() || k <= 0)
-			size = rl.size();
+		return score(id(rl), rl.getLabels(), null);
+	}
 
-		List<Integer> rel = new ArrayList<Integer>();
-		for (int i = 0; i < rl.size(); i++)
-			rel.add((int) rl.get(i).getLabel());
+	public double score(RankList rl, int[] idx) {
+		return score(id(rl), rl.getLabels(), idx);
+	}
+
+	public double score(String qid, float[] labels, int[] idx) {
+		int size = k;
+		if (k > labels.length || k <= 0)
+			size = labels.length;
 
 		double s = 0.0;
 		double p = 1.0;
 		for (int i = 1; i <= size; i++) {
-			double R = R(rel.get(i - 1));
+			double R = R((int) labels[(idx == null) ? i - 1 : idx[i - 1]]);
 			s += p * R / i;
 			p *= (1.0 - R);
 		}
 		return s;
 	}
 
+	public int depth() {
+		return k;
+	}
+
 	public String name() {
 		return "ERR@" + k;
 	}
 
-	private double R(int rel) {
+	private static double R(int rel) {
 		return (double) ((Math.pow(2.0, rel) - 1) / MAX);
 	}
 
+	public MetricContext createContext(RankList rl) {
+		return new Context(rl, k);
+	}
+
+	/**
+	 * Positional tables are only filled for the top cutoff() positions, the
+	 * rest stay 0, exactly as in swapChange(RankList)
+	 */
+	static class Context extends MetricContext {
+		private int[] lab = null;// by position
+		private double[] R = null;
+		private double[] np = null;
+		private int[] idx = null;
+
+		Context(RankList rl, int k) {
+			super(rl, k);
+			lab = new int[n];
+			R = new double[n];
+			np = new double[n];
+		}
+
+		public void rank(int[] idx) {
+			this.idx = idx;
+			double p = 1.0;
+			for (int i = 0; i < size; i++) {
+				lab[i] = (int) labels[idx[i]];
+				R[i] = R(lab[i]);
+				np[i] = p * (1.0 - R[i]);
+				p *= np[i];
+			}
+		}
+
+		public double delta(int i, int j) {
+			if (lab[i] == lab[j])
+				return 0;
+			double v1 = 1.0 / (i + 1) * (i == 0 ? 1 : np[i - 1]);
+			double change = v1 * (R[j] - R[i]);
+			double p = (i == 0 ? 1 : np[i - 1]) * (R[i] - R[j]);
+			for (int k = i + 1; k < j; k++) {
+				change += p * R[k] / (1 + k);
+				p *= 1.0 - R[k];
+			}
+			change += (np[j - 1] * (1.0 - R[j]) * R[i] / (1.0 - R[i]) - np[j - 1]
+			        * R[j])
+			        / (j + 1);
+			return change;
+		}
+
+		public double score() {
+			double s = 0.0;
+			double p = 1.0;
+			for (int i = 1, m = depth(); i <= m; i++) {
+				double R = R((int) labels[idx[i - 1]]);
+				s += p * R / i;
+				p *= (1.0 - R);
+			}
+			return s;
+		}
+	}
+
 	public double[][] swapChange(RankList rl) {
 		int size = (rl.size() > k) ? k : rl.size();
 		int[] labels = new int[rl.size()];
@@ -26,6 +26,9 @@ import org.w3c.dom.NodeList;
 public class Ensemble {
 	protected List<RegressionTree> trees = null;
 	protected List<Float> weights = null;
+	protected volatile FlatEnsemble flat = null;// compiled form, see flatten()
+	protected volatile QuickScorer qs = null;// see quickScorer()
+	protected volatile CascadeScorer cascade = null;// see cascade()
 
 	public Ensemble() {
 		trees = new ArrayList<RegressionTree>();
@@ -71,6 +74,9 @@ public class Ensemble {
 	public void add(RegressionTree tree, float weight) {
 		trees.add(tree);
 		weights.add(weight);
+		flat = null;
+		qs = null;
+		cascade = null;
 	}
 
 	public RegressionTree getTree(int k) {
@@ -91,6 +97,9 @@ public class Ensemble {
 	public void remove(int k) {
 		trees.remove(k);
 		weights.remove(k);
+		flat = null;
+		qs = null;
+		cascade = null;
 	}
 
 	public int treeCount() {
@@ -105,10 +114,40 @@ public class Ensemble {
 	}
 
 	public float eval(DataPoint dp) {
-		float s = 0;
-		for (int i = 0; i < trees.size(); i++)
-			s += trees.get(i).eval(dp) * weights.get(i);
-		return s;
+		return flatten().eval(dp);
+	}
+
+	/**
+	 * @return the ensemble compiled into flat arrays, rebuilt lazily after
+	 *         trees are added or removed
+	 */
+	public FlatEnsemble flatten() {
+		FlatEnsemble f = flat;
+		if (f == null)
+			flat = f = new FlatEnsemble(this);
+		return f;
+	}
+
+	/**
+	 * @return the bitvector scorer of this ensemble, rebuilt lazily after
+	 *         trees are added or removed
+	 */
+	public QuickScorer quickScorer() {
+		QuickScorer q = qs;
+		if (q == null)
+			qs = q = new QuickScorer(this);
+		return q;
+	}
+
+	/**
+	 * @return the early-exit top-k scorer of this ensemble, rebuilt lazily
+	 *         after trees are added or removed
+	 */
+	public CascadeScorer cascade() {
+		CascadeScorer c = cascade;
+		if (c == null)
+			cascade = c = new CascadeScorer(flatten());
+		return c;
 	}
 
 	public String toString() {
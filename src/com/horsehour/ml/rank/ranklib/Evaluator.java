@@ -132,10 +132,9 @@ public class Evaluator {
 	}
 
 	public double evaluate(Ranker ranker, List<RankList> rl) {
-		List<RankList> l = rl;
 		if (ranker != null)
-			l = ranker.rank(rl);
-		return testScorer.score(l);
+			return ranker.score(rl, testScorer);
+		return testScorer.score(rl);
 	}
 
 	/**
@@ -275,38 +274,65 @@ public class Evaluator {
 	 * @param nFold
 	 */
 	public void evaluate(String sampleFile, String featureDefFile, int nFold) {
+		List<RankerConfig> grid = new ArrayList<RankerConfig>();
+		grid.add(new RankerConfig());
+		evaluate(sampleFile, featureDefFile, nFold, grid);
+	}
+
+	/**
+	 * Evaluate the currently selected ranking algorithm with every config of
+	 * the grid, using k-fold cross validation. The data is read and split once
+	 * for all configs; runs are scheduled by FoldScheduler.
+	 * 
+	 * @param sampleFile
+	 * @param featureDefFile
+	 * @param nFold
+	 * @param grid
+	 */
+	public void evaluate(String sampleFile, String featureDefFile, int nFold,
+	        List<RankerConfig> grid) {
 		List<List<RankList>> trainingData = new ArrayList<List<RankList>>();
 		List<List<RankList>> testData = new ArrayList<List<RankList>>();
 		int[] features = prepareCV(sampleFile, featureDefFile, nFold,
 		        normalize, trainingData, testData);
 
-		Ranker ranker = null;
-		double origScore = 0.0;
-		double rankScore = 0.0;
-		double oracleScore = 0.0;
-
-		for (int i = 0; i < nFold; i++) {
-			List<RankList> train = trainingData.get(i);
-			List<RankList> test = testData.get(i);
-
-			ranker = rFact.createRanker(type, train, features);
-			ranker.set(trainScorer);
-			ranker.init();
-			ranker.learn();
-
-			double s1 = evaluate(null, test);
-			origScore += s1;
-
-			double s2 = evaluate(ranker, test);
-			rankScore += s2;
-
-			double s3 = evaluate(null, createOracles(test));
-			oracleScore += s3;
+		FoldScheduler scheduler = new FoldScheduler(type, trainScorer,
+		        testScorer, trainingData, testData, features);
+		long start = System.nanoTime();
+		FoldScheduler.Run[] runs = scheduler.run(grid);
+		long time = System.nanoTime() - start;
+
+		if (grid.size() > 1)
+			System.out.println(scheduler.report(runs));
+		else {
+			double origScore = 0.0;
+			double rankScore = 0.0;
+			double oracleScore = 0.0;
+			int nDone = 0;// failed folds are left out of the mean
+			for (int i = 0; i < runs.length; i++) {
+				if (runs[i].failed()) {
+					System.out.println("Fold " + (i + 1) + ": failed ("
+					        + runs[i].failure() + ")");
+					continue;
+				}
+				System.out.println("Fold " + (i + 1) + ": "
+				        + SimpleMath.round(runs[i].rankScore, 4) + " ("
+				        + SimpleMath.round(runs[i].time / 1e9, 2) + "s)");
+				origScore += runs[i].origScore;
+				rankScore += runs[i].rankScore;
+				oracleScore += runs[i].oracleScore;
+				nDone++;
+			}
+			if (nDone < nFold)
+				System.out.println("Mean over " + nDone + " of " + nFold
+				        + " folds:");
+			System.out.println("Total: "
+			        + SimpleMath.round(origScore / nDone, 4) + "\t"
+			        + SimpleMath.round(rankScore / nDone, 4) + "\t"
+			        + SimpleMath.round(oracleScore / nDone, 4) + "\t");
 		}
-
-		System.out.println("Total: " + SimpleMath.round(origScore / nFold, 4)
-		        + "\t" + SimpleMath.round(rankScore / nFold, 4) + "\t"
-		        + SimpleMath.round(oracleScore / nFold, 4) + "\t");
+		System.out.println("Elapsed: " + SimpleMath.round(time / 1e9, 2)
+		        + "s on " + FoldScheduler.nWorker(runs.length) + " worker(s)");
 	}
 
 	public void test(String testFile) {
@@ -326,6 +352,21 @@ public class Evaluator {
 		double rankScore = evaluate(ranker, test);
 		System.out.println(testScorer.name() + " on test data: "
 		        + SimpleMath.round(rankScore, 4));
+		printCascade(ranker);
+	}
+
+	/**
+	 * Report how much of the ensemble the cascade of a LambdaMART ranker has
+	 * evaluated
+	 */
+	private void printCascade(Ranker ranker) {
+		if (!(ranker instanceof LambdaMART)
+		        || !ranker.getConfig().martCascade)
+			return;
+		double f = ((LambdaMART) ranker).getEnsemble().cascade()
+		        .treeFraction();
+		System.out.println("Trees evaluated per document: "
+		        + SimpleMath.round(100 * f, 2) + "%");
 	}
 
 	public void test(String modelFile, String testFile, boolean printIndividual) {
@@ -338,8 +379,8 @@ public class Evaluator {
 		double rankScore = 0.0;
 		double score = 0.0;
 		for (int i = 0; i < test.size(); i++) {
-			RankList l = ranker.rank(test.get(i));
-			score = testScorer.score(l);
+			RankList l = test.get(i);
+			score = testScorer.score(l, ranker.rank(l, testScorer.depth()));
 			if (printIndividual)
 				System.out.println(testScorer.name() + "   " + l.getID()
 				        + "   " + SimpleMath.round(score, 4));
@@ -352,6 +393,7 @@ public class Evaluator {
 		else
 			System.out.println(testScorer.name() + " on test data: "
 			        + SimpleMath.round(rankScore, 4));
+		printCascade(ranker);
 	}
 
 	public void score(String modelFile, String testFile, String outputFile) {
@@ -478,9 +520,11 @@ public class Evaluator {
 			List<RankList> train = new ArrayList<RankList>();
 			List<RankList> test = new ArrayList<RankList>();
 
-			List<Integer> t = trainSamplesIdx.get(i);
+			boolean[] inTest = new boolean[data.size()];
+			for (int j : trainSamplesIdx.get(i))
+				inTest[j] = true;
 			for (int j = 0; j < data.size(); j++) {
-				if (t.contains(j))
+				if (inTest[j])
 					test.add(new RankList(data.get(j)));
 				else
 					train.add(new RankList(data.get(j)));
@@ -531,17 +575,8 @@ public class Evaluator {
 		return features;
 	}
 
-	private List<RankList> createOracles(List<RankList> rl) {
-		List<RankList> oracles = new ArrayList<RankList>();
-		for (int i = 0; i < rl.size(); i++) {
-			oracles.add(rl.get(i).getCorrectRanking());
-		}
-		return oracles;
-	}
-
 	public int[] getFeatureFromSampleVector(List<RankList> samples) {
-		DataPoint dp = samples.get(0).get(0);
-		int fc = dp.getFeatureCount();
+		int fc = FeatureManager.getFeatureCount(samples);
 		int[] features = new int[fc];
 		for (int i = 0; i < fc; i++)
 			features[i] = i + 1;
@@ -549,7 +584,7 @@ public class Evaluator {
 	}
 
 	private int[] applyNewFeatures(List<RankList> samples, int[] features) {
-		int totalFeatureCount = samples.get(0).get(0).getFeatureCount();
+		int totalFeatureCount = FeatureManager.getFeatureCount(samples);
 		int[] newFeatures = new int[features.length + lcList.size()];
 		System.arraycopy(features, 0, newFeatures, 0, features.length);
 		// for(int i=0;i<features.length;i++)
@@ -566,7 +601,7 @@ public class Evaluator {
 					addedFeatures[k] = lcList.get(k).compute(
 					        p.getExternalFeatureVector());
 
-				p.addFeatures(addedFeatures);
+				p.addFeatures(totalFeatureCount, addedFeatures);
 			}
 		}
 
@@ -599,6 +634,7 @@ public class Evaluator {
 		double ttSplit = 0.0;// train-test split
 		double tvSplit = 0.0;// train-validation split
 		int foldCV = -1;
+		String grid = "";// ranker options of each grid point, ';'-separated
 		String validationFile = "";
 		String testFile = "";
 		int rankerType = 4;
@@ -658,6 +694,15 @@ public class Evaluator {
 			        .println("\t[ -tts <x \\in [0..1]> ]\tSet train-test split to be (x)(1.0-x). -tts will override -tvs");
 			System.out
 			        .println("\t[ -kcv <k> ]\t\tSpecify if you want to perform k-fold cross validation using ONLY the specified training data (default=NoCV)");
+			System.out
+			        .println("\t[ -grid <opts;opts> ]\tWith -kcv, cross-validate each ';'-separated set of ranker options, e.g. \"-tree 500;-tree 1000 -leaf 20\"");
+			System.out
+			        .println("\t[ -cvthread <n> ]\tWith -kcv, the number of cores runs (fold x grid point) may use in total (default="
+			                + FoldScheduler.coreBudget + ", i.e. one run after another)");
+			System.out
+			        .println("\t[ -runthread <n> ]\tWith -kcv, the number of threads of each run (default="
+			                + FoldScheduler.threadsPerRun
+			                + "); runs are trained side by side when cvthread/runthread > 1");
 
 			System.out
 			        .println("\t[ -norm <method>]\tNormalize feature vectors (default=no-normalization). Method can be:");
@@ -686,6 +731,9 @@ public class Evaluator {
 			System.out.println("\t[ -lr <rate> ]\t\tLearning rate (default="
 			        + (new DecimalFormat("###.########"))
 			                .format(RankNet.learningRate) + ")");
+			System.out
+			        .println("\t[ -batch <n> ]\t\tTrain on dense matrices, updating the weights once every n queries; also for ListNet (default="
+			                + RankNet.batchSize + ", i.e. online updates on the neuron graph)");
 
 			System.out.println("");
 			System.out.println("    [-] RankBoost-specific parameters");
@@ -744,6 +792,18 @@ public class Evaluator {
 			System.out
 			        .println("\t[ -estop <e> ]\t\tStop early when no improvement is observed on validaton data in e consecutive rounds (default="
 			                + LambdaMART.nRoundToStopEarly + ")");
+			System.out
+			        .println("\t[ -frontier ]\t\tGrow trees by histogram subtraction, splitting frontier leaves concurrently");
+			System.out
+			        .println("\t[ -qs ]\t\t\tRank documents with QuickScorer (bitvector tree traversal)");
+			System.out
+			        .println("\t[ -cascade ]\t\tWhen evaluating at a cutoff k, stop scoring documents that can no longer reach the top k");
+			System.out
+			        .println("\t[ -stage <t> ]\t\tTrees between two pruning steps of -cascade (default="
+			                + LambdaMART.cascadeStage + ")");
+			System.out
+			        .println("\t[ -cbound <x> ]\t\tScale of the score bounds of -cascade; < 1 prunes more but may change the top k (default="
+			                + LambdaMART.cascadeBound + ", exact)");
 
 			System.out.println("");
 			System.out.println("    [-] ListNet-specific parameters");
@@ -764,6 +824,9 @@ public class Evaluator {
 			System.out
 			        .println("\t[ -frate <r> ]\t\tFeature sampling rate (default="
 			                + RFRanker.featureSamplingRate + ")");
+			System.out
+			        .println("\t[ -bagthread <n> ]\tTrain n bags at a time on one shared binned index (default="
+			                + RFRanker.nBagThread + ", i.e. one bag after another)");
 			int type = (RFRanker.rType.ordinal() - RANKER_TYPE.MART.ordinal());
 			System.out.println("\t[ -rtype <type> ]\tRanker to bag (default="
 			        + type + ", i.e. " + rn[type] + ")");
@@ -829,6 +892,9 @@ public class Evaluator {
 		MyThreadPool.init(Runtime.getRuntime().availableProcessors());
 		// MyThreadPool.init(2);
 
+		RankerConfig cli = new RankerConfig();
+		StringBuilder rankerOptions = new StringBuilder();
+		int last;
 		for (int i = 0; i < args.length; i++) {
 			if (args[i].compareTo("-train") == 0)
 				trainFile = args[++i];
@@ -850,6 +916,12 @@ public class Evaluator {
 				tvSplit = Double.parseDouble(args[++i]);
 			else if (args[i].compareTo("-kcv") == 0)
 				foldCV = Integer.parseInt(args[++i]);
+			else if (args[i].compareTo("-grid") == 0)
+				grid = args[++i];
+			else if (args[i].compareTo("-cvthread") == 0)
+				FoldScheduler.coreBudget = Integer.parseInt(args[++i]);
+			else if (args[i].compareTo("-runthread") == 0)
+				FoldScheduler.threadsPerRun = Integer.parseInt(args[++i]);
 			else if (args[i].compareTo("-validate") == 0)
 				validationFile = args[++i];
 			else if (args[i].compareTo("-test") == 0)
@@ -881,74 +953,13 @@ public class Evaluator {
 			else if (args[i].compareTo("-score") == 0)
 				scoreFile = args[++i];
 
-			// Ranker-specific parameters
-			// RankNet
-			else if (args[i].compareTo("-epoch") == 0) {
-				RankNet.nIteration = Integer.parseInt(args[++i]);
-				ListNet.nIteration = Integer.parseInt(args[i]);
-			} else if (args[i].compareTo("-layer") == 0)
-				RankNet.nHiddenLayer = Integer.parseInt(args[++i]);
-			else if (args[i].compareTo("-node") == 0)
-				RankNet.nHiddenNodePerLayer = Integer.parseInt(args[++i]);
-			else if (args[i].compareTo("-lr") == 0) {
-				RankNet.learningRate = Double.parseDouble(args[++i]);
-				ListNet.learningRate = Neuron.learningRate;
+			// Ranker-specific parameters, see RankerConfig
+			else if ((last = cli.parse(args, i)) >= 0) {
+				for (; i <= last; i++)
+					rankerOptions.append(" " + args[i]);
+				i = last;
 			}
 
-			// RankBoost
-			else if (args[i].compareTo("-tc") == 0) {
-				RankBoost.nThreshold = Integer.parseInt(args[++i]);
-				LambdaMART.nThreshold = Integer.parseInt(args[i]);
-			}
-
-			// AdaRank
-			else if (args[i].compareTo("-noeq") == 0)
-				AdaRank.trainWithEnqueue = false;
-			else if (args[i].compareTo("-max") == 0)
-				AdaRank.maxSelCount = Integer.parseInt(args[++i]);
-
-			// COORDINATE ASCENT
-			else if (args[i].compareTo("-r") == 0)
-				CoorAscent.nRestart = Integer.parseInt(args[++i]);
-			else if (args[i].compareTo("-i") == 0)
-				CoorAscent.nMaxIteration = Integer.parseInt(args[++i]);
-
-			// ranker-shared parameters
-			else if (args[i].compareTo("-round") == 0) {
-				RankBoost.nIteration = Integer.parseInt(args[++i]);
-				AdaRank.nIteration = Integer.parseInt(args[i]);
-			} else if (args[i].compareTo("-reg") == 0) {
-				CoorAscent.slack = Double.parseDouble(args[++i]);
-				CoorAscent.regularized = true;
-			} else if (args[i].compareTo("-tolerance") == 0) {
-				AdaRank.tolerance = Double.parseDouble(args[++i]);
-				CoorAscent.tolerance = Double.parseDouble(args[i]);
-			}
-
-			// MART / LambdaMART / Random forest
-			else if (args[i].compareTo("-tree") == 0) {
-				LambdaMART.nTrees = Integer.parseInt(args[++i]);
-				RFRanker.nTrees = Integer.parseInt(args[i]);
-			} else if (args[i].compareTo("-leaf") == 0) {
-				LambdaMART.nTreeLeaves = Integer.parseInt(args[++i]);
-				RFRanker.nTreeLeaves = Integer.parseInt(args[i]);
-			} else if (args[i].compareTo("-shrinkage") == 0) {
-				LambdaMART.learningRate = Float.parseFloat(args[++i]);
-				RFRanker.learningRate = Float.parseFloat(args[i]);
-			} else if (args[i].compareTo("-mls") == 0) {
-				LambdaMART.minLeafSupport = Integer.parseInt(args[++i]);
-				RFRanker.minLeafSupport = Integer.parseInt(args[i]);
-			} else if (args[i].compareTo("-estop") == 0)
-				LambdaMART.nRoundToStopEarly = Integer.parseInt(args[++i]);
-
-			// Random forest
-			else if (args[i].compareTo("-bag") == 0)
-				RFRanker.nBag = Integer.parseInt(args[++i]);
-			else if (args[i].compareTo("-srate") == 0)
-				RFRanker.subSamplingRate = Float.parseFloat(args[++i]);
-			else if (args[i].compareTo("-frate") == 0)
-				RFRanker.featureSamplingRate = Float.parseFloat(args[++i]);
-
 			else if (args[i].compareTo("-letor") == 0)
 				letor = true;
 
@@ -975,6 +986,7 @@ public class Evaluator {
 
 		if (testMetric.compareTo("") == 0)
 			testMetric = trainMetric;
+		RankerConfig.setDefaults(rankerOptions.toString());
 
 		System.out.println("");
 		// System.out.println((keepOrigFeatures)?"Keep orig. features":"Discard orig. features");
@@ -1032,7 +1044,12 @@ public class Evaluator {
 			System.out.println("");
 
 			// starting to do some work
-			if (foldCV != -1)
+			if (foldCV != -1 && grid.length() > 0) {
+				List<RankerConfig> configs = new ArrayList<RankerConfig>();
+				for (String opts : grid.split(";"))
+					configs.add(new RankerConfig().set(opts));
+				e.evaluate(trainFile, featureDescriptionFile, foldCV, configs);
+			} else if (foldCV != -1)
 				e.evaluate(trainFile, featureDescriptionFile, foldCV);
 			else {
 				if (ttSplit > 0.0)// we should use a held-out portion of the
@@ -13,70 +13,45 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * @author vdang
  */
 public class FeatureHistogram {
 	// Parameter
-	public static float samplingRate = 1;
+	public static float samplingRate = 1;// default for new histograms
 
 	// Variables
+	public float sampling = samplingRate;// feature sampling rate of the tree
+										 // this histogram belongs to
 	public int[] features = null;
 	public float[][] thresholds = null;
 	public double[][] sum = null;
 	public double[][] sqSum = null;
 	public int[][] count = null;
-	public int[][] sampleToThresholdMap = null;
+	public BinnedFeatures bins = null;
 
 	public FeatureHistogram() {
 
 	}
 
-	public void construct(DataPoint[] samples, float[] labels,
-	        int[][] sampleSortedIdx, int[] features, float[][] thresholds) {
-		this.features = features;
-		this.thresholds = thresholds;
+	public void construct(BinnedFeatures bins, float[] labels) {
+		this.bins = bins;
+		this.features = bins.getFeatures();
+		this.thresholds = bins.getThresholds();
 
 		sum = new double[features.length][];
 		sqSum = new double[features.length][];
 		count = new int[features.length][];
-		sampleToThresholdMap = new int[features.length][];
-		for (int i = 0; i < features.length; i++) {
-			int fid = features[i];
-			// get the list of samples associated with this node (sorted in
-			// ascending order with respect to the current feature)
-			int[] idx = sampleSortedIdx[i];
-
-			double sumLeft = 0;
-			double sqSumLeft = 0;
-			float[] threshold = thresholds[i];
-			double[] sumLabel = new double[threshold.length];
-			double[] sqSumLabel = new double[threshold.length];
-			int[] c = new int[threshold.length];
-			int[] stMap = new int[samples.length];
-
-			int last = -1;
-			for (int t = 0; t < threshold.length; t++) {
-				int j = last + 1;
-				// find the first sample that exceeds the current threshold
-				for (; j < idx.length; j++) {
-					int k = idx[j];
-					if (samples[k].getFeatureValue(fid) > threshold[t])
-						break;
-					sumLeft += labels[k];
-					sqSumLeft += labels[k] * labels[k];
-					stMap[k] = t;
-				}
-				last = j - 1;
-				sumLabel[t] = sumLeft;
-				sqSumLabel[t] = sqSumLeft;
-				c[t] = last + 1;
-			}
-			sampleToThresholdMap[i] = stMap;
-			sum[i] = sumLabel;
-			sqSum[i] = sqSumLabel;
-			count[i] = c;
+		for (int f = 0; f < features.length; f++) {
+			int nBin = thresholds[f].length;
+			sum[f] = new double[nBin];
+			sqSum[f] = new double[nBin];
+			count[f] = new int[nBin];
+			bins.accumulate(f, null, labels, sum[f], sqSum[f], count[f]);
+			cumulate(f, true);
 		}
 	}
 
@@ -84,60 +59,40 @@ public class FeatureHistogram {
 		for (int f = 0; f < features.length; f++) {
 			Arrays.fill(sum[f], 0);
 			Arrays.fill(sqSum[f], 0);
-		}
-		for (int k = 0; k < labels.length; k++) {
-			for (int f = 0; f < features.length; f++) {
-				int t = sampleToThresholdMap[f][k];
-				sum[f][t] += labels[k];
-				sqSum[f][t] += labels[k] * labels[k];
-				// count doesn't change, so no need to re-compute
-			}
-		}
-		for (int f = 0; f < features.length; f++) {
-			for (int t = 1; t < thresholds[f].length; t++) {
-				sum[f][t] += sum[f][t - 1];
-				sqSum[f][t] += sqSum[f][t - 1];
-			}
+			// count doesn't change, so no need to re-compute
+			bins.accumulate(f, null, labels, sum[f], sqSum[f], null);
+			cumulate(f, false);
 		}
 	}
 
 	public void construct(FeatureHistogram parent, int[] soi, float[] labels) {
 		this.features = parent.features;
 		this.thresholds = parent.thresholds;
+		this.bins = parent.bins;
 
 		sum = new double[features.length][];
 		sqSum = new double[features.length][];
 		count = new int[features.length][];
-		sampleToThresholdMap = parent.sampleToThresholdMap;
-
-		// init
-		for (int i = 0; i < features.length; i++) {
-			float[] threshold = thresholds[i];
-			sum[i] = new double[threshold.length];
-			sqSum[i] = new double[threshold.length];
-			count[i] = new int[threshold.length];
-			Arrays.fill(sum[i], 0);
-			Arrays.fill(sqSum[i], 0);
-			Arrays.fill(count[i], 0);
-		}
-
-		// update
-		for (int i = 0; i < soi.length; i++) {
-			int k = soi[i];
-			for (int f = 0; f < features.length; f++) {
-				int t = sampleToThresholdMap[f][k];
-				sum[f][t] += labels[k];
-				sqSum[f][t] += labels[k] * labels[k];
-				count[f][t]++;
-			}
+		for (int f = 0; f < features.length; f++) {
+			int nBin = thresholds[f].length;
+			sum[f] = new double[nBin];
+			sqSum[f] = new double[nBin];
+			count[f] = new int[nBin];
+			bins.accumulate(f, soi, labels, sum[f], sqSum[f], count[f]);
+			cumulate(f, true);
 		}
+	}
 
-		for (int f = 0; f < features.length; f++) {
-			for (int t = 1; t < thresholds[f].length; t++) {
-				sum[f][t] += sum[f][t - 1];
-				sqSum[f][t] += sqSum[f][t - 1];
+	/**
+	 * Turn per-bin statistics of feature f into prefix sums, so that entry t
+	 * covers all samples going to the left of threshold t
+	 */
+	private void cumulate(int f, boolean withCount) {
+		for (int t = 1; t < thresholds[f].length; t++) {
+			sum[f][t] += sum[f][t - 1];
+			sqSum[f][t] += sqSum[f][t - 1];
+			if (withCount)
 				count[f][t] += count[f][t - 1];
-			}
 		}
 	}
 
@@ -148,7 +103,7 @@ public class FeatureHistogram {
 		sum = new double[features.length][];
 		sqSum = new double[features.length][];
 		count = new int[features.length][];
-		sampleToThresholdMap = parent.sampleToThresholdMap;
+		bins = parent.bins;
 
 		for (int i = 0; i < features.length; i++) {
 			float[] threshold = thresholds[i];
@@ -170,8 +125,52 @@ public class FeatureHistogram {
 		}
 	}
 
-	public Split findBestSplit(Split sp, DataPoint[] samples, float[] labels,
-	        int minLeafSupport) {
+	public Split findBestSplit(Split sp, float[] labels, int minLeafSupport) {
+		Candidate c = findCandidate(sp, minLeafSupport);
+		if (c == null)
+			return null;
+
+		FeatureHistogram lh = new FeatureHistogram();
+		lh.sampling = sampling;
+		lh.construct(sp.hist, c.left, labels);
+		FeatureHistogram lr = new FeatureHistogram();
+		lr.sampling = sampling;
+		lr.construct(sp.hist, lh);
+		c.leftHist = lh;
+		c.rightHist = lr;
+		return c.apply(sp);
+	}
+
+	/**
+	 * Same search as findBestSplit(Split, float[], int), but the node is left
+	 * untouched: the histogram of the smaller child is built into a buffer
+	 * taken from the pool, and the larger one is derived by subtraction. If
+	 * reuseParent is set, the larger child takes over the buffer of this
+	 * histogram, which must then no longer be used for the node itself.
+	 * 
+	 * @return the split to be applied with Candidate.apply(sp), or null if the
+	 *         node is unsplitable
+	 */
+	public Candidate findBestSplit(Split sp, float[] labels,
+	        int minLeafSupport, HistogramPool pool, boolean reuseParent) {
+		Candidate c = findCandidate(sp, minLeafSupport);
+		if (c == null)
+			return null;
+
+		boolean leftSmaller = c.left.length <= c.right.length;
+		FeatureHistogram small = pool.acquire();
+		small.fill(this, leftSmaller ? c.left : c.right, labels);
+		FeatureHistogram large = reuseParent ? this : pool.acquire();
+		large.subtract(this, small);
+		c.leftHist = leftSmaller ? small : large;
+		c.rightHist = leftSmaller ? large : small;
+		return c;
+	}
+
+	/**
+	 * Find the best split of the node, and partition its samples accordingly
+	 */
+	protected Candidate findCandidate(Split sp, int minLeafSupport) {
 		if (sp.getDeviance() >= 0.0 && sp.getDeviance() <= 0.0)// equals 0
 			return null;// no need to split
 
@@ -183,9 +182,9 @@ public class FeatureHistogram {
 
 		int[] usedFeatures = null;// index of the features to be used for tree
 								  // splitting
-		if (samplingRate < 1)// need to do sub sampling (feature sampling)
+		if (sampling < 1)// need to do sub sampling (feature sampling)
 		{
-			int size = (int) (samplingRate * features.length);
+			int size = (int) (sampling * features.length);
 			usedFeatures = new int[size];
 			// put all features into a pool
 			List<Integer> fpool = new ArrayList<Integer>();
@@ -249,7 +248,6 @@ public class FeatureHistogram {
 		// if(minS >= sp.getDeviance())
 		// return null;
 
-		float[] threshold = thresholds[bestFeatureIdx];
 		double[] sumLabel = sum[bestFeatureIdx];
 		int[] sampleCount = count[bestFeatureIdx];
 
@@ -267,33 +265,133 @@ public class FeatureHistogram {
 
 		int[] left = new int[countLeft];
 		int[] right = new int[countRight];
-		int l = 0;
-		int r = 0;
-		int[] idx = sp.getSamples();
-		for (int j = 0; j < idx.length; j++) {
-			int k = idx[j];
-			if (samples[k].getFeatureValue(features[bestFeatureIdx]) <= threshold[bestThresholdIdx])// go
-																									// to
-																									// the
-																									// left
-				left[l++] = k;
-			else
-				// go to the right
-				right[r++] = k;
+		// go to the left iff the bin id does not exceed the best threshold
+		bins.partition(bestFeatureIdx, bestThresholdIdx, sp.getSamples(), left,
+		        right);
+
+		Candidate ret = new Candidate();
+		ret.featureID = features[bestFeatureIdx];
+		ret.threshold = thresholds[bestFeatureIdx][bestThresholdIdx];
+		ret.deviance = (float) minS;
+		ret.left = left;
+		ret.right = right;
+		ret.varLeft = (float) bestVarLeft;
+		ret.varRight = (float) bestVarRight;
+		ret.sumLeft = sumLeft;
+		ret.sumRight = sumRight;
+		return ret;
+	}
+
+	/**
+	 * Reset this (pooled) histogram to the statistics of the samples soi,
+	 * reusing the buffers already allocated. Features are processed in
+	 * parallel chunks when running inside a ForkJoinPool.
+	 */
+	public void fill(FeatureHistogram parent, int[] soi, float[] labels) {
+		this.features = parent.features;
+		this.thresholds = parent.thresholds;
+		this.bins = parent.bins;
+		if (sum == null)
+			allocate();
+
+		if (ForkJoinTask.inForkJoinPool())
+			new FillTask(soi, labels, 0, features.length).invoke();
+		else
+			fill(soi, labels, 0, features.length);
+	}
+
+	private void fill(int[] soi, float[] labels, int fStart, int fEnd) {
+		for (int f = fStart; f < fEnd; f++) {
+			Arrays.fill(sum[f], 0);
+			Arrays.fill(sqSum[f], 0);
+			Arrays.fill(count[f], 0);
+			bins.accumulate(f, soi, labels, sum[f], sqSum[f], count[f]);
+			cumulate(f, true);
 		}
+	}
 
-		FeatureHistogram lh = new FeatureHistogram();
-		lh.construct(sp.hist, left, labels);
-		FeatureHistogram lr = new FeatureHistogram();
-		lr.construct(sp.hist, lh);
+	/**
+	 * this = parent - sibling; this may be the parent itself
+	 */
+	public void subtract(FeatureHistogram parent, FeatureHistogram sibling) {
+		this.features = parent.features;
+		this.thresholds = parent.thresholds;
+		this.bins = parent.bins;
+		if (sum == null)
+			allocate();
 
-		sp.set(features[bestFeatureIdx],
-		        thresholds[bestFeatureIdx][bestThresholdIdx], (float) minS);
-		sp.setLeft(new Split(left, lh, (float) bestVarLeft, sumLeft));
-		sp.setRight(new Split(right, lr, (float) bestVarRight, sumRight));
+		for (int f = 0; f < features.length; f++) {
+			for (int t = 0; t < thresholds[f].length; t++) {
+				sum[f][t] = parent.sum[f][t] - sibling.sum[f][t];
+				sqSum[f][t] = parent.sqSum[f][t] - sibling.sqSum[f][t];
+				count[f][t] = parent.count[f][t] - sibling.count[f][t];
+			}
+		}
+	}
 
-		sp.clearSamples();
+	private void allocate() {
+		sum = new double[features.length][];
+		sqSum = new double[features.length][];
+		count = new int[features.length][];
+		for (int f = 0; f < features.length; f++) {
+			sum[f] = new double[thresholds[f].length];
+			sqSum[f] = new double[thresholds[f].length];
+			count[f] = new int[thresholds[f].length];
+		}
+	}
+
+	/**
+	 * A split found for a node but not applied yet, see
+	 * findBestSplit(Split, float[], int, HistogramPool, boolean)
+	 */
+	public static class Candidate {
+		int featureID = -1;
+		float threshold = 0F;
+		float deviance = 0F;
+		int[] left = null;
+		int[] right = null;
+		float varLeft = 0F;
+		float varRight = 0F;
+		double sumLeft = 0;
+		double sumRight = 0;
+		FeatureHistogram leftHist = null;
+		FeatureHistogram rightHist = null;
+
+		public Split apply(Split sp) {
+			sp.set(featureID, threshold, deviance);
+			sp.setLeft(new Split(left, leftHist, varLeft, sumLeft));
+			sp.setRight(new Split(right, rightHist, varRight, sumRight));
+			sp.clearSamples();
+			return sp;
+		}
+	}
 
-		return sp;
+	// For multi-threading processing
+	class FillTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		// minimal number of (sample, feature) updates worth a task
+		static final int GRAIN = 1 << 16;
+
+		int[] soi = null;
+		float[] labels = null;
+		int start = -1;
+		int end = -1;
+
+		FillTask(int[] soi, float[] labels, int start, int end) {
+			this.soi = soi;
+			this.labels = labels;
+			this.start = start;
+			this.end = end;
+		}
+
+		protected void compute() {
+			if (end - start < 2 || (long) soi.length * (end - start) < GRAIN) {
+				fill(soi, labels, start, end);
+				return;
+			}
+			int mid = (start + end) >>> 1;
+			invokeAll(new FillTask(soi, labels, start, mid), new FillTask(soi,
+			        labels, mid, end));
+		}
 	}
 }
@@ -16,6 +16,8 @@ import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 
+import com.horsehour.ml.data.LetorParser;
+
 /**
  * @author vdang
  * 
@@ -23,6 +25,19 @@ import java.util.List;
  */
 public class FeatureManager {
 
+	/**
+	 * read() parses the feature file in parallel unless this is turned off
+	 */
+	public static boolean parallelRead = true;
+
+	/**
+	 * Datasets whose average fraction of present features (over feature ids
+	 * 1..max) is at least this are stored as DenseDataPoint, the others as
+	 * SparseDataPoint. 0 always keeps dense points, anything above 1 sparse
+	 * ones.
+	 */
+	public static float denseDensity = 0.5f;
+
 	private Hashtable<String, Integer> featureMap = new Hashtable<String, Integer>();
 	private String[] fnames = null;
 
@@ -91,6 +106,9 @@ public class FeatureManager {
 	}
 
 	public List<RankList> read(String fn, boolean letor, boolean mustHaveRelDoc) {
+		if (parallelRead)
+			return readParallel(fn, letor, mustHaveRelDoc);
+
 		List<RankList> samples = new ArrayList<RankList>();
 		// Hashtable<String, Integer> ht = new Hashtable<String, Integer>();
 		int countRL = 0;
@@ -115,7 +133,7 @@ public class FeatureManager {
 					System.out.print("\rReading feature file [" + fn + "]: "
 					        + countRL + "... ");
 
-				DataPoint qp = new DataPoint(content);
+				DataPoint qp = new SparseDataPoint(content);
 
 				if (lastID.compareTo("") != 0
 				        && lastID.compareTo(qp.getID()) != 0) {
@@ -141,7 +159,8 @@ public class FeatureManager {
 			System.out.println("\rReading feature file [" + fn
 			        + "]... [Done.]            ");
 			System.out.println("(" + samples.size() + " ranked lists, "
-			        + countEntries + " entries read)");
+			        + countEntries + " entries read, " + represent(samples)
+			        + " representation)");
 		} catch (Exception ex) {
 			System.out.println("Error in FeatureManager::read(): "
 			        + ex.toString());
@@ -149,6 +168,108 @@ public class FeatureManager {
 		return samples;
 	}
 
+	/**
+	 * Read feature data with {@link LetorParser}: the file is split into
+	 * chunks aligned on query boundaries and the chunks are parsed in
+	 * parallel.
+	 */
+	public List<RankList> readParallel(String fn, boolean letor,
+	        boolean mustHaveRelDoc) {
+		List<RankList> samples = new ArrayList<RankList>();
+		try {
+			System.out.print("\rReading feature file [" + fn + "]... ");
+			LetorParser parser = new LetorParser(fn);
+			List<DataPoint> dps = parser.parse(FeatureManager::toDataPoint);
+
+			String lastID = "";
+			boolean hasRel = false;
+			RankList rl = new RankList();
+			for (DataPoint qp : dps) {
+				if (lastID.compareTo("") != 0
+				        && lastID.compareTo(qp.getID()) != 0) {
+					if (!mustHaveRelDoc || hasRel)
+						samples.add(rl);
+					rl = new RankList();
+					hasRel = false;
+				}
+
+				if (letor)
+					if (qp.getLabel() == 2.0f)
+						qp.setLabel(3.0f);
+
+				if (qp.getLabel() > 0)
+					hasRel = true;
+				lastID = qp.getID();
+				rl.add(qp);
+			}
+			if (rl.size() > 0 && (!mustHaveRelDoc || hasRel))
+				samples.add(rl);
+
+			System.out.println("\rReading feature file [" + fn
+			        + "]... [Done.]            ");
+			System.out.println("(" + samples.size() + " ranked lists, "
+			        + dps.size() + " entries read, " + represent(samples)
+			        + " representation)");
+			System.out.println(parser.toString());
+		} catch (Exception ex) {
+			System.out.println("Error in FeatureManager::readParallel(): "
+			        + ex.toString());
+		}
+		return samples;
+	}
+
+	private static DataPoint toDataPoint(LetorParser.Row row) {
+		int[] fIds = new int[row.size()];
+		float[] fVals = new float[row.size()];
+		for (int k = 0; k < row.size(); k++) {
+			fIds[k] = row.fid(k);
+			fVals[k] = row.floatValue(k);
+		}
+
+		String description = row.description();
+		return new SparseDataPoint(row.floatLabel(), row.qid(), fIds, fVals,
+		        description == null ? "" : description);
+	}
+
+	/**
+	 * Turn the (sparse) data points just read into dense ones if the dataset
+	 * is at least denseDensity dense
+	 * 
+	 * @return name of the representation kept
+	 */
+	private static String represent(List<RankList> samples) {
+		long stored = 0, count = 0;
+		int maxFeature = getFeatureCount(samples);
+		for (RankList rl : samples)
+			for (int j = 0; j < rl.size(); j++) {
+				stored += rl.get(j).getStoredCount();
+				count++;
+			}
+		if (count == 0 || maxFeature <= 0
+		        || (double) stored / count / maxFeature < denseDensity)
+			return "sparse";
+
+		for (RankList rl : samples)
+			for (int j = 0; j < rl.size(); j++) {
+				DataPoint dp = rl.get(j);
+				if (dp instanceof SparseDataPoint)
+					rl.set(j, new DenseDataPoint((SparseDataPoint) dp));
+			}
+		return "dense";
+	}
+
+	/**
+	 * @return the largest feature id found in the samples, i.e. the number of
+	 *         features of the dataset (feature ids start from 1)
+	 */
+	public static int getFeatureCount(List<RankList> samples) {
+		int fc = 0;
+		for (RankList rl : samples)
+			for (int j = 0; j < rl.size(); j++)
+				fc = Math.max(fc, rl.get(j).getLastFeature());
+		return fc;
+	}
+
 	public List<RankList> read2(String fn, boolean letor) {
 		List<RankList> samples = new ArrayList<RankList>();
 		Hashtable<String, Integer> ht = new Hashtable<String, Integer>();
@@ -172,7 +293,7 @@ public class FeatureManager {
 					System.out.print("\rReading feature file [" + fn + "]: "
 					        + countRL + "... ");
 
-				DataPoint qp = new DataPoint(content);
+				DataPoint qp = new SparseDataPoint(content);
 				RankList rl = null;
 				if (ht.get(qp.getID()) == null) {
 					// if(countRL >= 12000)
@@ -197,7 +318,8 @@ public class FeatureManager {
 			System.out.println("\rReading feature file [" + fn
 			        + "]... [Done.]            ");
 			System.out.println("(" + samples.size() + " ranked lists, "
-			        + countEntries + " entries read)");
+			        + countEntries + " entries read, " + represent(samples)
+			        + " representation)");
 		} catch (Exception ex) {
 			System.out.println("Error in FeatureManager::read(): "
 			        + ex.toString());
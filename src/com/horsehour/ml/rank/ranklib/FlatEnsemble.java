@@ -0,0 +1,197 @@
+package com.horsehour.ml.rank.ranklib;
+
+import java.util.List;
+
+/**
+ * Ensemble compiled into struct-of-arrays form. Internal nodes of all trees
+ * are laid out in pre-order in fid/threshold/left/right; a child (or root)
+ * index c >= 0 refers to an internal node, c < 0 to the leaf ~c, whose value
+ * is already multiplied by the tree weight. Scores are identical to
+ * Ensemble.eval(DataPoint).
+ *
+ * @author Chunheng Jiang
+ */
+public class FlatEnsemble {
+	// number of documents scored together against each tree
+	public static int blockSize = 64;
+
+	protected int[] root = null;
+	protected int[] fid = null;
+	protected float[] threshold = null;
+	protected int[] left = null;
+	protected int[] right = null;
+	protected float[] leaf = null;
+	protected int[] firstLeaf = null;// leaves of tree t: [firstLeaf[t],
+									 // firstLeaf[t + 1])
+
+	private int nNode = 0;
+	private int nLeaf = 0;
+
+	public FlatEnsemble(Ensemble ensemble) {
+		int nTree = ensemble.treeCount();
+		int nodes = 0, leaves = 0;
+		for (int t = 0; t < nTree; t++) {
+			int l = ensemble.getTree(t).leaves().size();
+			leaves += l;
+			nodes += l - 1;
+		}
+
+		root = new int[nTree];
+		fid = new int[nodes];
+		threshold = new float[nodes];
+		left = new int[nodes];
+		right = new int[nodes];
+		leaf = new float[leaves];
+		firstLeaf = new int[nTree + 1];
+		for (int t = 0; t < nTree; t++) {
+			firstLeaf[t] = nLeaf;
+			root[t] = add(ensemble.getTree(t).root, ensemble.getWeight(t));
+		}
+		firstLeaf[nTree] = nLeaf;
+	}
+
+	private int add(Split s, float weight) {
+		if (s.isLeaf()) {
+			leaf[nLeaf] = s.getOutput() * weight;
+			return ~nLeaf++;
+		}
+		int n = nNode++;
+		fid[n] = s.getFeatureID();
+		threshold[n] = s.getThreshold();
+		left[n] = add(s.getLeft(), weight);
+		right[n] = add(s.getRight(), weight);
+		return n;
+	}
+
+	public int treeCount() {
+		return root.length;
+	}
+
+	/**
+	 * @return smallest output of tree t, weight included
+	 */
+	public float minOutput(int t) {
+		float m = leaf[firstLeaf[t]];
+		for (int l = firstLeaf[t] + 1; l < firstLeaf[t + 1]; l++)
+			m = Math.min(m, leaf[l]);
+		return m;
+	}
+
+	/**
+	 * @return largest output of tree t, weight included
+	 */
+	public float maxOutput(int t) {
+		float m = leaf[firstLeaf[t]];
+		for (int l = firstLeaf[t] + 1; l < firstLeaf[t + 1]; l++)
+			m = Math.max(m, leaf[l]);
+		return m;
+	}
+
+	/**
+	 * @return output of tree t on dp, whose dense feature vector is fVals
+	 *         (null for a sparse point)
+	 */
+	public float eval(int t, DataPoint dp, float[] fVals) {
+		if (fVals == null)
+			return leaf[exit(dp, root[t])];
+		int n = root[t];
+		while (n >= 0)
+			n = (value(fVals, fid[n]) <= threshold[n]) ? left[n] : right[n];
+		return leaf[~n];
+	}
+
+	public float eval(DataPoint dp) {
+		if (dp instanceof DenseDataPoint)
+			return eval(dp.getFeatureVector());
+		float s = 0;
+		for (int t = 0; t < root.length; t++)
+			s += leaf[exit(dp, root[t])];
+		return s;
+	}
+
+	/**
+	 * @return index of the leaf reached by a (sparse) data point from node n
+	 */
+	private int exit(DataPoint dp, int n) {
+		while (n >= 0)
+			n = (dp.getFeatureValue(fid[n]) <= threshold[n]) ? left[n]
+			        : right[n];
+		return ~n;
+	}
+
+	/**
+	 * @param fVals
+	 *            raw feature vector of a DataPoint (indexed by feature id,
+	 *            possibly padded)
+	 */
+	public float eval(float[] fVals) {
+		float s = 0;
+		for (int t = 0; t < root.length; t++) {
+			int n = root[t];
+			while (n >= 0)
+				n = (value(fVals, fid[n]) <= threshold[n]) ? left[n] : right[n];
+			s += leaf[~n];
+		}
+		return s;
+	}
+
+	/**
+	 * Score docs[from, to) into out[0, to - from), taking blockSize documents
+	 * at a time through each tree
+	 */
+	public void eval(DataPoint[] docs, int from, int to, float[] out) {
+		float[][] fv = new float[Math.min(blockSize, to - from)][];
+		for (int b = from; b < to; b += blockSize) {
+			int end = Math.min(to, b + blockSize);
+			for (int d = b; d < end; d++) {
+				// sparse points are walked through getFeatureValue instead
+				fv[d - b] = (docs[d] instanceof DenseDataPoint) ? docs[d]
+				        .getFeatureVector() : null;
+				out[d - from] = 0;
+			}
+			for (int t = 0; t < root.length; t++) {
+				int r = root[t];
+				for (int d = b; d < end; d++) {
+					float[] fVals = fv[d - b];
+					if (fVals == null) {
+						out[d - from] += leaf[exit(docs[d], r)];
+						continue;
+					}
+					int n = r;
+					while (n >= 0)
+						n = (value(fVals, fid[n]) <= threshold[n]) ? left[n]
+						        : right[n];
+					out[d - from] += leaf[~n];
+				}
+			}
+		}
+	}
+
+	public float[] eval(List<DataPoint> docs) {
+		DataPoint[] dp = docs.toArray(new DataPoint[docs.size()]);
+		float[] out = new float[dp.length];
+		eval(dp, 0, dp.length, out);
+		return out;
+	}
+
+	public float[] eval(RankList rl) {
+		DataPoint[] dp = new DataPoint[rl.size()];
+		for (int i = 0; i < dp.length; i++)
+			dp[i] = rl.get(i);
+		float[] out = new float[dp.length];
+		eval(dp, 0, dp.length, out);
+		return out;
+	}
+
+	/**
+	 * Same as DataPoint.getFeatureValue(int)
+	 */
+	static float value(float[] fVals, int fid) {
+		if (fid >= fVals.length)
+			return 0.0f;
+		float v = fVals[fid];
+		if (v < DataPoint.INFINITY + 1)
+			return 0.0f;
+		return v;
+	}
+}
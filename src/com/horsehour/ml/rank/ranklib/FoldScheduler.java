@@ -0,0 +1,236 @@
+package com.horsehour.ml.rank.ranklib;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cross-validation over a grid of ranker configs. Every (config, fold) pair
+ * is one run; runs are trained side by side by a fixed number of workers,
+ * chosen so that workers times threadsPerRun stays within coreBudget. The
+ * folds and the scorers are parsed once and shared read-only by all runs;
+ * each run trains its own ranker with its own config, and has a pool of
+ * threadsPerRun threads of its own as MyThreadPool.getInstance().
+ *
+ * With a single worker, runs are trained one after the other on the calling
+ * thread and the shared pool, as Evaluator used to do. This is the default;
+ * runs are only trained side by side, silently, if coreBudget is raised.
+ *
+ * A run that throws, or that has not completed when the wait for the
+ * workers is interrupted, is marked failed (see Run.failed()) and left out
+ * of the mean scores; the other runs still complete.
+ *
+ * @author Chunheng Jiang
+ */
+public class FoldScheduler {
+	public static int coreBudget = 1;
+	public static int threadsPerRun = 1;
+
+	protected RankerFactory rFact = new RankerFactory();
+	protected RANKER_TYPE type = RANKER_TYPE.MART;
+	protected MetricScorer trainScorer = null;
+	protected MetricScorer testScorer = null;
+	protected List<List<RankList>> trainingData = null;
+	protected List<List<RankList>> testData = null;
+	protected int[] features = null;
+
+	public FoldScheduler(RANKER_TYPE type, MetricScorer trainScorer,
+	        MetricScorer testScorer, List<List<RankList>> trainingData,
+	        List<List<RankList>> testData, int[] features) {
+		this.type = type;
+		this.trainScorer = trainScorer;
+		this.testScorer = testScorer;
+		this.trainingData = trainingData;
+		this.testData = testData;
+		this.features = features;
+	}
+
+	/**
+	 * @return number of runs trained at a time for the given number of runs
+	 */
+	public static int nWorker(int nRun) {
+		int n = coreBudget / Math.max(1, threadsPerRun);
+		return Math.max(1, Math.min(nRun, n));
+	}
+
+	/**
+	 * Train and test every config of the grid on every fold
+	 *
+	 * @return the runs, grid point by grid point, fold by fold
+	 */
+	public Run[] run(List<RankerConfig> grid) {
+		int nFold = trainingData.size();
+		Run[] runs = new Run[grid.size() * nFold];
+		for (int g = 0; g < grid.size(); g++)
+			for (int f = 0; f < nFold; f++)
+				runs[g * nFold + f] = new Run(g, f, grid.get(g));
+
+		int nWorker = nWorker(runs.length);
+		if (nWorker == 1) {
+			for (int i = 0; i < runs.length; i++)
+				trainOrFail(runs[i]);
+			return runs;
+		}
+
+		// progress messages of rankers trained side by side would interleave
+		for (int i = 0; i < runs.length; i++) {
+			runs[i].config = runs[i].config.copy();
+			runs[i].config.verbose = false;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(nWorker);
+		for (int i = 0; i < runs.length; i++)
+			pool.execute(new RunWorker(runs[i]));
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		} catch (InterruptedException ex) {
+			// runs still in progress stay incomplete, and count as failed
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			System.out.println("Error in FoldScheduler::run(): "
+			        + ex.toString());
+		}
+		return runs;
+	}
+
+	/**
+	 * Train the run, or record why it failed
+	 */
+	protected void trainOrFail(Run run) {
+		try {
+			train(run);
+		} catch (Throwable ex) {
+			run.error = ex;
+			System.out.println("Error in FoldScheduler::train(): fold "
+			        + (run.fold + 1) + ", grid " + (run.grid + 1) + ": "
+			        + ex.toString());
+		}
+	}
+
+	protected void train(Run run) {
+		long start = System.nanoTime();
+		List<RankList> train = trainingData.get(run.fold);
+		List<RankList> test = testData.get(run.fold);
+
+		Ranker ranker = rFact.createRanker(type, train, features);
+		ranker.set(run.config);
+		ranker.set(trainScorer);
+		ranker.init();
+		ranker.learn();
+
+		run.origScore = testScorer.score(test);
+		run.rankScore = ranker.score(test, testScorer);
+		List<RankList> oracles = new ArrayList<RankList>();
+		for (int i = 0; i < test.size(); i++)
+			oracles.add(test.get(i).getCorrectRanking());
+		run.oracleScore = testScorer.score(oracles);
+		run.time = System.nanoTime() - start;
+		run.completed = true;
+	}
+
+	/**
+	 * @return a table of all runs, then the mean scores of each grid point
+	 *         over the folds and the grid point with the best mean test score
+	 */
+	public String report(Run[] runs) {
+		String name = testScorer.name();
+		StringBuilder sb = new StringBuilder();
+		sb.append("Fold\tGrid\tOrig\tRanked\tOracle\tTime(s)\n");
+		int nGrid = 0;
+		for (int i = 0; i < runs.length; i++) {
+			Run r = runs[i];
+			sb.append((r.fold + 1) + "\t" + (r.grid + 1) + "\t");
+			if (r.failed())
+				sb.append("failed: " + r.failure() + "\n");
+			else
+				sb.append(SimpleMath.round(r.origScore, 4) + "\t"
+				        + SimpleMath.round(r.rankScore, 4) + "\t"
+				        + SimpleMath.round(r.oracleScore, 4) + "\t"
+				        + SimpleMath.round(r.time / 1e9, 2) + "\n");
+			nGrid = Math.max(nGrid, r.grid + 1);
+		}
+
+		double[] mean = new double[nGrid];
+		int[] count = new int[nGrid];
+		String[] params = new String[nGrid];
+		for (int i = 0; i < runs.length; i++) {
+			params[runs[i].grid] = runs[i].config.toString();
+			if (runs[i].failed())
+				continue;
+			mean[runs[i].grid] += runs[i].rankScore;
+			count[runs[i].grid]++;
+		}
+		int best = -1;
+		sb.append("Grid\t" + name + "\tParameters\n");
+		for (int g = 0; g < nGrid; g++) {
+			mean[g] = (count[g] > 0) ? mean[g] / count[g] : Double.NaN;
+			if (count[g] > 0 && (best < 0 || mean[g] > mean[best]))
+				best = g;
+			sb.append((g + 1) + "\t" + SimpleMath.round(mean[g], 4) + "\t"
+			        + params[g] + "\n");
+		}
+		if (best < 0)
+			return sb.append("Best: none, all runs failed").toString();
+		sb.append("Best: grid " + (best + 1) + " (" + params[best] + "), "
+		        + name + " = " + SimpleMath.round(mean[best], 4));
+		return sb.toString();
+	}
+
+	/**
+	 * One config trained on one fold, and its scores on the test part of the
+	 * fold
+	 */
+	public static class Run {
+		public int grid = 0;
+		public int fold = 0;
+		public RankerConfig config = null;
+		public double origScore = 0;
+		public double rankScore = 0;
+		public double oracleScore = 0;
+		public long time = 0;// wall time, in ns
+		public Throwable error = null;// why the run failed, null if it did not
+		public volatile boolean completed = false;// set once all scores are in
+
+		public Run(int grid, int fold, RankerConfig config) {
+			this.grid = grid;
+			this.fold = fold;
+			this.config = config;
+		}
+
+		/**
+		 * @return true if the run threw or never completed, its scores are
+		 *         then meaningless
+		 */
+		public boolean failed() {
+			return error != null || !completed;
+		}
+
+		/**
+		 * @return why the run failed
+		 */
+		public String failure() {
+			return (error != null) ? error.toString() : "not completed";
+		}
+	}
+
+	class RunWorker implements Runnable {
+		Run run = null;
+
+		RunWorker(Run run) {
+			this.run = run;
+		}
+
+		public void run() {
+			MyThreadPool p = MyThreadPool.create(threadsPerRun);
+			MyThreadPool.bind(p);
+			try {
+				trainOrFail(run);
+			} finally {
+				MyThreadPool.bind(null);
+				p.shutdown();
+			}
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.horsehour.ml.rank.ranklib;
+
+import java.util.ArrayDeque;
+
+/**
+ * Reusable histogram buffers for growing trees over one BinnedFeatures
+ * matrix. Buffers are handed out to the split workers and returned once the
+ * node they describe is split or finalized, so after the first tree no
+ * histogram arrays are allocated any more.
+ *
+ * @author Chunheng Jiang
+ */
+public class HistogramPool {
+	private final FeatureHistogram template;
+	private final ArrayDeque<FeatureHistogram> free = new ArrayDeque<FeatureHistogram>();
+	private int allocated = 0;
+
+	/**
+	 * @param hist
+	 *            root histogram of the training data, gives the buffer shape
+	 */
+	public HistogramPool(FeatureHistogram hist) {
+		this.template = hist;
+	}
+
+	public FeatureHistogram acquire() {
+		synchronized (free) {
+			if (!free.isEmpty())
+				return free.pop();
+			allocated++;
+		}
+		FeatureHistogram h = new FeatureHistogram();
+		h.features = template.features;
+		h.thresholds = template.thresholds;
+		h.bins = template.bins;
+		h.sampling = template.sampling;
+		return h;// buffers are allocated on first fill/subtract
+	}
+
+	public void release(FeatureHistogram h) {
+		if (h == null || h == template)
+			return;
+		synchronized (free) {
+			free.push(h);
+		}
+	}
+
+	/**
+	 * @return number of buffers created so far
+	 */
+	public int allocated() {
+		synchronized (free) {
+			return allocated;
+		}
+	}
+}
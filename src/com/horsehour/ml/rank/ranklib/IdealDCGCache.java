@@ -0,0 +1,128 @@
+package com.horsehour.ml.rank.ranklib;
+
+import java.util.Arrays;
+
+/**
+ * Ideal DCG at k of each query, computed once. Entries are keyed by query id
+ * and checked against a fingerprint of the labels (their count and an
+ * order-free hash), so that a list sharing its id with another but holding
+ * other labels, e.g. a sample of the documents of the query, gets a value
+ * of its own. The table is open-addressed over primitive arrays, and may be
+ * shared by threads.
+ *
+ * @author Chunheng Jiang
+ */
+public class IdealDCGCache {
+	protected final int k;
+
+	private String[] keys = new String[64];
+	private long[] prints = new long[64];
+	private double[] values = new double[64];
+	private int count = 0;
+
+	public IdealDCGCache(int k) {
+		this.k = k;
+	}
+
+	public int getK() {
+		return k;
+	}
+
+	/**
+	 * @return ideal DCG at k of the query with the given labels
+	 */
+	public double get(String qid, float[] labels) {
+		if (qid == null)
+			return idealDCG(labels, k);
+
+		long print = fingerprint(labels);
+		synchronized (this) {
+			int i = find(keys, prints, qid, print);
+			if (keys[i] != null)
+				return values[i];
+		}
+		double ideal = idealDCG(labels, k);
+		synchronized (this) {
+			int i = find(keys, prints, qid, print);
+			if (keys[i] == null) {
+				keys[i] = qid;
+				prints[i] = print;
+				values[i] = ideal;
+				if (++count * 2 > keys.length)
+					grow();
+			}
+		}
+		return ideal;
+	}
+
+	public synchronized int size() {
+		return count;
+	}
+
+	/**
+	 * @return slot of the entry (qid, print), or the empty slot it would go
+	 *         to
+	 */
+	private static int find(String[] keys, long[] prints, String qid,
+	        long print) {
+		int mask = keys.length - 1;
+		int i = hash(qid, print) & mask;
+		while (keys[i] != null
+		        && (prints[i] != print || !keys[i].equals(qid)))
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	private void grow() {
+		String[] k2 = new String[keys.length * 2];
+		long[] p2 = new long[k2.length];
+		double[] v2 = new double[k2.length];
+		for (int i = 0; i < keys.length; i++)
+			if (keys[i] != null) {
+				int j = find(k2, p2, keys[i], prints[i]);
+				k2[j] = keys[i];
+				p2[j] = prints[i];
+				v2[j] = values[i];
+			}
+		keys = k2;
+		prints = p2;
+		values = v2;
+	}
+
+	private static int hash(String qid, long print) {
+		long h = qid.hashCode() * 0x9E3779B97F4A7C15L + print;
+		h ^= h >>> 29;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * @return a hash of the multiset of labels
+	 */
+	public static long fingerprint(float[] labels) {
+		long h = labels.length;
+		for (int i = 0; i < labels.length; i++) {
+			long x = (Float.floatToIntBits(labels[i]) + 0x632BE59BD9B4E019L)
+			        * 0xBF58476D1CE4E5B9L;
+			h += x ^ (x >>> 31);
+		}
+		return h;
+	}
+
+	/**
+	 * @return DCG at k of the best ranking of the labels
+	 */
+	public static double idealDCG(float[] labels, int k) {
+		int n = labels.length;
+		int size = (k > n || k <= 0) ? n : k;
+		int[] rel = new int[n];
+		for (int i = 0; i < n; i++)
+			rel[i] = (int) labels[i];
+		Arrays.sort(rel);
+		double dcg = 0.0;
+		for (int i = 1; i <= size; i++) {
+			dcg += (Math.pow(2.0, rel[n - i]) - 1.0)
+			        / SimpleMath.logBase2(i + 1);
+		}
+		return dcg;
+	}
+}
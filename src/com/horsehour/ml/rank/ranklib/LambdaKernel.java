@@ -0,0 +1,118 @@
+package com.horsehour.ml.rank.ranklib;
+
+import java.util.Arrays;
+
+/**
+ * Lambda gradients of one query at a time, with buffers reused across
+ * queries (one kernel per thread). Only pairs with differing labels and at
+ * least one document within the metric cutoff are visited, in the same
+ * order as LambdaMART.computePseudoResponses, so the output is identical.
+ *
+ * @author Chunheng Jiang
+ */
+public class LambdaKernel {
+	private int[] idx = new int[0];// position -> document
+	private int[] pos = new int[0];// document -> position
+	private int[] top = new int[0];// documents in the cutoff, ascending
+	private int[] tmp = new int[0];
+	private double[] lambdas = new double[0];
+	private double[] weights = new double[0];
+
+	private void ensure(int n) {
+		if (idx.length >= n)
+			return;
+		idx = new int[n];
+		pos = new int[n];
+		top = new int[n];
+		tmp = new int[n];
+		lambdas = new double[n];
+		weights = new double[n];
+	}
+
+	/**
+	 * @param ctx
+	 *            context of the query
+	 * @param scores
+	 *            model scores, the query starts at offset
+	 * @param offset
+	 * @param lambdaOut
+	 *            receives the lambdas from offset on
+	 * @param weightOut
+	 *            receives the second order weights from offset on
+	 */
+	public void compute(MetricContext ctx, float[] scores, int offset,
+	        float[] lambdaOut, double[] weightOut) {
+		int n = ctx.size();
+		ensure(n);
+		for (int i = 0; i < n; i++)
+			idx[i] = i;
+		sort(scores, offset, 0, n);
+		for (int i = 0; i < n; i++)
+			pos[idx[i]] = i;
+		ctx.rank(idx);
+
+		int cutoff = ctx.cutoff();
+		int nTop = 0;
+		for (int d = 0; d < n; d++)
+			if (pos[d] < cutoff)
+				top[nTop++] = d;
+
+		Arrays.fill(lambdas, 0, n, 0);
+		Arrays.fill(weights, 0, n, 0);
+		for (int j = 0; j < n; j++) {
+			float lj = ctx.label(j);
+			int pj = pos[j];
+			boolean inTop = pj < cutoff;
+			int end = inTop ? n : nTop;
+			for (int t = 0; t < end; t++) {
+				int k = inTop ? t : top[t];
+				if (!(lj > ctx.label(k)))
+					continue;
+
+				int pk = pos[k];
+				float change = (float) (pj < pk ? ctx.delta(pj, pk) : ctx
+				        .delta(pk, pj));
+				double deltaNDCG = Math.abs(change);
+				double rho = 1.0 / (1 + Math.exp(scores[offset + j]
+				        - scores[offset + k]));
+				double lambda = rho * deltaNDCG;
+				lambdas[j] += lambda;
+				lambdas[k] -= lambda;
+				double delta = rho * (1.0 - rho) * deltaNDCG;
+				weights[j] += delta;
+				weights[k] += delta;
+			}
+		}
+
+		for (int j = 0; j < n; j++) {
+			lambdaOut[offset + j] = (float) lambdas[j];
+			weightOut[offset + j] = weights[j];
+		}
+	}
+
+	/**
+	 * Sort idx[from, to) by descending score; same splits and merges as
+	 * MergeSorter.sort(float[], false), hence the same order on ties
+	 */
+	private void sort(float[] scores, int offset, int from, int to) {
+		int len = to - from;
+		if (len <= 1)
+			return;
+		int mid = from + len / 2;
+		sort(scores, offset, from, mid);
+		sort(scores, offset, mid, to);
+
+		int i = from, j = mid, c = from;
+		while (i < mid && j < to) {
+			if (scores[offset + idx[i]] >= scores[offset + idx[j]])
+				tmp[c++] = idx[i++];
+			else
+				tmp[c++] = idx[j++];
+		}
+		while (i < mid)
+			tmp[c++] = idx[i++];
+		while (j < to)
+			tmp[c++] = idx[j++];
+		System.arraycopy(tmp, from, idx, from, len);
+	}
+}
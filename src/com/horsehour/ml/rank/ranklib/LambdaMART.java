@@ -34,10 +34,21 @@ public class LambdaMART extends Ranker {
 											  // process right away.
 	public static int nTreeLeaves = 10;
 	public static int minLeafSupport = 1;
+	public static boolean verifyChecksum = true;// of binary models on load
+	public static boolean quickScorer = false;// rank with QuickScorer instead
+											  // of the flattened trees
+	public static boolean cascade = false;// rank the top k with early exit,
+										  // see CascadeScorer
+	public static int cascadeStage = 50;// trees between two pruning steps
+	public static double cascadeBound = 1.0;// < 1 for approximate bounds
+	public static boolean frontierSplit = false;// grow trees by histogram
+												// subtraction, splitting
+												// frontier leaves concurrently
 
 	// Local variables
 	protected float[][] thresholds = null;
 	protected Ensemble ensemble = null;
+	protected MappedEnsemble mapped = null;// binary model, see load()
 	protected float[] modelScores = null;// on training data
 
 	protected float[][] modelScoresOnValidation = null;
@@ -45,11 +56,23 @@ public class LambdaMART extends Ranker {
 
 	// Training instances prepared for MART
 	protected DataPoint[] martSamples = null;// Need initializing only once
-	protected int[][] sortedIdx = null;// sorted list of samples in @martSamples
-									   // by each feature -- Need initializing
-									   // only once
+	protected BinnedFeatures bins = null;// bin id of @martSamples on each
+										 // feature -- Need initializing only
+										 // once
 	protected FeatureHistogram hist = null;
+	protected HistogramPool histPool = null;// buffers for frontierSplit
 	protected float[] pseudoResponses = null;// different for each iteration
+	protected double[] weights = null;// second order gradients, ditto
+	protected MetricContext[] contexts = null;// per query, if the metric
+											  // provides them
+	protected boolean concurrent = false;// trained alongside other rankers:
+										 // lambdas on the calling thread
+										 // only, and no System.gc()
+	protected ThreadLocal<LambdaKernel> kernels = new ThreadLocal<LambdaKernel>() {
+		protected LambdaKernel initialValue() {
+			return new LambdaKernel();
+		}
+	};
 
 	public static void main(String args[]) {
 		MyThreadPool.init(Runtime.getRuntime().availableProcessors());
@@ -129,6 +152,16 @@ public class LambdaMART extends Ranker {
 	}
 
 	public void init() {
+		init(null);
+	}
+
+	/**
+	 * @param index
+	 *            binned features of the training samples (in the order of the
+	 *            rank lists), typically a view of an index shared by several
+	 *            rankers; computed here if null
+	 */
+	public void init(BinnedFeatures index) {
 		PRINT("Initializing... ");
 		// initialize samples for MART
 		int dpCount = 0;
@@ -150,64 +183,17 @@ public class LambdaMART extends Ranker {
 			current += rl.size();
 		}
 
-		// sort (MART) samples by each feature so that we can quickly retrieve a
-		// sorted list of samples by any feature later on.
-		sortedIdx = new int[features.length][];
-		MyThreadPool p = MyThreadPool.getInstance();
-		if (p.size() == 1)// single-thread
-			sortSamplesByFeature(0, features.length - 1);
-		else// multi-thread
-		{
-			int[] partition = p.partition(features.length);
-			for (int i = 0; i < partition.length - 1; i++)
-				p.execute(new SortWorker(this, partition[i],
-				        partition[i + 1] - 1));
-			p.await();
-		}
+		weights = new double[dpCount];
 
-		// Create a table of candidate thresholds (for each feature). Later on,
-		// we will select the best tree split from these candidates
-		thresholds = new float[features.length][];
-		for (int f = 0; f < features.length; f++) {
-			// For this feature, keep track of the list of unique values and the
-			// max/min
-			List<Float> values = new ArrayList<Float>();
-			float fmax = Float.NEGATIVE_INFINITY;
-			float fmin = Float.MAX_VALUE;
-			for (int i = 0; i < martSamples.length; i++) {
-				int k = sortedIdx[f][i];// get samples sorted with respect to
-										// this feature
-				float fv = martSamples[k].getFeatureValue(features[f]);
-				values.add(fv);
-				if (fmax < fv)
-					fmax = fv;
-				if (fmin > fv)
-					fmin = fv;
-				// skip all samples with the same feature value
-				int j = i + 1;
-				while (j < martSamples.length) {
-					if (martSamples[sortedIdx[f][j]]
-					        .getFeatureValue(features[f]) > fv)
-						break;
-					j++;
-				}
-				i = j - 1;// [i, j] gives the range of samples with the same
-						  // feature value
-			}
-			if (values.size() <= nThreshold || nThreshold == -1) {
-				thresholds[f] = new float[values.size() + 1];
-				for (int i = 0; i < values.size(); i++)
-					thresholds[f][i] = values.get(i);
-				thresholds[f][values.size()] = Float.MAX_VALUE;
-			} else {
-				float step = (Math.abs(fmax - fmin)) / nThreshold;
-				thresholds[f] = new float[nThreshold + 1];
-				thresholds[f][0] = fmin;
-				for (int j = 1; j < nThreshold; j++)
-					thresholds[f][j] = thresholds[f][j - 1] + step;
-				thresholds[f][nThreshold] = Float.MAX_VALUE;
-			}
-		}
+		// Create a table of candidate thresholds (for each feature), and map
+		// every sample to its threshold bin. Later on, we will select the best
+		// tree split from these candidates without touching the raw features
+		if (index != null && index.size() == dpCount)
+			bins = index;
+		else
+			bins = new BinnedFeatures(martSamples, features,
+			        config.martThreshold);
+		thresholds = bins.getThresholds();
 
 		if (validationSamples != null) {
 			modelScoresOnValidation = new float[validationSamples.size()][];
@@ -221,17 +207,19 @@ public class LambdaMART extends Ranker {
 		// compute the feature histogram (this is used to speed up the procedure
 		// of finding the best tree split later on)
 		hist = new FeatureHistogram();
-		hist.construct(martSamples, pseudoResponses, sortedIdx, features,
-		        thresholds);
-		// we no longer need the sorted indexes of samples
-		sortedIdx = null;
+		hist.sampling = config.martFeatureSamplingRate;
+		hist.construct(bins, pseudoResponses);
+		if (config.martFrontierSplit)
+			histPool = new HistogramPool(hist);
 
-		System.gc();
+		if (!concurrent)
+			System.gc();
 		PRINTLN("[Done]");
 	}
 
 	public void learn() {
 		ensemble = new Ensemble();
+		contexts = createContexts();
 
 		PRINTLN("---------------------------------");
 		PRINTLN("Training starts...");
@@ -241,7 +229,7 @@ public class LambdaMART extends Ranker {
 		PRINTLN("---------------------------------");
 
 		// Start the gradient boosting process
-		for (int m = 0; m < nTrees; m++) {
+		for (int m = 0; m < config.martTrees; m++) {
 			PRINT(new int[] { 7 }, new String[] { (m + 1) + "" });
 
 			// Compute lambdas (which act as the "pseudo responses")
@@ -255,25 +243,35 @@ public class LambdaMART extends Ranker {
 			hist.update(pseudoResponses);
 
 			// Fit a regression tree
-			RegressionTree rt = new RegressionTree(nTreeLeaves, martSamples,
-			        pseudoResponses, hist, minLeafSupport);
+			RegressionTree rt = new RegressionTree(config.martLeaves,
+			        pseudoResponses, hist, config.martMinLeafSupport,
+			        histPool);
 			rt.fit();
 
-			// Add this tree to the ensemble (our model)
-			ensemble.add(rt, learningRate);
-
 			// update the outputs of the tree (with gamma computed using the
 			// Newton-Raphson method)
 			updateTreeOutput(rt);
 
+			// Add this tree to the ensemble (our model) once its outputs are
+			// final, so the compiled scorers never see stale leaf values
+			ensemble.add(rt, config.martLearningRate);
+
+			// Update the model's outputs on all training samples: every sample
+			// falls into exactly one leaf, so no need to evaluate the tree
+			List<Split> leaves = rt.leaves();
+			for (int i = 0; i < leaves.size(); i++) {
+				float output = config.martLearningRate
+				        * leaves.get(i).getOutput();
+				int[] idx = leaves.get(i).getSamples();
+				for (int j = 0; j < idx.length; j++)
+					modelScores[idx[j]] += output;
+			}
+
 			rt.clearSamples();// clear references to data that is longer used
 
 			// beg the garbage collector to work...
-			System.gc();
-
-			// Update the model's outputs on all training samples
-			for (int i = 0; i < modelScores.length; i++)
-				modelScores[i] += learningRate * rt.eval(martSamples[i]);
+			if (!concurrent)
+				System.gc();
 
 			// Evaluate the current model
 			scoreOnTrainingData = computeModelScoreOnTraining();
@@ -296,7 +294,7 @@ public class LambdaMART extends Ranker {
 				// Update the model's scores on all validation samples
 				for (int i = 0; i < modelScoresOnValidation.length; i++)
 					for (int j = 0; j < modelScoresOnValidation[i].length; j++)
-						modelScoresOnValidation[i][j] += learningRate
+						modelScoresOnValidation[i][j] += config.martLearningRate
 						        * rt.eval(validationSamples.get(i).get(j));
 
 				// again, equivalent to
@@ -316,7 +314,7 @@ public class LambdaMART extends Ranker {
 			PRINTLN("");
 
 			// Should we stop early?
-			if (m - bestModelOnValidation > nRoundToStopEarly)
+			if (m - bestModelOnValidation > config.martStopEarly)
 				break;
 		}
 
@@ -325,13 +323,13 @@ public class LambdaMART extends Ranker {
 			ensemble.remove(ensemble.treeCount() - 1);
 
 		// Finishing up
-		scoreOnTrainingData = scorer.score(rank(samples));
+		scoreOnTrainingData = score(samples, scorer);
 		PRINTLN("---------------------------------");
 		PRINTLN("Finished sucessfully.");
 		PRINTLN(scorer.name() + " on training data: "
 		        + SimpleMath.round(scoreOnTrainingData, 4));
 		if (validationSamples != null) {
-			bestScoreOnValidationData = scorer.score(rank(validationSamples));
+			bestScoreOnValidationData = score(validationSamples, scorer);
 			PRINTLN(scorer.name() + " on validation data: "
 			        + SimpleMath.round(bestScoreOnValidationData, 4));
 		}
@@ -339,33 +337,79 @@ public class LambdaMART extends Ranker {
 	}
 
 	public double eval(DataPoint dp) {
+		if (mapped != null)
+			return mapped.eval(dp);
 		return ensemble.eval(dp);
 	}
 
+	/**
+	 * Score the whole list with the flattened ensemble, a block of documents
+	 * per tree at a time, or by QuickScorer if enabled
+	 */
+	public RankList rank(RankList rl) {
+		float[] scores;
+		if (config.martQuickScorer)
+			scores = getEnsemble().quickScorer().eval(rl);
+		else if (mapped != null)
+			scores = mapped.eval(rl);
+		else
+			scores = ensemble.flatten().eval(rl);
+		int[] idx = MergeSorter.sort(scores, false);
+		return new RankList(rl, idx);
+	}
+
+	/**
+	 * Same as rank(rl) on the top k positions; with cascade on, documents
+	 * that cannot reach them stop going through the trees early
+	 */
+	public int[] rank(RankList rl, int k) {
+		if (config.martCascade && k > 0)
+			return getEnsemble().cascade().rank(rl, k, config.martCascadeStage,
+			        config.martCascadeBound).top;
+		float[] scores;
+		if (config.martQuickScorer)
+			scores = getEnsemble().quickScorer().eval(rl);
+		else if (mapped != null)
+			scores = mapped.eval(rl);
+		else
+			scores = ensemble.flatten().eval(rl);
+		return TopKSorter.sort(scores, k);
+	}
+
 	public Ranker clone() {
 		return new LambdaMART();
 	}
 
 	public String toString() {
-		return ensemble.toString();
+		return getEnsemble().toString();
 	}
 
 	public String model() {
 		String output = "## " + name() + "\n";
-		output += "## No. of trees = " + nTrees + "\n";
-		output += "## No. of leaves = " + nTreeLeaves + "\n";
-		output += "## No. of threshold candidates = " + nThreshold + "\n";
-		output += "## Learning rate = " + learningRate + "\n";
-		output += "## Stop early = " + nRoundToStopEarly + "\n";
+		output += "## No. of trees = " + config.martTrees + "\n";
+		output += "## No. of leaves = " + config.martLeaves + "\n";
+		output += "## No. of threshold candidates = " + config.martThreshold
+		        + "\n";
+		output += "## Learning rate = " + config.martLearningRate + "\n";
+		output += "## Stop early = " + config.martStopEarly + "\n";
 		output += "\n";
 		output += toString();
 		return output;
 	}
 
+	/**
+	 * Load a model written by model() (XML), or a binary model written by
+	 * BinaryEnsemble (see map(fn)). The current model is kept if fn can not be
+	 * loaded.
+	 */
 	public void load(String fn) {
+		if (BinaryEnsemble.isBinary(fn)) {
+			map(fn);
+			return;
+		}
 		try {
 			String content = "";
-			String model = "";
+			StringBuilder model = new StringBuilder();
 			BufferedReader in = new BufferedReader(new InputStreamReader(
 			        new FileInputStream(fn), "ASCII"));
 			while ((content = in.readLine()) != null) {
@@ -375,22 +419,39 @@ public class LambdaMART extends Ranker {
 				if (content.indexOf("##") == 0)
 					continue;
 				// actual model component
-				model += content;
+				model.append(content);
 			}
 			in.close();
 			// load the ensemble
-			ensemble = new Ensemble(model);
+			ensemble = new Ensemble(model.toString());
+			mapped = null;
 		} catch (Exception ex) {
 			System.out.println("Error in LambdaMART::load(): " + ex.toString());
 		}
 	}
 
+	/**
+	 * Map a binary model written by BinaryEnsemble into memory and score it in
+	 * place; its trees are only built if getEnsemble() is called
+	 * 
+	 * @return false if fn is not a valid binary model, the current model is
+	 *         then kept
+	 */
+	public boolean map(String fn) {
+		MappedEnsemble me = BinaryEnsemble.map(fn, verifyChecksum);
+		if (me == null)
+			return false;
+		mapped = me;
+		ensemble = null;
+		return true;
+	}
+
 	public void printParameters() {
-		PRINTLN("No. of trees: " + nTrees);
-		PRINTLN("No. of leaves: " + nTreeLeaves);
-		PRINTLN("No. of threshold candidates: " + nThreshold);
-		PRINTLN("Learning rate: " + learningRate);
-		PRINTLN("Stop early: " + nRoundToStopEarly
+		PRINTLN("No. of trees: " + config.martTrees);
+		PRINTLN("No. of leaves: " + config.martLeaves);
+		PRINTLN("No. of threshold candidates: " + config.martThreshold);
+		PRINTLN("Learning rate: " + config.martLearningRate);
+		PRINTLN("Stop early: " + config.martStopEarly
 		        + " rounds without performance gain on validation data");
 	}
 
@@ -399,13 +460,17 @@ public class LambdaMART extends Ranker {
 	}
 
 	public Ensemble getEnsemble() {
+		if (ensemble == null && mapped != null)
+			ensemble = mapped.toEnsemble();
 		return ensemble;
 	}
 
 	protected void computePseudoResponses() {
 		MyThreadPool p = MyThreadPool.getInstance();
-		if (p.size() == 1)// single-thread
+		if (p.size() == 1 || concurrent) {// single-thread
 			computePseudoResponses(0, samples.size() - 1, 0);
+			return;
+		}
 
 		// multi-threading
 		List<LambdaComputationWorker> workers = new ArrayList<LambdaMART.LambdaComputationWorker>();
@@ -426,7 +491,7 @@ public class LambdaMART extends Ranker {
 							// on
 			p.execute(wk);
 
-			if (i < chunk - 1)
+			if (i < p.size() - 1)
 				for (int j = start; j <= end; j++)
 					current += samples.get(j).size();
 		}
@@ -435,7 +500,31 @@ public class LambdaMART extends Ranker {
 		p.await();
 	}
 
+	/**
+	 * @return contexts of all training queries under the current metric, null
+	 *         if it has none
+	 */
+	protected MetricContext[] createContexts() {
+		MetricContext[] ctx = new MetricContext[samples.size()];
+		for (int i = 0; i < samples.size(); i++) {
+			ctx[i] = scorer.createContext(samples.get(i));
+			if (ctx[i] == null)
+				return null;
+		}
+		return ctx;
+	}
+
 	protected void computePseudoResponses(int start, int end, int current) {
+		if (contexts != null) {
+			LambdaKernel kernel = kernels.get();
+			for (int i = start; i <= end; i++) {
+				kernel.compute(contexts[i], modelScores, current,
+				        pseudoResponses, weights);
+				current += samples.get(i).size();
+			}
+			return;
+		}
+
 		// compute the lambda for each document (aka "pseudo response")
 		for (int i = start; i <= end; i++) {
 			RankList r = samples.get(i);
@@ -470,7 +559,7 @@ public class LambdaMART extends Ranker {
 
 			for (int j = 0; j < r.size(); j++) {
 				pseudoResponses[current + j] = (float) lambdas[j];
-				r.get(j).setCached(weights[j]);
+				this.weights[current + j] = weights[j];
 			}
 			current += r.size();
 		}
@@ -486,20 +575,12 @@ public class LambdaMART extends Ranker {
 			for (int j = 0; j < idx.length; j++) {
 				int k = idx[j];
 				s1 += pseudoResponses[k];
-				s2 += martSamples[k].getCached();
+				s2 += weights[k];
 			}
 			s.setOutput(s1 / s2);
 		}
 	}
 
-	protected int[] sortSamplesByFeature(DataPoint[] samples, int fid) {
-		double[] score = new double[samples.length];
-		for (int i = 0; i < samples.length; i++)
-			score[i] = samples[i].getFeatureValue(fid);
-		int[] idx = MergeSorter.sort(score, true);
-		return idx;
-	}
-
 	/**
 	 * This function is equivalent to the inherited function rank(...), but it
 	 * uses the cached model's outputs instead of computing them from scratch.
@@ -517,24 +598,19 @@ public class LambdaMART extends Ranker {
 		return new RankList(orig, idx);
 	}
 
+	/**
+	 * Lists are ranked from the cached model's outputs and scored from their
+	 * labels, in parallel unless this ranker is trained alongside others
+	 */
 	protected float computeModelScoreOnTraining() {
-		float s = 0;
-		int current = 0;
-		for (int i = 0; i < samples.size(); i++) {
-			s += scorer.score(rank(i, current));
-			current += samples.get(i).size();
-		}
-		s = s / samples.size();
-		return s;
+		MyThreadPool p = concurrent ? null : MyThreadPool.getInstance();
+		return (float) scorer.score(samples, modelScores, p);
 	}
 
 	protected float computeModelScoreOnValidation() {
-		float score = 0;
-		for (int i = 0; i < validationSamples.size(); i++) {
-			int[] idx = MergeSorter.sort(modelScoresOnValidation[i], false);
-			score += scorer.score(new RankList(validationSamples.get(i), idx));
-		}
-		return score / validationSamples.size();
+		MyThreadPool p = concurrent ? null : MyThreadPool.getInstance();
+		return (float) scorer.score(validationSamples,
+		        modelScoresOnValidation, p);
 	}
 
 	/**
@@ -565,29 +641,7 @@ public class LambdaMART extends Ranker {
 		return changes;
 	}
 
-	protected void sortSamplesByFeature(int fStart, int fEnd) {
-		for (int i = fStart; i <= fEnd; i++)
-			sortedIdx[i] = sortSamplesByFeature(martSamples, features[i]);
-	}
-
 	// For multi-threading processing
-	class SortWorker implements Runnable {
-		LambdaMART ranker = null;
-		int start = -1;
-		int end = -1;
-
-		SortWorker(LambdaMART ranker, int start, int end) {
-			this.ranker = ranker;
-			this.start = start;
-			this.end = end;
-		}
-
-		public void run() {
-			// System.out.println("Thread [" + start + "/" + end + "]");
-			ranker.sortSamplesByFeature(start, end);
-		}
-	}
-
 	class LambdaComputationWorker implements Runnable {
 		LambdaMART ranker = null;
 		int rlStart = -1;
@@ -74,6 +74,12 @@ public class LambdaRank extends RankNet {
 		}
 	}
 
+	// pair weights and targets are only applied by batchBackPropagate(), which
+	// the dense backend bypasses: always train the graph
+	protected boolean denseBackend() {
+		return false;
+	}
+
 	protected RankList internalReorder(RankList rl) {
 		return rank(rl);
 	}
@@ -97,11 +103,14 @@ public class LambdaRank extends RankNet {
 		misorderedPairs = 0;
 		for (int j = 0; j < samples.size(); j++) {
 			RankList rl = samples.get(j);
+			double[] o = new double[rl.size()];
+			for (int k = 0; k < rl.size(); k++)
+				o[k] = eval(rl.get(k));
 			for (int k = 0; k < rl.size() - 1; k++) {
-				double o1 = eval(rl.get(k));
+				double o1 = o[k];
 				for (int l = k + 1; l < rl.size(); l++) {
 					if (rl.get(k).getLabel() > rl.get(l).getLabel()) {
-						double o2 = eval(rl.get(l));
+						double o2 = o[l];
 						// error += crossEntropy(o1, o2, 1.0f);
 						if (o1 < o2)
 							misorderedPairs++;
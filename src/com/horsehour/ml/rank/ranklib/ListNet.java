@@ -86,7 +86,7 @@ public class ListNet extends RankNet {
 			for (int i = 0; i < layers.size(); i++)
 				bestModelOnValidation.add(new ArrayList<Double>());
 
-		Neuron.learningRate = learningRate;
+		setLearningRate(config.listNetLearningRate);
 		PRINTLN("[Done]");
 	}
 
@@ -98,26 +98,33 @@ public class ListNet extends RankNet {
 		        "C.E. Loss", scorer.name() + "-T", scorer.name() + "-V" });
 		PRINTLN("--------------------------------------------------");
 		// Loss function: Cross Entropy Loss(C.E. Loss)
-		for (int i = 1; i <= nIteration; i++) {
-			for (int j = 0; j < samples.size(); j++) {
-				float[] labels = feedForward(samples.get(j));// labels-ground
-															 // truth labels
-				backPropagate(labels);
-				clearNeuronOutputs();
-			}
+		if (denseBackend())
+			net = new DenseNet(layers);
+		for (int i = 1; i <= config.listNetIteration; i++) {
+			if (net != null)
+				denseEpoch();
+			else
+				for (int j = 0; j < samples.size(); j++) {
+					float[] labels = feedForward(samples.get(j));// labels-ground
+																 // truth labels
+					backPropagate(labels);
+					clearNeuronOutputs();
+				}
 
 			estimateLoss();
 			PRINT(new int[] { 7, 14 },
 			        new String[] { i + "", SimpleMath.round(error, 6) + "" });
 			if (i % 1 == 0) {
-				scoreOnTrainingData = scorer.score(rank(samples));
+				scoreOnTrainingData = score(samples, scorer);
 				PRINT(new int[] { 9 },
 				        new String[] { SimpleMath.round(scoreOnTrainingData, 4)
 				                + "" });
 				if (validationSamples != null) {
-					double score = scorer.score(rank(validationSamples));
+					double score = score(validationSamples, scorer);
 					if (score > bestScoreOnValidationData) {
 						bestScoreOnValidationData = score;
+						if (net != null)
+							net.export(layers);
 						saveBestModelOnValidation();
 					}
 					PRINT(new int[] { 9 },
@@ -126,24 +133,41 @@ public class ListNet extends RankNet {
 			}
 			PRINTLN("");
 		}
+		endDenseTraining();
 		// if validation data is specified ==> best model on this data has been
 		// saved
 		// we now restore the current model to that best model
 		if (validationSamples != null)
 			restoreBestModelOnValidation();
 
-		scoreOnTrainingData = SimpleMath.round(scorer.score(rank(samples)), 4);
+		scoreOnTrainingData = SimpleMath.round(score(samples, scorer), 4);
 		PRINTLN("--------------------------------------------------");
 		PRINTLN("Finished sucessfully.");
 		PRINTLN(scorer.name() + " on training data: " + scoreOnTrainingData);
 		if (validationSamples != null) {
-			bestScoreOnValidationData = scorer.score(rank(validationSamples));
+			bestScoreOnValidationData = score(validationSamples, scorer);
 			PRINTLN(scorer.name() + " on validation data: "
 			        + SimpleMath.round(bestScoreOnValidationData, 4));
 		}
 		PRINTLN("---------------------------------");
 	}
 
+	/**
+	 * d1 - d2 of ListNeuron.computeDelta(), used as is by
+	 * ListNeuron.updateWeight()
+	 */
+	protected void computeOutputError(RankList rl, double[] o, double[] err) {
+		double sumLabelExp = 0;
+		double sumScoreExp = 0;
+		for (int i = 0; i < rl.size(); i++) {
+			sumLabelExp += Math.exp(rl.get(i).getLabel());
+			sumScoreExp += Math.exp(o[i]);
+		}
+		for (int i = 0; i < rl.size(); i++)
+			err[i] = Math.exp(rl.get(i).getLabel()) / sumLabelExp
+			        - Math.exp(o[i]) / sumScoreExp;
+	}
+
 	public double eval(DataPoint p) {
 		return super.eval(p);
 	}
@@ -158,7 +182,7 @@ public class ListNet extends RankNet {
 
 	public String model() {
 		String output = "## " + name() + "\n";
-		output += "## Epochs = " + nIteration + "\n";
+		output += "## Epochs = " + config.listNetIteration + "\n";
 		output += "## No. of features = " + features.length + "\n";
 
 		// print used features
@@ -221,14 +245,17 @@ public class ListNet extends RankNet {
 					n.getOutLinks().get(k)
 					        .setWeight(Double.parseDouble(s[k + 2]));
 			}
+			// eval() on the dense copy leaves the neurons alone, so a loaded
+			// model can be shared by threads
+			net = new DenseNet(layers);
 		} catch (Exception ex) {
 			System.out.println("Error in ListNet::load(): " + ex.toString());
 		}
 	}
 
 	public void printParameters() {
-		PRINTLN("No. of epochs: " + nIteration);
-		PRINTLN("Learning rate: " + learningRate);
+		PRINTLN("No. of epochs: " + config.listNetIteration);
+		PRINTLN("Learning rate: " + config.listNetLearningRate);
 	}
 
 	public String name() {
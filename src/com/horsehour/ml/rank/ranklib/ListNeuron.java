@@ -41,7 +41,7 @@ public class ListNeuron extends Neuron {
 			for (int l = 0; l < d1.length; l++)
 				dw += (d1[l] - d2[l]) * s.getSource().getOutput(l);
 
-			dw *= learningRate;
+			dw *= rate;
 			s.setWeightAdjustment(dw);
 			s.updateWeight();
 		}
@@ -38,6 +38,10 @@ public class MART extends LambdaMART {
 		return "MART";
 	}
 
+	protected MetricContext[] createContexts() {
+		return null;// no lambdas needed
+	}
+
 	protected void computePseudoResponses() {
 		for (int i = 0; i < martSamples.length; i++)
 			pseudoResponses[i] = martSamples[i].getLabel() - modelScores[i];
@@ -0,0 +1,152 @@
+package com.horsehour.ml.rank.ranklib;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Tree ensemble scored straight from a mapped binary model (see
+ * BinaryEnsemble), without building any Split objects. Scores are identical
+ * to Ensemble.eval(DataPoint) on the same model.
+ *
+ * @author Chunheng Jiang
+ */
+public class MappedEnsemble {
+	private final String name;
+	private final int nTree;
+	private final int nNode;
+	private final int nLeaf;
+
+	private final FloatBuffer weight;
+	private final IntBuffer root;
+	private final IntBuffer fid;
+	private final FloatBuffer threshold;
+	private final IntBuffer left;
+	private final IntBuffer right;
+	private final FloatBuffer output;
+
+	MappedEnsemble(ByteBuffer buf, String name, int nTree, int nNode, int nLeaf) {
+		this.name = name;
+		this.nTree = nTree;
+		this.nNode = nNode;
+		this.nLeaf = nLeaf;
+		int pos = BinaryEnsemble.HEADER;
+		weight = slice(buf, pos, nTree).asFloatBuffer();
+		pos += 4 * nTree;
+		root = slice(buf, pos, nTree).asIntBuffer();
+		pos += 4 * nTree;
+		fid = slice(buf, pos, nNode).asIntBuffer();
+		pos += 4 * nNode;
+		threshold = slice(buf, pos, nNode).asFloatBuffer();
+		pos += 4 * nNode;
+		left = slice(buf, pos, nNode).asIntBuffer();
+		pos += 4 * nNode;
+		right = slice(buf, pos, nNode).asIntBuffer();
+		pos += 4 * nNode;
+		output = slice(buf, pos, nLeaf).asFloatBuffer();
+	}
+
+	private static ByteBuffer slice(ByteBuffer buf, int pos, int n) {
+		ByteBuffer b = buf.duplicate();
+		b.position(pos).limit(pos + 4 * n);
+		return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Check every root, child and leaf index, so that scoring can neither
+	 * read out of bounds nor loop. A child must follow its parent, which
+	 * holds for the pre-order written by BinaryEnsemble.
+	 */
+	boolean isValid() {
+		for (int t = 0; t < nTree; t++)
+			if (!isChild(root.get(t), -1))
+				return false;
+		for (int n = 0; n < nNode; n++)
+			if (fid.get(n) < 0 || !isChild(left.get(n), n)
+			        || !isChild(right.get(n), n))
+				return false;
+		return true;
+	}
+
+	private boolean isChild(int c, int parent) {
+		if (c < 0)
+			return ~c < nLeaf;
+		return c > parent && c < nNode;
+	}
+
+	/**
+	 * @return name of the ranker that wrote the model
+	 */
+	public String name() {
+		return name;
+	}
+
+	public int treeCount() {
+		return nTree;
+	}
+
+	public int nodeCount() {
+		return nNode;
+	}
+
+	public int leafCount() {
+		return nLeaf;
+	}
+
+	public float eval(DataPoint dp) {
+		if (dp instanceof DenseDataPoint)
+			return eval(dp.getFeatureVector());
+		float s = 0;
+		for (int t = 0; t < nTree; t++) {
+			int n = root.get(t);
+			while (n >= 0)
+				n = (dp.getFeatureValue(fid.get(n)) <= threshold.get(n)) ? left
+				        .get(n) : right.get(n);
+			s += output.get(~n) * weight.get(t);
+		}
+		return s;
+	}
+
+	public float eval(float[] fVals) {
+		float s = 0;
+		for (int t = 0; t < nTree; t++) {
+			int n = root.get(t);
+			while (n >= 0)
+				n = (FlatEnsemble.value(fVals, fid.get(n)) <= threshold.get(n)) ? left
+				        .get(n) : right.get(n);
+			s += output.get(~n) * weight.get(t);
+		}
+		return s;
+	}
+
+	public float[] eval(RankList rl) {
+		float[] out = new float[rl.size()];
+		for (int i = 0; i < out.length; i++)
+			out[i] = eval(rl.get(i));
+		return out;
+	}
+
+	/**
+	 * Materialize the model as a regular Ensemble, e.g. to write it as XML
+	 */
+	public Ensemble toEnsemble() {
+		Ensemble ensemble = new Ensemble();
+		for (int t = 0; t < nTree; t++)
+			ensemble.add(new RegressionTree(create(root.get(t))), weight.get(t));
+		return ensemble;
+	}
+
+	private Split create(int n) {
+		Split s;
+		if (n < 0) {
+			s = new Split();
+			s.setOutput(output.get(~n));
+		} else {
+			s = new Split(fid.get(n), threshold.get(n), 0);
+			s.setLeft(create(left.get(n)));
+			s.setRight(create(right.get(n)));
+		}
+		return s;
+	}
+}
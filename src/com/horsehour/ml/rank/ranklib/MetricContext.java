@@ -0,0 +1,99 @@
+package com.horsehour.ml.rank.ranklib;
+
+/**
+ * Per-query state of a metric, built once from the labels of a rank list
+ * (gains, ideal DCG, ...), so that swap changes can be computed for any
+ * ranking of the list without allocating. See
+ * MetricScorer.createContext(RankList).
+ *
+ * Documents are referred to by their index in the original rank list,
+ * positions by their 0-based rank in the current ranking.
+ *
+ * @author Chunheng Jiang
+ */
+public abstract class MetricContext {
+	protected int n = 0;
+	protected int size = 0;// cutoff, as in MetricScorer.swapChange
+	protected float[] labels = null;// by document
+
+	public MetricContext(RankList rl, int k) {
+		n = rl.size();
+		size = (n > k) ? k : n;
+		labels = new float[n];
+		for (int i = 0; i < n; i++)
+			labels[i] = rl.get(i).getLabel();
+	}
+
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * @return number of top positions whose swaps may change the metric
+	 */
+	public int cutoff() {
+		return size;
+	}
+
+	public float label(int doc) {
+		return labels[doc];
+	}
+
+	/**
+	 * Set the current ranking
+	 *
+	 * @param idx
+	 *            idx[pos] is the document at position pos
+	 */
+	public abstract void rank(int[] idx);
+
+	/**
+	 * @return the same value as swapChange(rl)[i][j] of the ranked list, for
+	 *         positions i < j with i < cutoff()
+	 */
+	public abstract double delta(int i, int j);
+
+	/**
+	 * @return the same value as score(rl) of the scorer on the list ranked
+	 *         by the last call to rank(int[])
+	 */
+	public abstract double score();
+
+	/**
+	 * @return number of top positions score() looks at, as in the scorers
+	 */
+	protected int depth() {
+		return (size > n || size <= 0) ? n : size;
+	}
+
+	private static double[] discount = new double[0];
+	private static double[] log2 = new double[0];
+
+	/**
+	 * @return table of at least n entries, discount[pos] = 1 /
+	 *         log2(pos + 2), shared by all contexts
+	 */
+	protected static synchronized double[] discount(int n) {
+		if (discount.length < n) {
+			double[] d = new double[Math.max(n, 2 * discount.length)];
+			for (int p = 0; p < d.length; p++)
+				d[p] = 1.0 / SimpleMath.logBase2(p + 2);
+			discount = d;
+		}
+		return discount;
+	}
+
+	/**
+	 * @return table of at least n + 1 entries, log2[pos] = log2(pos + 1) as
+	 *         divided by in the scorers, shared by all contexts
+	 */
+	protected static synchronized double[] log2(int n) {
+		if (log2.length < n + 1) {
+			double[] d = new double[Math.max(n + 1, 2 * log2.length)];
+			for (int p = 1; p < d.length; p++)
+				d[p] = SimpleMath.logBase2(p + 1);
+			log2 = d;
+		}
+		return log2;
+	}
+}
@@ -47,6 +47,142 @@ public class MetricScorer {
 		return 0.0;
 	}
 
+	/**
+	 * Score rl as ranked by idx, without building the ranked list. MUST BE
+	 * OVER-RIDDEN by scorers whose depth() is not 0.
+	 * 
+	 * @param idx
+	 *            idx[pos] is the document of rl at position pos; only the
+	 *            first TopKSorter.size(rl.size(), depth()) positions are
+	 *            needed, and entries past rl.size() are ignored
+	 * @return the same as score(new RankList(rl, idx)) with the full ranking
+	 */
+	public double score(RankList rl, int[] idx) {
+		RankList ranked = new RankList();
+		for (int i = 0; i < rl.size(); i++)
+			ranked.add(rl.get(idx[i]));
+		return score(ranked);
+	}
+
+	/**
+	 * Score a ranking from the labels of the documents alone, without
+	 * touching the data points. MUST BE OVER-RIDDEN
+	 * 
+	 * @param qid
+	 *            id of the query, for scorers that keep data per query; null
+	 *            if unknown
+	 * @param labels
+	 *            labels[d] is the label of document d
+	 * @param idx
+	 *            ranking of the documents as in score(RankList, int[]), or
+	 *            null for the order of labels
+	 * @return the same as score(rl, idx) for a list rl with these labels
+	 */
+	public double score(String qid, float[] labels, int[] idx) {
+		return 0.0;
+	}
+
+	/**
+	 * Mean score of the lists, each ranked by the given scores of its
+	 * documents. Lists are ranked and scored in parallel on p (one after the
+	 * other if p is null or has a single thread); the per-list scores are
+	 * summed in list order, so the result does not depend on the number of
+	 * threads.
+	 * 
+	 * @param scores
+	 *            scores[i][d] is the score of document d of list i
+	 */
+	public double score(List<RankList> l, float[][] scores, MyThreadPool p) {
+		return score(l, scores, null, null, p);
+	}
+
+	/**
+	 * score(l, scores, p) with the scores of all lists in one array, those of
+	 * list i right after those of list i - 1
+	 */
+	public double score(List<RankList> l, float[] scores, MyThreadPool p) {
+		int[] base = new int[l.size()];
+		for (int i = 1; i < base.length; i++)
+			base[i] = base[i - 1] + l.get(i - 1).size();
+		return score(l, null, scores, base, p);
+	}
+
+	private double score(List<RankList> l, float[][] nested, float[] flat,
+	        int[] base, MyThreadPool p) {
+		double[] s = new double[l.size()];
+		if (p == null || p.size() == 1 || l.size() < 2)
+			score(l, nested, flat, base, 0, l.size(), s);
+		else {
+			int[] partition = p.partition(l.size());
+			for (int i = 0; i < partition.length - 1; i++)
+				p.execute(new Worker(l, nested, flat, base, partition[i],
+				        partition[i + 1], s));
+			p.await();
+		}
+
+		double score = 0.0;
+		for (int i = 0; i < s.length; i++)
+			score += s[i];
+		return score / l.size();
+	}
+
+	protected void score(List<RankList> l, float[][] nested, float[] flat,
+	        int[] base, int from, int to, double[] s) {
+		int k = depth();
+		int max = 0;
+		for (int i = from; i < to; i++)
+			max = Math.max(max, l.get(i).size());
+		int[] idx = new int[max];
+		for (int i = from; i < to; i++) {
+			RankList rl = l.get(i);
+			if (flat != null)
+				TopKSorter.sort(flat, base[i], rl.size(), k, idx);
+			else
+				TopKSorter.sort(nested[i], 0, rl.size(), k, idx);
+			s[i] = score(id(rl), rl.getLabels(), idx);
+		}
+	}
+
+	class Worker implements Runnable {
+		List<RankList> l = null;
+		float[][] nested = null;
+		float[] flat = null;
+		int[] base = null;
+		int from = 0;
+		int to = 0;
+		double[] s = null;
+
+		Worker(List<RankList> l, float[][] nested, float[] flat, int[] base,
+		        int from, int to, double[] s) {
+			this.l = l;
+			this.nested = nested;
+			this.flat = flat;
+			this.base = base;
+			this.from = from;
+			this.to = to;
+			this.s = s;
+		}
+
+		public void run() {
+			score(l, nested, flat, base, from, to, s);
+		}
+	}
+
+	/**
+	 * @return id of the query of rl, null if it is empty
+	 */
+	protected static String id(RankList rl) {
+		return (rl.size() > 0) ? rl.getID() : null;
+	}
+
+	/**
+	 * @return number of top positions score() looks at, 0 if it needs the
+	 *         whole ranking
+	 */
+	public int depth() {
+		return 0;
+	}
+
 	public MetricScorer clone() {
 		return null;
 	}
@@ -58,4 +194,13 @@ public class MetricScorer {
 	public double[][] swapChange(RankList rl) {
 		return null;
 	}
+
+	/**
+	 * @return per-query context giving the same swap changes as
+	 *         swapChange(RankList) for any ranking of rl, or null if the
+	 *         metric does not provide one
+	 */
+	public MetricContext createContext(RankList rl) {
+		return null;
+	}
 }
@@ -32,9 +32,35 @@ public class MyThreadPool extends ThreadPoolExecutor {
 	}
 
 	private static MyThreadPool singleton = null;
+	private static ThreadLocal<MyThreadPool> bound = new ThreadLocal<MyThreadPool>();
 
+	/**
+	 * @return the pool bound to the current thread if any, the shared one
+	 *         otherwise
+	 */
 	public static MyThreadPool getInstance() {
-		return singleton;
+		MyThreadPool p = bound.get();
+		return (p != null) ? p : singleton;
+	}
+
+	/**
+	 * Give the current thread a pool of its own (null to go back to the
+	 * shared one). await() waits for every task of a pool, so rankers trained
+	 * side by side must not share one.
+	 */
+	public static void bind(MyThreadPool p) {
+		if (p == null)
+			bound.remove();
+		else
+			bound.set(p);
+	}
+
+	/**
+	 * @return a new pool, not shared, to be passed to bind(); its threads are
+	 *         only started by the first tasks
+	 */
+	public static MyThreadPool create(int poolSize) {
+		return new MyThreadPool(poolSize);
 	}
 
 	public static void init(int poolSize) {
@@ -14,15 +14,17 @@ import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Hashtable;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author vdang
  */
 public class NDCGScorer extends MetricScorer {
 
-	public Hashtable<String, Double> idealGains = null;
+	public Map<String, Double> idealGains = null;// external judgments
+	private volatile IdealDCGCache ideals = null;
 
 	public NDCGScorer() {
 		this.k = 10;
@@ -37,7 +39,7 @@ public class NDCGScorer extends MetricScorer {
 	}
 
 	public void loadExternalRelevanceJudgment(String qrelFile) {
-		idealGains = new Hashtable<String, Double>();
+		idealGains = new HashMap<String, Double>();
 		try {
 			String content = "";
 			BufferedReader in = new BufferedReader(new InputStreamReader(
@@ -81,53 +83,110 @@ public class NDCGScorer extends MetricScorer {
 	 * top-k portion of the list.
 	 */
 	public double score(RankList rl) {
-		List<Integer> rel = new ArrayList<Integer>();// ground truth label
-		for (int i = 0; i < rl.size(); i++)
-			rel.add((int) rl.get(i).getLabel());
-		if (rl.size() == 0)
+		return score(id(rl), rl.getLabels(), null);
+	}
+
+	public double score(RankList rl, int[] idx) {
+		return score(id(rl), rl.getLabels(), idx);
+	}
+
+	public double score(String qid, float[] labels, int[] idx) {
+		int n = labels.length;
+		if (n == 0)
 			return -1.0;
 
-		double d2 = 0;
-		if (idealGains != null) {
-			Double d = idealGains.get(rl.getID());
-			if (d != null)
-				d2 = d.doubleValue();
-		} else
-			d2 = getIdealDCG(rel, k);
+		double d2 = getIdealDCG(qid, labels);
 		if (d2 <= 0.0)// I mean precisely "="
 			return 0.0;
-		return getDCG(rel, k) / d2;
+
+		int size = (k > n || k <= 0) ? n : k;
+		double dcg = 0.0;
+		for (int i = 1; i <= size; i++) {
+			int rel = (int) labels[(idx == null) ? i - 1 : idx[i - 1]];
+			dcg += (Math.pow(2.0, rel) - 1.0) / SimpleMath.logBase2(i + 1);
+		}
+		return dcg / d2;
+	}
+
+	public int depth() {
+		return k;
 	}
 
 	public String name() {
 		return "NDCG@" + k;
 	}
 
-	private double getDCG(List<Integer> rel, int k) {
+	private double getIdealDCG(List<Integer> rel, int k) {
 		int size = k;
 		if (k > rel.size() || k <= 0)
 			size = rel.size();
 
+		int[] idx = Sorter.sort(rel, false);
 		double dcg = 0.0;
 		for (int i = 1; i <= size; i++) {
-			dcg += (Math.pow(2.0, rel.get(i - 1)) - 1.0)
+			dcg += (Math.pow(2.0, rel.get(idx[i - 1])) - 1.0)
 			        / SimpleMath.logBase2(i + 1);
 		}
 		return dcg;
 	}
 
-	private double getIdealDCG(List<Integer> rel, int k) {
-		int size = k;
-		if (k > rel.size() || k <= 0)
-			size = rel.size();
+	/**
+	 * @return ideal DCG at k of the query, from the external judgments if
+	 *         they were loaded, or else memoized per query
+	 */
+	protected double getIdealDCG(String qid, float[] labels) {
+		if (idealGains != null) {
+			Double d = idealGains.get(qid);
+			return (d != null) ? d.doubleValue() : 0;
+		}
+		IdealDCGCache c = ideals;
+		if (c == null || c.getK() != k)
+			ideals = c = new IdealDCGCache(k);
+		return c.get(qid, labels);
+	}
 
-		int[] idx = Sorter.sort(rel, false);
-		double dcg = 0.0;
-		for (int i = 1; i <= size; i++) {
-			dcg += (Math.pow(2.0, rel.get(idx[i - 1])) - 1.0)
-			        / SimpleMath.logBase2(i + 1);
+	public MetricContext createContext(RankList rl) {
+		return new Context(rl, k, getIdealDCG(id(rl), rl.getLabels()));
+	}
+
+	static class Context extends MetricContext {
+		private double[] gain = null;// 2^label by document
+		private double[] discount = null;
+		private double ideal = 0;
+		private int[] idx = null;
+		private double[] log2 = null;
+
+		Context(RankList rl, int k, double ideal) {
+			super(rl, k);
+			this.ideal = ideal;
+			discount = discount(n);
+			log2 = log2(n);
+			gain = new double[n];
+			for (int i = 0; i < n; i++)
+				gain[i] = Math.pow(2.0, (int) labels[i]);
+		}
+
+		public void rank(int[] idx) {
+			this.idx = idx;
+		}
+
+		public double delta(int i, int j) {
+			if (ideal > 0)
+				return (discount[i] - discount[j])
+				        * (gain[idx[i]] - gain[idx[j]]) / ideal;
+			return 0;
+		}
+
+		public double score() {
+			if (n == 0)
+				return -1.0;
+			if (ideal <= 0.0)
+				return 0.0;
+			double dcg = 0.0;
+			for (int i = 1, m = depth(); i <= m; i++)
+				dcg += (gain[idx[i - 1]] - 1.0) / log2[i];
+			return dcg / ideal;
 		}
-		return dcg;
 	}
 
 	public double[][] swapChange(RankList rl) {
@@ -20,6 +20,7 @@ import java.util.List;
 public class Neuron {
 	public static double momentum = 0.9;
 	public static double learningRate = 0.001;// 0.001;
+	protected double rate = learningRate;// set by the network
 
 	// protected TransferFunction tfunc = new HyperTangentFunction();
 	protected TransferFunction tfunc = new LogiFunction();
@@ -205,7 +206,7 @@ public class Neuron {
 				sum_j += deltas_j[l]
 				        * s.getSource().getOutput(
 				                param.pairMap[param.current][l]);
-			double dw = learningRate
+			double dw = rate
 			        * (delta_i * s.getSource().getOutput(param.current) - sum_j);
 			s.setWeightAdjustment(dw);
 			s.updateWeight();
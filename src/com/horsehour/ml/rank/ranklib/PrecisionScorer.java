@@ -25,19 +25,31 @@ public class PrecisionScorer extends MetricScorer {
 	}
 
 	public double score(RankList rl) {
+		return score(id(rl), rl.getLabels(), null);
+	}
+
+	public double score(RankList rl, int[] idx) {
+		return score(id(rl), rl.getLabels(), idx);
+	}
+
+	public double score(String qid, float[] labels, int[] idx) {
 		int count = 0;
 
 		int size = k;
-		if (k > rl.size() || k <= 0)
-			size = rl.size();
+		if (k > labels.length || k <= 0)
+			size = labels.length;
 
 		for (int i = 0; i < size; i++) {
-			if (rl.get(i).getLabel() > 0.0)// relevant
+			if (labels[(idx == null) ? i : idx[i]] > 0.0)// relevant
 				count++;
 		}
 		return ((double) count) / size;
 	}
 
+	public int depth() {
+		return k;
+	}
+
 	public MetricScorer clone() {
 		return new PrecisionScorer();
 	}
@@ -0,0 +1,205 @@
+package com.horsehour.ml.rank.ranklib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tree ensemble scoring by bitvector traversal (QuickScorer, C. Lucchese et
+ * al., SIGIR 2015). Leaves of every tree are numbered from left to right and
+ * each tree keeps a bitvector of the leaves still reachable. A node whose
+ * test fails (x > threshold) rules out all leaves of its left subtree. Nodes
+ * are grouped by feature and sorted by threshold, so a document only scans
+ * the nodes of each feature until the first threshold it does not exceed;
+ * the exit leaf of a tree is then the lowest bit left set.
+ *
+ * Leaf values have the tree weights folded in and are summed in tree order,
+ * so scores are identical to Ensemble.eval(DataPoint).
+ *
+ * @author Chunheng Jiang
+ */
+public class QuickScorer {
+	protected int nTree = 0;
+	protected int nWords = 0;// longs per tree bitvector
+	protected int maxLeaves = 0;
+
+	// nodes grouped by feature: the nodes testing fids[i] are
+	// [offset[i], offset[i+1]), by ascending threshold
+	protected int[] fids = null;
+	protected int[] offset = null;
+	protected float[] threshold = null;
+	protected int[] tree = null;
+	protected long[] mask = null;// nWords per node
+
+	protected float[] leaf = null;// maxLeaves per tree
+
+	public QuickScorer(Ensemble ensemble) {
+		nTree = ensemble.treeCount();
+		for (int t = 0; t < nTree; t++)
+			maxLeaves = Math.max(maxLeaves, ensemble.getTree(t).leaves().size());
+		nWords = Math.max(1, (maxLeaves + 63) >>> 6);
+
+		leaf = new float[nTree * maxLeaves];
+		List<Node> nodes = new ArrayList<Node>();
+		for (int t = 0; t < nTree; t++)
+			add(ensemble.getTree(t).root, t, ensemble.getWeight(t), 0, nodes);
+
+		Node[] sorted = nodes.toArray(new Node[nodes.size()]);
+		Arrays.sort(sorted);
+
+		int nFeature = 0;
+		for (int i = 0; i < sorted.length; i++)
+			if (i == 0 || sorted[i].fid != sorted[i - 1].fid)
+				nFeature++;
+		fids = new int[nFeature];
+		offset = new int[nFeature + 1];
+		threshold = new float[sorted.length];
+		tree = new int[sorted.length];
+		mask = new long[sorted.length * nWords];
+		for (int i = 0, f = -1; i < sorted.length; i++) {
+			Node n = sorted[i];
+			if (i == 0 || n.fid != sorted[i - 1].fid) {
+				fids[++f] = n.fid;
+				offset[f] = i;
+			}
+			threshold[i] = n.threshold;
+			tree[i] = n.tree;
+			Arrays.fill(mask, i * nWords, (i + 1) * nWords, -1L);
+			for (int l = n.leftFrom; l < n.leftTo; l++)
+				mask[i * nWords + (l >>> 6)] &= ~(1L << (l & 63));
+		}
+		offset[nFeature] = sorted.length;
+	}
+
+	/**
+	 * Number the leaves under s from first on, and collect the internal nodes
+	 *
+	 * @return the number of leaves under s
+	 */
+	private int add(Split s, int t, float weight, int first, List<Node> nodes) {
+		if (s.isLeaf()) {
+			leaf[t * maxLeaves + first] = s.getOutput() * weight;
+			return 1;
+		}
+		int nLeft = add(s.getLeft(), t, weight, first, nodes);
+		int nRight = add(s.getRight(), t, weight, first + nLeft, nodes);
+		nodes.add(new Node(s.getFeatureID(), s.getThreshold(), t, first, first
+		        + nLeft));
+		return nLeft + nRight;
+	}
+
+	public int treeCount() {
+		return nTree;
+	}
+
+	public float eval(DataPoint dp) {
+		return eval(dp, new long[nTree * nWords]);
+	}
+
+	/**
+	 * @param v
+	 *            buffer of nTree * nWords longs, overwritten
+	 */
+	public float eval(DataPoint dp, long[] v) {
+		if (dp instanceof DenseDataPoint)
+			return eval(dp.getFeatureVector(), v);
+
+		Arrays.fill(v, -1L);
+		if (!(dp instanceof SparseDataPoint)) {
+			for (int i = 0; i < fids.length; i++)
+				scan(i, dp.getFeatureValue(fids[i]), v);
+			return exit(v);
+		}
+
+		// fids and the stored ids of a sparse point are both ascending: merge
+		SparseDataPoint sp = (SparseDataPoint) dp;
+		int[] ids = sp.getFeatureIDs();
+		int k = 0, size = sp.size();
+		for (int i = 0; i < fids.length; i++) {
+			while (k < size && ids[k] < fids[i])
+				k++;
+			float x = (k < size && ids[k] == fids[i]) ? sp.valueAt(k) : 0.0f;
+			scan(i, x, v);
+		}
+		return exit(v);
+	}
+
+	/**
+	 * @param fVals
+	 *            raw feature vector of a DataPoint
+	 * @param v
+	 *            buffer of nTree * nWords longs, overwritten
+	 */
+	public float eval(float[] fVals, long[] v) {
+		Arrays.fill(v, -1L);
+		for (int i = 0; i < fids.length; i++)
+			scan(i, FlatEnsemble.value(fVals, fids[i]), v);
+		return exit(v);
+	}
+
+	/**
+	 * Clear the leaves made unreachable by value x of the i-th feature
+	 */
+	private void scan(int i, float x, long[] v) {
+		// the test x <= threshold fails on all nodes before the first
+		// threshold x does not exceed
+		for (int n = offset[i], end = offset[i + 1]; n < end
+		        && !(x <= threshold[n]); n++) {
+			if (nWords == 1)
+				v[tree[n]] &= mask[n];
+			else
+				for (int w = 0, base = tree[n] * nWords; w < nWords; w++)
+					v[base + w] &= mask[n * nWords + w];
+		}
+	}
+
+	/**
+	 * @return sum of the exit leaves given the bitvectors v
+	 */
+	private float exit(long[] v) {
+		float s = 0;
+		for (int t = 0; t < nTree; t++) {
+			int l;
+			if (nWords == 1)
+				l = Long.numberOfTrailingZeros(v[t]);
+			else {
+				int w = t * nWords;
+				while (v[w] == 0)
+					w++;
+				l = ((w - t * nWords) << 6) + Long.numberOfTrailingZeros(v[w]);
+			}
+			s += leaf[t * maxLeaves + l];
+		}
+		return s;
+	}
+
+	public float[] eval(RankList rl) {
+		long[] v = new long[nTree * nWords];
+		float[] out = new float[rl.size()];
+		for (int i = 0; i < out.length; i++)
+			out[i] = eval(rl.get(i), v);
+		return out;
+	}
+
+	static class Node implements Comparable<Node> {
+		int fid;
+		float threshold;
+		int tree;
+		int leftFrom;// leaves of the left subtree: [leftFrom, leftTo)
+		int leftTo;
+
+		Node(int fid, float threshold, int tree, int leftFrom, int leftTo) {
+			this.fid = fid;
+			this.threshold = threshold;
+			this.tree = tree;
+			this.leftFrom = leftFrom;
+			this.leftTo = leftTo;
+		}
+
+		public int compareTo(Node o) {
+			if (fid != o.fid)
+				return fid < o.fid ? -1 : 1;
+			return Float.compare(threshold, o.threshold);
+		}
+	}
+}
@@ -14,6 +14,12 @@ import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class RFRanker extends Ranker {
 	// Parameters
@@ -33,11 +39,30 @@ public class RFRanker extends Ranker {
 											// nTrees > 1.
 	public static int nThreshold = 256;
 	public static int minLeafSupport = 1;
+	// [c] parallel bagging
+	public static int nBagThread = 0;// if > 0, train this many bags at a
+									 // time, all sharing one binned index of
+									 // the whole training set (see
+									 // learnParallel()); 0 = one bag after
+									 // another, each binned on its own
 
 	// Variables
 	protected Ensemble[] ensembles = null;// bag of ensembles, each can be a
 										  // single tree or an ensemble of
 										  // gradient boosted trees
+	protected double[] bagScores = null;// of each bag on its own samples
+	protected double[] oobScores = null;// of each bag on its out-of-bag
+										// samples
+	protected double oobScore = 0;// of the whole forest, each query scored
+								  // only by the bags it is out of
+
+	protected RankerConfig bagConfig = null;// parameters of the ranker
+											// trained in each bag
+
+	// state shared by the bags of learnParallel()
+	private int[] offset = null;// first sample of each query in the index
+	private float[] oobSum = null;// per sample, sum of out-of-bag scores
+	private int[] oobCount = null;// per query, #bags it is out of
 
 	public RFRanker() {
 	}
@@ -48,21 +73,28 @@ public class RFRanker extends Ranker {
 
 	public void init() {
 		PRINT("Initializing... ");
-		ensembles = new Ensemble[nBag];
+		ensembles = new Ensemble[config.rfBag];
 		// initialize parameters for the tree(s) built in each bag
-		LambdaMART.nTrees = nTrees;
-		LambdaMART.nTreeLeaves = nTreeLeaves;
-		LambdaMART.learningRate = learningRate;
-		LambdaMART.nThreshold = nThreshold;
-		LambdaMART.minLeafSupport = minLeafSupport;
-		LambdaMART.nRoundToStopEarly = -1;// no early-stopping since we're doing
-										  // bagging
+		bagConfig = config.copy();
+		bagConfig.martTrees = config.rfTrees;
+		bagConfig.martLeaves = config.rfLeaves;
+		bagConfig.martLearningRate = config.rfLearningRate;
+		bagConfig.martThreshold = config.rfThreshold;
+		bagConfig.martMinLeafSupport = config.rfMinLeafSupport;
+		bagConfig.martStopEarly = -1;// no early-stopping since we're doing
+									 // bagging
 		// turn on feature sampling
-		FeatureHistogram.samplingRate = featureSamplingRate;
+		bagConfig.martFeatureSamplingRate = config.rfFeatureSamplingRate;
+		bagConfig.verbose = false;// turn of the progress messages from
+								  // training the bags
 		PRINTLN("[Done]");
 	}
 
 	public void learn() {
+		if (config.rfBagThread > 0) {
+			learnParallel();
+			return;
+		}
 		RankerFactory rf = new RankerFactory();
 		PRINTLN("------------------------------------");
 		PRINTLN("Training starts...");
@@ -71,23 +103,23 @@ public class RFRanker extends Ranker {
 		        scorer.name() + "-B", scorer.name() + "-OOB" });
 		PRINTLN("------------------------------------");
 		// start the bagging process
-		for (int i = 0; i < nBag; i++) {
+		for (int i = 0; i < config.rfBag; i++) {
 			System.gc();
 			Sampler sp = new Sampler();
 			// create a "bag" of samples by random sampling from the training
 			// set
-			List<RankList> bag = sp.doSampling(samples, subSamplingRate, true);
+			List<RankList> bag = sp.doSampling(samples,
+			        config.rfSubSamplingRate, true);
 			// "out-of-bag" samples
 			// List<RankList> outOfBag = sp.getRemains();
-			LambdaMART r = (LambdaMART) rf.createRanker(rType, bag, features);
+			LambdaMART r = (LambdaMART) rf.createRanker(config.rfType, bag,
+			        features);
 			// r.setValidationSet(outOfBag);
 
-			Ranker.verbose = false;// turn of the progress messages from
-								   // training this ranker
+			r.set(bagConfig);
 			r.init();
 			r.set(scorer);
 			r.learn();
-			Ranker.verbose = true;// turn it back on
 			// PRINTLN(new int[]{9, 9, 11}, new String[]{"b["+(i+1)+"]",
 			// SimpleMath.round(r.getScoreOnTrainingData(), 4)+"",
 			// SimpleMath.round(r.getScoreOnValidationData(), 4)+""});
@@ -96,19 +128,191 @@ public class RFRanker extends Ranker {
 			ensembles[i] = r.getEnsemble();
 		}
 		// Finishing up
-		scoreOnTrainingData = scorer.score(rank(samples));
+		scoreOnTrainingData = score(samples, scorer);
+		PRINTLN("------------------------------------");
+		PRINTLN("Finished sucessfully.");
+		PRINTLN(scorer.name() + " on training data: "
+		        + SimpleMath.round(scoreOnTrainingData, 4));
+		if (validationSamples != null) {
+			bestScoreOnValidationData = score(validationSamples, scorer);
+			PRINTLN(scorer.name() + " on validation data: "
+			        + SimpleMath.round(bestScoreOnValidationData, 4));
+		}
+		PRINTLN("------------------------------------");
+	}
+
+	/**
+	 * Train rfBagThread bags at a time on a bounded pool. The training set is
+	 * binned once; each bag only keeps the rows of its bootstrap sample into
+	 * that index (a query drawn twice contributes its rows twice), plus its
+	 * own model buffers while it trains. Out-of-bag queries are scored by
+	 * every bag that did not draw them; the scores are summed in bag order,
+	 * whatever order the bags finish in, so the OOB estimate is reproducible.
+	 * A failure in any bag is rethrown here.
+	 */
+	protected void learnParallel() {
+		PRINTLN("------------------------------------");
+		PRINTLN("Training starts...");
+		PRINTLN("------------------------------------");
+
+		offset = new int[samples.size() + 1];
+		for (int i = 0; i < samples.size(); i++)
+			offset[i + 1] = offset[i] + samples.get(i).size();
+		DataPoint[] all = new DataPoint[offset[samples.size()]];
+		for (int i = 0; i < samples.size(); i++)
+			for (int j = 0; j < samples.get(i).size(); j++)
+				all[offset[i] + j] = samples.get(i).get(j);
+		BinnedFeatures index = new BinnedFeatures(all, features,
+		        config.rfThreshold);
+		all = null;
+
+		bagScores = new double[config.rfBag];
+		oobScores = new double[config.rfBag];
+		oobSum = new float[offset[samples.size()]];
+		oobCount = new int[samples.size()];
+
+		Random r = new Random();
+		int size = (int) (config.rfSubSamplingRate * samples.size());
+		int[][] drawn = new int[config.rfBag][size];
+		List<Future<float[]>> oob = new ArrayList<Future<float[]>>();
+		ExecutorService pool = Executors.newFixedThreadPool(config.rfBagThread);
+		try {
+			for (int i = 0; i < config.rfBag; i++) {
+				for (int k = 0; k < size; k++)
+					drawn[i][k] = r.nextInt(samples.size());
+				oob.add(pool.submit(new BagWorker(i, index, drawn[i])));
+			}
+			// a bag that finishes early waits here for the ones before it
+			for (int i = 0; i < config.rfBag; i++)
+				addOOB(drawn[i], oob.get(i).get());
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		} finally {
+			pool.shutdownNow();
+		}
+
+		PRINTLN(new int[] { 9, 9, 11 }, new String[] { "bag",
+		        scorer.name() + "-B", scorer.name() + "-OOB" });
+		PRINTLN("------------------------------------");
+		for (int i = 0; i < config.rfBag; i++)
+			PRINTLN(new int[] { 9, 9, 11 }, new String[] { "b[" + (i + 1) + "]",
+			        SimpleMath.round(bagScores[i], 4) + "",
+			        SimpleMath.round(oobScores[i], 4) + "" });
+
+		// the forest on each query, using only the bags it is out of
+		oobScore = 0;
+		int nOOB = 0;
+		for (int i = 0; i < samples.size(); i++) {
+			if (oobCount[i] == 0)
+				continue;
+			RankList rl = samples.get(i);
+			int[] idx = new int[TopKSorter.size(rl.size(), scorer.depth())];
+			TopKSorter.sort(oobSum, offset[i], rl.size(), scorer.depth(), idx);
+			oobScore += scorer.score(rl, idx);
+			nOOB++;
+		}
+		if (nOOB > 0)
+			oobScore /= nOOB;
+		offset = null;
+		oobSum = null;
+		oobCount = null;
+
+		// Finishing up
+		scoreOnTrainingData = score(samples, scorer);
 		PRINTLN("------------------------------------");
 		PRINTLN("Finished sucessfully.");
 		PRINTLN(scorer.name() + " on training data: "
 		        + SimpleMath.round(scoreOnTrainingData, 4));
+		PRINTLN(scorer.name() + " out-of-bag (" + nOOB + " queries): "
+		        + SimpleMath.round(oobScore, 4));
 		if (validationSamples != null) {
-			bestScoreOnValidationData = scorer.score(rank(validationSamples));
+			bestScoreOnValidationData = score(validationSamples, scorer);
 			PRINTLN(scorer.name() + " on validation data: "
 			        + SimpleMath.round(bestScoreOnValidationData, 4));
 		}
 		PRINTLN("------------------------------------");
 	}
 
+	/**
+	 * Add the out-of-bag scores of a bag, as returned by trainBag()
+	 */
+	private void addOOB(int[] drawn, float[] scores) {
+		boolean[] inBag = new boolean[samples.size()];
+		for (int q : drawn)
+			inBag[q] = true;
+		int k = 0;
+		for (int q = 0; q < samples.size(); q++) {
+			if (inBag[q])
+				continue;
+			for (int j = offset[q]; j < offset[q + 1]; j++)
+				oobSum[j] += scores[k++];
+			oobCount[q]++;
+		}
+	}
+
+	/**
+	 * Train bag i on the queries drawn (with repeats) and score it on the
+	 * queries it did not draw
+	 * 
+	 * @return scores of the documents of the out-of-bag queries, in the order
+	 *         of the queries
+	 */
+	protected float[] trainBag(int i, BinnedFeatures index, int[] drawn) {
+		List<RankList> bag = new ArrayList<RankList>();
+		boolean[] inBag = new boolean[samples.size()];
+		int n = 0;
+		for (int q : drawn) {
+			bag.add(samples.get(q));
+			inBag[q] = true;
+			n += samples.get(q).size();
+		}
+		int[] rows = new int[n];
+		n = 0;
+		for (int q : drawn)
+			for (int j = offset[q]; j < offset[q + 1]; j++)
+				rows[n++] = j;
+
+		LambdaMART r = (LambdaMART) new RankerFactory().createRanker(
+		        config.rfType, bag, features);
+		r.set(bagConfig);
+		r.concurrent = true;
+		r.init(index.view(rows));
+		r.set(scorer);
+		r.learn();
+		ensembles[i] = r.getEnsemble();
+		bagScores[i] = r.getScoreOnTrainingData();
+
+		FlatEnsemble fe = ensembles[i].flatten();
+		double score = 0;
+		int nOOB = 0;
+		n = 0;
+		for (int q = 0; q < samples.size(); q++)
+			if (!inBag[q])
+				n += samples.get(q).size();
+		float[] oob = new float[n];
+		n = 0;
+		for (int q = 0; q < samples.size(); q++) {
+			if (inBag[q])
+				continue;
+			RankList rl = samples.get(q);
+			float[] scores = fe.eval(rl);
+			score += scorer.score(rl, TopKSorter.sort(scores, scorer.depth()));
+			nOOB++;
+			System.arraycopy(scores, 0, oob, n, scores.length);
+			n += scores.length;
+		}
+		oobScores[i] = (nOOB > 0) ? score / nOOB : 0;
+		return oob;
+	}
+
 	public double eval(DataPoint dp) {
 		double s = 0;
 		for (int i = 0; i < ensembles.length; i++)
@@ -122,20 +326,22 @@ public class RFRanker extends Ranker {
 
 	public String toString() {
 		String str = "";
-		for (int i = 0; i < nBag; i++)
+		for (int i = 0; i < config.rfBag; i++)
 			str += ensembles[i].toString() + "\n";
 		return str;
 	}
 
 	public String model() {
 		String output = "## " + name() + "\n";
-		output += "## No. of bags = " + nBag + "\n";
-		output += "## Sub-sampling = " + subSamplingRate + "\n";
-		output += "## Feature-sampling = " + featureSamplingRate + "\n";
-		output += "## No. of trees = " + nTrees + "\n";
-		output += "## No. of leaves = " + nTreeLeaves + "\n";
-		output += "## No. of threshold candidates = " + nThreshold + "\n";
-		output += "## Learning rate = " + learningRate + "\n";
+		output += "## No. of bags = " + config.rfBag + "\n";
+		output += "## Sub-sampling = " + config.rfSubSamplingRate + "\n";
+		output += "## Feature-sampling = " + config.rfFeatureSamplingRate
+		        + "\n";
+		output += "## No. of trees = " + config.rfTrees + "\n";
+		output += "## No. of leaves = " + config.rfLeaves + "\n";
+		output += "## No. of threshold candidates = " + config.rfThreshold
+		        + "\n";
+		output += "## Learning rate = " + config.rfLearningRate + "\n";
 		output += "\n";
 		output += toString();
 		return output;
@@ -172,13 +378,13 @@ public class RFRanker extends Ranker {
 	}
 
 	public void printParameters() {
-		PRINTLN("No. of bags: " + nBag);
-		PRINTLN("Sub-sampling: " + subSamplingRate);
-		PRINTLN("Feature-sampling: " + featureSamplingRate);
-		PRINTLN("No. of trees: " + nTrees);
-		PRINTLN("No. of leaves: " + nTreeLeaves);
-		PRINTLN("No. of threshold candidates: " + nThreshold);
-		PRINTLN("Learning rate: " + learningRate);
+		PRINTLN("No. of bags: " + config.rfBag);
+		PRINTLN("Sub-sampling: " + config.rfSubSamplingRate);
+		PRINTLN("Feature-sampling: " + config.rfFeatureSamplingRate);
+		PRINTLN("No. of trees: " + config.rfTrees);
+		PRINTLN("No. of leaves: " + config.rfLeaves);
+		PRINTLN("No. of threshold candidates: " + config.rfThreshold);
+		PRINTLN("Learning rate: " + config.rfLearningRate);
 	}
 
 	public String name() {
@@ -188,4 +394,33 @@ public class RFRanker extends Ranker {
 	public Ensemble[] getEnsembles() {
 		return ensembles;
 	}
+
+	/**
+	 * @return score of the forest on the out-of-bag queries (parallel
+	 *         bagging only)
+	 */
+	public double getOOBScore() {
+		return oobScore;
+	}
+
+	public double[] getOOBScores() {
+		return oobScores;
+	}
+
+	// For multi-threading processing
+	class BagWorker implements Callable<float[]> {
+		int bag = -1;
+		BinnedFeatures index = null;
+		int[] drawn = null;
+
+		BagWorker(int bag, BinnedFeatures index, int[] drawn) {
+			this.bag = bag;
+			this.index = index;
+			this.drawn = drawn;
+		}
+
+		public float[] call() {
+			return trainBag(bag, index, drawn);
+		}
+	}
 }
@@ -13,6 +13,7 @@ import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.List;
 
@@ -27,8 +28,15 @@ public class RankBoost extends Ranker {
 	public static int nIteration = 300;// number of rounds
 	public static int nThreshold = 10;
 
-	protected double[][][] sweight = null;// sample weight D(x_0, x_1) -- the
-										  // weight of x_1 ranked above x_2
+	// crucial pairs (x_0 above x_1 in the correct ranking, with a strictly
+	// greater label) are the only ones with a non-zero weight, so only they
+	// are stored: those of query i are [pairOffset[i], pairOffset[i+1]),
+	// ordered by x_0 then x_1
+	protected int[] pairOffset = null;
+	protected int[] pairUpper = null;// index of x_0 in its rank list
+	protected int[] pairLower = null;// index of x_1 in its rank list
+	protected double[] sweight = null;// sample weight D(x_0, x_1) -- the
+									  // weight of x_0 ranked above x_1
 	protected double[][] potential = null;// pi(x)
 	protected List<List<int[]>> sortedSamples = new ArrayList<List<int[]>>();
 	protected double[][] thresholds = null;// candidate values for weak rankers'
@@ -50,6 +58,14 @@ public class RankBoost extends Ranker {
 	private double Z_t = 1.0;
 	private int totalCorrectPairs = 0;// crucial pairs
 
+	// best r and threshold of each feature in the current round
+	private double[] featureR = null;
+	private double[] featureThreshold = null;
+
+	private long roundTime = 0;// total, in nanoseconds
+	private int nRound = 0;
+	private long peakMemory = 0;
+
 	public RankBoost() {
 
 	}
@@ -72,15 +88,14 @@ public class RankBoost extends Ranker {
 	 */
 	private void updatePotential() {
 		for (int i = 0; i < samples.size(); i++) {
-			RankList rl = samples.get(i);
-			for (int j = 0; j < rl.size(); j++) {
-				double p = 0.0;
-				for (int k = j + 1; k < rl.size(); k++)
-					p += sweight[i][j][k];
-				for (int k = 0; k < j; k++)
-					p -= sweight[i][k][j];
-				potential[i][j] = p;
-			}
+			double[] p = potential[i];
+			Arrays.fill(p, 0.0);
+			// pairs where x is above first, then those where x is below, each
+			// in document order
+			for (int k = pairOffset[i]; k < pairOffset[i + 1]; k++)
+				p[pairUpper[k]] += sweight[k];
+			for (int k = pairOffset[i]; k < pairOffset[i + 1]; k++)
+				p[pairLower[k]] -= sweight[k];
 		}
 	}
 
@@ -94,19 +109,52 @@ public class RankBoost extends Ranker {
 	 *         updated to be the best r observed.
 	 */
 	private RBWeakRanker learnWeakRanker() {
+		MyThreadPool p = MyThreadPool.getInstance();
+		if (p == null || p.size() == 1 || p.isShutdown())
+			searchThresholds(0, features.length);
+		else {
+			int[] partition = p.partition(features.length);
+			for (int i = 0; i < partition.length - 1; i++)
+				p.execute(new ThresholdWorker(partition[i], partition[i + 1]));
+			p.await();
+		}
+
+		// the first feature with the largest r, as in a sequential search
 		int bestFid = -1;
 		double maxR = -10;
 		double bestThreshold = -1.0;
-		for (int i = 0; i < features.length; i++) {
+		for (int i = 0; i < features.length; i++)
+			if (featureR[i] > maxR) {
+				maxR = featureR[i];
+				bestThreshold = featureThreshold[i];
+				bestFid = features[i];
+			}
+		if (bestFid == -1)
+			return null;
+
+		R_t = Z_t * maxR;// save it so we won't have to re-compute when we need
+						 // it
+
+		return new RBWeakRanker(bestFid, bestThreshold);
+	}
+
+	/**
+	 * Evaluate all candidate thresholds of the features [from, to) and keep
+	 * the best of each in featureR and featureThreshold
+	 */
+	private void searchThresholds(int from, int to) {
+		int[] last = new int[samples.size()];// the last "touched" (and taken)
+											 // position in each sample rank
+											 // list
+		for (int i = from; i < to; i++) {
+			double maxR = -10;
+			double bestThreshold = -1.0;
 			List<int[]> sSortedIndex = sortedSamples.get(i);// samples sorted
 															// (descending) by
 															// the current
 															// feature
 			int[] idx = tSortedIdx[i];// candidate thresholds for the current
 									  // features
-			int[] last = new int[samples.size()];// the last "touched" (and
-												 // taken) position in each
-												 // sample rank list
 			for (int j = 0; j < samples.size(); j++)
 				last[j] = -1;
 
@@ -131,17 +179,25 @@ public class RankBoost extends Ranker {
 				if (r > maxR) {
 					maxR = r;
 					bestThreshold = t;
-					bestFid = features[i];
 				}
 			}
+			featureR[i] = maxR;
+			featureThreshold[i] = bestThreshold;
 		}
-		if (bestFid == -1)
-			return null;
+	}
 
-		R_t = Z_t * maxR;// save it so we won't have to re-compute when we need
-						 // it
+	class ThresholdWorker implements Runnable {
+		int from = 0;
+		int to = 0;
 
-		return new RBWeakRanker(bestFid, bestThreshold);
+		ThresholdWorker(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		public void run() {
+			searchThresholds(from, to);
+		}
 	}
 
 	public void init() {
@@ -153,7 +209,10 @@ public class RankBoost extends Ranker {
 		// for each (true) ranked list, we only care about correctly ranked pair
 		// (e.g. L={1,2,3} => <1,2>, <1,3>, <2,3>)
 		// count the number of correctly ranked pairs from sample ranked list
-		totalCorrectPairs = 0;
+		// the lists are reordered below; the caller's list may be shared, e.g.
+		// by the runs of a fold (see FoldScheduler)
+		samples = new ArrayList<RankList>(samples);
+		pairOffset = new int[samples.size() + 1];
 		for (int i = 0; i < samples.size(); i++) {
 			samples.set(i, samples.get(i).getCorrectRanking());// make sure the
 															   // training
@@ -161,32 +220,37 @@ public class RankBoost extends Ranker {
 															   // correct
 															   // ranking
 			RankList rl = samples.get(i);
+			int count = 0;
 			for (int j = 0; j < rl.size() - 1; j++)
 				for (int k = rl.size() - 1; k >= j + 1
 				        && rl.get(j).getLabel() > rl.get(k).getLabel(); k--)
 					// faster than the for-if below
 					// for(int k=j+1;k<rl.size();k++)
 					// if(rl.get(j).getLabel() > rl.get(k).getLabel())
-					totalCorrectPairs++;
+					count++;
+			pairOffset[i + 1] = pairOffset[i] + count;
 		}
+		totalCorrectPairs = pairOffset[samples.size()];
 
 		// compute weight for all correctly ranked pairs
-		sweight = new double[samples.size()][][];
+		pairUpper = new int[totalCorrectPairs];
+		pairLower = new int[totalCorrectPairs];
+		sweight = new double[totalCorrectPairs];
+		int pair = 0;
 		for (int i = 0; i < samples.size(); i++) {
 			RankList rl = samples.get(i);
-			sweight[i] = new double[rl.size()][];
-			for (int j = 0; j < rl.size() - 1; j++) {
-				sweight[i][j] = new double[rl.size()];
+			for (int j = 0; j < rl.size() - 1; j++)
 				for (int k = j + 1; k < rl.size(); k++)
 					if (rl.get(j).getLabel() > rl.get(k).getLabel())// strictly
 																	// "greater than"
 																	// ==>
 																	// crucial
 																	// pairs
-						sweight[i][j][k] = 1.0 / totalCorrectPairs;
-					else
-						sweight[i][j][k] = 0.0;// not crucial pairs
-			}
+					{
+						pairUpper[pair] = j;
+						pairLower[pair] = k;
+						sweight[pair++] = 1.0 / totalCorrectPairs;
+					}
 		}
 
 		// init potential matrix
@@ -194,7 +258,7 @@ public class RankBoost extends Ranker {
 		for (int i = 0; i < samples.size(); i++)
 			potential[i] = new double[samples.get(i).size()];
 
-		if (nThreshold <= 0) {
+		if (config.boostThreshold <= 0) {
 			// create a table of candidate thresholds (for each feature) for
 			// weak rankers (they are just all possible feature values)
 			int count = 0;
@@ -238,15 +302,18 @@ public class RankBoost extends Ranker {
 
 			thresholds = new double[features.length][];
 			for (int i = 0; i < features.length; i++) {
-				double step = (Math.abs(fmax[i] - fmin[i])) / nThreshold;
-				thresholds[i] = new double[nThreshold + 1];
+				double step = (Math.abs(fmax[i] - fmin[i])) / config.boostThreshold;
+				thresholds[i] = new double[config.boostThreshold + 1];
 				thresholds[i][0] = fmax[i];
-				for (int j = 1; j < nThreshold; j++)
+				for (int j = 1; j < config.boostThreshold; j++)
 					thresholds[i][j] = thresholds[i][j - 1] - step;
-				thresholds[i][nThreshold] = fmin[i] - 1.0E8;
+				thresholds[i][config.boostThreshold] = fmin[i] - 1.0E8;
 			}
 		}
 
+		featureR = new double[features.length];
+		featureThreshold = new double[features.length];
+
 		// sort this table with respect to each feature (each row of the matrix
 		// @thresholds)
 		tSortedIdx = new int[features.length][];
@@ -263,6 +330,9 @@ public class RankBoost extends Ranker {
 				idx.add(reorder(samples.get(j), features[i]));
 			sortedSamples.add(idx);
 		}
+		roundTime = 0;
+		nRound = 0;
+		peakMemory = usedMemory();
 		PRINTLN("[Done]");
 	}
 
@@ -275,7 +345,9 @@ public class RankBoost extends Ranker {
 		                scorer.name() + "-T", scorer.name() + "-V" });
 		PRINTLN("--------------------------------------------------------------------");
 
-		for (int t = 1; t <= nIteration; t++) {
+		int[] h = new int[0];// weak ranker output on each document of a list
+		for (int t = 1; t <= config.boostIteration; t++) {
+			long start = System.nanoTime();
 			updatePotential();
 			// learn the weak ranker
 			RBWeakRanker wr = learnWeakRanker();
@@ -293,22 +365,18 @@ public class RankBoost extends Ranker {
 			Z_t = 0.0;// normalization factor
 			for (int i = 0; i < samples.size(); i++) {
 				RankList rl = samples.get(i);
-				double[][] D_t = new double[rl.size()][];
-				for (int j = 0; j < rl.size() - 1; j++) {
-					D_t[j] = new double[rl.size()];
-					for (int k = j + 1; k < rl.size(); k++) {
-						// we should rank x_j higher than x_k
-						// so if our h_t does so, decrease the weight of this
-						// pair
-						// otherwise, increase its weight
-						D_t[j][k] = (double) (sweight[i][j][k] * Math
-						        .exp(alpha_t
-						                * (wr.score(rl.get(k)) - wr.score(rl
-						                        .get(j)))));
-						Z_t += D_t[j][k];
-					}
+				if (h.length < rl.size())
+					h = new int[rl.size()];
+				for (int j = 0; j < rl.size(); j++)
+					h[j] = wr.score(rl.get(j));
+				for (int k = pairOffset[i]; k < pairOffset[i + 1]; k++) {
+					// we should rank x_0 higher than x_1
+					// so if our h_t does so, decrease the weight of this pair
+					// otherwise, increase its weight
+					sweight[k] = (double) (sweight[k] * Math.exp(alpha_t
+					        * (h[pairLower[k]] - h[pairUpper[k]])));
+					Z_t += sweight[k];
 				}
-				sweight[i] = D_t;
 			}
 
 			PRINT(new int[] { 7, 8, 9, 9 },
@@ -318,10 +386,10 @@ public class RankBoost extends Ranker {
 			if (t % 1 == 0) {
 				PRINT(new int[] { 9 },
 				        new String[] { SimpleMath.round(
-				                scorer.score(rank(samples)), 4)
+				                score(samples, scorer), 4)
 				                + "" });
 				if (validationSamples != null) {
-					double score = scorer.score(rank(validationSamples));
+					double score = score(validationSamples, scorer);
 					if (score > bestScoreOnValidationData) {
 						bestScoreOnValidationData = score;
 						bestModelRankers.clear();
@@ -338,14 +406,12 @@ public class RankBoost extends Ranker {
 			// System.out.println("Z_t = " + Z + "\tr = " + current_r + "\t" +
 			// Math.sqrt(1.0 - current_r*current_r));
 			// normalize sweight to make sure it is a valid distribution
-			for (int i = 0; i < samples.size(); i++) {
-				RankList rl = samples.get(i);
-				for (int j = 0; j < rl.size() - 1; j++)
-					for (int k = j + 1; k < rl.size(); k++)
-						sweight[i][j][k] /= Z_t;
-			}
+			for (int k = 0; k < sweight.length; k++)
+				sweight[k] /= Z_t;
 
-			System.gc();
+			roundTime += System.nanoTime() - start;
+			nRound++;
+			peakMemory = Math.max(peakMemory, usedMemory());
 		}
 
 		// if validation data is specified ==> best model on this data has been
@@ -358,18 +424,32 @@ public class RankBoost extends Ranker {
 			rWeight.addAll(bestModelWeights);
 		}
 
-		scoreOnTrainingData = SimpleMath.round(scorer.score(rank(samples)), 4);
+		scoreOnTrainingData = SimpleMath.round(score(samples, scorer), 4);
 		PRINTLN("--------------------------------------------------------------------");
 		PRINTLN("Finished sucessfully.");
 		PRINTLN(scorer.name() + " on training data: " + scoreOnTrainingData);
 		if (validationSamples != null) {
-			bestScoreOnValidationData = scorer.score(rank(validationSamples));
+			bestScoreOnValidationData = score(validationSamples, scorer);
 			PRINTLN(scorer.name() + " on validation data: "
 			        + SimpleMath.round(bestScoreOnValidationData, 4));
 		}
+		PRINTLN("Crucial pairs: " + totalCorrectPairs);
+		if (nRound > 0)
+			PRINTLN("Time per round: "
+			        + SimpleMath.round(roundTime / 1.0E6 / nRound, 2) + " ms");
+		PRINTLN("Peak memory: " + SimpleMath.round(peakMemory / 1048576.0, 1)
+		        + " MB");
 		PRINTLN("---------------------------------");
 	}
 
+	/**
+	 * @return heap in use now, sampled after init() and after every round
+	 */
+	private static long usedMemory() {
+		Runtime rt = Runtime.getRuntime();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
 	public double eval(DataPoint p) {
 		double score = 0.0;
 		for (int j = 0; j < wRankers.size(); j++)
@@ -391,8 +471,8 @@ public class RankBoost extends Ranker {
 
 	public String model() {
 		String output = "## " + name() + "\n";
-		output += "## Iteration = " + nIteration + "\n";
-		output += "## No. of threshold candidates = " + nThreshold + "\n";
+		output += "## Iteration = " + config.boostIteration + "\n";
+		output += "## No. of threshold candidates = " + config.boostThreshold + "\n";
 		output += toString();
 		return output;
 	}
@@ -444,8 +524,8 @@ public class RankBoost extends Ranker {
 	}
 
 	public void printParameters() {
-		PRINTLN("No. of rounds: " + nIteration);
-		PRINTLN("No. of threshold candidates: " + nThreshold);
+		PRINTLN("No. of rounds: " + config.boostIteration);
+		PRINTLN("No. of threshold candidates: " + config.boostThreshold);
 	}
 
 	public String name() {
@@ -459,8 +459,7 @@ public class RankEvaluator {
 	}
 
 	public int[] getFeatureFromSampleVector(List<RankList> samples){
-		DataPoint dp = samples.get(0).get(0);
-		int fc = dp.getFeatureCount();
+		int fc = FeatureManager.getFeatureCount(samples);
 		int[] features = new int[fc];
 		for (int i = 0; i < fc; i++)
 			features[i] = i + 1;
@@ -468,7 +467,7 @@ public class RankEvaluator {
 	}
 
 	private int[] applyNewFeatures(List<RankList> samples, int[] features){
-		int totalFeatureCount = samples.get(0).get(0).getFeatureCount();
+		int totalFeatureCount = FeatureManager.getFeatureCount(samples);
 		int[] newFeatures = new int[features.length + lcList.size()];
 		System.arraycopy(features, 0, newFeatures, 0, features.length);
 		// for(int i=0;i<features.length;i++)
@@ -484,7 +483,7 @@ public class RankEvaluator {
 				for (int k = 0; k < lcList.size(); k++)
 					addedFeatures[k] = lcList.get(k).compute(p.getExternalFeatureVector());
 
-				p.addFeatures(addedFeatures);
+				p.addFeatures(totalFeatureCount, addedFeatures);
 			}
 		}
 
@@ -21,6 +21,7 @@ import java.util.List;
 public class RankList {
 
 	protected List<DataPoint> rl = null;
+	protected float[] labels = null;// cached by getLabels()
 
 	public RankList() {
 		rl = new ArrayList<DataPoint>();
@@ -58,10 +59,32 @@ public class RankList {
 
 	public void add(DataPoint p) {
 		rl.add(p);
+		labels = null;
+	}
+
+	public void set(int k, DataPoint p) {
+		rl.set(k, p);
+		labels = null;
 	}
 
 	public void remove(int k) {
 		rl.remove(k);
+		labels = null;
+	}
+
+	/**
+	 * @return labels of the data points, in list order; the array is kept
+	 *         until the list changes and must not be modified
+	 */
+	public float[] getLabels() {
+		float[] l = labels;
+		if (l == null) {
+			l = new float[rl.size()];
+			for (int i = 0; i < l.length; i++)
+				l[i] = rl.get(i).getLabel();
+			labels = l;
+		}
+		return l;
 	}
 
 	public RankList getRanking(int fid) {
@@ -29,6 +29,8 @@ public class RankNet extends Ranker {
 	public static int nHiddenLayer = 1;
 	public static int nHiddenNodePerLayer = 10;
 	public static double learningRate = 0.00005;
+	public static int batchSize = 0;// queries per weight update on the dense
+									// backend, 0 to train the graph online
 
 	// Variables
 	protected List<Layer> layers = new ArrayList<Layer>();
@@ -43,6 +45,12 @@ public class RankNet extends Ranker {
 	protected double error = 0.0;
 	protected double lastError = Double.MAX_VALUE;
 	protected int straightLoss = 0;
+	protected double rate = 0;// learning rate of the network
+
+	// dense copy of the network while training on it, or of a loaded model
+	// (see DenseNet)
+	protected DenseNet net = null;
+	protected Worker[] workers = null;
 
 	public RankNet() {
 	}
@@ -95,6 +103,16 @@ public class RankNet extends Ranker {
 				connect(0, inputLayer.size() - 1, i, j);
 	}
 
+	/**
+	 * Set the learning rate of all neurons, and of the dense backend
+	 */
+	protected void setLearningRate(double rate) {
+		this.rate = rate;
+		for (int i = 0; i < layers.size(); i++)
+			for (int j = 0; j < layers.get(i).size(); j++)
+				layers.get(i).get(j).rate = rate;
+	}
+
 	protected void connect(int sourceLayer, int sourceNeuron, int targetLayer,
 	        int targetNeuron) {
 		new Synapse(layers.get(sourceLayer).get(sourceNeuron), layers.get(
@@ -229,11 +247,14 @@ public class RankNet extends Ranker {
 		error = 0.0;
 		for (int j = 0; j < samples.size(); j++) {
 			RankList rl = samples.get(j);
+			double[] o = new double[rl.size()];
+			for (int k = 0; k < rl.size(); k++)
+				o[k] = eval(rl.get(k));
 			for (int k = 0; k < rl.size() - 1; k++) {
-				double o1 = eval(rl.get(k));
+				double o1 = o[k];
 				for (int l = k + 1; l < rl.size(); l++) {
 					if (rl.get(k).getLabel() > rl.get(l).getLabel()) {
-						double o2 = eval(rl.get(l));
+						double o2 = o[l];
 						error += crossEntropy(o1, o2, 1.0f);
 						if (o1 < o2)
 							misorderedPairs++;// 错误排序的对
@@ -256,8 +277,8 @@ public class RankNet extends Ranker {
 
 		// Set up the network
 		setInputOutput(features.length, 1);
-		for (int i = 0; i < nHiddenLayer; i++)
-			addHiddenLayer(nHiddenNodePerLayer);
+		for (int i = 0; i < config.netHiddenLayer; i++)
+			addHiddenLayer(config.netHiddenNode);
 		wire();
 
 		totalPairs = 0;
@@ -274,7 +295,7 @@ public class RankNet extends Ranker {
 			for (int i = 0; i < layers.size(); i++)
 				bestModelOnValidation.add(new ArrayList<Double>());
 
-		Neuron.learningRate = learningRate;
+		setLearningRate(config.netLearningRate);
 		PRINTLN("[Done]");
 	}
 
@@ -288,22 +309,27 @@ public class RankNet extends Ranker {
 		        " " });
 		PRINTLN("--------------------------------------------------");
 
-		for (int iter = 1; iter <= nIteration; iter++) {
-			for (int j = 0; j < samples.size(); j++) {
-				// 一个RankList对应一个query，以及与之关联的一组docs
-				RankList rl = samples.get(j);
-				// RankList rl =
-				// internalReorder(samples.get(j));//函数internalReorder打酱油的
-
-				int[][] pairMap = batchFeedForward(rl);// 向网络批量feed数据的同时，获取组对结果pairMap
-				float[][] pairWeight = computePairWeight(pairMap, rl);// TODO:主要是用于LambdaRank算法中，对于算法RankNet木有作用
-				batchBackPropagate(pairMap, pairWeight);// 批量后向传播-计算delta值并更新权值
-				clearNeuronOutputs();
-			}
+		if (denseBackend())
+			net = new DenseNet(layers);
+		for (int iter = 1; iter <= config.netIteration; iter++) {
+			if (net != null)
+				denseEpoch();
+			else
+				for (int j = 0; j < samples.size(); j++) {
+					// 一个RankList对应一个query，以及与之关联的一组docs
+					RankList rl = samples.get(j);
+					// RankList rl =
+					// internalReorder(samples.get(j));//函数internalReorder打酱油的
+
+					int[][] pairMap = batchFeedForward(rl);// 向网络批量feed数据的同时，获取组对结果pairMap
+					float[][] pairWeight = computePairWeight(pairMap, rl);// TODO:主要是用于LambdaRank算法中，对于算法RankNet木有作用
+					batchBackPropagate(pairMap, pairWeight);// 批量后向传播-计算delta值并更新权值
+					clearNeuronOutputs();
+				}
 
 			// 针对所有的训练样本对，完成一次训练
 			// printWeightVector();
-			scoreOnTrainingData = scorer.score(rank(samples));// 首先对所有的基于相同检索词的样本评分，并对样本按照分值降序排列，计算各个检索词下的文档排名性能的平均分值
+			scoreOnTrainingData = score(samples, scorer);// 首先对所有的基于相同检索词的样本评分，并对样本按照分值降序排列，计算各个检索词下的文档排名性能的平均分值
 			estimateLoss();// 使用cross entropy计算平均误差,并计量错误排序的对
 			PRINT(new int[] { 7, 14 },
 			        new String[] {
@@ -318,10 +344,12 @@ public class RankNet extends Ranker {
 				        new String[] { SimpleMath.round(scoreOnTrainingData, 4)
 				                + "" });// 测试集上的平均分值
 				if (validationSamples != null) {
-					double score = scorer.score(rank(validationSamples));// 校验集上的平均分值
+					double score = score(validationSamples, scorer);// 校验集上的平均分值
 					if (score > bestScoreOnValidationData)// 在校验集上表现最好的迭代结果
 					{
 						bestScoreOnValidationData = score;
+						if (net != null)
+							net.export(layers);
 						saveBestModelOnValidation();// 保存校验集上表现最好的模型-网络的权重
 					}
 					PRINT(new int[] { 9 },
@@ -330,6 +358,7 @@ public class RankNet extends Ranker {
 			}
 			PRINTLN("");
 		}
+		endDenseTraining();
 
 		// if validation data is specified ==> best model on this data has been
 		// saved
@@ -337,19 +366,41 @@ public class RankNet extends Ranker {
 		if (validationSamples != null)
 			restoreBestModelOnValidation();
 
-		scoreOnTrainingData = SimpleMath.round(scorer.score(rank(samples)), 4);
+		scoreOnTrainingData = SimpleMath.round(score(samples, scorer), 4);
 		PRINTLN("--------------------------------------------------");
 		PRINTLN("Finished sucessfully.");
 		PRINTLN(scorer.name() + " on training data: " + scoreOnTrainingData);
 		if (validationSamples != null) {
-			bestScoreOnValidationData = scorer.score(rank(validationSamples));
+			bestScoreOnValidationData = score(validationSamples, scorer);
 			PRINTLN(scorer.name() + " on validation data: "
 			        + SimpleMath.round(bestScoreOnValidationData, 4));
 		}
 		PRINTLN("---------------------------------");
 	}
 
+	public RankList rank(RankList rl) {
+		if (net == null)
+			return super.rank(rl);
+		// the same outputs as eval(), a whole list at a time
+		double[] scores = new double[rl.size()];
+		System.arraycopy(net.forward(net.localWorkspace(), rl, features), 0,
+		        scores, 0, rl.size());
+		int[] idx = MergeSorter.sort(scores, false);
+		return new RankList(rl, idx);
+	}
+
+	public int[] rank(RankList rl, int k) {
+		if (net == null)
+			return super.rank(rl, k);
+		int[] idx = new int[TopKSorter.size(rl.size(), k)];
+		TopKSorter.sort(net.forward(net.localWorkspace(), rl, features), 0,
+		        rl.size(), k, idx);
+		return idx;
+	}
+
 	public double eval(DataPoint p) {
+		if (net != null)
+			return net.eval(p, features);
 		// feed input
 		for (int k = 0; k < inputLayer.size() - 1; k++)
 			// not the "bias" node
@@ -363,6 +414,111 @@ public class RankNet extends Ranker {
 		return outputLayer.get(0).getOutput();
 	}
 
+	/**
+	 * Dense backend: whole rank lists are fed through a DenseNet copy of the
+	 * network, and the weights are updated with the gradient summed over
+	 * batchSize queries instead of after each document.
+	 */
+	protected boolean denseBackend() {
+		return config.netBatchSize > 0;
+	}
+
+	/**
+	 * One pass over the training queries on the dense backend. The queries of
+	 * each batch are split among the threads of MyThreadPool, each of which
+	 * accumulates their gradient in its own workspace; the workspaces are then
+	 * added to the weights in a fixed order.
+	 */
+	protected void denseEpoch() {
+		MyThreadPool p = MyThreadPool.getInstance();
+		boolean parallel = p != null && p.size() > 1 && !p.isShutdown();
+		if (workers == null) {
+			workers = new Worker[parallel ? p.size() : 1];
+			for (int i = 0; i < workers.length; i++)
+				workers[i] = new Worker(net.workspace());
+		}
+		DenseNet.Workspace[] buffers = new DenseNet.Workspace[workers.length];
+		for (int i = 0; i < workers.length; i++)
+			buffers[i] = workers[i].ws;
+
+		int batchSize = config.netBatchSize;
+		for (int b = 0; b < samples.size(); b += batchSize) {
+			int end = Math.min(samples.size(), b + batchSize);
+			if (workers.length == 1 || end - b == 1) {
+				workers[0].from = b;
+				workers[0].to = end;
+				workers[0].run();
+			} else {
+				int[] partition = p.partition(end - b);
+				for (int i = 0; i < workers.length; i++) {
+					workers[i].from = b + partition[i];
+					workers[i].to = b + partition[i + 1];
+					p.execute(workers[i]);
+				}
+				p.await();
+			}
+			net.update(buffers, rate);
+		}
+	}
+
+	/**
+	 * Copy the dense weights back into the graph and leave the dense backend
+	 */
+	protected void endDenseTraining() {
+		if (net == null)
+			return;
+		net.export(layers);
+		net = null;
+		workers = null;
+	}
+
+	/**
+	 * Derivative of the objective w.r.t. the input sum of the output neuron on
+	 * each document of rl, given their outputs o: the lambdas of
+	 * Neuron.computeDelta() summed over all pairs of the list
+	 */
+	protected void computeOutputError(RankList rl, double[] o, double[] err) {
+		int n = rl.size();
+		for (int i = 0; i < n; i++)
+			err[i] = 0;
+		for (int i = 0; i < n; i++) {
+			float label = rl.get(i).getLabel();
+			for (int j = 0; j < n; j++)
+				if (label > rl.get(j).getLabel()) {
+					double lambda = 1.0 / (1.0 + Math.exp(o[i] - o[j]));
+					err[i] += lambda;
+					err[j] -= lambda;
+				}
+		}
+		for (int i = 0; i < n; i++)
+			err[i] *= o[i] * (1 - o[i]);
+	}
+
+	/**
+	 * Gradient of the queries [from, to) on the dense backend
+	 */
+	class Worker implements Runnable {
+		DenseNet.Workspace ws = null;
+		double[] err = new double[0];
+		int from = 0;
+		int to = 0;
+
+		Worker(DenseNet.Workspace ws) {
+			this.ws = ws;
+		}
+
+		public void run() {
+			for (int j = from; j < to; j++) {
+				RankList rl = samples.get(j);
+				if (err.length < rl.size())
+					err = new double[rl.size()];
+				double[] o = net.forward(ws, rl, features);
+				computeOutputError(rl, o, err);
+				net.backward(ws, rl.size(), err);
+			}
+		}
+	}
+
 	public Ranker clone() {
 		return new RankNet();
 	}
@@ -390,7 +546,7 @@ public class RankNet extends Ranker {
 
 	public String model() {
 		String output = "## " + name() + "\n";
-		output += "## Epochs = " + nIteration + "\n";
+		output += "## Epochs = " + config.netIteration + "\n";
 		output += "## No. of features = " + features.length + "\n";
 		output += "## No. of hidden layers = " + (layers.size() - 2) + "\n";
 		for (int i = 1; i < layers.size() - 1; i++)
@@ -458,16 +614,19 @@ public class RankNet extends Ranker {
 					n.getOutLinks().get(k)
 					        .setWeight(Double.parseDouble(s[k + 2]));
 			}
+			// eval() on the dense copy leaves the neurons alone, so a loaded
+			// model can be shared by threads
+			net = new DenseNet(layers);
 		} catch (Exception ex) {
 			System.out.println("Error in RankNet::load(): " + ex.toString());
 		}
 	}
 
 	public void printParameters() {
-		PRINTLN("No. of epochs: " + nIteration);
-		PRINTLN("No. of hidden layers: " + nHiddenLayer);
-		PRINTLN("No. of hidden nodes per layer: " + nHiddenNodePerLayer);
-		PRINTLN("Learning rate: " + learningRate);
+		PRINTLN("No. of epochs: " + config.netIteration);
+		PRINTLN("No. of hidden layers: " + config.netHiddenLayer);
+		PRINTLN("No. of hidden nodes per layer: " + config.netHiddenNode);
+		PRINTLN("Learning rate: " + config.netLearningRate);
 	}
 
 	public String name() {
@@ -36,6 +36,10 @@ public class Ranker {
 	protected List<RankList> validationSamples = null;
 	protected List<RankList> testSamples = null;
 
+	// parameters of this run, taken from the statics when the ranker is
+	// created unless set(RankerConfig) replaces them
+	protected RankerConfig config = new RankerConfig();
+
 	public Ranker() {
 
 	}
@@ -63,6 +67,14 @@ public class Ranker {
 		this.scorer = scorer;
 	}
 
+	public void set(RankerConfig config) {
+		this.config = config;
+	}
+
+	public RankerConfig getConfig() {
+		return config;
+	}
+
 	public double getScoreOnTrainingData() {
 		return scoreOnTrainingData;
 	}
@@ -96,6 +108,31 @@ public class Ranker {
 		return ll;
 	}
 
+	/**
+	 * Rank only the top k documents of rl, in the same order as rank(rl)
+	 * 
+	 * @return idx[pos] is the document of rl at position pos, for the first
+	 *         TopKSorter.size(rl.size(), k) positions
+	 */
+	public int[] rank(RankList rl, int k) {
+		double[] scores = new double[rl.size()];
+		for (int i = 0; i < rl.size(); i++)
+			scores[i] = eval(rl.get(i));
+		return TopKSorter.sort(scores, k);
+	}
+
+	/**
+	 * @return the same as scorer.score(rank(l)), but only the positions the
+	 *         scorer looks at are ranked, and no rank list is built
+	 */
+	public double score(List<RankList> l, MetricScorer scorer) {
+		int k = scorer.depth();
+		double score = 0.0;
+		for (int i = 0; i < l.size(); i++)
+			score += scorer.score(l.get(i), rank(l.get(i), k));
+		return score / l.size();
+	}
+
 	/**
 	 * 保存模型到本地文件
 	 * 
@@ -106,17 +143,17 @@ public class Ranker {
 	}
 
 	public void PRINT(String msg) {
-		if (verbose)
+		if (config.verbose)
 			System.out.print(msg);
 	}
 
 	public void PRINTLN(String msg) {
-		if (verbose)
+		if (config.verbose)
 			System.out.println(msg);
 	}
 
 	public void PRINT(int[] len, String[] msgs) {
-		if (verbose) {
+		if (config.verbose) {
 			for (int i = 0; i < msgs.length; i++) {
 				String msg = msgs[i];
 				if (msg.length() > len[i])
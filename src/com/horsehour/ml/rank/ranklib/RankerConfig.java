@@ -0,0 +1,230 @@
+package com.horsehour.ml.rank.ranklib;
+
+/**
+ * Hyper-parameters of one training run. A new config takes the current
+ * values of the static parameters of the rankers, overridden by the ranker
+ * options of the command line (see setDefaults()), and every ranker reads its
+ * parameters from its own config
+ * instead of the statics, so that rankers with different settings can be
+ * trained side by side (see FoldScheduler).
+ *
+ * @author Chunheng Jiang
+ */
+public class RankerConfig implements Cloneable {
+	public boolean verbose = Ranker.verbose;
+
+	// RankNet, LambdaRank
+	public int netIteration = RankNet.nIteration;
+	public int netHiddenLayer = RankNet.nHiddenLayer;
+	public int netHiddenNode = RankNet.nHiddenNodePerLayer;
+	public double netLearningRate = RankNet.learningRate;
+	public int netBatchSize = RankNet.batchSize;// also for ListNet
+
+	// ListNet
+	public int listNetIteration = ListNet.nIteration;
+	public double listNetLearningRate = ListNet.learningRate;
+
+	// RankBoost
+	public int boostIteration = RankBoost.nIteration;
+	public int boostThreshold = RankBoost.nThreshold;
+
+	// AdaRank
+	public int adaIteration = AdaRank.nIteration;
+	public double adaTolerance = AdaRank.tolerance;
+	public boolean adaEnqueue = AdaRank.trainWithEnqueue;
+	public int adaMaxSelCount = AdaRank.maxSelCount;
+
+	// Coordinate Ascent
+	public int caRestart = CoorAscent.nRestart;
+	public int caMaxIteration = CoorAscent.nMaxIteration;
+	public double caStepBase = CoorAscent.stepBase;
+	public double caStepScale = CoorAscent.stepScale;
+	public double caTolerance = CoorAscent.tolerance;
+	public boolean caRegularized = CoorAscent.regularized;
+	public double caSlack = CoorAscent.slack;
+
+	// MART, LambdaMART
+	public int martTrees = LambdaMART.nTrees;
+	public float martLearningRate = LambdaMART.learningRate;
+	public int martThreshold = LambdaMART.nThreshold;
+	public int martStopEarly = LambdaMART.nRoundToStopEarly;
+	public int martLeaves = LambdaMART.nTreeLeaves;
+	public int martMinLeafSupport = LambdaMART.minLeafSupport;
+	public boolean martQuickScorer = LambdaMART.quickScorer;
+	public boolean martCascade = LambdaMART.cascade;
+	public int martCascadeStage = LambdaMART.cascadeStage;
+	public double martCascadeBound = LambdaMART.cascadeBound;
+	public boolean martFrontierSplit = LambdaMART.frontierSplit;
+	public float martFeatureSamplingRate = FeatureHistogram.samplingRate;
+
+	// Random forest
+	public int rfBag = RFRanker.nBag;
+	public float rfSubSamplingRate = RFRanker.subSamplingRate;
+	public float rfFeatureSamplingRate = RFRanker.featureSamplingRate;
+	public RANKER_TYPE rfType = RFRanker.rType;
+	public int rfTrees = RFRanker.nTrees;
+	public int rfLeaves = RFRanker.nTreeLeaves;
+	public float rfLearningRate = RFRanker.learningRate;
+	public int rfThreshold = RFRanker.nThreshold;
+	public int rfMinLeafSupport = RFRanker.minLeafSupport;
+	public int rfBagThread = RFRanker.nBagThread;
+
+	protected String params = "";// what set() has changed
+
+	// ranker options from the command line of Evaluator, applied to every new
+	// config on top of the statics
+	private static String defaults = "";
+
+	public RankerConfig() {
+		if (defaults.length() > 0)
+			apply(defaults);
+	}
+
+	/**
+	 * Make the ranker options (e.g. "-tree 500 -shrinkage 0.05") the defaults
+	 * of the configs created from now on
+	 */
+	public static void setDefaults(String options) {
+		defaults = options.trim();
+	}
+
+	public RankerConfig copy() {
+		try {
+			return (RankerConfig) clone();
+		} catch (CloneNotSupportedException ex) {
+			throw new AssertionError(ex);
+		}
+	}
+
+	/**
+	 * Override parameters with the ranker-specific command-line options of
+	 * Evaluator, e.g. "-tree 500 -shrinkage 0.05"
+	 *
+	 * @return this config
+	 */
+	public RankerConfig set(String options) {
+		try {
+			apply(options);
+		} catch (Exception ex) {
+			System.out.println("Error in RankerConfig::set(): " + ex.toString());
+		}
+		params = (params + " " + options.trim()).trim();
+		return this;
+	}
+
+	private void apply(String options) {
+		String[] args = options.trim().split("\\s+");
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].length() == 0)
+				continue;
+			int last = parse(args, i);
+			if (last < 0)
+				System.out.println("Error in RankerConfig::set(): "
+				        + "unknown parameter " + args[i]);
+			else
+				i = last;
+		}
+	}
+
+	/**
+	 * Apply the ranker option args[i], the one option parser shared by set()
+	 * and the command line of Evaluator
+	 *
+	 * @return index of the last argument of the option (args[i] or its
+	 *         value), -1 if args[i] is not a ranker option
+	 */
+	public int parse(String[] args, int i) {
+		// RankNet
+		if (args[i].compareTo("-epoch") == 0) {
+			netIteration = Integer.parseInt(args[++i]);
+			listNetIteration = Integer.parseInt(args[i]);
+		} else if (args[i].compareTo("-layer") == 0)
+			netHiddenLayer = Integer.parseInt(args[++i]);
+		else if (args[i].compareTo("-node") == 0)
+			netHiddenNode = Integer.parseInt(args[++i]);
+		else if (args[i].compareTo("-lr") == 0) {
+			netLearningRate = Double.parseDouble(args[++i]);
+			listNetLearningRate = Double.parseDouble(args[i]);
+		} else if (args[i].compareTo("-batch") == 0)
+			netBatchSize = Integer.parseInt(args[++i]);
+
+		// RankBoost
+		else if (args[i].compareTo("-tc") == 0) {
+			boostThreshold = Integer.parseInt(args[++i]);
+			martThreshold = Integer.parseInt(args[i]);
+		}
+
+		// AdaRank
+		else if (args[i].compareTo("-noeq") == 0)
+			adaEnqueue = false;
+		else if (args[i].compareTo("-max") == 0)
+			adaMaxSelCount = Integer.parseInt(args[++i]);
+
+		// COORDINATE ASCENT
+		else if (args[i].compareTo("-r") == 0)
+			caRestart = Integer.parseInt(args[++i]);
+		else if (args[i].compareTo("-i") == 0)
+			caMaxIteration = Integer.parseInt(args[++i]);
+
+		// ranker-shared parameters
+		else if (args[i].compareTo("-round") == 0) {
+			boostIteration = Integer.parseInt(args[++i]);
+			adaIteration = Integer.parseInt(args[i]);
+		} else if (args[i].compareTo("-reg") == 0) {
+			caSlack = Double.parseDouble(args[++i]);
+			caRegularized = true;
+		} else if (args[i].compareTo("-tolerance") == 0) {
+			adaTolerance = Double.parseDouble(args[++i]);
+			caTolerance = Double.parseDouble(args[i]);
+		}
+
+		// MART / LambdaMART / Random forest
+		else if (args[i].compareTo("-tree") == 0) {
+			martTrees = Integer.parseInt(args[++i]);
+			rfTrees = Integer.parseInt(args[i]);
+		} else if (args[i].compareTo("-leaf") == 0) {
+			martLeaves = Integer.parseInt(args[++i]);
+			rfLeaves = Integer.parseInt(args[i]);
+		} else if (args[i].compareTo("-shrinkage") == 0) {
+			martLearningRate = Float.parseFloat(args[++i]);
+			rfLearningRate = Float.parseFloat(args[i]);
+		} else if (args[i].compareTo("-mls") == 0) {
+			martMinLeafSupport = Integer.parseInt(args[++i]);
+			rfMinLeafSupport = Integer.parseInt(args[i]);
+		} else if (args[i].compareTo("-estop") == 0)
+			martStopEarly = Integer.parseInt(args[++i]);
+		else if (args[i].compareTo("-frontier") == 0)
+			martFrontierSplit = true;
+		else if (args[i].compareTo("-qs") == 0)
+			martQuickScorer = true;
+		else if (args[i].compareTo("-cascade") == 0)
+			martCascade = true;
+		else if (args[i].compareTo("-stage") == 0)
+			martCascadeStage = Integer.parseInt(args[++i]);
+		else if (args[i].compareTo("-cbound") == 0)
+			martCascadeBound = Double.parseDouble(args[++i]);
+
+		// Random forest
+		else if (args[i].compareTo("-bag") == 0)
+			rfBag = Integer.parseInt(args[++i]);
+		else if (args[i].compareTo("-srate") == 0)
+			rfSubSamplingRate = Float.parseFloat(args[++i]);
+		else if (args[i].compareTo("-frate") == 0)
+			rfFeatureSamplingRate = Float.parseFloat(args[++i]);
+		else if (args[i].compareTo("-bagthread") == 0)
+			rfBagThread = Integer.parseInt(args[++i]);
+
+		else if (args[i].compareTo("-silent") == 0)
+			verbose = false;
+		else
+			return -1;
+		return i;
+	}
+
+	/**
+	 * @return the options given to set(), or "default"
+	 */
+	public String toString() {
+		return (params.length() == 0) ? "default" : params;
+	}
+}
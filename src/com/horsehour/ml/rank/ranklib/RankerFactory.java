@@ -62,7 +62,14 @@ public class RankerFactory {
 		return r;
 	}
 
+	/**
+	 * Load a model file, either a text model whose first line names the
+	 * ranking algorithm, or a binary tree ensemble (see BinaryEnsemble)
+	 */
 	public Ranker loadRanker(String modelFile) {
+		if (BinaryEnsemble.isBinary(modelFile))
+			return mapRanker(modelFile);
+
 		Ranker r = null;
 		try {
 			BufferedReader in = new BufferedReader(new InputStreamReader(
@@ -80,4 +87,19 @@ public class RankerFactory {
 		}
 		return r;
 	}
+
+	private Ranker mapRanker(String modelFile) {
+		String name = BinaryEnsemble.rankerName(modelFile);
+		RANKER_TYPE type = (name == null) ? null : map.get(name.toUpperCase());
+		Ranker r = (type == null) ? null : createRanker(type);
+		if (!(r instanceof LambdaMART)) {
+			System.out.println("Error in RankerFactory.load(): " + modelFile
+			        + " is not a binary model of a tree ensemble");
+			return null;
+		}
+		System.out.println("Model:\t\t" + name + " (binary)");
+		if (!((LambdaMART) r).map(modelFile))
+			return null;
+		return r;
+	}
 }
@@ -0,0 +1,353 @@
+package com.horsehour.ml.rank.ranklib;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-process scoring service over a trained model. The model is loaded once
+ * and shared by a fixed pool of workers; each batch of rank lists is split
+ * among them. A new model can be swapped in at any time: a batch is scored
+ * entirely by the model that was current when it arrived, and swapping
+ * neither waits for nor blocks batches in flight.
+ *
+ * The service keeps latency percentiles (over the last WINDOW batches) and
+ * throughput counters. serve() puts a plain socket front end on it, and
+ * main() runs one, e.g. for load testing.
+ *
+ * @author Chunheng Jiang
+ */
+public class RankingService {
+	public static int WINDOW = 1 << 16;// batches kept for percentiles
+
+	protected RankerFactory rFact = new RankerFactory();
+	protected final AtomicReference<Ranker> model = new AtomicReference<Ranker>();
+	protected final AtomicLong version = new AtomicLong(0);
+	protected ExecutorService pool = null;
+	protected int nThread = 1;
+
+	// counters since the service started
+	protected final long start = System.nanoTime();
+	protected final AtomicLong batches = new AtomicLong(0);
+	protected final AtomicLong lists = new AtomicLong(0);
+	protected final AtomicLong documents = new AtomicLong(0);
+
+	private final long[] latency = new long[WINDOW];// ns, ring buffer
+	private long recorded = 0;
+
+	public RankingService(Ranker ranker, int nThread) {
+		this.nThread = Math.max(1, nThread);
+		pool = Executors.newFixedThreadPool(this.nThread);
+		if (ranker != null)
+			swap(ranker);
+	}
+
+	public RankingService(String modelFile, int nThread) {
+		this((Ranker) null, nThread);
+		load(modelFile);
+	}
+
+	/**
+	 * Load a model from file and make it current once it is fully loaded
+	 *
+	 * @return false if the model cannot be loaded, the current one is then
+	 *         kept
+	 */
+	public boolean load(String modelFile) {
+		Ranker r = rFact.loadRanker(modelFile);
+		if (r == null) {
+			System.out.println("Error in RankingService::load(): cannot load "
+			        + modelFile);
+			return false;
+		}
+		swap(r);
+		return true;
+	}
+
+	/**
+	 * Make ranker the current model
+	 *
+	 * @return the model it replaces
+	 */
+	public Ranker swap(Ranker ranker) {
+		Ranker old = model.getAndSet(ranker);
+		version.incrementAndGet();
+		return old;
+	}
+
+	public Ranker getModel() {
+		return model.get();
+	}
+
+	/**
+	 * @return number of models made current so far
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Score every document of every list
+	 *
+	 * @return scores[i][j], score of document j of list i
+	 * @throws IllegalStateException
+	 *             if there is no model
+	 * @throws RuntimeException
+	 *             whatever the model threw on any list of the batch
+	 */
+	public double[][] score(List<RankList> batch) {
+		long t0 = System.nanoTime();
+		final Ranker r = model.get();// the whole batch uses this one
+		final double[][] scores = new double[batch.size()][];
+		if (r == null)
+			throw new IllegalStateException("no model");
+
+		long nDoc = 0;
+		for (int i = 0; i < batch.size(); i++)
+			nDoc += batch.get(i).size();
+		int nTask = Math.min(nThread, batch.size());
+		if (nTask <= 1)
+			score(r, batch, 0, batch.size(), scores);
+		else {
+			// chunks of about the same number of documents
+			List<Future<?>> tasks = new ArrayList<Future<?>>();
+			int from = 0;
+			long done = 0;
+			for (int t = 1; t <= nTask && from < batch.size(); t++) {
+				long target = nDoc * t / nTask;
+				int to = from;
+				while (to < batch.size() && (to == from || done < target))
+					done += batch.get(to++).size();
+				if (t == nTask)
+					to = batch.size();
+				tasks.add(pool.submit(new ScoreTask(r, batch, from, to, scores)));
+				from = to;
+			}
+			try {
+				for (int t = 0; t < tasks.size(); t++)
+					tasks.get(t).get();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(ex);
+			} catch (ExecutionException ex) {
+				for (int t = 0; t < tasks.size(); t++)
+					tasks.get(t).cancel(true);
+				Throwable cause = ex.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw new IllegalStateException(cause);
+			}
+		}
+
+		record(System.nanoTime() - t0);
+		batches.incrementAndGet();
+		lists.addAndGet(batch.size());
+		documents.addAndGet(nDoc);
+		return scores;
+	}
+
+	/**
+	 * @return each list sorted by descending score
+	 * @throws RuntimeException
+	 *             if the batch cannot be scored, see score()
+	 */
+	public List<RankList> rank(List<RankList> batch) {
+		double[][] scores = score(batch);
+		List<RankList> ranked = new ArrayList<RankList>();
+		for (int i = 0; i < batch.size(); i++) {
+			if (scores[i].length == 0)
+				ranked.add(batch.get(i));
+			else
+				ranked.add(new RankList(batch.get(i), MergeSorter.sort(
+				        scores[i], false)));
+		}
+		return ranked;
+	}
+
+	protected static void score(Ranker r, List<RankList> batch, int from,
+	        int to, double[][] scores) {
+		for (int i = from; i < to; i++) {
+			RankList rl = batch.get(i);
+			double[] s = new double[rl.size()];
+			for (int j = 0; j < s.length; j++)
+				s[j] = r.eval(rl.get(j));
+			scores[i] = s;
+		}
+	}
+
+	class ScoreTask implements Runnable {
+		Ranker r = null;
+		List<RankList> batch = null;
+		int from = 0;
+		int to = 0;
+		double[][] scores = null;
+
+		ScoreTask(Ranker r, List<RankList> batch, int from, int to,
+		        double[][] scores) {
+			this.r = r;
+			this.batch = batch;
+			this.from = from;
+			this.to = to;
+			this.scores = scores;
+		}
+
+		public void run() {
+			score(r, batch, from, to, scores);
+		}
+	}
+
+	private synchronized void record(long ns) {
+		latency[(int) (recorded % WINDOW)] = ns;
+		recorded++;
+	}
+
+	/**
+	 * @return the p-th percentile (0 < p <= 100) of batch latency in ms, over
+	 *         the last WINDOW batches
+	 */
+	public double percentile(double p) {
+		long[] l;
+		synchronized (this) {
+			l = Arrays.copyOf(latency, (int) Math.min(recorded, WINDOW));
+		}
+		if (l.length == 0)
+			return 0;
+		Arrays.sort(l);
+		int i = (int) Math.ceil(p / 100 * l.length) - 1;
+		return l[Math.max(0, Math.min(l.length - 1, i))] / 1e6;
+	}
+
+	/**
+	 * @return documents scored per second since the service started
+	 */
+	public double throughput() {
+		double s = (System.nanoTime() - start) / 1e9;
+		return (s > 0) ? documents.get() / s : 0;
+	}
+
+	public String stats() {
+		return "model=v" + version.get() + " batches=" + batches.get()
+		        + " lists=" + lists.get() + " docs=" + documents.get()
+		        + " docs/s=" + SimpleMath.round(throughput(), 1) + " p50="
+		        + SimpleMath.round(percentile(50), 3) + "ms p95="
+		        + SimpleMath.round(percentile(95), 3) + "ms p99="
+		        + SimpleMath.round(percentile(99), 3) + "ms";
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Serve requests on a socket, one thread per connection, until the
+	 * process ends. A request is a batch of documents in the format of the
+	 * training files, one per line (consecutive lines with the same qid form
+	 * a rank list), ended by an empty line; the reply is their scores, one
+	 * per line in the same order, then an empty line. If the batch cannot be
+	 * scored, the reply is a line "#error <reason>" then an empty line. The
+	 * commands "#stats" and "#load <model file>" get a one-line reply.
+	 */
+	public void serve(int port) {
+		try {
+			ServerSocket server = new ServerSocket(port);
+			System.out.println("Serving on port " + port + " with " + nThread
+			        + " worker(s)");
+			while (true) {
+				final Socket s = server.accept();
+				Thread t = new Thread(new Runnable() {
+					public void run() {
+						handle(s);
+					}
+				});
+				t.setDaemon(true);
+				t.start();
+			}
+		} catch (Exception ex) {
+			System.out.println("Error in RankingService::serve(): "
+			        + ex.toString());
+		}
+	}
+
+	protected void handle(Socket s) {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+			        s.getInputStream(), "ASCII"));
+			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+			        s.getOutputStream(), "ASCII"));
+			List<RankList> batch = new ArrayList<RankList>();
+			String line = null;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.startsWith("#stats")) {
+					out.write(stats());
+					out.newLine();
+				} else if (line.startsWith("#load ")) {
+					String fn = line.substring(6).trim();
+					if (load(fn))
+						out.write("model=v" + version.get());
+					else
+						out.write("#error cannot load " + fn);
+					out.newLine();
+				} else if (line.length() > 0) {
+					DataPoint dp = new DenseDataPoint(line);
+					RankList last = batch.isEmpty() ? null : batch.get(batch
+					        .size() - 1);
+					if (last == null || last.getID().compareTo(dp.getID()) != 0) {
+						last = new RankList();
+						batch.add(last);
+					}
+					last.add(dp);
+					continue;
+				} else {
+					try {
+						double[][] scores = score(batch);
+						for (int i = 0; i < scores.length; i++)
+							for (int j = 0; j < scores[i].length; j++) {
+								out.write(Double.toString(scores[i][j]));
+								out.newLine();
+							}
+					} catch (RuntimeException ex) {
+						System.out.println("Error in RankingService::handle(): "
+						        + ex.toString());
+						out.write("#error " + ex.toString());
+						out.newLine();
+					}
+					out.newLine();
+					batch = new ArrayList<RankList>();
+				}
+				out.flush();
+			}
+			s.close();
+		} catch (Exception ex) {
+			System.out.println("Error in RankingService::handle(): "
+			        + ex.toString());
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out
+			        .println("Usage: java RankingService <model file> <port> [<threads>]");
+			return;
+		}
+		int nThread = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime
+		        .getRuntime().availableProcessors();
+		MyThreadPool.init(1);
+		RankingService service = new RankingService(args[0], nThread);
+		service.serve(Integer.parseInt(args[1]));
+	}
+}
@@ -21,9 +21,17 @@ public class ReciprocalRankScorer extends MetricScorer {
 	}
 
 	public double score(RankList rl) {
+		return score(id(rl), rl.getLabels(), null);
+	}
+
+	public double score(RankList rl, int[] idx) {
+		return score(id(rl), rl.getLabels(), idx);
+	}
+
+	public double score(String qid, float[] labels, int[] idx) {
 		int firstRank = -1;
-		for (int i = 0; i < rl.size() && (firstRank == -1); i++) {
-			if (rl.get(i).getLabel() > 0.0)// relevant
+		for (int i = 0; i < labels.length && (firstRank == -1); i++) {
+			if (labels[(idx == null) ? i : idx[i]] > 0.0)// relevant
 				firstRank = i + 1;
 		}
 		return (firstRank == -1) ? 0 : (1.0f / firstRank);
@@ -10,7 +10,11 @@
 package com.horsehour.ml.rank.ranklib;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * @author vdang
@@ -22,6 +26,8 @@ public class RegressionTree {
 							 // the tree will then be controlled *ONLY* by
 							 // minLeafSupport)
 	protected int minLeafSupport = 1;
+	// work-stealing pool for the frontier mode (see fitFrontier())
+	public static ForkJoinPool splitPool = ForkJoinPool.commonPool();
 
 	// Member variables and functions
 	protected Split root = null;
@@ -33,6 +39,7 @@ public class RegressionTree {
 	protected float[][] thresholds = null;
 	protected int[] index = null;
 	protected FeatureHistogram hist = null;
+	protected HistogramPool pool = null;
 
 	public RegressionTree(Split root) {
 		this.root = root;
@@ -41,20 +48,43 @@ public class RegressionTree {
 
 	public RegressionTree(int nLeaves, DataPoint[] trainingSamples,
 	        float[] labels, FeatureHistogram hist, int minLeafSupport) {
-		this.nodes = nLeaves;
+		this(nLeaves, labels, hist, minLeafSupport);
 		this.trainingSamples = trainingSamples;
+	}
+
+	/**
+	 * Tree grown purely from the binned matrix behind hist; sample k is the
+	 * k-th entry of labels
+	 */
+	public RegressionTree(int nLeaves, float[] labels, FeatureHistogram hist,
+	        int minLeafSupport) {
+		this.nodes = nLeaves;
 		this.trainingLabels = labels;
 		this.hist = hist;
 		this.minLeafSupport = minLeafSupport;
-		index = new int[trainingSamples.length];
-		for (int i = 0; i < trainingSamples.length; i++)
+		index = new int[labels.length];
+		for (int i = 0; i < labels.length; i++)
 			index[i] = i;
 	}
 
+	/**
+	 * Tree grown by fitFrontier(), with node histograms taken from pool
+	 */
+	public RegressionTree(int nLeaves, float[] labels, FeatureHistogram hist,
+	        int minLeafSupport, HistogramPool pool) {
+		this(nLeaves, labels, hist, minLeafSupport);
+		this.pool = pool;
+	}
+
 	/**
 	 * Fit the tree from the specified training data
 	 */
 	public void fit() {
+		if (pool != null) {
+			fitFrontier();
+			return;
+		}
+
 		List<Split> queue = new ArrayList<Split>();
 		root = split(new Split(index, hist, Float.MAX_VALUE, 0));
 		insert(queue, root.getLeft());
@@ -79,6 +109,73 @@ public class RegressionTree {
 		leaves = root.leaves();
 	}
 
+	/**
+	 * Grow the tree in the same best-first order as fit(), but search the
+	 * splits of the next frontier leaves (as many as the leaf budget still
+	 * allows) concurrently on splitPool. Only the smaller child of a split has
+	 * its histogram built, the larger one is the parent minus the smaller one,
+	 * computed in place of the parent's buffer. A leaf whose split is found
+	 * but turns out not to be needed simply stays a leaf.
+	 */
+	protected void fitFrontier() {
+		root = new Split(index, hist, Float.MAX_VALUE, 0);
+		FrontierTask task = new FrontierTask(root);
+		splitPool.invoke(task);
+		FeatureHistogram.Candidate c = task.ret[0];
+		if (c == null) {
+			leaves = root.leaves();
+			return;
+		}
+		c.apply(root);
+
+		List<Split> queue = new ArrayList<Split>();
+		insert(queue, root.getLeft());
+		insert(queue, root.getRight());
+
+		Map<Split, FeatureHistogram.Candidate> found = new HashMap<Split, FeatureHistogram.Candidate>();
+		int taken = 0;
+		while ((nodes == -1 || taken + queue.size() < nodes)
+		        && queue.size() > 0) {
+			Split leaf = queue.get(0);
+			if (!found.containsKey(leaf)) {
+				int budget = (nodes == -1) ? queue.size() : nodes - taken
+				        - queue.size();
+				List<Split> frontier = new ArrayList<Split>();
+				for (int i = 0; i < queue.size() && frontier.size() < budget; i++)
+					if (!found.containsKey(queue.get(i)))
+						frontier.add(queue.get(i));
+				task = new FrontierTask(frontier.toArray(new Split[frontier
+				        .size()]));
+				splitPool.invoke(task);
+				for (int i = 0; i < frontier.size(); i++)
+					found.put(frontier.get(i), task.ret[i]);
+			}
+			queue.remove(0);
+
+			c = found.remove(leaf);
+			if (c == null)// unsplitable
+				taken++;
+			else {
+				c.apply(leaf);
+				insert(queue, leaf.getLeft());
+				insert(queue, leaf.getRight());
+			}
+		}
+
+		// give back the children histograms of unused splits; the parent's
+		// buffer stays with the leaf
+		for (Map.Entry<Split, FeatureHistogram.Candidate> e : found.entrySet()) {
+			c = e.getValue();
+			if (c == null)
+				continue;
+			if (c.leftHist != e.getKey().hist)
+				pool.release(c.leftHist);
+			if (c.rightHist != e.getKey().hist)
+				pool.release(c.rightHist);
+		}
+		leaves = root.leaves();
+	}
+
 	/**
 	 * Find the best <feature, threshold> that split the set of samples into two
 	 * subsets with the smallest S (mean squared error): S = sum_{samples put to
@@ -91,8 +188,7 @@ public class RegressionTree {
 	 */
 	protected Split split(Split s) {
 		FeatureHistogram h = s.hist;
-		return h.findBestSplit(s, trainingSamples, trainingLabels,
-		        minLeafSupport);
+		return h.findBestSplit(s, trainingLabels, minLeafSupport);
 	}
 
 	/**
@@ -119,12 +215,16 @@ public class RegressionTree {
 	 * necessary) in order to save memory
 	 */
 	public void clearSamples() {
+		if (pool != null)
+			for (int i = 0; i < leaves.size(); i++)
+				pool.release(leaves.get(i).hist);
 		trainingSamples = null;
 		trainingLabels = null;
 		features = null;
 		thresholds = null;
 		index = null;
 		hist = null;
+		pool = null;
 		for (int i = 0; i < leaves.size(); i++)
 			leaves.get(i).clearSamples();
 	}
@@ -177,4 +277,34 @@ public class RegressionTree {
 			ret = split(s);
 		}
 	}
+
+	/**
+	 * Search the splits of a set of leaves concurrently, without applying them
+	 */
+	class FrontierTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		Split[] splits = null;
+		FeatureHistogram.Candidate[] ret = null;
+
+		FrontierTask(Split... splits) {
+			this.splits = splits;
+			ret = new FeatureHistogram.Candidate[splits.length];
+		}
+
+		protected void compute() {
+			if (splits.length == 1) {
+				Split s = splits[0];
+				ret[0] = s.hist.findBestSplit(s, trainingLabels,
+				        minLeafSupport, pool, s.hist != hist);
+				return;
+			}
+			FrontierTask[] tasks = new FrontierTask[splits.length];
+			for (int i = 0; i < splits.length; i++)
+				tasks[i] = new FrontierTask(splits[i]);
+			invokeAll(tasks);
+			for (int i = 0; i < splits.length; i++)
+				ret[i] = tasks[i].ret[0];
+		}
+	}
 }
@@ -0,0 +1,293 @@
+/*===============================================================================
+ * Copyright (c) 2010-2012 University of Massachusetts.  All Rights Reserved.
+ *
+ * Use of the RankLib package is subject to the terms of the software license set 
+ * forth in the LICENSE file included with this software, and also available at
+ * http://people.cs.umass.edu/~vdang/ranklib_license.html
+ *===============================================================================
+ */
+
+
+package com.horsehour.ml.rank.ranklib;
+
+import java.util.Arrays;
+
+/**
+ * Data point storing only the features present, as feature ids in ascending
+ * order and their values. Suited to datasets with many feature ids but few
+ * non-zeros per document, where a DenseDataPoint would mostly hold padding.
+ * 
+ * @author Chunheng Jiang
+ */
+public class SparseDataPoint extends DataPoint {
+	protected int[] fIds = null;// ascending
+	protected float[] fVals = null;
+	protected int size = 0;
+
+	/**
+	 * The input must have the form: label qid:id fid:value ... # description
+	 * 
+	 * @param text
+	 */
+	public SparseDataPoint(String text) {
+		fIds = new int[0];
+		fVals = new float[0];
+		try {
+			int idx = text.lastIndexOf("#");
+			if (idx != -1) {
+				description = text.substring(idx);
+				text = text.substring(0, idx).trim();// remove the comment part
+													 // at the end of the line
+			}
+			String[] fs = text.split(" ");
+			label = Float.parseFloat(fs[0]);
+			id = getValue(fs[1]);
+			int n = fs.length - 2;
+			int[] ids = new int[n];
+			float[] vals = new float[n];
+			for (int i = 0; i < n; i++) {
+				ids[i] = Integer.parseInt(getKey(fs[i + 2]));
+				vals[i] = Float.parseFloat(getValue(fs[i + 2]));
+			}
+			set(ids, vals, n);
+		} catch (Exception ex) {
+			System.out.println("Error in SparseDataPoint(text) constructor");
+		}
+	}
+
+	/**
+	 * @param label
+	 * @param id
+	 * @param fIds
+	 *            feature ids, in any order (the last value of a repeated id
+	 *            wins)
+	 * @param fVals
+	 *            values of the features
+	 * @param description
+	 */
+	public SparseDataPoint(float label, String id, int[] fIds, float[] fVals,
+	        String description) {
+		super(label, id, description);
+		set(fIds, fVals, fIds.length);
+	}
+
+	/**
+	 * Sparse copy of a dense data point
+	 */
+	public SparseDataPoint(DenseDataPoint dp) {
+		super(dp.label, dp.id, dp.description);
+		cached = dp.cached;
+		float[] v = dp.getFeatureVector();
+		int n = 0;
+		for (int f = 0; f < v.length; f++)
+			if (v[f] > INFINITY + 1)
+				n++;
+		fIds = new int[n];
+		fVals = new float[n];
+		for (int f = 0; f < v.length; f++)
+			if (v[f] > INFINITY + 1) {
+				fIds[size] = f;
+				fVals[size++] = v[f];
+			}
+	}
+
+	private void set(int[] ids, float[] vals, int n) {
+		boolean sorted = true;
+		for (int i = 1; i < n && sorted; i++)
+			sorted = ids[i - 1] < ids[i];
+		if (sorted) {
+			fIds = (ids.length == n) ? ids : Arrays.copyOf(ids, n);
+			fVals = (vals.length == n) ? vals : Arrays.copyOf(vals, n);
+			size = n;
+			return;
+		}
+
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		// stable, so the last of equal ids comes last
+		Arrays.sort(order, (a, b) -> Integer.compare(ids[a], ids[b]));
+		fIds = new int[n];
+		fVals = new float[n];
+		size = 0;
+		for (int i = 0; i < n; i++) {
+			int k = order[i];
+			if (size > 0 && fIds[size - 1] == ids[k])
+				size--;
+			fIds[size] = ids[k];
+			fVals[size++] = vals[k];
+		}
+	}
+
+	private int find(int fid) {
+		return Arrays.binarySearch(fIds, 0, size, fid);
+	}
+
+	public float getFeatureValue(int fid) {
+		int k = find(fid);
+		if (k < 0 || fVals[k] < INFINITY + 1)
+			return 0.0f;
+		return fVals[k];
+	}
+
+	public void setFeatureValue(int fid, float fval) {
+		int k = find(fid);
+		if (k >= 0) {
+			fVals[k] = fval;
+			return;
+		}
+		k = -k - 1;
+		if (size == fIds.length) {
+			int cap = Math.max(4, size + (size >> 1));
+			fIds = Arrays.copyOf(fIds, cap);
+			fVals = Arrays.copyOf(fVals, cap);
+		}
+		System.arraycopy(fIds, k, fIds, k + 1, size - k);
+		System.arraycopy(fVals, k, fVals, k + 1, size - k);
+		fIds[k] = fid;
+		fVals[k] = fval;
+		size++;
+	}
+
+	public int getLastFeature() {
+		return size == 0 ? -1 : fIds[size - 1];
+	}
+
+	public int getStoredCount() {
+		return size;
+	}
+
+	/**
+	 * @return number of stored features; ids and values are in
+	 *         getFeatureIDs()[0, size()) and getFeatureValues()[0, size())
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int[] getFeatureIDs() {
+		return fIds;
+	}
+
+	public float[] getFeatureValues() {
+		return fVals;
+	}
+
+	public float[] getFeatureVector() {
+		float[] v = new float[getLastFeature() + 1];
+		Arrays.fill(v, INFINITY);
+		for (int i = 0; i < size; i++)
+			v[fIds[i]] = fVals[i];
+		return v;
+	}
+
+	public void normalize(int[] fids, float[] norm) {
+		for (int i = 0; i < fids.length; i++) {
+			if (!(norm[i] > 0.0))
+				continue;
+			int k = find(fids[i]);
+			if (k >= 0)
+				fVals[k] /= norm[i];
+		}
+	}
+
+	/**
+	 * Missing features standardize to -mean/std, so the stored ids are merged
+	 * with fids in one pass rather than inserted one by one
+	 */
+	public void standardize(int[] fids, float[] mean, float[] std) {
+		Integer[] order = new Integer[fids.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> Integer.compare(fids[a], fids[b]));
+
+		int[] ids = new int[size + fids.length];
+		float[] vals = new float[ids.length];
+		int n = 0, k = 0;
+		for (int o = 0; o < order.length; o++) {
+			int i = order[o];
+			if (!(std[i] > 0.0))
+				continue;
+			int f = fids[i];
+			if (n > 0 && ids[n - 1] == f)
+				continue;
+			while (k < size && fIds[k] < f) {
+				ids[n] = fIds[k];
+				vals[n++] = fVals[k++];
+			}
+			float x = 0.0f;
+			if (k < size && fIds[k] == f) {
+				x = (fVals[k] < INFINITY + 1) ? 0.0f : fVals[k];
+				k++;
+			}
+			ids[n] = f;
+			vals[n++] = (x - mean[i]) / std[i];
+		}
+		while (k < size) {
+			ids[n] = fIds[k];
+			vals[n++] = fVals[k++];
+		}
+		fIds = ids;
+		fVals = vals;
+		size = n;
+	}
+
+	public void addFeatures(int featureCount, float[] values) {
+		int n = size;
+		while (n > 0 && fIds[n - 1] > featureCount)
+			n--;
+		int[] ids = Arrays.copyOf(fIds, n + values.length);
+		float[] vals = Arrays.copyOf(fVals, n + values.length);
+		for (int i = 0; i < values.length; i++) {
+			ids[n + i] = featureCount + 1 + i;
+			vals[n + i] = values[i];
+		}
+		fIds = ids;
+		fVals = vals;
+		size = ids.length;
+	}
+
+	/**
+	 * @return pos such that pos[fids[j]] = j and -1 for other ids (up to the
+	 *         largest of fids), or null if fids has repeated ids
+	 */
+	static int[] index(int[] fids) {
+		int max = 0;
+		for (int f : fids)
+			max = Math.max(max, f);
+		int[] pos = new int[max + 1];
+		Arrays.fill(pos, -1);
+		for (int j = 0; j < fids.length; j++) {
+			if (pos[fids[j]] != -1)
+				return null;
+			pos[fids[j]] = j;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return j such that fids[j] is the k-th stored feature, -1 if none
+	 */
+	int lookup(int[] pos, int k) {
+		int f = fIds[k];
+		return (f < pos.length) ? pos[f] : -1;
+	}
+
+	/**
+	 * @return value of the k-th stored feature, as getFeatureValue() would
+	 */
+	float valueAt(int k) {
+		return (fVals[k] < INFINITY + 1) ? 0.0f : fVals[k];
+	}
+
+	public String toString() {
+		StringBuilder output = new StringBuilder();
+		output.append(label).append(" id:").append(id).append(" ");
+		for (int i = 0; i < size; i++)
+			if (fIds[i] > 0 && fVals[i] > INFINITY + 1)
+				output.append(fIds[i]).append(":").append(fVals[i])
+				        .append((i == size - 1) ? "" : " ");
+		output.append(" ").append(description);
+		return output.toString();
+	}
+}
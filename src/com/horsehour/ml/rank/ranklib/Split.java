@@ -96,6 +96,21 @@ public class Split {
 		return avgLabel;
 	}
 
+	public int getFeatureID() {
+		return featureID;
+	}
+
+	public float getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * @return true if this node is a leaf
+	 */
+	public boolean isLeaf() {
+		return featureID == -1;
+	}
+
 	public List<Split> leaves() {
 		List<Split> list = new ArrayList<Split>();
 		leaves(list);
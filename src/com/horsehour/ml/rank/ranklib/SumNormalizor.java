@@ -20,10 +20,20 @@ public class SumNormalizor implements Normalizer {
 	public void normalize(RankList rl, int[] fids) {
 		float[] norm = new float[fids.length];
 		Arrays.fill(norm, 0);
+		int[] pos = SparseDataPoint.index(fids);
 		for (int i = 0; i < rl.size(); i++) {
 			DataPoint dp = rl.get(i);
-			for (int j = 0; j < fids.length; j++)
-				norm[j] += Math.abs(dp.getFeatureValue(fids[j]));
+			if (pos != null && dp instanceof SparseDataPoint) {
+				// missing features add nothing
+				SparseDataPoint sp = (SparseDataPoint) dp;
+				for (int k = 0; k < sp.size(); k++) {
+					int j = sp.lookup(pos, k);
+					if (j >= 0)
+						norm[j] += Math.abs(sp.valueAt(k));
+				}
+			} else
+				for (int j = 0; j < fids.length; j++)
+					norm[j] += Math.abs(dp.getFeatureValue(fids[j]));
 		}
 		for (int i = 0; i < rl.size(); i++) {
 			DataPoint dp = rl.get(i);
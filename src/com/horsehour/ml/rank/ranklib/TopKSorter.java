@@ -0,0 +1,139 @@
+package com.horsehour.ml.rank.ranklib;
+
+/**
+ * Partial sort of scores in descending order: only the k best documents are
+ * ranked, with a bounded heap of indices (O(n log k) time, no allocation
+ * beyond the result). The order is that of the first k entries of
+ * MergeSorter.sort(scores, false), i.e. ties go to the lower index, so
+ * metrics at cutoff k get exactly the same values as from a full sort
+ * (scores are assumed not to be NaN).
+ *
+ * @author Chunheng Jiang
+ */
+public class TopKSorter {
+
+	/**
+	 * @return indices of the min(k, n) highest scores, best first; all of
+	 *         them if k <= 0
+	 */
+	public static int[] sort(double[] scores, int k) {
+		int[] idx = new int[size(scores.length, k)];
+		sort(scores, 0, scores.length, k, idx);
+		return idx;
+	}
+
+	public static int[] sort(float[] scores, int k) {
+		int[] idx = new int[size(scores.length, k)];
+		sort(scores, 0, scores.length, k, idx);
+		return idx;
+	}
+
+	/**
+	 * @return number of positions ranked for a list of n documents
+	 */
+	public static int size(int n, int k) {
+		return (k <= 0 || k > n) ? n : k;
+	}
+
+	/**
+	 * Rank the documents scores[base, base + n), writing the offsets (from
+	 * base) of the size(n, k) best ones to idx, best first
+	 *
+	 * @return number of positions written
+	 */
+	public static int sort(double[] scores, int base, int n, int k, int[] idx) {
+		int m = size(n, k);
+		if (m == 0)
+			return 0;
+		// min-heap on idx[0, m): the worst of the current top m at the root
+		for (int i = 0; i < m; i++)
+			idx[i] = i;
+		for (int i = m / 2 - 1; i >= 0; i--)
+			siftDown(scores, base, idx, i, m);
+		// on a tie, the document in the heap has the lower index and stays
+		for (int i = m; i < n; i++) {
+			if (scores[base + i] > scores[base + idx[0]]) {
+				idx[0] = i;
+				siftDown(scores, base, idx, 0, m);
+			}
+		}
+		// move the worst to the end, one at a time
+		for (int end = m - 1; end > 0; end--) {
+			int t = idx[0];
+			idx[0] = idx[end];
+			idx[end] = t;
+			siftDown(scores, base, idx, 0, end);
+		}
+		return m;
+	}
+
+	public static int sort(float[] scores, int base, int n, int k, int[] idx) {
+		int m = size(n, k);
+		if (m == 0)
+			return 0;
+		for (int i = 0; i < m; i++)
+			idx[i] = i;
+		for (int i = m / 2 - 1; i >= 0; i--)
+			siftDown(scores, base, idx, i, m);
+		for (int i = m; i < n; i++) {
+			if (scores[base + i] > scores[base + idx[0]]) {
+				idx[0] = i;
+				siftDown(scores, base, idx, 0, m);
+			}
+		}
+		for (int end = m - 1; end > 0; end--) {
+			int t = idx[0];
+			idx[0] = idx[end];
+			idx[end] = t;
+			siftDown(scores, base, idx, 0, end);
+		}
+		return m;
+	}
+
+	/**
+	 * @return whether document a ranks below document b
+	 */
+	private static boolean worse(double[] scores, int base, int a, int b) {
+		double sa = scores[base + a], sb = scores[base + b];
+		return sa < sb || (sa == sb && a > b);
+	}
+
+	private static boolean worse(float[] scores, int base, int a, int b) {
+		float sa = scores[base + a], sb = scores[base + b];
+		return sa < sb || (sa == sb && a > b);
+	}
+
+	private static void siftDown(double[] scores, int base, int[] idx, int i,
+	        int size) {
+		int x = idx[i];
+		while (true) {
+			int c = 2 * i + 1;
+			if (c >= size)
+				break;
+			if (c + 1 < size && worse(scores, base, idx[c + 1], idx[c]))
+				c++;
+			if (!worse(scores, base, idx[c], x))
+				break;
+			idx[i] = idx[c];
+			i = c;
+		}
+		idx[i] = x;
+	}
+
+	private static void siftDown(float[] scores, int base, int[] idx, int i,
+	        int size) {
+		int x = idx[i];
+		while (true) {
+			int c = 2 * i + 1;
+			if (c >= size)
+				break;
+			if (c + 1 < size && worse(scores, base, idx[c + 1], idx[c]))
+				c++;
+			if (!worse(scores, base, idx[c], x))
+				break;
+			idx[i] = idx[c];
+			i = c;
+		}
+		idx[i] = x;
+	}
+}
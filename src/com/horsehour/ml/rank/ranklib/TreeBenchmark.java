@@ -0,0 +1,115 @@
+package com.horsehour.ml.rank.ranklib;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Trees/second of regression tree induction as done by LambdaMART, the
+ * sequential path (both children histograms per split, one leaf at a time)
+ * against the frontier path (smaller child only, pooled buffers, concurrent
+ * split search).
+ *
+ * Usage: TreeBenchmark [-input file] [-n samples] [-dim features] [-leaf l]
+ * [-tree t] [-tc k] [-thread p]
+ *
+ * @author Chunheng Jiang
+ */
+public class TreeBenchmark {
+	public static void main(String[] args) {
+		String input = "";
+		int n = 200000, dim = 136, nLeaves = 31, nTrees = 50, nThread = Runtime
+		        .getRuntime().availableProcessors();
+		int nThreshold = 256;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].compareTo("-input") == 0)
+				input = args[++i];
+			else if (args[i].compareTo("-n") == 0)
+				n = Integer.parseInt(args[++i]);
+			else if (args[i].compareTo("-dim") == 0)
+				dim = Integer.parseInt(args[++i]);
+			else if (args[i].compareTo("-leaf") == 0)
+				nLeaves = Integer.parseInt(args[++i]);
+			else if (args[i].compareTo("-tree") == 0)
+				nTrees = Integer.parseInt(args[++i]);
+			else if (args[i].compareTo("-tc") == 0)
+				nThreshold = Integer.parseInt(args[++i]);
+			else if (args[i].compareTo("-thread") == 0)
+				nThread = Integer.parseInt(args[++i]);
+		}
+
+		MyThreadPool.init(nThread);
+		RegressionTree.splitPool = new ForkJoinPool(nThread);
+
+		DataPoint[] samples;
+		int[] features;
+		Random rnd = new Random(20131210);
+		if (input.length() > 0) {
+			List<RankList> data = new FeatureManager().read(input);
+			int count = 0;
+			for (RankList rl : data)
+				count += rl.size();
+			samples = new DataPoint[count];
+			count = 0;
+			for (RankList rl : data)
+				for (int j = 0; j < rl.size(); j++)
+					samples[count++] = rl.get(j);
+			features = new int[FeatureManager.getFeatureCount(data)];
+		} else {
+			samples = new DataPoint[n];
+			float[] fVals = new float[dim + 1];
+			for (int k = 0; k < n; k++) {
+				for (int f = 1; f <= dim; f++)
+					fVals[f] = (f % 4 == 0) ? rnd.nextInt(5) : (float) rnd
+					        .nextGaussian();
+				samples[k] = new DenseDataPoint(rnd.nextInt(5), "" + (k / 100),
+				        fVals.clone(), null);
+			}
+			features = new int[dim];
+		}
+		for (int f = 0; f < features.length; f++)
+			features[f] = f + 1;
+
+		float[] labels = new float[samples.length];
+		for (int k = 0; k < labels.length; k++)
+			labels[k] = (float) rnd.nextGaussian();
+
+		long start = System.nanoTime();
+		BinnedFeatures bins = new BinnedFeatures(samples, features, nThreshold);
+		FeatureHistogram hist = new FeatureHistogram();
+		hist.construct(bins, labels);
+		System.out.println("samples: " + samples.length + ", features: "
+		        + features.length + ", leaves: " + nLeaves + ", threads: "
+		        + nThread + ", binning: "
+		        + SimpleMath.round((System.nanoTime() - start) / 1e9, 2)
+		        + "s");
+
+		HistogramPool pool = new HistogramPool(hist);
+		double base = run("sequential", hist, labels, nLeaves, nTrees, null);
+		double frontier = run("frontier", hist, labels, nLeaves, nTrees, pool);
+		System.out.println("speedup: " + SimpleMath.round(frontier / base, 2)
+		        + "x, pooled histograms: " + pool.allocated());
+
+		MyThreadPool.getInstance().shutdown();
+		RegressionTree.splitPool.shutdown();
+	}
+
+	private static double run(String name, FeatureHistogram hist,
+	        float[] labels, int nLeaves, int nTrees, HistogramPool pool) {
+		int warmup = Math.max(1, nTrees / 10);
+		long start = 0;
+		for (int i = 0; i < warmup + nTrees; i++) {
+			if (i == warmup)
+				start = System.nanoTime();
+			RegressionTree rt = new RegressionTree(nLeaves, labels, hist, 1,
+			        pool);
+			rt.fit();
+			rt.clearSamples();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double rate = nTrees / seconds;
+		System.out.println(name + ": " + SimpleMath.round(rate, 2)
+		        + " trees/s");
+		return rate;
+	}
+}
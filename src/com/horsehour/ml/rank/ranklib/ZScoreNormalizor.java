@@ -23,34 +23,69 @@ public class ZScoreNormalizor implements Normalizer {
 		float[] std = new float[fids.length];
 		Arrays.fill(mean, 0);
 		Arrays.fill(std, 0);
-		for (int i = 0; i < rl.size(); i++) {
-			DataPoint dp = rl.get(i);
-			for (int j = 0; j < fids.length; j++)
-				mean[j] += dp.getFeatureValue(fids[j]);
-		}
-
-		for (int j = 0; j < fids.length; j++) {
-			mean[j] = mean[j] / rl.size();
+		int[] pos = SparseDataPoint.index(fids);
+		boolean sparse = pos != null && rl.size() > 1;
+		for (int i = 0; i < rl.size() && sparse; i++)
+			sparse = rl.get(i) instanceof SparseDataPoint;
+		if (sparse) {
+			zscoreSparse(rl, fids, pos, mean, std);
+		} else {
 			for (int i = 0; i < rl.size(); i++) {
-				DataPoint p = rl.get(i);
-				float x = p.getFeatureValue(fids[j]) - mean[j];
-				std[j] += x * x;
+				DataPoint dp = rl.get(i);
+				for (int j = 0; j < fids.length; j++)
+					mean[j] += dp.getFeatureValue(fids[j]);
 			}
-			std[j] = (float) Math.sqrt(std[j] / (rl.size() - 1));
-			// normalize
-			if (std[j] > 0.0) {
+
+			for (int j = 0; j < fids.length; j++) {
+				mean[j] = mean[j] / rl.size();
 				for (int i = 0; i < rl.size(); i++) {
 					DataPoint p = rl.get(i);
-					float x = (p.getFeatureValue(fids[j]) - mean[j]) / std[j];// x
-																			  // ~
-																			  // standard
-																			  // normal
-																			  // (0,
-																			  // 1)
-					p.setFeatureValue(fids[j], x);
+					float x = p.getFeatureValue(fids[j]) - mean[j];
+					std[j] += x * x;
+				}
+				std[j] = (float) Math.sqrt(std[j] / (rl.size() - 1));
+			}
+		}
+		// normalize: x ~ standard normal (0, 1) wherever std > 0, in one pass
+		// per data point so that sparse points are rebuilt only once
+		for (int i = 0; i < rl.size(); i++)
+			rl.get(i).standardize(fids, mean, std);
+	}
+
+	/**
+	 * Mean and std visiting only the stored features of sparse points: each
+	 * missing feature adds mean^2 to the squared deviations
+	 */
+	private void zscoreSparse(RankList rl, int[] fids, int[] pos,
+	        float[] mean, float[] std) {
+		int[] present = new int[fids.length];
+		for (int i = 0; i < rl.size(); i++) {
+			SparseDataPoint sp = (SparseDataPoint) rl.get(i);
+			for (int k = 0; k < sp.size(); k++) {
+				int j = sp.lookup(pos, k);
+				if (j >= 0) {
+					mean[j] += sp.valueAt(k);
+					present[j]++;
 				}
 			}
 		}
+		for (int j = 0; j < fids.length; j++)
+			mean[j] = mean[j] / rl.size();
+
+		for (int i = 0; i < rl.size(); i++) {
+			SparseDataPoint sp = (SparseDataPoint) rl.get(i);
+			for (int k = 0; k < sp.size(); k++) {
+				int j = sp.lookup(pos, k);
+				if (j >= 0) {
+					float x = sp.valueAt(k) - mean[j];
+					std[j] += x * x;
+				}
+			}
+		}
+		for (int j = 0; j < fids.length; j++) {
+			std[j] += (rl.size() - present[j]) * mean[j] * mean[j];
+			std[j] = (float) Math.sqrt(std[j] / (rl.size() - 1));
+		}
 	}
 
 	public String name() {
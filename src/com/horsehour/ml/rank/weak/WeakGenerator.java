@@ -5,13 +5,11 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
-import lpsolve.LpSolve;
-import lpsolve.LpSolveException;
-
 import org.apache.commons.io.FileUtils;
 
 import com.horsehour.math.function.Log1pFunction;
 import com.horsehour.math.function.TransferFunction;
+import com.horsehour.math.opt.lp.DEASolver;
 import com.horsehour.math.opt.lp.ObjDirection;
 import com.horsehour.math.opt.lp.Solution;
 import com.horsehour.ml.data.DataSet;
@@ -20,7 +18,7 @@ import com.horsehour.ml.data.SampleSet;
 import com.horsehour.ml.data.sieve.L2RSieve;
 
 /**
- * 使用lp_solve包求解CCR模型,将结果保存到本地文件-CCRData
+ * 使用DEASolver求解CCR模型,将结果保存到本地文件-CCRData
  * <p>
  * 根据特殊的CCR模型,计算各个决策单元的相对最优权值,并保存到本地文件
  * </p>
@@ -37,7 +35,6 @@ import com.horsehour.ml.data.sieve.L2RSieve;
  * @author Chunheng Jiang
  * @version 1.0
  * @since 20130508
- * @see http://web.mit.edu/lpsolve_v5520/java/docs/api/index-all.html
  */
 
 public class WeakGenerator {
@@ -46,21 +43,20 @@ public class WeakGenerator {
 
 	private int oriented = 0;
 
-	// 直接使用lp_solve求解ccr模型
-	public LpSolve problem;
+	// 各检索词下的ccr模型共享约束矩阵, 由DEASolver批量求解
+	public DEASolver solver = new DEASolver();
 	public double[][] dataMatrix;
 	ObjDirection dir = ObjDirection.MAX;
 	public TransferFunction activeFun = new Log1pFunction((float) Math.E);
 
 	public double[] bound;
-	public int eqType = -1;
 
 	public int nRow = -1, nCol = -1;
 
 	public WeakGenerator() {}
 
 	/**
-	 * 基于lp_solve求解CCR模型
+	 * 基于DEASolver求解CCR模型
 	 */
 	public void solveCCR(){
 		dir = (oriented == 0) ? ObjDirection.MIN : ObjDirection.MAX;
@@ -74,11 +70,13 @@ public class WeakGenerator {
 			nRow = sampleSet.size();
 
 			prepareData(sampleSet);
-			makeProblem();
 
 			String query = sampleSet.getSample(0).getQid();
 			sb = new StringBuffer();
-			sols = solveProblem();
+			// 全部nCol个特征都参与求解, 权值依次对应特征0..nCol-1; 原先经lp_solve求解时
+			// 各行的第0个元素被忽略, 特征0不参与求解, 输出的第k个权值实为特征k+1的权值
+			sols = solver.solve(dataMatrix, dir, bound);
+			System.out.println(query + " " + solver.report());
 
 			for (int id = 0; id < sols.length; id++) {
 				if (sols[id] == null)
@@ -102,7 +100,7 @@ public class WeakGenerator {
 	}
 
 	/**
-	 * 根据模型从sampleset中配置必要的数据 1. dataMatrix 2. bound 3. eqType
+	 * 根据模型从sampleset中配置必要的数据 1. dataMatrix 2. bound
 	 * 
 	 * @param sampleset
 	 */
@@ -114,79 +112,15 @@ public class WeakGenerator {
 
 		bound = new double[nRow];
 		// 根据目标函数的类型设置约束条件(不等式符号,界)
-		if (dir == ObjDirection.MAX) {
-			eqType = 1;// leq
-			Arrays.fill(bound, 1);
-		} else {
-			eqType = 2;// geq
-
+		if (dir == ObjDirection.MAX)
+			Arrays.fill(bound, 1);// leq
+		else {// geq
 			List<Integer> labels = sampleset.getLabelList();
 			for (int i = 0; i < nRow; i++)
 				bound[i] = activeFun.calc(labels.get(i));
 		}
 	}
 
-	/**
-	 * 构造模型-problem
-	 */
-	private void makeProblem(){
-		try {
-			problem = LpSolve.makeLp(0, nCol);
-
-			// 设置目标函数类型
-			if (dir == ObjDirection.MAX)
-				problem.setMaxim();
-			else
-				problem.setMinim();
-
-			if (problem.getLp() != 0) {
-				problem.setAddRowmode(true);
-				// 添加约束条件
-				for (int i = 0; i < nRow; i++)
-					problem.addConstraint(dataMatrix[i], eqType, bound[i]);
-
-				problem.setAddRowmode(false);
-				problem.setVerbose(0);// 不打印日志
-			}
-		} catch (LpSolveException e) {
-			e.printStackTrace();
-			return;
-		}
-	}
-
-	/**
-	 * 求解模型
-	 * 
-	 * @return 问题的解
-	 */
-	private Solution[] solveProblem(){
-		Solution[] sols = new Solution[nRow];
-
-		double[] weight = new double[nCol];
-		for (int i = 0; i < nRow; i++) {
-			try {
-				// 设置目标函数
-				problem.setObjFn(dataMatrix[i]);
-
-				// 求解模型
-				int code = problem.solve();
-				if (code == LpSolve.OPTIMAL) {
-					problem.getVariables(weight);
-					sols[i] = new Solution(problem.getObjective(), weight);
-				}
-
-			} catch (LpSolveException e) {
-				e.printStackTrace();
-				return null;
-			}
-		}
-
-		if (problem.getLp() != 0)
-			problem.deleteLp();
-
-		return sols;
-	}
-
 	public void solve(String workspace, String ori){
 		trainset = Data.loadDataSet(workspace + "/train.txt", new L2RSieve());
 		nCol = trainset.dim();